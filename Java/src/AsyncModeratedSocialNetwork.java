@@ -0,0 +1,51 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/** Overview:
+ *      AsyncModeratedSocialNetwork è un dato mutabile che rappresenta una rete sociale
+ *      moderata con le stesse operazioni di ModeratedSocialNetwork, eseguite senza bloccare il
+ *      chiamante come descritto in AsyncSocialNetwork.
+ *
+ *      Typical element: come in ModeratedSocialNetwork
+ */
+public interface AsyncModeratedSocialNetwork extends AsyncSocialNetwork {
+    /**
+     * @effects Come ModeratedSocialNetwork.report(author, post)
+     * @return  Un future completato quando la segnalazione è stata registrata, oppure con
+     *          ReportingAlreadySentException, AutoReportException, UserNotFoundException o
+     *          PostNotFoundException
+     */
+    public CompletableFuture<Void> report(String author, Post post);
+
+    /**
+     * @effects Come ModeratedSocialNetwork.getControversialPosts()
+     * @return  Un future completato con i post in ordine non crescente di peso delle segnalazioni
+     */
+    public CompletableFuture<List<Post>> getControversialPosts();
+
+    /**
+     * @effects Come ModeratedSocialNetwork.addForbiddenWord(toAdd)
+     * @return  Un future completato quando la parola è stata aggiunta
+     */
+    public CompletableFuture<Void> addForbiddenWord(String toAdd);
+
+    /**
+     * @effects Come ModeratedSocialNetwork.removeForbiddenWord(toRemove)
+     * @return  Un future completato quando la parola è stata rimossa, oppure con
+     *          NoSuchElementException
+     */
+    public CompletableFuture<Void> removeForbiddenWord(String toRemove);
+
+    /**
+     * @effects Come ModeratedSocialNetwork.getReportingsByAuthor(author)
+     * @return  Un future completato con le segnalazioni inviate da author, oppure con
+     *          UserNotFoundException
+     */
+    public CompletableFuture<List<Reporting>> getReportingsByAuthor(String author);
+
+    /**
+     * @effects Come ModeratedSocialNetwork.getReportingsForPost(post)
+     * @return  Un future completato con le segnalazioni di post, oppure con PostNotFoundException
+     */
+    public CompletableFuture<List<Reporting>> getReportingsForPost(Post post);
+}
@@ -0,0 +1,79 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/** Overview:
+ *      AsyncModeratedSocialNetworkImpl è un dato mutabile che implementa
+ *      AsyncModeratedSocialNetwork su una rete ModeratedSocialNetworkImpl, con lo stesso ciclo
+ *      degli eventi di AsyncSocialNetworkImpl.
+ *
+ *  Typical element: come in AsyncSocialNetworkImpl
+ */
+public class AsyncModeratedSocialNetworkImpl extends AsyncSocialNetworkImpl implements AsyncModeratedSocialNetwork {
+    /**
+     * Rete su cui vengono eseguite le operazioni, uguale a network
+     */
+    private final ModeratedSocialNetworkImpl moderated;
+
+    /**
+     * @requires network != null && queueCapacity > 0
+     * @param network       La rete su cui eseguire le operazioni
+     * @param queueCapacity Il numero massimo di operazioni in attesa
+     *
+     * @effects Crea una rete asincrona su network e avvia il suo ciclo degli eventi
+     * @throws NullPointerException Se network == null
+     * @throws IllegalArgumentException Se queueCapacity <= 0
+     */
+    public AsyncModeratedSocialNetworkImpl(ModeratedSocialNetworkImpl network, int queueCapacity) {
+        super(network, queueCapacity);
+        this.moderated = network;
+    }
+
+    /**
+     * @requires network != null
+     * @param network La rete su cui eseguire le operazioni
+     * @effects Crea una rete asincrona su network con una coda di DEFAULT_QUEUE_CAPACITY operazioni
+     * @throws NullPointerException Se network == null
+     */
+    public AsyncModeratedSocialNetworkImpl(ModeratedSocialNetworkImpl network) {
+        this(network, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    @Override
+    public CompletableFuture<Void> report(String author, Post post) {
+        return submit(() -> {
+            moderated.report(author, post);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Post>> getControversialPosts() {
+        return query(s -> ((ModeratedSocialNetworkImpl) s).getControversialPosts());
+    }
+
+    @Override
+    public CompletableFuture<Void> addForbiddenWord(String toAdd) {
+        return submit(() -> {
+            moderated.addForbiddenWord(toAdd);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> removeForbiddenWord(String toRemove) {
+        return submit(() -> {
+            moderated.removeForbiddenWord(toRemove);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Reporting>> getReportingsByAuthor(String author) {
+        return submit(() -> moderated.getReportingsByAuthor(author));
+    }
+
+    @Override
+    public CompletableFuture<List<Reporting>> getReportingsForPost(Post post) {
+        return submit(() -> moderated.getReportingsForPost(post));
+    }
+}
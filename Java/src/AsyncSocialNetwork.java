@@ -0,0 +1,107 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/** Overview:
+ *      AsyncSocialNetwork è un dato mutabile che rappresenta una rete sociale con le stesse
+ *      operazioni di SocialNetwork, che però non bloccano il chiamante: ogni metodo accoda
+ *      l'operazione e restituisce subito un CompletableFuture, completato con il risultato
+ *      oppure con l'eccezione che il metodo corrispondente di SocialNetwork avrebbe lanciato.
+ *      Le operazioni vengono eseguite nell'ordine in cui sono state richieste, per cui un
+ *      chiamante può inviarne molte senza attendere i risultati intermedi.
+ *
+ *      Typical element: come in SocialNetwork
+ */
+public interface AsyncSocialNetwork {
+    /**
+     * @effects Come SocialNetwork.guessFollowers(ps)
+     * @return  Un future completato con la mappa degli autori e dei loro follower, oppure con
+     *          PostNotFoundException
+     */
+    public CompletableFuture<Map<String, Set<String>>> guessFollowers(List<Post> ps);
+
+    /**
+     * @effects Come SocialNetwork.influencers()
+     * @return  Un future completato con gli utenti in ordine non crescente di follower
+     */
+    public CompletableFuture<List<String>> influencers();
+
+    /**
+     * @effects Come SocialNetwork.getMentionedUsers()
+     * @return  Un future completato con gli utenti menzionati
+     */
+    public CompletableFuture<Set<String>> getMentionedUsers();
+
+    /**
+     * @effects Come SocialNetwork.getMentionedUsers(ps)
+     * @return  Un future completato con gli utenti menzionati nei post di ps, oppure con
+     *          PostNotFoundException
+     */
+    public CompletableFuture<Set<String>> getMentionedUsers(List<Post> ps);
+
+    /**
+     * @effects Come SocialNetwork.writtenBy(username)
+     * @return  Un future completato con i post di username, oppure con UserNotFoundException
+     */
+    public CompletableFuture<List<Post>> writtenBy(String username);
+
+    /**
+     * @effects Come SocialNetwork.writtenBy(ps, username)
+     * @return  Un future completato con i post di ps scritti da username, oppure con
+     *          UserNotFoundException o PostNotFoundException
+     */
+    public CompletableFuture<List<Post>> writtenBy(List<Post> ps, String username);
+
+    /**
+     * @effects Come SocialNetwork.containing(words)
+     * @return  Un future completato con i post che contengono almeno una delle parole di words
+     */
+    public CompletableFuture<List<Post>> containing(List<String> words);
+
+    /**
+     * @effects Come SocialNetwork.like(toLike, follower)
+     * @return  Un future completato quando il like è stato registrato, oppure con
+     *          PostNotFoundException, AutoLikeException o UserNotFoundException
+     */
+    public CompletableFuture<Void> like(Post toLike, String follower);
+
+    /**
+     * @effects Come SocialNetwork.unLike(toUnlike, follower)
+     * @return  Un future completato quando il like è stato rimosso, oppure con
+     *          PostNotFoundException, UserNotFoundException o LikeNotFoundException
+     */
+    public CompletableFuture<Void> unLike(Post toUnlike, String follower);
+
+    /**
+     * @effects Come SocialNetwork.publishPost(toPublish)
+     * @return  Un future completato quando il post è stato pubblicato, oppure con
+     *          PostAlreadyPublishedException o UserNotFoundException
+     */
+    public CompletableFuture<Void> publishPost(Post toPublish);
+
+    /**
+     * @effects Come SocialNetwork.deletePost(toDelete)
+     * @return  Un future completato quando il post è stato rimosso, oppure con
+     *          PostNotFoundException
+     */
+    public CompletableFuture<Void> deletePost(Post toDelete);
+
+    /**
+     * @effects Come SocialNetwork.registerUser(toRegister)
+     * @return  Un future completato quando l'utente è stato registrato, oppure con
+     *          InvalidUsernameException o UserAlreadyRegisteredExeption
+     */
+    public CompletableFuture<Void> registerUser(String toRegister);
+
+    /**
+     * @effects Come SocialNetwork.removeUser(user)
+     * @return  Un future completato quando l'utente è stato rimosso, oppure con
+     *          UserNotFoundException
+     */
+    public CompletableFuture<Void> removeUser(String user);
+
+    /**
+     * @effects Come SocialNetwork.getTrending()
+     * @return  Un future completato con gli hashtag in ordine non crescente di occorrenze
+     */
+    public CompletableFuture<List<String>> getTrending();
+}
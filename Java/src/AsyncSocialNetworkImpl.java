@@ -0,0 +1,374 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Overview:
+ *      AsyncSocialNetworkImpl è un dato mutabile che implementa AsyncSocialNetwork su una rete
+ *      SocialNetworkImpl. Le operazioni richieste vengono accodate e un unico thread (il ciclo
+ *      degli eventi) le preleva a blocchi ed esegue ogni blocco acquisendo una sola volta il
+ *      lock della rete, per cui migliaia di operazioni in attesa non richiedono un thread
+ *      ciascuna e il costo della sincronizzazione viene suddiviso tra le operazioni di un
+ *      blocco. Le analisi dell'intera rete (influencers, containing, ...) non vengono eseguite
+ *      mentre il lock è mantenuto: nel blocco viene preso soltanto uno snapshot della rete, che
+ *      riflette le operazioni accodate prima dell'analisi, e l'analisi viene eseguita sullo
+ *      snapshot dopo aver rilasciato il lock. I future vengono completati dal ciclo degli
+ *      eventi dopo aver rilasciato il lock: le azioni dipendenti non devono attendere il
+ *      risultato di altre operazioni della stessa rete, altrimenti bloccherebbero il ciclo.
+ *
+ *      Se la coda è piena, le nuove operazioni vengono rifiutate con RejectedExecutionException.
+ *
+ *  Typical element:
+ *      <network, queue> in cui network è la rete su cui vengono eseguite le operazioni e
+ *      queue = [o1, o2, ...] è la sequenza delle operazioni in attesa
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = network != null && queue != null && loop != null &&
+ *          (closed => nessuna operazione viene aggiunta a queue)
+ */
+public class AsyncSocialNetworkImpl implements AsyncSocialNetwork, AutoCloseable {
+    /**
+     * Numero predefinito di operazioni che possono essere in attesa
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+    /**
+     * Numero massimo di operazioni eseguite in un blocco
+     */
+    public static final int MAX_BATCH = 1024;
+
+    /**
+     * Rete su cui vengono eseguite le operazioni
+     */
+    protected final SocialNetworkImpl network;
+    /**
+     * Operazioni in attesa di essere eseguite
+     */
+    private final BlockingQueue<Task<?>> queue;
+    /**
+     * Lock che rende atomici il controllo di closed e l'inserimento in queue
+     */
+    private final Object lifecycle;
+    /**
+     * Thread del ciclo degli eventi
+     */
+    private final Thread loop;
+    private volatile boolean closed;
+    /**
+     * Numero di blocchi e di operazioni eseguiti
+     */
+    private volatile long batches;
+    private volatile long operations;
+
+    /**
+     * @requires network != null && queueCapacity > 0
+     * @param network       La rete su cui eseguire le operazioni
+     * @param queueCapacity Il numero massimo di operazioni in attesa
+     *
+     * @effects Crea una rete asincrona su network e avvia il suo ciclo degli eventi
+     * @throws NullPointerException Se network == null
+     * @throws IllegalArgumentException Se queueCapacity <= 0
+     */
+    public AsyncSocialNetworkImpl(SocialNetworkImpl network, int queueCapacity) {
+        if (network == null) {
+            throw new NullPointerException("La rete non può essere null");
+        }
+
+        this.network = network;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.lifecycle = new Object();
+        this.loop = new Thread(this::run, "async-social-network");
+        this.loop.setDaemon(true);
+        this.loop.start();
+    }
+
+    /**
+     * @requires network != null
+     * @param network La rete su cui eseguire le operazioni
+     * @effects Crea una rete asincrona su network con una coda di DEFAULT_QUEUE_CAPACITY operazioni
+     * @throws NullPointerException Se network == null
+     */
+    public AsyncSocialNetworkImpl(SocialNetworkImpl network) {
+        this(network, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Set<String>>> guessFollowers(List<Post> ps) {
+        return submit(() -> network.guessFollowers(ps));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> influencers() {
+        return query(SocialNetworkImpl::influencers);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> getMentionedUsers() {
+        return query(SocialNetworkImpl::getMentionedUsers);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> getMentionedUsers(List<Post> ps) {
+        return submit(() -> network.getMentionedUsers(ps));
+    }
+
+    @Override
+    public CompletableFuture<List<Post>> writtenBy(String username) {
+        return submit(() -> network.writtenBy(username));
+    }
+
+    @Override
+    public CompletableFuture<List<Post>> writtenBy(List<Post> ps, String username) {
+        return submit(() -> network.writtenBy(ps, username));
+    }
+
+    @Override
+    public CompletableFuture<List<Post>> containing(List<String> words) {
+        return query(s -> s.containing(words));
+    }
+
+    @Override
+    public CompletableFuture<Void> like(Post toLike, String follower) {
+        return submit(() -> {
+            network.like(toLike, follower);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> unLike(Post toUnlike, String follower) {
+        return submit(() -> {
+            network.unLike(toUnlike, follower);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> publishPost(Post toPublish) {
+        return submit(() -> {
+            network.publishPost(toPublish);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deletePost(Post toDelete) {
+        return submit(() -> {
+            network.deletePost(toDelete);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> registerUser(String toRegister) {
+        return submit(() -> {
+            network.registerUser(toRegister);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> removeUser(String user) {
+        return submit(() -> {
+            network.removeUser(user);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getTrending() {
+        return query(SocialNetworkImpl::getTrending);
+    }
+
+    /**
+     * @return Il numero di operazioni in attesa di essere eseguite
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return Il numero medio di operazioni eseguite per blocco
+     */
+    public double getAverageBatchSize() {
+        long b = batches;
+        return b == 0 ? 0 : (double) operations / b;
+    }
+
+    /**
+     * @effects Smette di accettare nuove operazioni, esegue quelle in attesa e arresta il ciclo
+     *          degli eventi
+     * @modifies this.closed
+     */
+    @Override
+    public void close() {
+        synchronized (lifecycle) {
+            closed = true;
+        }
+        try {
+            loop.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @requires op != null
+     * @param op L'operazione da eseguire sulla rete
+     *
+     * @effects Accoda op per l'esecuzione nel ciclo degli eventi, mentre viene mantenuto il
+     *          lock della rete
+     * @return  Un future completato con il risultato o con l'eccezione di op, oppure con
+     *          RejectedExecutionException se la coda è piena o la rete è stata chiusa
+     */
+    protected <T> CompletableFuture<T> submit(Operation<T> op) {
+        return submit(new Task<>(op, null));
+    }
+
+    /**
+     * @requires query != null && query non modifica la rete
+     * @param query L'interrogazione da eseguire
+     *
+     * @effects Accoda query per l'esecuzione nel ciclo degli eventi, su uno snapshot della rete
+     *          preso dopo aver eseguito le operazioni accodate in precedenza e senza mantenere
+     *          il lock della rete
+     * @return  Un future completato con il risultato o con l'eccezione di query, oppure con
+     *          RejectedExecutionException se la coda è piena o la rete è stata chiusa
+     */
+    protected <T> CompletableFuture<T> query(Query<T> query) {
+        return submit(new Task<>(null, query));
+    }
+
+    /**
+     * @requires task != null
+     * @effects Accoda task per l'esecuzione nel ciclo degli eventi
+     * @return  Il future di task
+     */
+    private <T> CompletableFuture<T> submit(Task<T> task) {
+        boolean accepted;
+
+        synchronized (lifecycle) {
+            accepted = !closed && queue.offer(task);
+        }
+        if (!accepted) {
+            task.future.completeExceptionally(new RejectedExecutionException(
+                    closed ? "La rete asincrona è stata chiusa" : "Troppe operazioni in attesa"));
+        }
+
+        return task.future;
+    }
+
+    /**
+     * @effects Esegue a blocchi le operazioni accodate finché la rete non viene chiusa e la
+     *          coda non è vuota
+     * @modifies this.network, this.queue, this.batches, this.operations
+     */
+    private void run() {
+        List<Task<?>> batch = new ArrayList<>(MAX_BATCH);
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            }
+            catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            synchronized (network) {
+                for (Task<?> t : batch) {
+                    t.run(network);
+                }
+            }
+            for (Task<?> t : batch) {
+                t.runQuery();
+                t.complete();
+            }
+
+            batches++;
+            operations += batch.size();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Operazione da eseguire sulla rete
+     */
+    protected interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Interrogazione da eseguire su uno snapshot della rete
+     */
+    protected interface Query<T> {
+        T run(SocialNetworkImpl snapshot) throws Exception;
+    }
+
+    /**
+     * Operazione o interrogazione accodata, con il suo risultato
+     */
+    private static class Task<T> {
+        private final Operation<T> op;
+        private final Query<T> query;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private SocialNetworkImpl snapshot;
+        private T result;
+        private Throwable error;
+
+        private Task(Operation<T> op, Query<T> query) {
+            this.op = op;
+            this.query = query;
+        }
+
+        /**
+         * @requires il chiamante possiede il lock di network
+         * @effects Esegue l'operazione oppure, per un'interrogazione, prende lo snapshot su cui
+         *          eseguirla. Anche un Error viene registrato, in modo da non interrompere il
+         *          ciclo degli eventi.
+         */
+        private void run(SocialNetworkImpl network) {
+            try {
+                if (query != null) {
+                    snapshot = (SocialNetworkImpl) network.snapshot();
+                }
+                else {
+                    result = op.run();
+                }
+            }
+            catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        /**
+         * @effects Esegue l'interrogazione sullo snapshot, se il task ne è una
+         */
+        private void runQuery() {
+            if (snapshot == null) {
+                return;
+            }
+
+            try {
+                result = query.run(snapshot);
+            }
+            catch (Throwable e) {
+                error = e;
+            }
+            finally {
+                snapshot = null;
+            }
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            }
+            else {
+                future.complete(result);
+            }
+        }
+    }
+}
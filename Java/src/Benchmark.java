@@ -0,0 +1,335 @@
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Exceptions.Likes.AutoLikeException;
+import Exceptions.Likes.LikeNotFoundException;
+import Exceptions.Reporting.ReportingAlreadySentException;
+import Exceptions.User.UserNotFoundException;
+
+/** Overview:
+ *      Benchmark misura il throughput delle componenti della rete sociale. Si esegue con
+ *
+ *          java Benchmark [nome ...]
+ *
+ *      dove ogni nome seleziona una misura (rete, eccezioni, strategie, testi); senza argomenti
+ *      vengono eseguite tutte.
+ *      Ogni misura viene ripetuta più volte, in modo che le prime ripetizioni facciano da
+ *      riscaldamento per la JVM, e stampa i risultati di ogni ripetizione.
+ */
+public class Benchmark {
+    /**
+     * Numero di ripetizioni di ogni misura
+     */
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Set<String> selected = new HashSet<>(Arrays.asList(args));
+
+        if (selected.isEmpty() || selected.contains("rete")) {
+            System.out.println("BENCHMARK RETE (NetworkServer su loopback)");
+            for (int i=0; i<ROUNDS; i++) {
+                loopback(4, 2000);
+            }
+        }
+        if (selected.isEmpty() || selected.contains("eccezioni")) {
+            System.out.println("BENCHMARK ESITI NEGATIVI (metodi try contro eccezioni)");
+            for (int i=0; i<ROUNDS; i++) {
+                failures(200_000);
+            }
+        }
+        if (selected.isEmpty() || selected.contains("strategie")) {
+            System.out.println("BENCHMARK STRATEGIE DI MEMORIZZAZIONE (ORDERED, HASHED, PRIMITIVE)");
+            for (int i=0; i<ROUNDS; i++) {
+                for (StorageStrategy storage : StorageStrategy.values()) {
+                    strategy(storage, 2000, 20_000, 100_000);
+                }
+            }
+        }
+        if (selected.isEmpty() || selected.contains("testi")) {
+            System.out.println("BENCHMARK COMPRESSIONE DEI TESTI (rapporto contro latenza di getText)");
+            for (int i=0; i<ROUNDS; i++) {
+                for (int entries : new int[] {64, 1024, 4096, PostTextStore.MAX_ENTRIES}) {
+                    texts(entries, 50_000);
+                }
+            }
+        }
+    }
+
+    /**
+     * @requires clients > 0 && posts > 0
+     * @param clients Il numero di client, ognuno con la propria connessione e il proprio thread
+     * @param posts   Il numero di post pubblicati da ogni client
+     *
+     * @effects Avvia un NetworkServer su loopback e misura il throughput di pubblicazioni,
+     *          like e letture (writtenBy) eseguiti contemporaneamente da clients client.
+     *          Controlla inoltre che il server abbia assegnato id distinti a tutti i post.
+     */
+    private static void loopback(int clients, int posts) throws Exception {
+        SocialNetworkImpl network = new SocialNetworkImpl(StorageStrategy.HASHED);
+        for (int c=0; c<clients; c++) {
+            network.registerUser("client" + c);
+        }
+
+        try (NetworkServer server = new NetworkServer(network, new InetSocketAddress("127.0.0.1", 0))) {
+            server.start();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            List<Post> published = new CopyOnWriteArrayList<>();
+            AtomicLong reads = new AtomicLong();
+
+            long publishNanos = run(clients, c -> {
+                try (NetworkClient client = new NetworkClient(address)) {
+                    for (int i=0; i<posts; i++) {
+                        published.add(client.publish(new PostImpl("client" + c, "Post " + i + " del #client" + c)));
+                    }
+                }
+            });
+
+            long likeNanos = run(clients, c -> {
+                try (NetworkClient client = new NetworkClient(address)) {
+                    String me = "client" + c;
+                    for (int i=c; i<published.size(); i+=clients) {
+                        Post p = published.get(i);
+                        if (!p.getAuthor().equals(me)) {
+                            client.like(p, me);
+                        }
+                        if (i % 16 == 0) {
+                            reads.addAndGet(client.writtenBy(p.getAuthor()).size());
+                        }
+                    }
+                }
+            });
+
+            Set<Long> ids = new HashSet<>();
+            for (Post p : published) {
+                ids.add(p.getId());
+            }
+
+            int total = clients * posts;
+            System.out.printf("%d client: %.0f pubblicazioni/s, %.0f like e letture/s, id distinti %d su %d%n",
+                    clients, total * 1e9 / publishNanos, total * 1e9 / likeNanos, ids.size(), total);
+            if (ids.size() != total || reads.get() == 0) {
+                System.out.println("Errore grave: id dei post duplicati o letture vuote");
+            }
+        }
+    }
+
+    /**
+     * @requires n > 0
+     * @param n Il numero di ripetizioni di ogni operazione fallita
+     *
+     * @effects Misura il throughput delle operazioni che falliscono più spesso con il traffico
+     *          dei bot (like di un utente non registrato, like al proprio post, unLike di un
+     *          like non messo, segnalazione ripetuta), eseguite con i metodi try e con i
+     *          metodi che lanciano un'eccezione.
+     */
+    private static void failures(int n) throws Exception {
+        ModeratedSocialNetworkImpl network = new ModeratedSocialNetworkImpl(new TreeSet<>(), StorageStrategy.HASHED);
+        network.registerUser("autore");
+        network.registerUser("lettore");
+        Post post = new PostImpl("autore", "Post del #benchmark");
+        network.publishPost(post);
+        network.report("lettore", post);
+
+        String[] bots = new String[100];
+        for (int i=0; i<bots.length; i++) {
+            bots[i] = "bot" + i;
+        }
+
+        long tryNanos = run(1, t -> {
+            for (int i=0; i<n; i++) {
+                network.tryLike(post, bots[i % bots.length]);
+                network.tryLike(post, "autore");
+                network.tryUnlike(post, "lettore");
+                network.tryReport("lettore", post);
+            }
+        });
+
+        long throwNanos = run(1, t -> {
+            for (int i=0; i<n; i++) {
+                try {
+                    network.like(post, bots[i % bots.length]);
+                }
+                catch (UserNotFoundException e) {
+                    // Esito atteso
+                }
+                try {
+                    network.like(post, "autore");
+                }
+                catch (AutoLikeException e) {
+                    // Esito atteso
+                }
+                try {
+                    network.unLike(post, "lettore");
+                }
+                catch (LikeNotFoundException e) {
+                    // Esito atteso
+                }
+                try {
+                    network.report("lettore", post);
+                }
+                catch (ReportingAlreadySentException e) {
+                    // Esito atteso
+                }
+            }
+        });
+
+        int total = 4 * n;
+        System.out.printf("%d operazioni fallite: %.0f op/s con i metodi try, %.0f op/s con le eccezioni (%.2fx)%n",
+                total, total * 1e9 / tryNanos, total * 1e9 / throwNanos, (double) throwNanos / tryNanos);
+    }
+
+    /**
+     * @requires storage != null && users > 0 && posts > 0 && likes >= 0
+     * @param storage La strategia di memorizzazione della rete
+     * @param users   Il numero di utenti registrati
+     * @param posts   Il numero di post pubblicati
+     * @param likes   Il numero di like tentati, tra utenti e post scelti a caso
+     *
+     * @effects Costruisce una rete con la strategia storage e misura il tempo di pubblicazioni,
+     *          like, letture per autore (writtenBy e guessFollowers sui suoi post) e
+     *          interrogazioni sull'intera rete (influencers e getTrending). Utenti, post e like
+     *          sono generati con lo stesso seme per tutte le strategie.
+     */
+    private static void strategy(StorageStrategy storage, int users, int posts, int likes) throws Exception {
+        SocialNetworkImpl network = new SocialNetworkImpl(storage);
+        Random random = new Random(42);
+        String[] names = new String[users];
+        for (int i=0; i<users; i++) {
+            names[i] = "utente" + i;
+            network.registerUser(names[i]);
+        }
+        List<Post> published = new ArrayList<>();
+
+        long publishNanos = run(1, t -> {
+            for (int i=0; i<posts; i++) {
+                Post p = new PostImpl(names[random.nextInt(users)], "Post " + i + " sul #tema" + random.nextInt(50));
+                network.publishPost(p);
+                published.add(p);
+            }
+        });
+
+        long likeNanos = run(1, t -> {
+            for (int i=0; i<likes; i++) {
+                network.tryLike(published.get(random.nextInt(posts)), names[random.nextInt(users)]);
+            }
+        });
+
+        long readNanos = run(1, t -> {
+            for (String user : names) {
+                network.guessFollowers(network.writtenBy(user));
+            }
+        });
+
+        long globalNanos = run(1, t -> {
+            network.influencers();
+            network.getTrending();
+        });
+
+        System.out.printf("%-9s pubblicazioni %.0f/s, like %.0f/s, letture per autore %.0f/s, " +
+                        "influencers e getTrending %.1f ms%n",
+                storage, posts * 1e9 / publishNanos, likes * 1e9 / likeNanos, users * 1e9 / readNanos,
+                globalNanos / 1e6);
+    }
+
+    /**
+     * @requires 0 < entries <= PostTextStore.MAX_ENTRIES && posts > PostTextStore.SAMPLE_SIZE
+     * @param entries Il numero massimo di voci del dizionario
+     * @param posts   Il numero di post da comprimere
+     *
+     * @effects Comprime posts testi generati a partire da frasi, hashtag e menzioni ricorrenti
+     *          con un dizionario di al più entries voci, addestrato sui primi
+     *          PostTextStore.SAMPLE_SIZE testi, e misura il rapporto di compressione e il
+     *          tempo medio di getText rispetto agli stessi post non compressi.
+     */
+    private static void texts(int entries, int posts) throws Exception {
+        String[] phrases = {"Buongiorno a tutti", "che bella giornata", "non vedo l'ora di", "grazie mille per",
+                "qualcuno sa dirmi", "oggi si parla di", "guardate questo", "ci vediamo stasera al"};
+        String[] tags = {"#calcio", "#musica", "#cinema", "#viaggi", "#cucina", "#tecnologia", "#libri", "#meteo"};
+        Random random = new Random(42);
+        List<Post> plain = new ArrayList<>();
+        List<Post> packed = new ArrayList<>();
+
+        for (int i=0; i<posts; i++) {
+            String text = phrases[random.nextInt(phrases.length)] + " " + phrases[random.nextInt(phrases.length)] +
+                    " " + tags[random.nextInt(tags.length)] + " @utente" + random.nextInt(1000) + " " + i;
+            plain.add(new PostImpl("autore", text));
+            packed.add(new PostImpl("autore", text));
+        }
+
+        // Addestro il primo dizionario in modo sincrono, poi comprimo il resto con quello
+        PostTextStore store = new PostTextStore(entries, Integer.MAX_VALUE);
+        for (int i=0; i<PostTextStore.SAMPLE_SIZE - 1; i++) {
+            store.compress(packed.get(i));
+        }
+        store.retrain();
+        long compressNanos = run(1, t -> {
+            for (int i=PostTextStore.SAMPLE_SIZE - 1; i<posts; i++) {
+                store.compress(packed.get(i));
+            }
+        });
+
+        AtomicLong chars = new AtomicLong();
+        long plainNanos = run(1, t -> {
+            for (Post p : plain) {
+                chars.addAndGet(p.getText().length());
+            }
+        });
+        long packedNanos = run(1, t -> {
+            for (Post p : packed) {
+                chars.addAndGet(-p.getText().length());
+            }
+        });
+
+        System.out.printf("al più %5d voci (%4d usate): rapporto %.2f, compressione %.0f ns/post, getText %.0f ns " +
+                        "compresso contro %.0f ns in chiaro%n",
+                entries, store.getDictionarySize(), store.getCompressionRatio(),
+                (double) compressNanos / (posts - PostTextStore.SAMPLE_SIZE + 1),
+                (double) packedNanos / posts, (double) plainNanos / posts);
+        if (chars.get() != 0) {
+            System.out.println("Errore grave: i testi decompressi sono diversi dagli originali");
+        }
+    }
+
+    /**
+     * @requires threads > 0 && task != null
+     * @effects Esegue task(0), ..., task(threads - 1) in altrettanti thread e ne attende la fine
+     * @return  Il tempo impiegato in nanosecondi
+     * @throws Exception La prima eccezione lanciata da uno dei task
+     */
+    private static long run(int threads, Task task) throws Exception {
+        List<Thread> started = new ArrayList<>();
+        List<Exception> errors = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+
+        for (int t=0; t<threads; t++) {
+            int index = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    task.run(index);
+                }
+                catch (Exception e) {
+                    errors.add(e);
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Misura eseguita da ognuno dei thread di run
+     */
+    private interface Task {
+        void run(int index) throws Exception;
+    }
+}
@@ -0,0 +1,129 @@
+import java.nio.charset.StandardCharsets;
+
+/** Overview:
+ *      BloomFilter è un dato mutabile che rappresenta in modo approssimato un insieme di
+ *      elementi, identificati da un hash a 64 bit: può stabilire con certezza che un elemento
+ *      non appartiene all'insieme, mentre può rispondere che un elemento appartiene
+ *      all'insieme anche se non è stato aggiunto (falso positivo). Con bitsPerElement bit per
+ *      elemento e il numero ottimo di funzioni hash, la probabilità di falso positivo è circa
+ *      0.6185^bitsPerElement (meno dell'1% con 10 bit per elemento).
+ *
+ *      Le funzioni hash vengono derivate dall'hash dell'elemento con il double hashing:
+ *      hi(x) = h1(x) + i * h2(x).
+ *
+ *  Typical element:
+ *      <elements> in cui elements = {h1, h2, ...} è l'insieme degli hash aggiunti
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{h | c.mightContain(h)}>, un sovrainsieme degli hash aggiunti
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = bits != null && bits.length > 0 && hashes > 0
+ */
+public class BloomFilter {
+    /**
+     * Bit del filtro
+     */
+    private final long[] bits;
+    /**
+     * Numero di funzioni hash
+     */
+    private final int hashes;
+
+    /**
+     * @requires expected >= 0 && bitsPerElement > 0
+     * @param expected       Il numero di elementi che verranno aggiunti
+     * @param bitsPerElement Il numero di bit del filtro per ogni elemento
+     *
+     * @effects Crea un filtro vuoto dimensionato per expected elementi
+     * @throws IllegalArgumentException Se expected < 0 || bitsPerElement <= 0
+     */
+    public BloomFilter(int expected, int bitsPerElement) {
+        if (expected < 0 || bitsPerElement <= 0) {
+            throw new IllegalArgumentException("Dimensione del filtro di Bloom non valida");
+        }
+
+        this.bits = new long[(int) Math.max(1, ((long) expected * bitsPerElement + 63) / 64)];
+        this.hashes = Math.max(1, (int) Math.round(bitsPerElement * Math.log(2)));
+    }
+
+    /**
+     * @param hash L'hash dell'elemento da aggiungere
+     * @effects Aggiunge l'elemento con hash hash al filtro
+     * @modifies this
+     */
+    public void add(long hash) {
+        long h2 = secondHash(hash);
+        int size = bits.length * 64;
+
+        for (int i=0; i<hashes; i++) {
+            int bit = (int) Long.remainderUnsigned(hash + i * h2, size);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param hash L'hash dell'elemento da cercare
+     * @return False se l'elemento con hash hash non è stato aggiunto, true se potrebbe
+     *         essere stato aggiunto
+     */
+    public boolean mightContain(long hash) {
+        long h2 = secondHash(hash);
+        int size = bits.length * 64;
+
+        for (int i=0; i<hashes; i++) {
+            int bit = (int) Long.remainderUnsigned(hash + i * h2, size);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @requires s != null
+     * @return L'hash a 64 bit di s (FNV-1a dei byte UTF-8, mescolato)
+     */
+    public static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ b) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * @return L'hash a 64 bit di value
+     */
+    public static long hash(long value) {
+        return mix(value + 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * @requires s != null
+     * @return L'hash a 64 bit della coppia (value, s)
+     */
+    public static long hash(long value, String s) {
+        return mix(hash(value) * 31 + hash(s));
+    }
+
+    /**
+     * @return Il secondo hash del double hashing, dispari in modo da visitare tutti i bit
+     */
+    private static long secondHash(long hash) {
+        return Long.rotateLeft(hash * 0x9e3779b97f4a7c15L, 31) | 1;
+    }
+
+    /**
+     * @effects Mescola i bit di h (finalizzatore di MurmurHash3)
+     * @return  Il valore mescolato
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
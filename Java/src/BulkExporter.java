@@ -0,0 +1,161 @@
+import Exceptions.Post.PostNotFoundException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/** Overview:
+ *      BulkExporter scrive lo stato di una rete sociale in un file di record BulkRecord, uno
+ *      per riga, che BulkImporter può caricare in un'altra rete (ad esempio per popolare un
+ *      ambiente di test). L'esportazione avviene su uno snapshot della rete, per cui il file
+ *      è consistente anche se la rete viene modificata nel frattempo.
+ *
+ *      I record vengono scritti in un ordine in cui ognuno dipende soltanto dai precedenti:
+ *      le parole proibite, gli utenti e infine i post in ordine di timestamp, ciascuno seguito
+ *      dai propri like e dalle proprie segnalazioni. Le segnalazioni automatiche non vengono
+ *      esportate, dal momento che la rete in cui si importa il file le genera da sé
+ *      pubblicando i post. Le righe vengono accumulate in un buffer di BUFFER_SIZE byte e
+ *      scritte sul file con un FileChannel, per cui la memoria usata non dipende dalla
+ *      dimensione della rete, oltre a quella dello snapshot.
+ *
+ *  Typical element:
+ *      <network> in cui network è la rete da esportare
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = network != null
+ */
+public class BulkExporter {
+    /**
+     * Dimensione del buffer di scrittura
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Rete da esportare
+     */
+    private final SocialNetworkImpl network;
+
+    /**
+     * @requires network != null
+     * @param network La rete da esportare
+     * @effects Crea un esportatore per network
+     * @throws NullPointerException Se network == null
+     */
+    public BulkExporter(SocialNetworkImpl network) {
+        if (network == null) {
+            throw new NullPointerException("La rete da esportare non può essere null");
+        }
+
+        this.network = network;
+    }
+
+    /**
+     * @requires file != null && format != null
+     * @param file   Il file da scrivere, sovrascritto se esiste già
+     * @param format Il formato delle righe
+     *
+     * @effects Scrive in file un record per ogni parola proibita, utente, post, like e
+     *          segnalazione manuale dello stato attuale della rete, preceduti da CSV_HEADER se
+     *          format == CSV
+     * @return  Il numero di record e di byte scritti e la durata dell'esportazione
+     * @throws IOException Se non è possibile scrivere file
+     * @throws NullPointerException Se file == null || format == null
+     */
+    public BulkStats export(Path file, BulkRecord.Format format) throws IOException {
+        if (file == null || format == null) {
+            throw new NullPointerException("Il file e il formato dell'esportazione non possono essere null");
+        }
+
+        long start = System.nanoTime();
+        SocialNetworkImpl snapshot = (SocialNetworkImpl) network.snapshot();
+
+        try (Output out = new Output(file, format)) {
+            if (format == BulkRecord.Format.CSV) {
+                out.line(BulkRecord.CSV_HEADER);
+            }
+
+            ModeratedSocialNetworkImpl moderated = snapshot instanceof ModeratedSocialNetworkImpl
+                    ? (ModeratedSocialNetworkImpl) snapshot : null;
+            if (moderated != null) {
+                for (String w : moderated.getForbiddenWords()) {
+                    out.write(BulkRecord.forbiddenWord(w));
+                }
+            }
+
+            for (String u : snapshot.userFollowing.keySet()) {
+                out.write(BulkRecord.user(u));
+            }
+
+            for (Set<Post> sameTime : snapshot.postsByTime.values()) {
+                for (Post p : sameTime) {
+                    out.write(BulkRecord.post(p));
+                    for (String liker : snapshot.postLikes.get(p)) {
+                        out.write(BulkRecord.like(liker, p));
+                    }
+                    if (moderated != null) {
+                        for (Reporting r : moderated.getReportingsForPost(p)) {
+                            if (!Reporting.AUTOMATIC_REPORTING_AUTHOR.equals(r.getAuthor())) {
+                                out.write(BulkRecord.report(r.getAuthor(), p));
+                            }
+                        }
+                    }
+                }
+            }
+
+            out.flush();
+            return new BulkStats(out.records, 0, out.bytes, System.nanoTime() - start);
+        }
+        catch (PostNotFoundException e) {
+            // Lo snapshot non cambia, per cui i post che contiene sono tutti pubblicati
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * File di destinazione, con il buffer delle righe non ancora scritte
+     */
+    private static class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final BulkRecord.Format format;
+        private final StringBuilder pending;
+        private long records;
+        private long bytes;
+
+        private Output(Path file, BulkRecord.Format format) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.format = format;
+            this.pending = new StringBuilder(BUFFER_SIZE + 1024);
+        }
+
+        private void write(BulkRecord r) throws IOException {
+            line(r.encode(format));
+            records++;
+        }
+
+        private void line(String s) throws IOException {
+            pending.append(s).append('\n');
+            if (pending.length() >= BUFFER_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(pending.toString());
+            bytes += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            pending.setLength(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
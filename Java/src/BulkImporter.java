@@ -0,0 +1,316 @@
+import Exceptions.Post.EmptyContentException;
+import Exceptions.Post.PostLengthExceededException;
+import Exceptions.User.InvalidUsernameException;
+import Exceptions.User.UserAlreadyRegisteredExeption;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Overview:
+ *      BulkImporter carica in una rete sociale i record BulkRecord di un file scritto da
+ *      BulkExporter (o preparato a mano), ad esempio per popolare un ambiente di test senza
+ *      scrivere codice.
+ *
+ *      Il file viene letto con un FileChannel a blocchi di BLOCK_SIZE byte, ognuno tagliato
+ *      all'ultimo fine riga: la decodifica delle righe di ogni blocco viene eseguita da un pool
+ *      di thread, mentre il thread chiamante applica alla rete i blocchi decodificati nello
+ *      stesso ordine del file. Ogni blocco viene applicato acquisendo il lock della rete una
+ *      sola volta, per cui i thread che interrogano la rete non vengono bloccati per tutta
+ *      l'importazione ma nemmeno interrotti a ogni record. Al più 2 * threads blocchi sono in
+ *      memoria contemporaneamente, per cui la memoria usata non dipende dalla dimensione del
+ *      file, a parte gli id dei post importati, necessari per applicare like e segnalazioni.
+ *
+ *      I record non validi o in conflitto con lo stato della rete (ad esempio un utente già
+ *      registrato o il like a un post assente) vengono contati come rifiutati e ignorati.
+ *
+ *  Typical element:
+ *      <network, threads> in cui network è la rete in cui importare i record e threads il
+ *      numero di thread che decodificano le righe
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = network != null && threads > 0
+ */
+public class BulkImporter {
+    /**
+     * Dimensione dei blocchi di lettura
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Rete in cui importare i record
+     */
+    private final SocialNetworkImpl network;
+    /**
+     * Numero di thread che decodificano le righe
+     */
+    private final int threads;
+
+    /**
+     * @requires network != null && network non è uno snapshot && threads > 0
+     * @param network La rete in cui importare i record
+     * @param threads Il numero di thread che decodificano le righe
+     *
+     * @effects Crea un importatore per network
+     * @throws NullPointerException Se network == null
+     * @throws IllegalArgumentException Se threads <= 0
+     */
+    public BulkImporter(SocialNetworkImpl network, int threads) {
+        if (network == null) {
+            throw new NullPointerException("La rete in cui importare non può essere null");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Il numero di thread deve essere positivo");
+        }
+
+        this.network = network;
+        this.threads = threads;
+    }
+
+    /**
+     * @requires network != null && network non è uno snapshot
+     * @param network La rete in cui importare i record
+     * @effects Crea un importatore per network che usa un thread per ogni processore
+     * @throws NullPointerException Se network == null
+     */
+    public BulkImporter(SocialNetworkImpl network) {
+        this(network, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @requires file != null && format != null
+     * @param file   Il file da leggere
+     * @param format Il formato delle righe
+     *
+     * @effects Applica alla rete, nell'ordine del file, i record di file: registra gli utenti,
+     *          pubblica i post, aggiunge i like, le segnalazioni e le parole proibite. Le righe
+     *          vuote e l'intestazione CSV_HEADER vengono ignorate.
+     * @modifies network
+     * @return  Il numero di record letti e rifiutati, i byte letti e la durata dell'importazione
+     * @throws IOException Se non è possibile leggere file
+     * @throws NullPointerException Se file == null || format == null
+     * @throws UnsupportedOperationException Se la rete è uno snapshot
+     */
+    public BulkStats importFrom(Path file, BulkRecord.Format format) throws IOException {
+        if (file == null || format == null) {
+            throw new NullPointerException("Il file e il formato dell'importazione non possono essere null");
+        }
+
+        long start = System.nanoTime();
+        Applier applier = new Applier();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-import-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<Batch>> window = new ArrayDeque<>();
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        long bytes = 0;
+        // Nei file CSV un fine riga tra virgolette fa parte di un campo e non separa i record
+        boolean csv = format == BulkRecord.Format.CSV;
+        boolean quoted = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int n;
+            while ((n = channel.read(buffer)) >= 0) {
+                if (n == 0 && buffer.hasRemaining()) {
+                    continue;
+                }
+                bytes += n;
+
+                // Taglio il blocco all'ultimo fine riga e conservo il resto per il blocco successivo
+                byte[] bytesRead = buffer.array();
+                int end = buffer.position();
+                int last = -1;
+                for (int i=0; i<end; i++) {
+                    if (bytesRead[i] == '"' && csv) {
+                        quoted = !quoted;
+                    }
+                    else if (bytesRead[i] == '\n' && !quoted) {
+                        last = i;
+                    }
+                }
+                if (last >= 0) {
+                    partial.write(bytesRead, 0, last + 1);
+                    byte[] block = partial.toByteArray();
+                    partial.reset();
+                    window.addLast(parsers.submit(() -> parse(block, format)));
+                }
+                partial.write(bytesRead, last + 1, end - last - 1);
+                buffer.clear();
+
+                if (window.size() >= 2 * threads) {
+                    applier.apply(window.pollFirst());
+                }
+            }
+
+            if (partial.size() > 0) {
+                byte[] block = partial.toByteArray();
+                window.addLast(parsers.submit(() -> parse(block, format)));
+            }
+            while (!window.isEmpty()) {
+                applier.apply(window.pollFirst());
+            }
+        }
+        finally {
+            for (Future<Batch> f : window) {
+                f.cancel(true);
+            }
+            parsers.shutdownNow();
+        }
+
+        return new BulkStats(applier.records, applier.rejected, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * @requires block != null && format != null && block inizia all'inizio di una riga
+     * @effects Decodifica le righe di block, ignorando le righe vuote e l'intestazione CSV
+     * @return  I record decodificati e il numero di righe non valide
+     */
+    private static Batch parse(byte[] block, BulkRecord.Format format) {
+        Batch ret = new Batch();
+        int start = 0;
+
+        boolean quoted = false;
+
+        for (int i=0; i<=block.length; i++) {
+            if (i < block.length && block[i] == '"' && format == BulkRecord.Format.CSV) {
+                quoted = !quoted;
+            }
+            if (i < block.length && (block[i] != '\n' || quoted)) {
+                continue;
+            }
+
+            int end = i > start && block[i - 1] == '\r' ? i - 1 : i;
+            String line = new String(block, start, end - start, StandardCharsets.UTF_8);
+            start = i + 1;
+
+            if (line.isBlank() || (format == BulkRecord.Format.CSV && line.equals(BulkRecord.CSV_HEADER))) {
+                continue;
+            }
+            try {
+                ret.records.add(BulkRecord.decode(line, format));
+            }
+            catch (IllegalArgumentException e) {
+                ret.malformed++;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Record decodificati da un blocco del file
+     */
+    private static class Batch {
+        private final List<BulkRecord> records = new ArrayList<>();
+        private int malformed;
+    }
+
+    /**
+     * Stato dell'applicazione dei record alla rete
+     */
+    private class Applier {
+        /**
+         * Post importati, indicizzati per id
+         */
+        private final Map<Long, Post> posts = new HashMap<>();
+        /**
+         * Parole proibite della rete, lette al primo record che ne aggiunge una
+         */
+        private Set<String> forbiddenWords;
+        private long records;
+        private long rejected;
+
+        /**
+         * @effects Attende la decodifica di batch e ne applica i record alla rete
+         * @modifies this, network
+         * @throws IOException Se la decodifica è fallita
+         */
+        private void apply(Future<Batch> batch) throws IOException {
+            Batch b;
+            try {
+                b = batch.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Importazione interrotta", e);
+            }
+            catch (ExecutionException e) {
+                throw new IOException("Decodifica del file fallita", e.getCause());
+            }
+
+            records += b.records.size() + b.malformed;
+            rejected += b.malformed;
+            synchronized (network) {
+                for (BulkRecord r : b.records) {
+                    if (!apply(r)) {
+                        rejected++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @requires r != null
+         * @effects Applica r alla rete
+         * @modifies this.posts, this.forbiddenWords, network
+         * @return  True se r è stato applicato, false se è stato rifiutato
+         */
+        private boolean apply(BulkRecord r) {
+            switch (r.getKind()) {
+                case USER:
+                    try {
+                        network.registerUser(r.getUser());
+                        return true;
+                    }
+                    catch (InvalidUsernameException | UserAlreadyRegisteredExeption e) {
+                        return false;
+                    }
+                case POST:
+                    Post p;
+                    try {
+                        p = new PostImpl(r.getPostId(), r.getUser(), r.getText(), r.getTimestamp());
+                    }
+                    catch (PostLengthExceededException | EmptyContentException | ArithmeticException e) {
+                        return false;
+                    }
+                    if (network.tryPublish(p) != OperationStatus.OK) {
+                        return false;
+                    }
+                    posts.put(p.getId(), p);
+                    return true;
+                case LIKE:
+                    Post liked = posts.get(r.getPostId());
+                    return liked != null && network.tryLike(liked, r.getUser()) == OperationStatus.OK;
+                case REPORT:
+                    Post reported = posts.get(r.getPostId());
+                    return reported != null && network instanceof ModeratedSocialNetworkImpl &&
+                            ((ModeratedSocialNetworkImpl) network).tryReport(r.getUser(), reported) == OperationStatus.OK;
+                default:
+                    if (!(network instanceof ModeratedSocialNetworkImpl)) {
+                        return false;
+                    }
+                    ModeratedSocialNetworkImpl moderated = (ModeratedSocialNetworkImpl) network;
+                    if (forbiddenWords == null) {
+                        forbiddenWords = moderated.getForbiddenWords();
+                    }
+                    if (!forbiddenWords.add(r.getWord())) {
+                        return false;
+                    }
+                    moderated.addForbiddenWord(r.getWord());
+                    return true;
+            }
+        }
+    }
+}
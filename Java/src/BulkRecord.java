@@ -0,0 +1,463 @@
+import java.time.LocalDateTime;
+
+/** Overview:
+ *      BulkRecord rappresenta una riga immutabile di un file di importazione o esportazione
+ *      di una rete sociale (vedi BulkExporter e BulkImporter). Ogni record descrive un
+ *      elemento della rete: un utente, un post, un like, una segnalazione o una parola
+ *      proibita. I record possono essere scritti in due formati orientati alle righe:
+ *          - JSONL: un oggetto JSON per riga, ad esempio
+ *              {"kind":"POST","user":"alice","postId":3,"text":"ciao","timestamp":"2024-01-01T10:00"}
+ *          - CSV: i campi kind,user,postId,text,timestamp,word separati da virgole, racchiusi
+ *              tra virgolette se contengono virgole, virgolette o fine riga (RFC 4180); la
+ *              prima riga del file è l'intestazione CSV_HEADER
+ *
+ *  Typical element:
+ *      <kind, user, postId, text, timestamp, word> in cui:
+ *          - USER: user è l'utente registrato
+ *          - POST: user è l'autore, postId l'id, text il testo e timestamp il momento della
+ *              creazione del post
+ *          - LIKE: user è l'utente che ha messo like al post postId
+ *          - REPORT: user è l'utente che ha segnalato il post postId
+ *          - FORBIDDEN_WORD: word è la parola proibita
+ *      I campi non usati dal tipo del record sono null (-1 per postId).
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.kind, c.user, c.postId, c.text, c.timestamp, c.word>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = kind != null &&
+ *          (kind == USER => user != null) &&
+ *          (kind == POST => user != null && postId >= 0 && text != null && timestamp != null) &&
+ *          (kind == LIKE || kind == REPORT => user != null && postId >= 0) &&
+ *          (kind == FORBIDDEN_WORD => word != null)
+ */
+public class BulkRecord {
+    /**
+     * Tipi di elemento della rete descritti dai record
+     */
+    public enum Kind {
+        USER,
+        POST,
+        LIKE,
+        REPORT,
+        FORBIDDEN_WORD
+    }
+
+    /**
+     * Formati delle righe
+     */
+    public enum Format {
+        JSONL,
+        CSV
+    }
+
+    /**
+     * Intestazione dei file CSV
+     */
+    public static final String CSV_HEADER = "kind,user,postId,text,timestamp,word";
+
+    private final Kind kind;
+    private final String user;
+    private final long postId;
+    private final String text;
+    private final LocalDateTime timestamp;
+    private final String word;
+
+    /**
+     * @effects Crea un record con i campi passati come parametro
+     * @throws IllegalArgumentException Se i campi non rispettano l'invariante
+     */
+    private BulkRecord(Kind kind, String user, long postId, String text, LocalDateTime timestamp, String word) {
+        boolean valid;
+        switch (kind) {
+            case USER:
+                valid = user != null;
+                break;
+            case POST:
+                valid = user != null && postId >= 0 && text != null && timestamp != null;
+                break;
+            case LIKE:
+            case REPORT:
+                valid = user != null && postId >= 0;
+                break;
+            default:
+                valid = word != null;
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Campi mancanti per un record di tipo " + kind);
+        }
+
+        this.kind = kind;
+        this.user = user;
+        this.postId = postId;
+        this.text = text;
+        this.timestamp = timestamp;
+        this.word = word;
+    }
+
+    /**
+     * @requires user != null
+     * @return Il record che descrive l'utente user
+     */
+    public static BulkRecord user(String user) {
+        return new BulkRecord(Kind.USER, user, -1, null, null, null);
+    }
+
+    /**
+     * @requires p != null
+     * @return Il record che descrive il post p
+     */
+    public static BulkRecord post(Post p) {
+        return new BulkRecord(Kind.POST, p.getAuthor(), p.getId(), p.getText(), p.getTimestamp(), null);
+    }
+
+    /**
+     * @requires liker != null && p != null
+     * @return Il record che descrive il like di liker al post p
+     */
+    public static BulkRecord like(String liker, Post p) {
+        return new BulkRecord(Kind.LIKE, liker, p.getId(), null, null, null);
+    }
+
+    /**
+     * @requires reporter != null && p != null
+     * @return Il record che descrive la segnalazione del post p da parte di reporter
+     */
+    public static BulkRecord report(String reporter, Post p) {
+        return new BulkRecord(Kind.REPORT, reporter, p.getId(), null, null, null);
+    }
+
+    /**
+     * @requires word != null
+     * @return Il record che descrive la parola proibita word
+     */
+    public static BulkRecord forbiddenWord(String word) {
+        return new BulkRecord(Kind.FORBIDDEN_WORD, null, -1, null, null, word);
+    }
+
+    /**
+     * @return Il tipo di elemento descritto dal record
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return L'utente del record (l'autore per i post), null se non è usato
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return L'id del post del record, -1 se non è usato
+     */
+    public long getPostId() {
+        return postId;
+    }
+
+    /**
+     * @return Il testo del post, null se il record non descrive un post
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return Il timestamp del post, null se il record non descrive un post
+     */
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return La parola proibita, null se il record non descrive una parola proibita
+     */
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * @requires format != null
+     * @param format Il formato della riga
+     * @effects Codifica il record in una riga di format, senza il carattere di fine riga
+     * @return  La riga che rappresenta il record
+     */
+    public String encode(Format format) {
+        String ts = timestamp == null ? null : timestamp.toString();
+        Long id = postId < 0 ? null : postId;
+        StringBuilder sb = new StringBuilder();
+
+        if (format == Format.CSV) {
+            sb.append(kind.name()).append(',');
+            csv(sb, user).append(',');
+            sb.append(id == null ? "" : id.toString()).append(',');
+            csv(sb, text).append(',');
+            csv(sb, ts).append(',');
+            csv(sb, word);
+            return sb.toString();
+        }
+
+        sb.append("{\"kind\":\"").append(kind.name()).append('"');
+        if (user != null) {
+            json(sb.append(",\"user\":"), user);
+        }
+        if (id != null) {
+            sb.append(",\"postId\":").append(id);
+        }
+        if (text != null) {
+            json(sb.append(",\"text\":"), text);
+        }
+        if (ts != null) {
+            json(sb.append(",\"timestamp\":"), ts);
+        }
+        if (word != null) {
+            json(sb.append(",\"word\":"), word);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @requires line != null && format != null
+     * @param line   Una riga, senza il carattere di fine riga
+     * @param format Il formato della riga
+     *
+     * @effects Decodifica una riga di format
+     * @return  Il record rappresentato da line
+     * @throws NullPointerException Se line == null
+     * @throws IllegalArgumentException Se line non è una riga valida
+     */
+    public static BulkRecord decode(String line, Format format) {
+        try {
+            String[] fields = format == Format.CSV ? parseCsv(line) : parseJson(line);
+            return new BulkRecord(Kind.valueOf(fields[0]), fields[1],
+                    fields[2] == null || fields[2].isEmpty() ? -1 : Long.parseLong(fields[2]), fields[3],
+                    fields[4] == null || fields[4].isEmpty() ? null : LocalDateTime.parse(fields[4]), fields[5]);
+        }
+        catch (RuntimeException e) {
+            throw new IllegalArgumentException("Riga non valida: " + line, e);
+        }
+    }
+
+    /**
+     * @effects Aggiunge a sb il campo CSV s, tra virgolette se necessario; null è un campo vuoto
+     * @return  sb
+     */
+    private static StringBuilder csv(StringBuilder sb, String s) {
+        if (s == null) {
+            return sb;
+        }
+        if (s.isEmpty() || s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+            return sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+        }
+        return sb.append(s);
+    }
+
+    /**
+     * @effects Aggiunge a sb la stringa JSON che rappresenta s
+     * @return  sb
+     */
+    private static StringBuilder json(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * @effects Divide una riga CSV nei suoi sei campi; un campo vuoto non racchiuso tra
+     *          virgolette è null
+     * @return  I campi kind, user, postId, text, timestamp, word
+     * @throws IllegalArgumentException Se la riga non ha sei campi
+     */
+    private static String[] parseCsv(String line) {
+        String[] ret = new String[6];
+        int field = 0;
+        int i = 0;
+
+        while (true) {
+            if (field == ret.length) {
+                throw new IllegalArgumentException("Troppi campi");
+            }
+            if (i < line.length() && line.charAt(i) == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("Virgolette non chiuse");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            sb.append('"');
+                            i++;
+                        }
+                        else {
+                            break;
+                        }
+                    }
+                    else {
+                        sb.append(c);
+                    }
+                }
+                ret[field++] = sb.toString();
+            }
+            else {
+                int end = line.indexOf(',', i);
+                String s = line.substring(i, end < 0 ? line.length() : end);
+                ret[field++] = s.isEmpty() ? null : s;
+                i = end < 0 ? line.length() : end;
+            }
+
+            if (i >= line.length()) {
+                break;
+            }
+            if (line.charAt(i) != ',') {
+                throw new IllegalArgumentException("Atteso ',' in posizione " + i);
+            }
+            i++;
+        }
+
+        if (field != ret.length) {
+            throw new IllegalArgumentException("Attesi 6 campi, trovati " + field);
+        }
+        return ret;
+    }
+
+    /**
+     * @effects Decodifica un oggetto JSON con valori stringa, numero o null
+     * @return  I campi kind, user, postId, text, timestamp, word, null se assenti
+     * @throws IllegalArgumentException Se la riga non è un oggetto JSON di questo tipo
+     */
+    private static String[] parseJson(String line) {
+        String[] ret = new String[6];
+        JsonCursor in = new JsonCursor(line);
+
+        in.expect('{');
+        if (!in.consume('}')) {
+            do {
+                String key = in.string();
+                in.expect(':');
+                String value = in.value();
+                switch (key) {
+                    case "kind": ret[0] = value; break;
+                    case "user": ret[1] = value; break;
+                    case "postId": ret[2] = value; break;
+                    case "text": ret[3] = value; break;
+                    case "timestamp": ret[4] = value; break;
+                    case "word": ret[5] = value; break;
+                    default: // I campi sconosciuti vengono ignorati
+                }
+            } while (in.consume(','));
+            in.expect('}');
+        }
+        in.end();
+
+        return ret;
+    }
+
+    /**
+     * Lettore di una riga JSON
+     */
+    private static class JsonCursor {
+        private final String s;
+        private int i;
+
+        private JsonCursor(String s) {
+            this.s = s;
+        }
+
+        private void skipSpaces() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+        }
+
+        private boolean consume(char c) {
+            skipSpaces();
+            if (i < s.length() && s.charAt(i) == c) {
+                i++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Atteso '" + c + "' in posizione " + i);
+            }
+        }
+
+        private void end() {
+            skipSpaces();
+            if (i != s.length()) {
+                throw new IllegalArgumentException("Caratteri inattesi in posizione " + i);
+            }
+        }
+
+        private String value() {
+            skipSpaces();
+            if (i < s.length() && s.charAt(i) == '"') {
+                return string();
+            }
+            int start = i;
+            while (i < s.length() && s.charAt(i) != ',' && s.charAt(i) != '}' && !Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            String ret = s.substring(start, i);
+            if (ret.equals("null")) {
+                return null;
+            }
+            if (ret.isEmpty()) {
+                throw new IllegalArgumentException("Valore mancante in posizione " + start);
+            }
+            return ret;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (i >= s.length()) {
+                    throw new IllegalArgumentException("Stringa non chiusa");
+                }
+                char c = s.charAt(i++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default: sb.append(e);
+                }
+            }
+        }
+    }
+}
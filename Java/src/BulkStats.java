@@ -0,0 +1,73 @@
+/** Overview:
+ *      BulkStats è un dato immutabile che riassume l'esito di un'importazione o di
+ *      un'esportazione di una rete sociale (vedi BulkImporter e BulkExporter).
+ *
+ *  Typical element:
+ *      <records, rejected, bytes, nanos> in cui:
+ *          - records è il numero di record letti o scritti
+ *          - rejected è il numero di record letti ma non applicati alla rete, perché non validi
+ *              o in conflitto con il suo stato
+ *          - bytes è la dimensione in byte dei record letti o scritti
+ *          - nanos è la durata dell'operazione in nanosecondi
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = 0 <= rejected <= records && bytes >= 0 && nanos >= 0
+ */
+public class BulkStats {
+    private final long records;
+    private final long rejected;
+    private final long bytes;
+    private final long nanos;
+
+    /**
+     * @requires 0 <= rejected <= records && bytes >= 0 && nanos >= 0
+     * @effects Crea il riepilogo di un'operazione con i valori passati come parametro
+     */
+    public BulkStats(long records, long rejected, long bytes, long nanos) {
+        this.records = records;
+        this.rejected = rejected;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return Il numero di record letti o scritti
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return Il numero di record non applicati alla rete
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return Il numero di byte letti o scritti
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return La durata dell'operazione in nanosecondi
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return Il numero di record elaborati al secondo, 0 se la durata è nulla
+     */
+    public double getRecordsPerSecond() {
+        return nanos == 0 ? 0 : records * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d record (%d rifiutati), %d byte in %.3f s: %.0f record/s",
+                records, rejected, bytes, nanos / 1e9, getRecordsPerSecond());
+    }
+}
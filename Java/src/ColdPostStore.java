@@ -0,0 +1,694 @@
+import Exceptions.Post.EmptyContentException;
+import Exceptions.Post.PostLengthExceededException;
+
+import java.io.*;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/** Overview:
+ *      ColdPostStore è un dato mutabile che conserva su disco i post "freddi" di una rete
+ *      sociale, cioè quelli più vecchi e raramente letti, insieme ai loro like, in modo che non
+ *      occupino memoria (vedi SocialNetworkImpl.evictColdPosts).
+ *
+ *      I post vengono scritti in segmenti immutabili, un file per segmento, ordinati per id e
+ *      divisi in blocchi di BLOCK_POSTS post. In memoria resta soltanto un indice sparso con
+ *      una voce per blocco: l'intervallo degli id, l'intervallo dei timestamp, la posizione nel
+ *      file e un filtro di Bloom degli utenti che compaiono nel blocco (autori e utenti che
+ *      hanno messo like). Un blocco viene letto e riportato in memoria per intero (page in)
+ *      quando la rete ha bisogno di uno dei suoi post: da quel momento il blocco non fa più
+ *      parte del livello freddo, e il file di un segmento viene cancellato quando tutti i suoi
+ *      blocchi sono stati riportati in memoria e nessuna versione (vedi view) lo usa più.
+ *
+ *      Le interrogazioni sull'intera rete leggono i post freddi senza riportarli in memoria,
+ *      da una versione in sola lettura ottenuta con view().
+ *
+ *      Le statistiche hits e misses contano rispettivamente le ricerche di un post che la rete
+ *      ha trovato in memoria (livello caldo) e le letture di un blocco dal disco.
+ *
+ *  Typical element:
+ *      <directory, posts> in cui directory è la cartella dei segmenti e
+ *      posts = {(p1, l1), (p2, l2), ...} in cui li è l'insieme degli utenti che hanno messo
+ *      like al post freddo pi
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.directory, {(p, l) | (p, l) è un record di un blocco b di un
+ *                      segmento s in c.segments && !b.promoted}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = directory != null && segments != null &&
+ *          foreach s in segments -> s.live > 0 && s.live == |{b in s.blocks | !b.promoted}| &&
+ *              s.pins >= 0 &&
+ *              s.blocks è ordinato per firstId crescente && i blocchi di s hanno intervalli di id
+ *              disgiunti &&
+ *          coldPosts == sum({b.count | b in s.blocks && !b.promoted && s in segments})
+ */
+public class ColdPostStore implements AutoCloseable {
+    /**
+     * Numero di post di ogni blocco
+     */
+    public static final int BLOCK_POSTS = 128;
+
+    /**
+     * Numero di bit del filtro di Bloom di un blocco per ogni utente che vi compare
+     */
+    private static final int BLOOM_BITS_PER_USER = 10;
+    /**
+     * Rilascia i segmenti usati dalle versioni di cui non resta alcun riferimento
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Cartella in cui vengono scritti i segmenti
+     */
+    private final Path directory;
+    /**
+     * Segmenti con almeno un blocco non ancora riportato in memoria
+     */
+    private final List<Segment> segments;
+    /**
+     * Numero progressivo del prossimo segmento
+     */
+    private long nextSegment;
+    /**
+     * Numero di post nel livello freddo
+     */
+    private long coldPosts;
+    /**
+     * Numero di post scritti su disco e riportati in memoria
+     */
+    private long evicted;
+    private long pagedIn;
+    /**
+     * Ricerche di un post servite dal livello caldo e blocchi letti dal disco
+     */
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * @requires directory != null
+     * @param directory La cartella in cui scrivere i segmenti, creata se non esiste
+     *
+     * @effects Crea un livello freddo vuoto che scrive i propri segmenti in directory
+     * @throws IOException Se non è possibile creare directory
+     * @throws NullPointerException Se directory == null
+     */
+    public ColdPostStore(Path directory) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("La cartella dei segmenti non può essere null");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segments = new ArrayList<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @requires posts != null && likes != null && foreach p in posts -> likes.get(p) != null &&
+     *           nessun post di posts è già nel livello freddo
+     * @param posts I post da scrivere su disco
+     * @param likes Gli utenti che hanno messo like a ciascun post di posts
+     *
+     * @effects Scrive posts e i loro like in un nuovo segmento e li aggiunge al livello freddo
+     * @modifies this
+     * @throws IOException Se non è possibile scrivere il segmento
+     * @throws NullPointerException Se posts == null || likes == null
+     */
+    public synchronized void write(Collection<Post> posts, Map<Post, Set<String>> likes) throws IOException {
+        if (posts == null || likes == null) {
+            throw new NullPointerException("I post da scrivere su disco e i loro like non possono essere null");
+        }
+        if (posts.isEmpty()) {
+            return;
+        }
+
+        List<Post> sorted = new ArrayList<>(posts);
+        sorted.sort(Comparator.comparingLong(Post::getId));
+        Path file = directory.resolve("segment-" + nextSegment++ + ".cold");
+        List<Block> blocks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long offset = 0;
+
+            for (int start=0; start<sorted.size(); start+=BLOCK_POSTS) {
+                List<Post> chunk = sorted.subList(start, Math.min(sorted.size(), start + BLOCK_POSTS));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                Set<String> users = new HashSet<>();
+                long minTime = Long.MAX_VALUE;
+                long maxTime = Long.MIN_VALUE;
+
+                for (Post p : chunk) {
+                    long time = PostImpl.epochNanosOf(p);
+                    Set<String> likers = likes.get(p);
+
+                    out.writeLong(p.getId());
+                    out.writeLong(time);
+                    out.writeUTF(p.getAuthor());
+                    out.writeUTF(p.getText());
+                    out.writeInt(likers.size());
+                    for (String u : likers) {
+                        out.writeUTF(u);
+                    }
+
+                    users.add(p.getAuthor());
+                    users.addAll(likers);
+                    minTime = Math.min(minTime, time);
+                    maxTime = Math.max(maxTime, time);
+                }
+                out.flush();
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                int length = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                blocks.add(new Block(chunk.get(0).getId(), chunk.get(chunk.size() - 1).getId(), minTime, maxTime,
+                        offset, length, chunk.size(), bloom(users)));
+                offset += length;
+            }
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        segments.add(new Segment(file, blocks));
+        coldPosts += sorted.size();
+        evicted += sorted.size();
+    }
+
+    /**
+     * @param id L'id del post da cercare
+     *
+     * @effects Cerca nel livello freddo il post con id id e, se lo trova, toglie dal livello
+     *          freddo il blocco che lo contiene
+     * @modifies this
+     * @return  I post del blocco che contiene il post con id id, con i loro like, una lista
+     *          vuota se il post non è nel livello freddo
+     * @throws UncheckedIOException Se non è possibile leggere il blocco
+     */
+    public synchronized List<ColdPost> pageIn(long id) {
+        for (Segment s : new ArrayList<>(segments)) {
+            Block b = s.find(id);
+            if (b == null) {
+                continue;
+            }
+
+            List<ColdPost> ret = read(s, b);
+            for (ColdPost c : ret) {
+                if (c.post.getId() == id) {
+                    promote(s, b);
+                    return ret;
+                }
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * @requires user != null
+     * @param user L'utente da cercare
+     *
+     * @effects Toglie dal livello freddo tutti i blocchi in cui potrebbe comparire user, come
+     *          autore o come utente che ha messo like (ed eventualmente qualche altro blocco,
+     *          per i falsi positivi dei filtri di Bloom)
+     * @modifies this
+     * @return  I post dei blocchi tolti dal livello freddo, con i loro like
+     * @throws UncheckedIOException Se non è possibile leggere un blocco
+     */
+    public synchronized List<ColdPost> pageInUser(String user) {
+        return pageInUsers(Collections.singleton(user));
+    }
+
+    /**
+     * @requires users != null && foreach u in users -> u != null
+     * @param users Gli utenti da cercare
+     *
+     * @effects Come pageInUser, per tutti gli utenti di users, controllando i filtri di Bloom
+     *          di ogni blocco una volta sola
+     * @modifies this
+     * @return  I post dei blocchi tolti dal livello freddo, con i loro like
+     * @throws UncheckedIOException Se non è possibile leggere un blocco
+     */
+    public synchronized List<ColdPost> pageInUsers(Collection<String> users) {
+        List<ColdPost> ret = new ArrayList<>();
+        if (coldPosts == 0 || users.isEmpty()) {
+            return ret;
+        }
+        long[] hashes = hashes(users);
+
+        for (Segment s : new ArrayList<>(segments)) {
+            for (Block b : s.blocks) {
+                if (!b.promoted && b.mightContainAny(hashes)) {
+                    ret.addAll(read(s, b));
+                    promote(s, b);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param from L'istante iniziale dell'intervallo in nanosecondi (incluso)
+     * @param to   L'istante finale dell'intervallo in nanosecondi (escluso)
+     *
+     * @effects Toglie dal livello freddo tutti i blocchi che contengono post con timestamp
+     *          nell'intervallo [from, to)
+     * @modifies this
+     * @return  I post dei blocchi tolti dal livello freddo, con i loro like
+     * @throws UncheckedIOException Se non è possibile leggere un blocco
+     */
+    public synchronized List<ColdPost> pageInRange(long from, long to) {
+        List<ColdPost> ret = new ArrayList<>();
+
+        for (Segment s : new ArrayList<>(segments)) {
+            for (Block b : s.blocks) {
+                if (!b.promoted && b.minTime < to && b.maxTime >= from) {
+                    ret.addAll(read(s, b));
+                    promote(s, b);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @effects Toglie dal livello freddo tutti i blocchi
+     * @modifies this
+     * @return  Tutti i post del livello freddo, con i loro like
+     * @throws UncheckedIOException Se non è possibile leggere un blocco
+     */
+    public synchronized List<ColdPost> pageInAll() {
+        return pageInRange(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @effects Crea una versione in sola lettura del livello freddo, che comprende i blocchi
+     *          che vi si trovano ora anche se in seguito vengono riportati in memoria. I file
+     *          dei segmenti della versione non vengono cancellati finché la versione è
+     *          raggiungibile.
+     * @modifies this
+     * @return  La versione attuale del livello freddo
+     */
+    public synchronized View view() {
+        List<Segment> pinned = new ArrayList<>();
+        List<Segment> owners = new ArrayList<>();
+        List<Block> blocks = new ArrayList<>();
+        long count = 0;
+
+        for (Segment s : segments) {
+            s.pins++;
+            pinned.add(s);
+            for (Block b : s.blocks) {
+                if (!b.promoted) {
+                    owners.add(s);
+                    blocks.add(b);
+                    count += b.count;
+                }
+            }
+        }
+
+        return new View(pinned, owners, blocks, count);
+    }
+
+    /**
+     * @return Il timestamp in nanosecondi (vedi PostImpl.epochNanosOf) del post più recente
+     *         del livello freddo, Long.MIN_VALUE se il livello freddo è vuoto
+     */
+    public synchronized long getNewestColdNanos() {
+        long ret = Long.MIN_VALUE;
+        for (Segment s : segments) {
+            for (Block b : s.blocks) {
+                if (!b.promoted) {
+                    ret = Math.max(ret, b.maxTime);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @effects Registra una ricerca di un post servita dal livello caldo
+     * @modifies this.hits
+     */
+    public void hit() {
+        hits.increment();
+    }
+
+    /**
+     * @return Il numero di ricerche di un post servite dal livello caldo
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Il numero di blocchi letti dal disco
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return La frazione degli accessi serviti dal livello caldo (hits / (hits + misses)), 1
+     *         se non ce ne sono stati
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 1 : (double) h / total;
+    }
+
+    /**
+     * @return Il numero di post nel livello freddo
+     */
+    public synchronized long getColdPosts() {
+        return coldPosts;
+    }
+
+    /**
+     * @return Il numero di post scritti su disco
+     */
+    public synchronized long getEvictedPosts() {
+        return evicted;
+    }
+
+    /**
+     * @return Il numero di post riportati in memoria
+     */
+    public synchronized long getPagedInPosts() {
+        return pagedIn;
+    }
+
+    /**
+     * @effects Cancella i file dei segmenti: i post ancora nel livello freddo vanno persi
+     * @modifies this
+     * @throws IOException Se non è possibile cancellare un file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment s : segments) {
+            Files.deleteIfExists(s.file);
+        }
+        segments.clear();
+        coldPosts = 0;
+    }
+
+    /**
+     * @effects Legge dal file di s i post del blocco b
+     * @return  I post del blocco, con i loro like
+     * @throws UncheckedIOException Se non è possibile leggere il blocco
+     */
+    private List<ColdPost> read(Segment s, Block b) {
+        ByteBuffer buffer = ByteBuffer.allocate(b.length);
+        List<ColdPost> ret = new ArrayList<>(b.count);
+
+        try (FileChannel channel = FileChannel.open(s.file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, b.offset + buffer.position()) < 0) {
+                    throw new EOFException("Segmento " + s.file + " troncato");
+                }
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+            for (int i=0; i<b.count; i++) {
+                long id = in.readLong();
+                long time = in.readLong();
+                String author = in.readUTF();
+                String text = in.readUTF();
+                int n = in.readInt();
+                List<String> likers = new ArrayList<>(n);
+                for (int j=0; j<n; j++) {
+                    likers.add(in.readUTF());
+                }
+                ret.add(new ColdPost(new PostImpl(id, author, text, PostImpl.fromEpochNanos(time)), likers));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (PostLengthExceededException | EmptyContentException e) {
+            throw new IllegalStateException("Post non valido nel segmento " + s.file, e);
+        }
+
+        misses.increment();
+        return ret;
+    }
+
+    /**
+     * @effects Toglie il blocco b di s dal livello freddo, cancellando il file di s se era
+     *          l'ultimo blocco
+     * @modifies this
+     */
+    private void promote(Segment s, Block b) {
+        b.promoted = true;
+        coldPosts -= b.count;
+        pagedIn += b.count;
+
+        if (--s.live == 0) {
+            segments.remove(s);
+            s.deleteIfUnused();
+        }
+    }
+
+    /**
+     * @return Gli hash di BloomFilter degli utenti di users
+     */
+    private static long[] hashes(Collection<String> users) {
+        long[] ret = new long[users.size()];
+        int i = 0;
+        for (String u : users) {
+            ret[i++] = BloomFilter.hash(u);
+        }
+        return ret;
+    }
+
+    /**
+     * @return Il filtro di Bloom degli utenti di users
+     */
+    private static BloomFilter bloom(Set<String> users) {
+        BloomFilter ret = new BloomFilter(users.size(), BLOOM_BITS_PER_USER);
+        for (String u : users) {
+            ret.add(BloomFilter.hash(u));
+        }
+        return ret;
+    }
+
+    /**
+     * Post letto dal livello freddo, con gli utenti che gli hanno messo like
+     */
+    public static class ColdPost {
+        private final Post post;
+        private final List<String> likes;
+
+        private ColdPost(Post post, List<String> likes) {
+            this.post = post;
+            this.likes = likes;
+        }
+
+        /**
+         * @return Il post
+         */
+        public Post getPost() {
+            return post;
+        }
+
+        /**
+         * @return Gli utenti che hanno messo like al post
+         */
+        public List<String> getLikes() {
+            return likes;
+        }
+    }
+
+    /**
+     * File di un segmento, con l'indice dei suoi blocchi
+     */
+    private static class Segment {
+        private final Path file;
+        private final List<Block> blocks;
+        private int live;
+        /**
+         * Numero di versioni raggiungibili che usano il segmento
+         */
+        private int pins;
+
+        private Segment(Path file, List<Block> blocks) {
+            this.file = file;
+            this.blocks = blocks;
+            this.live = blocks.size();
+        }
+
+        /**
+         * @return Il blocco non ancora riportato in memoria il cui intervallo di id contiene
+         *         id, null se non esiste
+         */
+        private Block find(long id) {
+            int lo = 0;
+            int hi = blocks.size() - 1;
+
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                Block b = blocks.get(mid);
+                if (id < b.firstId) {
+                    hi = mid - 1;
+                }
+                else if (id > b.lastId) {
+                    lo = mid + 1;
+                }
+                else {
+                    return b.promoted ? null : b;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @requires il thread possiede il lock di ColdPostStore
+         * @effects Cancella il file del segmento se tutti i suoi blocchi sono stati riportati
+         *          in memoria e nessuna versione lo usa più
+         */
+        private void deleteIfUnused() {
+            if (live == 0 && pins == 0) {
+                try {
+                    Files.deleteIfExists(file);
+                }
+                catch (IOException e) {
+                    // Il file resta su disco ma non viene più letto
+                }
+            }
+        }
+    }
+
+    /**
+     * Versione in sola lettura del livello freddo, ottenuta con view(). I suoi blocchi vengono
+     * letti dal disco a ogni visita; i segmenti vengono rilasciati quando la versione non è
+     * più raggiungibile.
+     */
+    public final class View {
+        private final List<Segment> owners;
+        private final List<Block> blocks;
+        private final long count;
+
+        private View(List<Segment> pinned, List<Segment> owners, List<Block> blocks, long count) {
+            this.owners = owners;
+            this.blocks = blocks;
+            this.count = count;
+            CLEANER.register(this, new Release(pinned));
+        }
+
+        /**
+         * @return Il numero di post della versione
+         */
+        public long size() {
+            return count;
+        }
+
+        /**
+         * @effects Legge i blocchi della versione soltanto man mano che i post vengono consumati
+         * @return  Lo stream dei post della versione, con i loro like
+         * @throws UncheckedIOException Durante la visita, se non è possibile leggere un blocco
+         */
+        public Stream<ColdPost> stream() {
+            return blocks(null);
+        }
+
+        /**
+         * @requires users != null && foreach u in users -> u != null
+         * @effects Come stream(), ma legge soltanto i blocchi in cui potrebbe comparire uno
+         *          degli utenti di users (vedi pageInUser)
+         * @return  Lo stream dei post dei blocchi letti, con i loro like
+         * @throws UncheckedIOException Durante la visita, se non è possibile leggere un blocco
+         */
+        public Stream<ColdPost> streamOf(Collection<String> users) {
+            return users.isEmpty() ? Stream.empty() : blocks(hashes(users));
+        }
+
+        /**
+         * @return Lo stream dei post dei blocchi della versione che potrebbero contenere uno
+         *         degli utenti con hash hashes, di tutti i blocchi se hashes == null
+         */
+        private Stream<ColdPost> blocks(long[] hashes) {
+            // Il riferimento alla versione resta raggiungibile finché lo stream viene consumato
+            View pin = this;
+
+            return IntStream.range(0, blocks.size())
+                    .filter(i -> hashes == null || pin.blocks.get(i).mightContainAny(hashes))
+                    .mapToObj(i -> read(pin.owners.get(i), pin.blocks.get(i)))
+                    .flatMap(List::stream);
+        }
+    }
+
+    /**
+     * Rilascio dei segmenti di una versione non più raggiungibile
+     */
+    private class Release implements Runnable {
+        private final List<Segment> pinned;
+
+        private Release(List<Segment> pinned) {
+            this.pinned = pinned;
+        }
+
+        @Override
+        public void run() {
+            synchronized (ColdPostStore.this) {
+                for (Segment s : pinned) {
+                    s.pins--;
+                    s.deleteIfUnused();
+                }
+            }
+        }
+    }
+
+    /**
+     * Voce dell'indice sparso: un blocco di un segmento
+     */
+    private static class Block {
+        private final long firstId;
+        private final long lastId;
+        private final long minTime;
+        private final long maxTime;
+        private final long offset;
+        private final int length;
+        private final int count;
+        private final BloomFilter users;
+        private boolean promoted;
+
+        private Block(long firstId, long lastId, long minTime, long maxTime, long offset, int length, int count,
+                      BloomFilter users) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.users = users;
+        }
+
+        /**
+         * @return True se uno degli utenti con hash hashes potrebbe comparire nel blocco
+         */
+        private boolean mightContainAny(long[] hashes) {
+            for (long h : hashes) {
+                if (users.mightContain(h)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/** Overview:
+ *      CountMinSketch è un dato mutabile che stima quante volte è stata aggiunta una stringa
+ *      usando una quantità di memoria fissa (depth * width contatori). La stima non è mai
+ *      inferiore al valore esatto e, con probabilità almeno 1 - e^(-depth), lo supera al più
+ *      di e / width * N, in cui N è il numero totale di occorrenze aggiunte.
+ *
+ *  Typical element:
+ *      <counters, total> in cui counters è una matrice depth x width di contatori e total è
+ *      il numero totale di occorrenze aggiunte
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.counters, c.total>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      counters != null && counters.length == depth && depth > 0 && width > 0 &&
+ *      foreach i in [0, depth) -> counters[i].length == width &&
+ *      foreach i in [0, depth) -> sum(counters[i]) == total
+ */
+public class CountMinSketch {
+    /**
+     * Numero predefinito di righe, che corrisponde a una probabilità di errore di circa l'1.8%
+     */
+    public static final int DEFAULT_DEPTH = 4;
+    /**
+     * Numero predefinito di colonne, che corrisponde a un errore di circa 0.13% di N
+     */
+    public static final int DEFAULT_WIDTH = 2048;
+
+    /**
+     * Contatori dello sketch
+     */
+    private final long[][] counters;
+    /**
+     * Numero totale di occorrenze aggiunte
+     */
+    private long total;
+
+    /**
+     * @requires depth > 0 && width > 0
+     * @param depth Il numero di funzioni hash (righe)
+     * @param width Il numero di contatori per riga
+     * @effects Crea uno sketch vuoto
+     * @throws IllegalArgumentException Se depth <= 0 || width <= 0
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Dimensioni dello sketch non valide");
+        }
+
+        counters = new long[depth][width];
+        total = 0;
+    }
+
+    /**
+     * @effects Crea uno sketch vuoto con le dimensioni predefinite
+     */
+    public CountMinSketch() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * @requires key != null && count >= 0
+     * @param key   La stringa di cui aggiungere le occorrenze
+     * @param count Il numero di occorrenze da aggiungere
+     * @effects Aggiunge count occorrenze di key
+     * @modifies this.counters, this.total
+     * @throws NullPointerException Se key == null
+     * @throws IllegalArgumentException Se count < 0
+     */
+    public void add(String key, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Il numero di occorrenze non può essere negativo");
+        }
+
+        long hash = HyperLogLog.hash64(key);
+        for (int i=0; i<counters.length; i++) {
+            counters[i][index(hash, i)] += count;
+        }
+        total += count;
+    }
+
+    /**
+     * @requires key != null
+     * @param key La stringa di cui stimare le occorrenze
+     * @return La stima del numero di occorrenze di key, mai inferiore al valore esatto
+     * @throws NullPointerException Se key == null
+     */
+    public long estimate(String key) {
+        long hash = HyperLogLog.hash64(key);
+        long ret = Long.MAX_VALUE;
+
+        for (int i=0; i<counters.length; i++) {
+            ret = Math.min(ret, counters[i][index(hash, i)]);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return Il numero totale di occorrenze aggiunte
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @effects Calcola la colonna della riga row per l'hash hash, derivando le funzioni hash
+     *          delle righe da due metà dello stesso hash (tecnica di Kirsch-Mitzenmacher).
+     * @return  L'indice della colonna
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int combined = h1 + row * h2;
+
+        return (combined & Integer.MAX_VALUE) % counters[row].length;
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.*;
+
+/** Overview:
+ *      DuplicateIndex è un dato mutabile che riconosce, al momento della pubblicazione, i post
+ *      il cui testo è uguale o quasi uguale a quello di un post già indicizzato, come accade
+ *      durante le ondate di spam. Per ogni post calcola due impronte:
+ *          - il testo stesso, usato come chiave di una tabella hash (i PostImpl con lo stesso
+ *              testo ne condividono già un'unica istanza, vedi PostImpl)
+ *          - una firma MinHash di HASHES valori dei 4-grammi di caratteri del testo normalizzato
+ *              (minuscolo, senza punteggiatura né spazi ripetuti): la frazione di valori uguali
+ *              in due firme stima la similarità di Jaccard dei due insiemi di 4-grammi, e due
+ *              testi sono quasi uguali se la stima è almeno MIN_SIMILARITY
+ *      Le firme sono indicizzate dividendole in BANDS bande di ROWS valori (locality sensitive
+ *      hashing): due testi con similarità s condividono almeno una banda con probabilità
+ *      1 - (1 - s^ROWS)^BANDS, cioè più del 99% per s >= MIN_SIMILARITY, per cui basta
+ *      confrontare i post che condividono una banda. Ogni bucket mantiene soltanto le
+ *      BUCKET_CAPACITY impronte più recenti, per cui il costo di add e remove è costante.
+ *
+ *  Typical element:
+ *      <texts, signatures> in cui:
+ *          - texts = {(t1, n1), (t2, n2), ...} in cui ni è il numero di post indicizzati con
+ *              testo ti
+ *          - signatures = {(p1, m1), (p2, m2), ...} in cui mi è la firma MinHash del post pi
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{(t, c.texts(t).count) | t in c.texts.keys},
+ *                      {(e.postId, e.signature) | exists b in c.buckets.values -> b.contains(e)}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      texts != null && buckets != null &&
+ *      foreach t in texts.keys -> texts(t).count > 0 && texts(t).text == t &&
+ *      foreach k in buckets.keys -> 0 < buckets(k).size() <= BUCKET_CAPACITY
+ */
+public class DuplicateIndex {
+    /**
+     * Similarità di Jaccard stimata oltre la quale due testi sono considerati quasi uguali
+     */
+    public static final double MIN_SIMILARITY = 0.7;
+    /**
+     * Numero di bande in cui viene divisa ogni firma
+     */
+    public static final int BANDS = 8;
+    /**
+     * Numero di valori di ogni banda
+     */
+    public static final int ROWS = 2;
+    /**
+     * Numero di valori di ogni firma
+     */
+    public static final int HASHES = BANDS * ROWS;
+    /**
+     * Numero massimo di impronte mantenute in ogni bucket
+     */
+    public static final int BUCKET_CAPACITY = 32;
+    /**
+     * Lunghezza minima, in caratteri, del testo normalizzato per la ricerca di quasi duplicati:
+     * le firme dei testi troppo corti non sono significative
+     */
+    public static final int MIN_LENGTH = 16;
+
+    private static final int SHINGLE = 4;
+
+    /**
+     * Post indicizzati con ciascun testo
+     */
+    private final Map<String, TextGroup> texts;
+    /**
+     * Impronte dei post indicizzati, per banda e valori della banda
+     */
+    private final Map<Long, ArrayDeque<Fingerprint>> buckets;
+
+    /**
+     * @effects Crea un indice vuoto
+     */
+    public DuplicateIndex() {
+        texts = new HashMap<>();
+        buckets = new HashMap<>();
+    }
+
+    /**
+     * @requires p != null
+     * @param p Il post da indicizzare
+     *
+     * @effects Aggiunge p all'indice e stabilisce se il suo testo è uguale o quasi uguale a
+     *          quello di un post indicizzato in precedenza.
+     * @modifies this
+     * @return  True se p è un duplicato di un post già indicizzato
+     * @throws NullPointerException Se p == null
+     */
+    public boolean add(Post p) {
+        if (p == null) {
+            throw new NullPointerException("Il post da indicizzare non può essere null");
+        }
+
+        TextGroup group = texts.get(p.getText());
+        boolean duplicate = group != null;
+        if (group == null) {
+            group = new TextGroup(p.getText());
+            texts.put(group.text, group);
+        }
+        group.count++;
+
+        String normalized = normalize(p.getText());
+        if (normalized.length() < MIN_LENGTH) {
+            return duplicate;
+        }
+
+        Fingerprint fingerprint = new Fingerprint(p.getId(), minHash(normalized));
+        for (int band=0; band<BANDS; band++) {
+            ArrayDeque<Fingerprint> bucket = buckets.computeIfAbsent(bucketKey(fingerprint.signature, band),
+                    k -> new ArrayDeque<>());
+
+            if (!duplicate) {
+                for (Fingerprint f : bucket) {
+                    if (similarity(f.signature, fingerprint.signature) >= MIN_SIMILARITY) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+            }
+
+            bucket.addLast(fingerprint);
+            if (bucket.size() > BUCKET_CAPACITY) {
+                bucket.pollFirst();
+            }
+        }
+
+        return duplicate;
+    }
+
+    /**
+     * @requires p != null
+     * @param p Il post da rimuovere
+     * @effects Rimuove p dall'indice, se era presente
+     * @modifies this
+     * @throws NullPointerException Se p == null
+     */
+    public void remove(Post p) {
+        if (p == null) {
+            throw new NullPointerException("Il post da rimuovere dall'indice non può essere null");
+        }
+
+        TextGroup group = texts.get(p.getText());
+        if (group == null) {
+            return;
+        }
+        if (--group.count == 0) {
+            texts.remove(group.text);
+        }
+
+        String normalized = normalize(p.getText());
+        if (normalized.length() < MIN_LENGTH) {
+            return;
+        }
+
+        long[] signature = minHash(normalized);
+        for (int band=0; band<BANDS; band++) {
+            Long key = bucketKey(signature, band);
+            ArrayDeque<Fingerprint> bucket = buckets.get(key);
+
+            if (bucket != null) {
+                bucket.removeIf(f -> f.postId == p.getId());
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Il numero di testi distinti dei post indicizzati
+     */
+    public int distinctTexts() {
+        return texts.size();
+    }
+
+    /**
+     * @requires text != null
+     * @return text in minuscolo, con ogni sequenza di caratteri diversi da lettere e cifre
+     *         sostituita da un singolo spazio
+     */
+    static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = true;
+
+        for (int i=0; i<text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            }
+            else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        if (sb.length() > 0 && space) {
+            sb.setLength(sb.length() - 1);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @requires text != null && text.length() >= SHINGLE
+     * @return La firma MinHash dei SHINGLE-grammi di caratteri di text: il valore i-esimo è il
+     *         minimo, tra tutti i SHINGLE-grammi, della i-esima funzione hash
+     */
+    static long[] minHash(String text) {
+        long[] ret = new long[HASHES];
+        Arrays.fill(ret, Long.MAX_VALUE);
+
+        for (int i=0; i + SHINGLE <= text.length(); i++) {
+            // Hash FNV-1a del 4-gramma, da cui derivo le HASHES funzioni hash
+            long h = 0xcbf29ce484222325L;
+            for (int j=i; j<i + SHINGLE; j++) {
+                h = (h ^ text.charAt(j)) * 0x100000001b3L;
+            }
+
+            for (int k=0; k<HASHES; k++) {
+                ret[k] = Math.min(ret[k], fmix(h + k * 0x9e3779b97f4a7c15L));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires a != null && b != null && a.length == b.length == HASHES
+     * @return La similarità di Jaccard stimata dalle firme a e b
+     */
+    static double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int k=0; k<HASHES; k++) {
+            if (a[k] == b[k]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    /**
+     * @return La chiave del bucket della banda band di signature
+     */
+    private static Long bucketKey(long[] signature, int band) {
+        long h = band;
+        for (int k=band * ROWS; k<(band + 1) * ROWS; k++) {
+            h = fmix(h * 31 + signature[k]);
+        }
+        return h;
+    }
+
+    /**
+     * @effects Mescola i bit di h (finalizzatore di MurmurHash3)
+     * @return  Il valore mescolato
+     */
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Post indicizzati con lo stesso testo
+     */
+    private static class TextGroup {
+        private final String text;
+        private int count;
+
+        private TextGroup(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Impronta di un post indicizzato
+     */
+    private static class Fingerprint {
+        private final long postId;
+        private final long[] signature;
+
+        private Fingerprint(long postId, long[] signature) {
+            this.postId = postId;
+            this.signature = signature;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/** Overview:
+ *      EventRingBuffer è un buffer circolare di dimensione fissa tramite cui una rete sociale
+ *      pubblica i propri eventi a più consumatori. Gli slot del buffer sono allocati una volta
+ *      sola alla creazione e riutilizzati: chi pubblica non alloca memoria e non attende i
+ *      consumatori. Un consumatore troppo lento perde gli eventi sovrascritti, e il numero di
+ *      eventi persi viene conteggiato nella sua iscrizione.
+ *
+ *      Un consumatore che non può perdere eventi (ad esempio il journal delle operazioni) usa
+ *      invece un'iscrizione bloccante: chi pubblica un evento che sovrascriverebbe uno slot non
+ *      ancora letto da un'iscrizione bloccante attende che l'iscrizione lo legga o venga chiusa.
+ *
+ *  Typical element:
+ *      <slots, cursor, blocking> in cui:
+ *          - slots = [s0, s1, ..., s(n-1)] sono gli ultimi n eventi pubblicati, in cui
+ *              l'evento di numero progressivo k si trova in slots[k mod n]
+ *          - cursor è il numero progressivo dell'ultimo evento pubblicato
+ *          - blocking sono le iscrizioni bloccanti non ancora chiuse
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.slots, c.cursor, c.blockingSubscriptions>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      slots != null && slots.length > 0 && (slots.length & (slots.length - 1)) == 0 &&
+ *      mask == slots.length - 1 && cursor >= -1 &&
+ *      foreach i in [0, slots.length) -> slots[i] != null &&
+ *      blockingSubscriptions != null &&
+ *      foreach s in blockingSubscriptions -> s.blocking && !s.closed &&
+ *          cursor + 1 - s.nextSequence <= slots.length
+ */
+public class EventRingBuffer {
+    /**
+     * Capacità predefinita del buffer
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * Attesa massima di chi pubblica prima di ricontrollare le iscrizioni bloccanti, in
+     * nanosecondi
+     */
+    private static final long PUBLISH_WAIT_NANOS = 1_000_000;
+
+    /**
+     * Slot preallocati che contengono gli eventi
+     */
+    private final Slot[] slots;
+    /**
+     * Maschera usata per calcolare l'indice dello slot a partire dal numero progressivo
+     */
+    private final int mask;
+    /**
+     * Numero progressivo dell'ultimo evento pubblicato, -1 se non ne è stato pubblicato nessuno
+     */
+    private volatile long cursor;
+    /**
+     * Iscrizioni bloccanti non ancora chiuse
+     */
+    private final List<Subscription> blockingSubscriptions;
+    /**
+     * Thread che sta attendendo un'iscrizione bloccante per pubblicare, null se non ce n'è uno
+     */
+    private volatile Thread publisher;
+
+    /**
+     * @requires capacity > 0
+     * @param capacity Il numero minimo di eventi che il buffer deve poter contenere
+     *
+     * @effects Crea un buffer la cui capacità è la più piccola potenza di 2 maggiore o uguale
+     *          a capacity, preallocandone tutti gli slot.
+     * @modifies this.slots, this.mask, this.cursor
+     * @throws IllegalArgumentException Se capacity <= 0 || capacity > 2^30
+     */
+    public EventRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacità del buffer non valida: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        slots = new Slot[size];
+        for (int i=0; i<size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+        cursor = -1;
+        blockingSubscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * @effects Crea un buffer di capacità DEFAULT_CAPACITY
+     */
+    public EventRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @requires type != null && il metodo non viene chiamato da più thread contemporaneamente
+     * @param type Il tipo dell'evento
+     * @param user L'utente coinvolto nell'evento, può essere null
+     * @param post Il post coinvolto nell'evento, può essere null
+     * @param word La parola coinvolta nell'evento, può essere null
+     *
+     * @effects Pubblica un evento sovrascrivendo lo slot più vecchio, senza allocare memoria.
+     *          Se lo slot non è ancora stato letto da un'iscrizione bloccante, attende che lo
+     *          legga; non attende mai le altre iscrizioni.
+     * @modifies this.slots, this.cursor
+     * @return  L'evento pubblicato, valido fino alla pubblicazione successiva
+     * @throws NullPointerException Se type == null
+     */
+    public SocialNetworkEvent publish(SocialNetworkEvent.Type type, String user, Post post, String word) {
+        if (type == null) {
+            throw new NullPointerException("Il tipo dell'evento non può essere null");
+        }
+
+        long next = cursor + 1;
+        Slot slot = slots[(int) (next & mask)];
+
+        for (Subscription s : blockingSubscriptions) {
+            awaitSlot(s, next);
+        }
+
+        // Segnalo ai consumatori che lo slot è in scrittura prima di modificarlo
+        slot.sequence = -1;
+        VarHandle.storeStoreFence();
+        slot.type = type;
+        slot.user = user;
+        slot.post = post;
+        slot.word = word;
+        slot.sequence = next;
+
+        cursor = next;
+        for (Subscription s : blockingSubscriptions) {
+            Thread waiter = s.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * @effects Crea una nuova iscrizione al flusso di eventi, che riceverà tutti gli eventi
+     *          pubblicati a partire da questo momento.
+     * @return  L'iscrizione creata
+     */
+    public Subscription subscribe() {
+        return new Subscription(cursor + 1, false);
+    }
+
+    /**
+     * @effects Crea una nuova iscrizione bloccante al flusso di eventi, che riceverà tutti gli
+     *          eventi pubblicati a partire da questo momento senza perderne nessuno. Finché
+     *          l'iscrizione non viene chiusa con Subscription.close(), publish attende che
+     *          l'iscrizione legga gli eventi più vecchi prima di sovrascriverli: va letta da un
+     *          thread che non dipende da chi pubblica.
+     * @modifies this.blockingSubscriptions
+     * @return  L'iscrizione creata
+     */
+    public Subscription subscribeBlocking() {
+        Subscription ret = new Subscription(cursor + 1, true);
+        blockingSubscriptions.add(ret);
+        return ret;
+    }
+
+    /**
+     * @requires s è un'iscrizione bloccante && next == cursor + 1
+     * @effects Attende che s abbia letto l'evento contenuto nello slot di next, oppure che s
+     *          venga chiusa
+     * @modifies this.publisher
+     */
+    private void awaitSlot(Subscription s, long next) {
+        while (!s.closed && next - s.nextSequence >= slots.length) {
+            publisher = Thread.currentThread();
+            // Ricontrollo dopo essermi registrato, per non perdere il risveglio
+            if (!s.closed && next - s.nextSequence >= slots.length) {
+                LockSupport.parkNanos(this, PUBLISH_WAIT_NANOS);
+            }
+            publisher = null;
+        }
+    }
+
+    /**
+     * @return La capacità del buffer
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return Il numero progressivo dell'ultimo evento pubblicato, -1 se non ce ne sono
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /** Overview:
+     *      Subscription rappresenta la posizione di un consumatore all'interno del flusso di
+     *      eventi. Ogni iscrizione avanza in modo indipendente dalle altre e va usata da un
+     *      solo thread alla volta.
+     *
+     *  Representation Invariant:
+     *      f(c): C -> Bool = nextSequence >= 0 && lostEvents >= 0 && view != null &&
+     *          (blocking => lostEvents == 0)
+     */
+    public class Subscription {
+        /**
+         * Numero progressivo del prossimo evento da consegnare
+         */
+        private volatile long nextSequence;
+        /**
+         * Numero di eventi sovrascritti prima di essere consegnati
+         */
+        private long lostEvents;
+        /**
+         * Evento riutilizzato per consegnare le copie degli slot al consumatore
+         */
+        private final Slot view;
+        /**
+         * True se chi pubblica attende che l'iscrizione legga gli eventi prima di sovrascriverli
+         */
+        private final boolean blocking;
+        /**
+         * True se l'iscrizione è stata chiusa con close()
+         */
+        private volatile boolean closed;
+        /**
+         * Thread che attende nuovi eventi in awaitEvents, null se non ce n'è uno
+         */
+        private volatile Thread waiter;
+
+        /**
+         * @param from     Il numero progressivo del primo evento da consegnare
+         * @param blocking True per creare un'iscrizione bloccante
+         * @effects Crea un'iscrizione che parte dall'evento from
+         */
+        private Subscription(long from, boolean blocking) {
+            nextSequence = from;
+            lostEvents = 0;
+            view = new Slot();
+            this.blocking = blocking;
+        }
+
+        /**
+         * @requires listener != null && maxBatch > 0
+         * @param listener Il consumatore a cui consegnare gli eventi
+         * @param maxBatch Il numero massimo di eventi da consegnare
+         *
+         * @effects Consegna a listener, in ordine, al più maxBatch eventi non ancora letti. Se
+         *          alcuni eventi sono stati sovrascritti prima di essere letti, vengono saltati
+         *          e aggiunti al conteggio degli eventi persi.
+         * @modifies this.nextSequence, this.lostEvents
+         * @return  Il numero di eventi consegnati
+         * @throws NullPointerException Se listener == null
+         * @throws IllegalArgumentException Se maxBatch <= 0
+         */
+        public int poll(SocialNetworkListener listener, int maxBatch) {
+            if (listener == null) {
+                throw new NullPointerException("Il consumatore degli eventi non può essere null");
+            }
+            if (maxBatch <= 0) {
+                throw new IllegalArgumentException("Il numero di eventi da leggere deve essere positivo");
+            }
+
+            int delivered = 0;
+
+            while (delivered < maxBatch) {
+                long available = cursor;
+
+                if (nextSequence > available) {
+                    break;
+                }
+                // Salto gli eventi che sono già stati sovrascritti
+                if (available - nextSequence >= slots.length) {
+                    skipTo(available - slots.length + 1);
+                }
+
+                Slot slot = slots[(int) (nextSequence & mask)];
+                long before = slot.sequence;
+                view.type = slot.type;
+                view.user = slot.user;
+                view.post = slot.post;
+                view.word = slot.word;
+                VarHandle.loadLoadFence();
+
+                // Se lo slot è stato riscritto durante la lettura, la copia non è valida
+                if (before != nextSequence || slot.sequence != nextSequence) {
+                    skipTo(Math.max(nextSequence + 1, cursor - slots.length + 1));
+                    continue;
+                }
+
+                view.sequence = nextSequence;
+                nextSequence++;
+                delivered++;
+                if (blocking) {
+                    // Lo slot è stato copiato: chi pubblica può sovrascriverlo
+                    Thread waiting = publisher;
+                    if (waiting != null) {
+                        LockSupport.unpark(waiting);
+                    }
+                }
+                listener.onEvent(view);
+            }
+
+            return delivered;
+        }
+
+        /**
+         * @requires timeoutNanos >= 0
+         * @param timeoutNanos L'attesa massima in nanosecondi
+         *
+         * @effects Attende che ci siano eventi non ancora consegnati, al più per timeoutNanos
+         *          nanosecondi. Un'iscrizione bloccante viene risvegliata non appena un evento
+         *          viene pubblicato; le altre ricontrollano soltanto allo scadere dell'attesa.
+         * @modifies this.waiter
+         */
+        public void awaitEvents(long timeoutNanos) {
+            if (getLag() > 0) {
+                return;
+            }
+
+            waiter = Thread.currentThread();
+            try {
+                // Ricontrollo dopo essermi registrato, per non perdere il risveglio
+                if (getLag() == 0) {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+            }
+            finally {
+                waiter = null;
+            }
+        }
+
+        /**
+         * @effects Chiude l'iscrizione: se è bloccante, chi pubblica smette di attenderla.
+         *          Un'iscrizione non bloccante può essere semplicemente abbandonata.
+         * @modifies this.closed, EventRingBuffer.this.blockingSubscriptions
+         */
+        public void close() {
+            closed = true;
+            blockingSubscriptions.remove(this);
+
+            Thread waiting = publisher;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+
+        /**
+         * @return Il numero di eventi pubblicati ma non ancora consegnati a questa iscrizione
+         */
+        public long getLag() {
+            return Math.max(0, cursor + 1 - nextSequence);
+        }
+
+        /**
+         * @return Il numero di eventi persi perché sovrascritti prima di essere letti
+         */
+        public long getLostEvents() {
+            return lostEvents;
+        }
+
+        /**
+         * @param sequence Il numero progressivo da cui riprendere la lettura
+         * @effects Salta gli eventi fino a sequence, contandoli come persi
+         * @modifies this.nextSequence, this.lostEvents
+         */
+        private void skipTo(long sequence) {
+            if (sequence > nextSequence) {
+                lostEvents += sequence - nextSequence;
+                nextSequence = sequence;
+            }
+        }
+    }
+
+    /**
+     * Slot del buffer, modificabile e riutilizzato per tutti gli eventi che vi transitano
+     */
+    private static class Slot implements SocialNetworkEvent {
+        private volatile long sequence = -1;
+        private SocialNetworkEvent.Type type;
+        private String user;
+        private Post post;
+        private String word;
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        @Override
+        public String getUser() {
+            return user;
+        }
+
+        @Override
+        public Post getPost() {
+            return post;
+        }
+
+        @Override
+        public String getWord() {
+            return word;
+        }
+    }
+}
@@ -2,10 +2,10 @@ package Exceptions.Likes;
 
 public class AutoLikeException extends Exception{
     public AutoLikeException() {
-        super();
+        super(null, null, false, false);
     }
 
     public AutoLikeException(String liker, long postId) {
-        super("Impossibile mettere like da parte di " + liker + " al post " + postId + " poiché è stato lui a pubblicarlo");
+        super("Impossibile mettere like da parte di " + liker + " al post " + postId + " poiché è stato lui a pubblicarlo", null, false, false);
     }
 }
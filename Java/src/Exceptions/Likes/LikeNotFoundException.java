@@ -2,10 +2,10 @@ package Exceptions.Likes;
 
 public class LikeNotFoundException extends Exception {
     public LikeNotFoundException() {
-        super();
+        super(null, null, false, false);
     }
 
     public LikeNotFoundException(String liker, long postId) {
-        super("Impossibile trovare il like da parte di " + liker + " al post " + postId);
+        super("Impossibile trovare il like da parte di " + liker + " al post " + postId, null, false, false);
     }
 }
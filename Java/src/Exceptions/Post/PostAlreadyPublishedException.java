@@ -2,10 +2,10 @@ package Exceptions.Post;
 
 public class PostAlreadyPublishedException extends Exception{
     public PostAlreadyPublishedException() {
-        super();
+        super(null, null, false, false);
     }
 
     public PostAlreadyPublishedException(long id) {
-        super("Il post con id " + id + " è già presente all'interno della rete.");
+        super("Il post con id " + id + " è già presente all'interno della rete.", null, false, false);
     }
 }
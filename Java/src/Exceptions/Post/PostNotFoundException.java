@@ -2,14 +2,14 @@ package Exceptions.Post;
 
 public class PostNotFoundException extends Exception {
     public PostNotFoundException() {
-        super();
+        super(null, null, false, false);
     }
 
     public PostNotFoundException(long id) {
-        super("Impossibile trovare il post " + id);
+        super("Impossibile trovare il post " + id, null, false, false);
     }
 
     public PostNotFoundException(String s) {
-        super(s);
+        super(s, null, false, false);
     }
 }
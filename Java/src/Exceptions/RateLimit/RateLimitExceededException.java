@@ -0,0 +1,13 @@
+package Exceptions.RateLimit;
+
+public class RateLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitExceededException() {
+        super(null, null, false, false);
+    }
+
+    public RateLimitExceededException(String user, String operation) {
+        super("L'utente " + user + " ha superato il limite di richieste per l'operazione " + operation, null, false, false);
+    }
+}
@@ -2,10 +2,10 @@ package Exceptions.Reporting;
 
 public class AutoReportException extends Exception{
     public AutoReportException() {
-        super();
+        super(null, null, false, false);
     }
 
     public AutoReportException(String s) {
-        super(s);
+        super(s, null, false, false);
     }
 }
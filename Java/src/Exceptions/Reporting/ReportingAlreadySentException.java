@@ -2,10 +2,10 @@ package Exceptions.Reporting;
 
 public class ReportingAlreadySentException extends Exception {
     public ReportingAlreadySentException() {
-        super();
+        super(null, null, false, false);
     }
 
     public ReportingAlreadySentException(String s) {
-        super(s);
+        super(s, null, false, false);
     }
 }
@@ -2,14 +2,14 @@ package Exceptions.User;
 
 public class UserNotFoundException extends Exception{
     public UserNotFoundException() {
-        super();
+        super(null, null, false, false);
     }
 
     public UserNotFoundException(String user) {
-        super("Impossibile trovare l'utente " + user);
+        super("Impossibile trovare l'utente " + user, null, false, false);
     }
 
     public UserNotFoundException(String message, String user) {
-        super(String.format(message, user));
+        super(String.format(message, user), null, false, false);
     }
 }
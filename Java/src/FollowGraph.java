@@ -0,0 +1,516 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Overview:
+ *      FollowGraph è un dato mutabile che rappresenta il grafo "segue" di una rete sociale
+ *      tramite liste di adiacenza di interi: ogni utente riceve un identificatore numerico e
+ *      gli archi sono memorizzati in array di int, in modo che le visite del grafo non
+ *      richiedano confronti tra stringhe né allocazioni per ogni arco.
+ *
+ *  Typical element:
+ *      <users, following> in cui:
+ *          - users = {u1, u2, ...} è l'insieme degli utenti del grafo
+ *          - following = {(u1, v1), (u2, v2), ...} in cui (u, v) indica che u segue v
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{c.names[i] | c.names[i] != null},
+ *                      {(c.names[i], c.names[out[i][k]]) | 0 <= k < c.outSize[i]}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      ids != null && names != null && out != null && in != null && outSize != null && inSize != null &&
+ *      outGen != null && inGen != null && outGen.length == inGen.length == names.length &&
+ *      foreach u in ids.keys -> names[ids(u)] == u &&
+ *      foreach i in [0, count) -> (names[i] == null <=> outSize[i] == 0 && inSize[i] == 0) &&
+ *      // Gli archi uscenti e quelli entranti descrivono lo stesso grafo, senza duplicati
+ *      foreach i, j in [0, count) -> (j in out[i][0..outSize[i]) <=> i in in[j][0..inSize[j]))
+ */
+public class FollowGraph {
+    /**
+     * Numero massimo predefinito di archi visitati da una raccomandazione
+     */
+    public static final int DEFAULT_VISITED_EDGES = 20000;
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Identificatore numerico di ogni utente
+     */
+    private final Map<String, Integer> ids;
+    /**
+     * Nome dell'utente con un certo identificatore, null se l'utente è stato rimosso
+     */
+    private String[] names;
+    /**
+     * Utenti seguiti da ogni utente
+     */
+    private int[][] out;
+    /**
+     * Follower di ogni utente
+     */
+    private int[][] in;
+    /**
+     * Numero di elementi validi di ogni lista di out
+     */
+    private int[] outSize;
+    /**
+     * Numero di elementi validi di ogni lista di in
+     */
+    private int[] inSize;
+    /**
+     * Generazione in cui è stata allocata ogni lista di out e di in: una lista può essere
+     * modificata sul posto soltanto se è della generazione corrente, altrimenti è condivisa
+     * con una copia creata da share()
+     */
+    private int[] outGen;
+    private int[] inGen;
+    /**
+     * Generazione corrente, incrementata da share()
+     */
+    private int generation;
+    /**
+     * Numero di identificatori assegnati
+     */
+    private int count;
+
+    /**
+     * @effects Crea un grafo vuoto
+     */
+    public FollowGraph() {
+        ids = new HashMap<>();
+        names = new String[16];
+        out = new int[16][];
+        in = new int[16][];
+        outSize = new int[16];
+        inSize = new int[16];
+        outGen = new int[16];
+        inGen = new int[16];
+        generation = 0;
+        count = 0;
+    }
+
+    /**
+     * @requires source != null
+     * @param source Il grafo da copiare
+     * @effects Crea una copia indipendente di source
+     * @throws NullPointerException Se source == null
+     */
+    public FollowGraph(FollowGraph source) {
+        this(source, true);
+    }
+
+    /**
+     * @requires source != null
+     * @param source Il grafo da copiare
+     * @param deep   True per copiare anche le liste di adiacenza, false per condividerle
+     * @effects Crea una copia di source; se deep è false la copia tratta tutte le liste come
+     *          condivise e le copia prima di modificarle
+     */
+    private FollowGraph(FollowGraph source, boolean deep) {
+        ids = new HashMap<>(source.ids);
+        names = source.names.clone();
+        out = source.out.clone();
+        in = source.in.clone();
+        if (deep) {
+            for (int i=0; i<source.count; i++) {
+                out[i] = source.out[i] == null ? null : source.out[i].clone();
+                in[i] = source.in[i] == null ? null : source.in[i].clone();
+            }
+        }
+        outSize = source.outSize.clone();
+        inSize = source.inSize.clone();
+        outGen = new int[names.length];
+        inGen = new int[names.length];
+        generation = deep ? 0 : 1;
+        count = source.count;
+    }
+
+    /**
+     * @effects Crea una copia di this che condivide con this le liste di adiacenza: il costo
+     *          è proporzionale al numero di utenti e non al numero di archi. Da questo momento
+     *          this copia ogni lista condivisa la prima volta che la modifica, per cui le
+     *          modifiche a this non sono visibili nella copia.
+     * @modifies this.generation
+     * @return  La copia di this
+     */
+    public FollowGraph share() {
+        FollowGraph copy = new FollowGraph(this, false);
+        generation++;
+        return copy;
+    }
+
+    /**
+     * @requires user != null && !users.contains(user)
+     * @param user L'utente da aggiungere
+     * @effects Aggiunge user al grafo, assegnandogli un nuovo identificatore
+     * @modifies this
+     * @throws NullPointerException Se user == null
+     */
+    public void addUser(String user) {
+        if (user == null) {
+            throw new NullPointerException("L'utente da aggiungere al grafo non può essere null");
+        }
+        if (ids.containsKey(user)) {
+            return;
+        }
+        if (count == names.length) {
+            int size = names.length * 2;
+            names = Arrays.copyOf(names, size);
+            out = Arrays.copyOf(out, size);
+            in = Arrays.copyOf(in, size);
+            outSize = Arrays.copyOf(outSize, size);
+            inSize = Arrays.copyOf(inSize, size);
+            outGen = Arrays.copyOf(outGen, size);
+            inGen = Arrays.copyOf(inGen, size);
+        }
+
+        names[count] = user;
+        out[count] = EMPTY;
+        in[count] = EMPTY;
+        ids.put(user, count);
+        count++;
+    }
+
+    /**
+     * @requires user != null
+     * @param user L'utente da rimuovere
+     * @effects Rimuove user e tutti gli archi che lo coinvolgono. L'identificatore di user non
+     *          viene riassegnato.
+     * @modifies this
+     */
+    public void removeUser(String user) {
+        Integer id = ids.remove(user);
+        if (id == null) {
+            return;
+        }
+
+        for (int k=0; k<outSize[id]; k++) {
+            removeFrom(in, inSize, inGen, out[id][k], id);
+        }
+        for (int k=0; k<inSize[id]; k++) {
+            removeFrom(out, outSize, outGen, in[id][k], id);
+        }
+        names[id] = null;
+        out[id] = EMPTY;
+        in[id] = EMPTY;
+        outSize[id] = 0;
+        inSize[id] = 0;
+    }
+
+    /**
+     * @requires follower != null && author != null && users.contains(follower) &&
+     *           users.contains(author) && !following.contains((follower, author))
+     * @effects Aggiunge l'arco (follower, author), senza controllare se è già presente
+     * @modifies this
+     */
+    public void addEdge(String follower, String author) {
+        Integer from = ids.get(follower);
+        Integer to = ids.get(author);
+        if (from == null || to == null) {
+            return;
+        }
+
+        out[from] = append(own(out, outGen, from), outSize[from]++, to);
+        in[to] = append(own(in, inGen, to), inSize[to]++, from);
+    }
+
+    /**
+     * @requires follower != null && author != null
+     * @effects Rimuove l'arco (follower, author) se è presente
+     * @modifies this
+     */
+    public void removeEdge(String follower, String author) {
+        Integer from = ids.get(follower);
+        Integer to = ids.get(author);
+        if (from == null || to == null) {
+            return;
+        }
+
+        removeFrom(out, outSize, outGen, from, to);
+        removeFrom(in, inSize, inGen, to, from);
+    }
+
+    /**
+     * @return Il numero di identificatori assegnati, compresi quelli degli utenti rimossi
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @requires 0 <= id < size()
+     * @return Il nome dell'utente con identificatore id, null se è stato rimosso
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @requires 0 <= id < size()
+     * @return Il numero di utenti seguiti dall'utente id
+     */
+    public int outDegree(int id) {
+        return outSize[id];
+    }
+
+    /**
+     * @requires 0 <= id < size()
+     * @return Il numero di follower dell'utente id
+     */
+    public int inDegree(int id) {
+        return inSize[id];
+    }
+
+    /**
+     * @requires 0 <= id < size() && 0 <= k < inDegree(id)
+     * @return L'identificatore del k-esimo follower dell'utente id
+     */
+    public int follower(int id, int k) {
+        return in[id][k];
+    }
+
+    /**
+     * @requires user != null && users.contains(user) && limit > 0 && maxEdges > 0
+     * @param user     L'utente a cui suggerire chi seguire
+     * @param limit    Il numero massimo di suggerimenti
+     * @param maxEdges Il numero massimo di archi da visitare
+     *
+     * @effects Suggerisce a user degli autori che non segue ancora, assegnando a ogni candidato
+     *          c un punteggio pari al numero di follower (distinti) degli autori seguiti da
+     *          user che seguono anche c. La visita dei tre livelli di archi (user -> autore,
+     *          follower -> autore, follower -> candidato) si ferma dopo maxEdges archi in
+     *          tutto: gli archi disponibili vengono divisi in parti uguali tra gli autori
+     *          seguiti e, per ogni autore, tra circa la radice quadrata della sua parte di
+     *          follower, scelti a caso; la parte non usata da un autore o da un follower passa
+     *          ai successivi. Il costo è quindi proporzionale a maxEdges più il numero di
+     *          autori seguiti da user, e non dipende dal numero di utenti né dal loro grado.
+     * @return  Al più limit utenti ordinati per punteggio non crescente e, a parità, per nome
+     * @throws IllegalArgumentException Se limit <= 0 || maxEdges <= 0
+     */
+    public List<String> recommend(String user, int limit, int maxEdges) {
+        if (limit <= 0 || maxEdges <= 0) {
+            throw new IllegalArgumentException("I limiti della raccomandazione devono essere positivi");
+        }
+        Integer id = ids.get(user);
+        if (id == null) {
+            return new ArrayList<>();
+        }
+
+        // Punteggi dei soli candidati incontrati, per non allocare memoria per tutti gli utenti
+        Counts scores = new Counts();
+        Counts visited = new Counts();
+
+        // Escludo user e gli autori che segue già
+        scores.add(id, Integer.MIN_VALUE);
+        for (int k=0; k<outSize[id]; k++) {
+            scores.add(out[id][k], Integer.MIN_VALUE);
+        }
+
+        int[] authors = sample(out[id], outSize[id], maxEdges);
+        int left = maxEdges - authors.length;
+
+        for (int i=0; i<authors.length && left > 0; i++) {
+            // Archi a disposizione dell'autore: una parte uguale di quelli rimasti
+            int share = Math.max(1, left / (authors.length - i));
+            int author = authors[i];
+            int[] followers = sample(in[author], inSize[author], Math.max(1, (int) Math.sqrt(share)));
+            int spent = 0;
+
+            for (int j=0; j<followers.length && spent < share; j++) {
+                int f = followers[j];
+                spent++;
+                // Un follower di più autori seguiti viene contato una volta sola
+                if (f == id || visited.add(f, 1) > 1) {
+                    continue;
+                }
+                int[] hop = sample(out[f], outSize[f], (share - spent) / (followers.length - j));
+                for (int candidate : hop) {
+                    scores.add(candidate, 1);
+                }
+                spent += hop.length;
+            }
+            left -= spent;
+        }
+
+        // Ordino i candidati per punteggio e, a parità, per nome
+        List<Integer> candidates = new ArrayList<>();
+        for (int i=0; i<scores.keys.length; i++) {
+            if (scores.values[i] > 0) {
+                candidates.add(scores.keys[i]);
+            }
+        }
+        candidates.sort(new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int byScore = Integer.compare(scores.get(b), scores.get(a));
+                return byScore != 0 ? byScore : names[a].compareTo(names[b]);
+            }
+        });
+
+        List<String> ret = new ArrayList<>();
+        for (int i=0; i<candidates.size() && ret.size() < limit; i++) {
+            ret.add(names[candidates.get(i)]);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires list != null && 0 <= size <= list.length
+     * @effects Fornisce i primi size elementi di list se sono al più max, altrimenti un
+     *          campione casuale di max di essi. Se max è molto più piccolo di size gli
+     *          elementi vengono scelti con l'algoritmo di Floyd, senza copiare la lista, per
+     *          cui il costo è proporzionale alla dimensione del campione.
+     * @return  Il campione, vuoto se max <= 0
+     */
+    private static int[] sample(int[] list, int size, int max) {
+        if (max <= 0) {
+            return EMPTY;
+        }
+        if (size <= max) {
+            return Arrays.copyOf(list, size);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] ret = new int[max];
+
+        if (size <= 2 * max) {
+            // Mescolamento parziale di Fisher-Yates su una copia
+            int[] copy = Arrays.copyOf(list, size);
+            for (int i=0; i<max; i++) {
+                int j = i + random.nextInt(size - i);
+                ret[i] = copy[j];
+                copy[j] = copy[i];
+            }
+            return ret;
+        }
+
+        Counts chosen = new Counts();
+        int n = 0;
+        for (int j=size-max; j<size; j++) {
+            int t = random.nextInt(j + 1);
+            int pick = chosen.get(t) != 0 ? j : t;
+            chosen.add(pick, 1);
+            ret[n++] = list[pick];
+        }
+        return ret;
+    }
+
+    /**
+     * @effects Aggiunge value in posizione size di list, ingrandendola se necessario
+     * @return  La lista, eventualmente riallocata
+     */
+    private static int[] append(int[] list, int size, int value) {
+        if (size == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, size * 2));
+        }
+        list[size] = value;
+        return list;
+    }
+
+    /**
+     * @return La posizione di value nei primi size elementi di list, -1 se non è presente
+     */
+    private static int indexOf(int[] list, int size, int value) {
+        for (int i=0; i<size; i++) {
+            if (list[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @effects Rimuove value dalla lista lists[owner] sostituendolo con l'ultimo elemento
+     * @modifies lists[owner], sizes[owner], gens[owner]
+     */
+    private void removeFrom(int[][] lists, int[] sizes, int[] gens, int owner, int value) {
+        int i = indexOf(lists[owner], sizes[owner], value);
+        if (i >= 0) {
+            int[] list = own(lists, gens, owner);
+            sizes[owner]--;
+            list[i] = list[sizes[owner]];
+        }
+    }
+
+    /**
+     * @effects Copia la lista lists[owner] se è condivisa con una copia creata da share()
+     * @modifies lists[owner], gens[owner]
+     * @return  La lista lists[owner], che può essere modificata sul posto
+     */
+    private int[] own(int[][] lists, int[] gens, int owner) {
+        if (gens[owner] != generation) {
+            lists[owner] = lists[owner].clone();
+            gens[owner] = generation;
+        }
+        return lists[owner];
+    }
+
+    /**
+     * Contatori associati a degli identificatori, in una tabella hash a indirizzamento aperto
+     * che occupa memoria proporzionale ai soli identificatori inseriti. I valori 0 indicano
+     * le posizioni libere; i contatori con valore negativo non vengono più incrementati.
+     */
+    private static class Counts {
+        private int[] keys = new int[16];
+        private int[] values = new int[16];
+        private int size;
+
+        /**
+         * @requires delta != 0
+         * @effects Somma delta al contatore di key, a meno che non sia negativo
+         * @return  Il nuovo valore del contatore
+         */
+        private int add(int key, int delta) {
+            int i = slot(key);
+            if (values[i] == 0) {
+                keys[i] = key;
+                values[i] = delta;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return delta;
+            }
+            if (values[i] > 0) {
+                values[i] += delta;
+            }
+            return values[i];
+        }
+
+        /**
+         * @return Il contatore di key, 0 se key non è stato inserito
+         */
+        private int get(int key) {
+            return values[slot(key)];
+        }
+
+        /**
+         * @return La posizione di key nella tabella, o la posizione libera in cui inserirlo
+         */
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int h = key * 0x9e3779b9;
+            int i = (h ^ h >>> 16) & mask;
+            while (values[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * @effects Raddoppia la tabella reinserendo i contatori
+         */
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            for (int i=0; i<oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    int j = slot(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.Arrays;
+
+/** Overview:
+ *      HyperLogLog è un dato mutabile che stima il numero di stringhe distinte che gli sono
+ *      state aggiunte usando una quantità di memoria limitata (al più 2^precision byte),
+ *      indipendentemente da quante stringhe vengono aggiunte. L'errore standard relativo
+ *      della stima è circa 1.04 / sqrt(2^precision), ad esempio 3.25% con precision = 10.
+ *
+ *      Finché pochi registri sono diversi da 0 lo sketch mantiene solo questi ultimi (4 byte
+ *      ciascuno, rappresentazione sparsa), così che uno sketch con poche stringhe occupi pochi
+ *      byte; quando la rappresentazione sparsa supererebbe quella completa passa
+ *      definitivamente a quest'ultima. La stima non dipende dalla rappresentazione.
+ *
+ *  Typical element:
+ *      <registers> in cui registers = [r0, r1, ..., r(m-1)] e ri è la massima posizione del
+ *      primo bit a 1 tra gli hash delle stringhe assegnate al registro i
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <r0, ..., r(m-1)> in cui m = 2^c.precision e
+ *          - se c.registers != null: ri = c.registers[i]
+ *          - altrimenti: ri = rank(e) se esiste e in c.sparse[0, c.sparseSize) con index(e) == i,
+ *              0 altrimenti
+ *      dove index(e) = e >>> 8 e rank(e) = e & 0xff
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      4 <= precision <= 16 &&
+ *      (registers != null => registers.length == 2^precision &&
+ *          foreach i in [0, registers.length) -> 0 <= registers[i] <= 64 - precision + 1) &&
+ *      (registers == null => sparse != null && 0 <= sparseSize <= sparse.length &&
+ *          sparseSize <= 2^precision / 4 &&
+ *          // Indici strettamente crescenti e solo registri diversi da 0
+ *          foreach i in [1, sparseSize) -> index(sparse[i-1]) < index(sparse[i]) &&
+ *          foreach i in [0, sparseSize) -> 1 <= rank(sparse[i]) <= 64 - precision + 1)
+ */
+public class HyperLogLog {
+    /**
+     * Precisione predefinita, che corrisponde a 1024 registri e a un errore di circa il 3.25%
+     */
+    public static final int DEFAULT_PRECISION = 10;
+
+    /**
+     * Numero di bit dell'hash usati per scegliere il registro
+     */
+    private final int precision;
+    /**
+     * Registri dello sketch, null finché viene usata la rappresentazione sparsa
+     */
+    private byte[] registers;
+    /**
+     * Registri diversi da 0 nella rappresentazione sparsa, ognuno codificato come
+     * (indice << 8) | valore e ordinati per indice
+     */
+    private int[] sparse;
+    /**
+     * Numero di elementi usati di sparse
+     */
+    private int sparseSize;
+
+    /**
+     * @requires 4 <= precision <= 16
+     * @param precision Il logaritmo in base 2 del numero di registri
+     * @effects Crea uno sketch vuoto
+     * @throws IllegalArgumentException Se precision < 4 || precision > 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precisione non valida: " + precision);
+        }
+
+        this.precision = precision;
+        this.sparse = new int[4];
+    }
+
+    /**
+     * @effects Crea uno sketch vuoto di precisione DEFAULT_PRECISION
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @requires value != null
+     * @param value La stringa da aggiungere
+     * @effects Aggiunge value all'insieme di cui stimare la cardinalità
+     * @modifies this.registers, this.sparse, this.sparseSize
+     * @throws NullPointerException Se value == null
+     */
+    public void add(String value) {
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        // Posizione del primo bit a 1 tra i bit rimanenti
+        long rest = hash << precision;
+        int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+
+        if (registers == null) {
+            int pos = find(index);
+            if (pos >= 0) {
+                if (rank > (sparse[pos] & 0xff)) {
+                    sparse[pos] = index << 8 | rank;
+                }
+                return;
+            }
+            if (sparseSize < (1 << precision) / 4) {
+                insert(-pos - 1, index << 8 | rank);
+                return;
+            }
+            toDense();
+        }
+
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * @requires registers == null
+     * @return La posizione in sparse del registro index se è presente, altrimenti
+     *         -(posizione in cui inserirlo) - 1
+     */
+    private int find(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int current = sparse[mid] >>> 8;
+            if (current < index) {
+                low = mid + 1;
+            }
+            else if (current > index) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * @requires registers == null && 0 <= pos <= sparseSize
+     * @effects Inserisce entry in sparse nella posizione pos
+     * @modifies this.sparse, this.sparseSize
+     */
+    private void insert(int pos, int entry) {
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, (1 << precision) / 4));
+        }
+        System.arraycopy(sparse, pos, sparse, pos + 1, sparseSize - pos);
+        sparse[pos] = entry;
+        sparseSize++;
+    }
+
+    /**
+     * @requires registers == null
+     * @effects Passa alla rappresentazione completa
+     * @modifies this.registers, this.sparse, this.sparseSize
+     */
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (int i=0; i<sparseSize; i++) {
+            registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xff);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    /**
+     * @effects Stima il numero di stringhe distinte aggiunte, con la correzione per le
+     *          cardinalità piccole (linear counting) quando molti registri sono vuoti.
+     * @return  La stima della cardinalità
+     */
+    public long estimate() {
+        int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+
+        if (registers != null) {
+            for (byte r : registers) {
+                sum += 1.0 / (1L << r);
+                if (r == 0) {
+                    zeros++;
+                }
+            }
+        }
+        else {
+            zeros = m - sparseSize;
+            sum = zeros;
+            for (int i=0; i<sparseSize; i++) {
+                sum += 1.0 / (1L << (sparse[i] & 0xff));
+            }
+        }
+
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return Il numero di byte occupati dai registri, al più 2^precision
+     */
+    public int sizeInBytes() {
+        return registers != null ? registers.length : sparse.length * Integer.BYTES;
+    }
+
+    /**
+     * @requires value != null
+     * @param value La stringa di cui calcolare l'hash
+     *
+     * @effects Calcola un hash a 64 bit di value (FNV-1a seguito dal finalizzatore di
+     *          MurmurHash3), con bit ben distribuiti come richiesto dagli sketch.
+     * @return  L'hash di value
+     * @throws NullPointerException Se value == null
+     */
+    public static long hash64(String value) {
+        if (value == null) {
+            throw new NullPointerException("Impossibile calcolare l'hash di una stringa null");
+        }
+
+        long h = 0xcbf29ce484222325L;
+        for (int i=0; i<value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
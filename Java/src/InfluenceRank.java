@@ -0,0 +1,298 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/** Overview:
+ *      InfluenceRank è un dato mutabile che mantiene una classifica degli utenti di una rete
+ *      sociale calcolata con l'algoritmo PageRank sul grafo "segue": un utente è tanto più
+ *      influente quanto più è seguito da utenti a loro volta influenti, per cui molti
+ *      follower poco seguiti (ad esempio account automatici) pesano poco. Il calcolo avviene
+ *      in background, in parallelo su tutti i core disponibili, e ripartisce dai punteggi del
+ *      calcolo precedente; la classifica viene servita da un array già ordinato.
+ *
+ *      I calcoli di tutte le classifiche vengono avviati, uno alla volta, da un unico thread
+ *      condiviso, mentre le iterazioni vengono eseguite nel pool comune dei parallel stream:
+ *      creare una classifica (ad esempio per uno snapshot) non crea thread.
+ *
+ *  Typical element:
+ *      <ranking> in cui ranking = [u1, u2, ..., un] è la lista degli utenti in ordine non
+ *      crescente di punteggio all'ultimo calcolo completato
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.current.names>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      current != null && current.names != null && current.scores != null &&
+ *      current.names.length == current.scores.length &&
+ *      foreach i in [1, current.names.length) -> current.scores[i-1] >= current.scores[i] &&
+ *      (queued == null <=> latest == null)
+ */
+public class InfluenceRank {
+    /**
+     * Probabilità di seguire un arco nel modello di PageRank
+     */
+    public static final double DAMPING = 0.85;
+    /**
+     * Soglia di convergenza: il calcolo termina quando la somma delle variazioni dei
+     * punteggi in un'iterazione è inferiore a questo valore
+     */
+    public static final double EPSILON = 1e-6;
+    /**
+     * Numero massimo di iterazioni di un calcolo
+     */
+    public static final int MAX_ITERATIONS = 100;
+
+    /**
+     * Thread condiviso da tutte le classifiche su cui vengono avviati i calcoli
+     */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "influence-rank");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Ultima classifica calcolata
+     */
+    private volatile Ranking current;
+    /**
+     * Punteggi dell'ultimo calcolo indicizzati per identificatore, usati come punto di partenza
+     */
+    private double[] lastScores;
+    /**
+     * Grafo più recente in attesa di essere elaborato, null se non ce n'è uno
+     */
+    private FollowGraph latest;
+    /**
+     * Risultato del calcolo in attesa, null se non ce n'è uno
+     */
+    private CompletableFuture<Void> queued;
+
+    /**
+     * @effects Crea una classifica vuota
+     */
+    public InfluenceRank() {
+        current = new Ranking(new String[0], new double[0], false);
+        lastScores = new double[0];
+    }
+
+    /**
+     * @requires source != null
+     * @param source La classifica da cui partire
+     *
+     * @effects Crea una classifica che parte dall'ultima classifica calcolata da source (e dai
+     *          suoi punteggi), senza calcoli in attesa. Le due classifiche condividono soltanto
+     *          dati immutabili.
+     * @throws NullPointerException Se source == null
+     */
+    public InfluenceRank(InfluenceRank source) {
+        // run() scrive lastScores prima di current, che è volatile
+        current = source.current;
+        lastScores = source.lastScores;
+    }
+
+    /**
+     * @requires graph != null && graph non viene modificato dopo la chiamata
+     * @param graph Il grafo su cui calcolare la classifica
+     *
+     * @effects Richiede il calcolo in background della classifica su graph. Se un calcolo è
+     *          già in attesa di essere avviato, viene usato il grafo più recente e le due
+     *          richieste condividono lo stesso risultato.
+     * @modifies this.latest, this.queued
+     * @return  Un future completato quando la nuova classifica è disponibile
+     * @throws NullPointerException Se graph == null
+     */
+    public synchronized CompletableFuture<Void> refresh(FollowGraph graph) {
+        if (graph == null) {
+            throw new NullPointerException("Il grafo su cui calcolare la classifica non può essere null");
+        }
+
+        latest = graph;
+        if (queued == null) {
+            queued = new CompletableFuture<>();
+            EXECUTOR.execute(this::run);
+        }
+
+        return queued;
+    }
+
+    /**
+     * @return True se è già stata calcolata almeno una classifica
+     */
+    public boolean hasRanking() {
+        return current.computed;
+    }
+
+    /**
+     * @return True se un calcolo è in attesa di essere avviato
+     */
+    public synchronized boolean isRefreshPending() {
+        return queued != null;
+    }
+
+    /**
+     * @requires k >= 0
+     * @param k Il numero di utenti da restituire
+     *
+     * @effects Fornisce i k utenti più influenti secondo l'ultima classifica calcolata, senza
+     *          effettuare calcoli: il costo è proporzionale a k.
+     * @return  Al più k utenti in ordine non crescente di punteggio
+     * @throws IllegalArgumentException Se k < 0
+     */
+    public List<String> top(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Il numero di utenti da restituire non può essere negativo");
+        }
+
+        Ranking r = current;
+        return Collections.unmodifiableList(Arrays.asList(r.names).subList(0, Math.min(k, r.names.length)));
+    }
+
+    /**
+     * @effects Esegue il calcolo sul grafo più recente e pubblica la nuova classifica
+     * @modifies this.current, this.lastScores, this.latest, this.queued
+     */
+    private void run() {
+        FollowGraph graph;
+        CompletableFuture<Void> done;
+
+        synchronized (this) {
+            graph = latest;
+            done = queued;
+            latest = null;
+            queued = null;
+        }
+
+        try {
+            double[] scores = compute(graph, lastScores);
+            lastScores = scores;
+            current = sort(graph, scores);
+            done.complete(null);
+        }
+        catch (Throwable e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @requires graph != null && start != null
+     * @param graph Il grafo su cui calcolare i punteggi
+     * @param start I punteggi da cui partire, indicizzati per identificatore
+     *
+     * @effects Calcola i punteggi PageRank degli utenti di graph con il metodo delle potenze,
+     *          ripartendo da start per gli utenti già presenti al calcolo precedente. Ogni
+     *          iterazione calcola in parallelo il punteggio di ciascun utente a partire dai
+     *          suoi follower, per cui i thread non scrivono mai sulla stessa posizione.
+     * @return  I punteggi indicizzati per identificatore, 0 per gli utenti rimossi
+     */
+    private static double[] compute(FollowGraph graph, double[] start) {
+        int n = graph.size();
+        double[] scores = new double[n];
+        double[] next = new double[n];
+        int alive = 0;
+        double total = 0;
+
+        for (int i=0; i<n; i++) {
+            if (graph.nameOf(i) != null) {
+                alive++;
+            }
+        }
+        if (alive == 0) {
+            return scores;
+        }
+
+        // Parto dai punteggi precedenti, assegnando agli utenti nuovi il punteggio medio
+        for (int i=0; i<n; i++) {
+            if (graph.nameOf(i) != null) {
+                scores[i] = i < start.length && start[i] > 0 ? start[i] : 1.0 / alive;
+                total += scores[i];
+            }
+        }
+        for (int i=0; i<n; i++) {
+            scores[i] /= total;
+        }
+
+        final int nAlive = alive;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            final double[] cur = scores;
+            final double[] nxt = next;
+
+            // Il punteggio degli utenti che non seguono nessuno viene distribuito a tutti
+            double dangling = IntStream.range(0, n).parallel()
+                    .filter(i -> graph.nameOf(i) != null && graph.outDegree(i) == 0)
+                    .mapToDouble(i -> cur[i]).sum();
+            double base = (1 - DAMPING) / nAlive + DAMPING * dangling / nAlive;
+
+            IntStream.range(0, n).parallel().forEach(v -> {
+                if (graph.nameOf(v) == null) {
+                    nxt[v] = 0;
+                    return;
+                }
+
+                double sum = 0;
+                for (int k=0; k<graph.inDegree(v); k++) {
+                    int u = graph.follower(v, k);
+                    sum += cur[u] / graph.outDegree(u);
+                }
+                nxt[v] = base + DAMPING * sum;
+            });
+
+            double delta = IntStream.range(0, n).parallel().mapToDouble(i -> Math.abs(nxt[i] - cur[i])).sum();
+            next = scores;
+            scores = nxt;
+            if (delta < EPSILON) {
+                break;
+            }
+        }
+
+        return scores;
+    }
+
+    /**
+     * @requires graph != null && scores != null && scores.length == graph.size()
+     * @effects Ordina gli utenti di graph per punteggio non crescente e, a parità, per nome
+     * @return  La classifica ordinata
+     */
+    private static Ranking sort(FollowGraph graph, double[] scores) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i=0; i<graph.size(); i++) {
+            if (graph.nameOf(i) != null) {
+                ids.add(i);
+            }
+        }
+
+        ids.sort(new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int byScore = Double.compare(scores[b], scores[a]);
+                return byScore != 0 ? byScore : graph.nameOf(a).compareTo(graph.nameOf(b));
+            }
+        });
+
+        String[] names = new String[ids.size()];
+        double[] sorted = new double[ids.size()];
+        for (int i=0; i<names.length; i++) {
+            names[i] = graph.nameOf(ids.get(i));
+            sorted[i] = scores[ids.get(i)];
+        }
+
+        return new Ranking(names, sorted, true);
+    }
+
+    /**
+     * Classifica immutabile pubblicata ai lettori
+     */
+    private static class Ranking {
+        private final String[] names;
+        private final double[] scores;
+        private final boolean computed;
+
+        private Ranking(String[] names, double[] scores, boolean computed) {
+            this.names = names;
+            this.scores = scores;
+            this.computed = computed;
+        }
+    }
+}
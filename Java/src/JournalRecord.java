@@ -0,0 +1,220 @@
+import java.time.LocalDateTime;
+
+/** Overview:
+ *      JournalRecord rappresenta una riga immutabile del journal delle operazioni di una rete
+ *      sociale, ovvero la forma testuale di un SocialNetworkEvent. Ogni record occupa una
+ *      riga, con i campi separati da tabulazioni e i caratteri speciali dei testi preceduti
+ *      da '\'.
+ *
+ *  Typical element:
+ *      <sequence, writtenAt, type, user, postId, postAuthor, postText, postTimestamp, word>
+ *      in cui i campi relativi al post sono presenti soltanto se l'evento riguarda un post
+ *      (postId == -1 altrimenti), e il testo e il timestamp del post soltanto per gli
+ *      eventi di pubblicazione.
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.sequence, c.writtenAt, c.type, c.user, c.postId, c.postAuthor,
+ *                      c.postText, c.postTimestamp, c.word>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = type != null && sequence >= -1 &&
+ *          (type == PUBLISH_POST => postId >= 0 && postAuthor != null && postText != null &&
+ *                                   postTimestamp != null)
+ */
+public class JournalRecord {
+    private final long sequence;
+    private final long writtenAt;
+    private final SocialNetworkEvent.Type type;
+    private final String user;
+    private final long postId;
+    private final String postAuthor;
+    private final String postText;
+    private final LocalDateTime postTimestamp;
+    private final String word;
+
+    /**
+     * @requires type != null
+     * @effects Crea un record con i campi passati come parametro
+     */
+    private JournalRecord(long sequence, long writtenAt, SocialNetworkEvent.Type type, String user,
+                          long postId, String postAuthor, String postText, LocalDateTime postTimestamp,
+                          String word) {
+        this.sequence = sequence;
+        this.writtenAt = writtenAt;
+        this.type = type;
+        this.user = user;
+        this.postId = postId;
+        this.postAuthor = postAuthor;
+        this.postText = postText;
+        this.postTimestamp = postTimestamp;
+        this.word = word;
+    }
+
+    /**
+     * @requires event != null
+     * @param event     L'evento da scrivere nel journal
+     * @param writtenAt Il momento della scrittura in millisecondi
+     *
+     * @effects Codifica event in una riga del journal, senza il carattere di fine riga
+     * @return  La riga che rappresenta event
+     * @throws NullPointerException Se event == null
+     */
+    public static String encode(SocialNetworkEvent event, long writtenAt) {
+        Post p = event.getPost();
+        boolean full = p != null && event.getType() == SocialNetworkEvent.Type.PUBLISH_POST;
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(event.getSequence()).append('\t');
+        sb.append(writtenAt).append('\t');
+        sb.append(event.getType().name()).append('\t');
+        sb.append(escape(event.getUser())).append('\t');
+        sb.append(p == null ? -1 : p.getId()).append('\t');
+        sb.append(p == null ? escape(null) : escape(p.getAuthor())).append('\t');
+        sb.append(full ? escape(p.getText()) : escape(null)).append('\t');
+        sb.append(full ? escape(p.getTimestamp().toString()) : escape(null)).append('\t');
+        sb.append(escape(event.getWord()));
+
+        return sb.toString();
+    }
+
+    /**
+     * @requires line != null
+     * @param line Una riga del journal, senza il carattere di fine riga
+     *
+     * @effects Decodifica una riga del journal
+     * @return  Il record rappresentato da line
+     * @throws NullPointerException Se line == null
+     * @throws IllegalArgumentException Se line non è una riga valida del journal
+     */
+    public static JournalRecord decode(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 9) {
+            throw new IllegalArgumentException("Riga del journal non valida: " + line);
+        }
+
+        try {
+            String timestamp = unescape(fields[7]);
+            return new JournalRecord(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    SocialNetworkEvent.Type.valueOf(fields[2]), unescape(fields[3]),
+                    Long.parseLong(fields[4]), unescape(fields[5]), unescape(fields[6]),
+                    timestamp == null ? null : LocalDateTime.parse(timestamp), unescape(fields[8]));
+        }
+        catch (RuntimeException e) {
+            throw new IllegalArgumentException("Riga del journal non valida: " + line, e);
+        }
+    }
+
+    /**
+     * @return Il numero progressivo dell'evento registrato; per le operazioni che descrivono lo
+     *         stato della rete alla creazione del journal, quello dell'ultimo evento della rete
+     *         in quel momento (-1 se non ce n'erano)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Il momento in cui il record è stato scritto, in millisecondi
+     */
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    /**
+     * @return Il tipo di operazione registrata
+     */
+    public SocialNetworkEvent.Type getType() {
+        return type;
+    }
+
+    /**
+     * @return L'utente coinvolto nell'operazione, null se non ce n'è uno
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return L'id del post coinvolto nell'operazione, -1 se non ce n'è uno
+     */
+    public long getPostId() {
+        return postId;
+    }
+
+    /**
+     * @return L'autore del post coinvolto nell'operazione, null se non ce n'è uno
+     */
+    public String getPostAuthor() {
+        return postAuthor;
+    }
+
+    /**
+     * @return Il testo del post pubblicato, null se l'operazione non è una pubblicazione
+     */
+    public String getPostText() {
+        return postText;
+    }
+
+    /**
+     * @return Il timestamp del post pubblicato, null se l'operazione non è una pubblicazione
+     */
+    public LocalDateTime getPostTimestamp() {
+        return postTimestamp;
+    }
+
+    /**
+     * @return La parola proibita coinvolta nell'operazione, null se non ce n'è una
+     */
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * @effects Codifica s in modo che non contenga tabulazioni né fine riga; null è codificato
+     *          come "\0"
+     * @return  La codifica di s
+     */
+    private static String escape(String s) {
+        if (s == null) {
+            return "\\0";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @effects Decodifica una stringa codificata con escape
+     * @return  La stringa originale
+     */
+    private static String unescape(String s) {
+        if (s.equals("\\0")) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            }
+            else {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+}
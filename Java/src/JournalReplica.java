@@ -0,0 +1,356 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Overview:
+ *      JournalReplica è un dato mutabile che mantiene una copia in sola lettura di una rete
+ *      sociale primaria applicando, nello stesso ordine, le operazioni che un JournalWriter
+ *      scrive nel journal. Un thread dedicato legge le righe man mano che vengono aggiunte al
+ *      file (ad esempio su un disco condiviso tra più macchine) e le applica alla rete
+ *      replica, per cui le letture servite dalla replica non gravano sulla rete primaria ma
+ *      possono essere in ritardo rispetto ad essa.
+ *
+ *      La rete replica deve essere una rete nuova dello stesso tipo della rete primaria (lo
+ *      stato della primaria alla creazione del JournalWriter si trova all'inizio del journal)
+ *      e non deve essere modificata se non dalla replica stessa. Le segnalazioni automatiche non vengono
+ *      applicate, dal momento che la replica le genera da sé pubblicando i post.
+ *
+ *  Typical element:
+ *      <replica, applied, lag> in cui:
+ *          - replica è la rete su cui vengono applicate le operazioni
+ *          - applied è il numero progressivo dell'ultima operazione applicata
+ *          - lag è il ritardo della replica rispetto alla rete primaria
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = replica != null && journal != null && posts != null && partial != null &&
+ *          thread != null && 0 <= nextRecord <= position &&
+ *          foreach id in posts.keys -> posts(id).getId() == id
+ */
+public class JournalReplica implements AutoCloseable {
+    /**
+     * Dimensione del buffer di lettura del journal
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Numero di byte letti dall'inizio di una riga per ricavarne l'istante di scrittura
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Rete su cui vengono applicate le operazioni
+     */
+    private final SocialNetworkImpl replica;
+    /**
+     * File da cui vengono lette le operazioni
+     */
+    private final Path journal;
+    /**
+     * Post pubblicati nella replica, indicizzati per id
+     */
+    private final Map<Long, Post> posts;
+    /**
+     * Ultima riga del journal letta solo in parte
+     */
+    private final ByteArrayOutputStream partial;
+    /**
+     * Thread che applica le operazioni
+     */
+    private final Thread thread;
+    /**
+     * True finché il thread deve continuare a leggere il journal
+     */
+    private volatile boolean running;
+    /**
+     * Numero di byte del journal già letti
+     */
+    private volatile long position;
+    /**
+     * Posizione nel journal della prima operazione non ancora applicata
+     */
+    private volatile long nextRecord;
+    /**
+     * Numero progressivo dell'ultima operazione applicata, -1 se non ne è stata applicata nessuna
+     */
+    private volatile long applied;
+    /**
+     * Errore che ha interrotto la replica, null se non ce n'è stato nessuno
+     */
+    private volatile Exception failure;
+
+    /**
+     * @requires replica != null && journal != null && replica non è uno snapshot &&
+     *           replica è una rete nuova dello stesso tipo della rete primaria
+     * @param replica La rete su cui applicare le operazioni
+     * @param journal Il file da cui leggere le operazioni
+     *
+     * @effects Crea una replica che applicherà a replica le operazioni scritte in journal, a
+     *          partire dall'inizio del file. La lettura inizia con start().
+     * @throws NullPointerException Se replica == null || journal == null
+     */
+    public JournalReplica(SocialNetworkImpl replica, Path journal) {
+        if (replica == null || journal == null) {
+            throw new NullPointerException("La replica e il journal non possono essere null");
+        }
+
+        this.replica = replica;
+        this.journal = journal;
+        this.posts = new HashMap<>();
+        this.partial = new ByteArrayOutputStream();
+        this.thread = new Thread(this::run, "journal-replica");
+        this.thread.setDaemon(true);
+        this.applied = -1;
+    }
+
+    /**
+     * @effects Avvia il thread che applica le operazioni del journal
+     * @modifies this.running
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * @effects Arresta il thread che applica le operazioni
+     * @modifies this.running
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @effects Fornisce una vista in sola lettura della replica, su cui eseguire le query
+     * @return  Uno snapshot della rete replica
+     */
+    public SocialNetwork read() {
+        return replica.snapshot();
+    }
+
+    /**
+     * @return Il numero progressivo dell'ultima operazione applicata, confrontabile con
+     *         JournalWriter.getWrittenSequence()
+     */
+    public long getAppliedSequence() {
+        return applied;
+    }
+
+    /**
+     * @return Il numero di byte del journal non ancora letti dalla replica, -1 se non è
+     *         possibile leggere la dimensione del journal
+     */
+    public long getPendingBytes() {
+        try {
+            return Math.max(0, Files.size(journal) - position);
+        }
+        catch (IOException e) {
+            return Files.exists(journal) ? -1 : 0;
+        }
+    }
+
+    /**
+     * @effects Stima il ritardo della replica rispetto al journal: 0 se tutte le operazioni
+     *          scritte nel journal sono state applicate, altrimenti il tempo trascorso
+     *          dall'esecuzione della più vecchia operazione non ancora applicata (0 se la sua
+     *          riga è ancora in scrittura e non se ne conosce l'istante). Se la replica è stata
+     *          interrotta da un errore o non è attiva il ritardo non è noto. Le operazioni
+     *          della rete primaria non ancora scritte nel journal non sono visibili alla
+     *          replica: vanno controllate con JournalWriter.getPending() e
+     *          JournalWriter.isBroken().
+     * @return  Il ritardo in millisecondi, -1 se non è noto
+     */
+    public long getLagMillis() {
+        if (failure != null || !running || !thread.isAlive()) {
+            return -1;
+        }
+
+        long from = nextRecord;
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+            if (channel.size() <= from) {
+                return 0;
+            }
+            channel.read(head, from);
+        }
+        catch (IOException e) {
+            return Files.exists(journal) ? -1 : 0;
+        }
+
+        // La riga inizia con il numero progressivo e l'istante di scrittura, separati da '\t'
+        String header = new String(head.array(), 0, head.position(), StandardCharsets.UTF_8);
+        int first = header.indexOf('\t');
+        int second = first < 0 ? -1 : header.indexOf('\t', first + 1);
+        try {
+            long writtenAt = Long.parseLong(header.substring(first + 1, second));
+            return Math.max(0, System.currentTimeMillis() - writtenAt);
+        }
+        catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return L'errore che ha interrotto la replica, null se la replica è attiva
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * @effects Legge il journal finché la replica non viene chiusa, attendendo che il file
+     *          venga creato o che vengano aggiunte nuove righe.
+     * @modifies this
+     */
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try {
+            while (running && !Files.exists(journal)) {
+                Thread.sleep(1);
+            }
+
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+                while (running) {
+                    buffer.clear();
+                    int n = channel.read(buffer, position);
+
+                    if (n > 0) {
+                        consume(buffer.array(), n, position);
+                        position += n;
+                    }
+                    else {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @requires bytes != null && 0 <= n <= bytes.length && offset >= 0
+     * @param offset La posizione nel journal del primo byte di bytes
+     * @effects Applica le righe complete contenute nei primi n byte di bytes, conservando
+     *          l'ultima riga se è incompleta.
+     * @modifies this.partial, this.replica, this.nextRecord
+     */
+    private void consume(byte[] bytes, int n, long offset) {
+        int start = 0;
+
+        for (int i=0; i<n; i++) {
+            if (bytes[i] == '\n') {
+                partial.write(bytes, start, i - start);
+                String line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+                partial.reset();
+                start = i + 1;
+
+                // Il separatore di riga può essere "\r\n": i '\r' dei testi sono codificati
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                if (!line.isEmpty()) {
+                    apply(JournalRecord.decode(line));
+                }
+                nextRecord = offset + start;
+            }
+        }
+        partial.write(bytes, start, n - start);
+    }
+
+    /**
+     * @requires r != null
+     * @param r L'operazione da applicare
+     *
+     * @effects Applica r alla replica
+     * @modifies this.replica, this.posts, this.applied
+     * @throws IllegalStateException Se r non può essere applicata, ovvero se la replica non
+     *                               parte dallo stesso stato della rete primaria
+     */
+    private void apply(JournalRecord r) {
+        try {
+            switch (r.getType()) {
+                case REGISTER_USER:
+                    replica.registerUser(r.getUser());
+                    break;
+                case REMOVE_USER:
+                    replica.removeUser(r.getUser());
+                    posts.values().removeIf(q -> q.getAuthor().equals(r.getUser()));
+                    break;
+                case PUBLISH_POST:
+                    Post p = new PostImpl(r.getPostId(), r.getPostAuthor(), r.getPostText(), r.getPostTimestamp());
+                    replica.publishPost(p);
+                    posts.put(p.getId(), p);
+                    break;
+                case DELETE_POST:
+                    replica.deletePost(post(r));
+                    posts.remove(r.getPostId());
+                    break;
+                case LIKE:
+                    replica.like(post(r), r.getUser());
+                    break;
+                case UNLIKE:
+                    replica.unLike(post(r), r.getUser());
+                    break;
+                case REPORT:
+                    if (!Reporting.AUTOMATIC_REPORTING_AUTHOR.equals(r.getUser())) {
+                        moderated().report(r.getUser(), post(r));
+                    }
+                    break;
+                case ADD_FORBIDDEN_WORD:
+                    moderated().addForbiddenWord(r.getWord());
+                    break;
+                case REMOVE_FORBIDDEN_WORD:
+                    moderated().removeForbiddenWord(r.getWord());
+                    break;
+            }
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Impossibile applicare l'operazione " + r.getSequence() +
+                    " del journal", e);
+        }
+
+        applied = r.getSequence();
+    }
+
+    /**
+     * @requires r != null
+     * @return Il post a cui si riferisce r
+     * @throws IllegalStateException Se il post non è stato pubblicato nella replica
+     */
+    private Post post(JournalRecord r) {
+        Post p = posts.get(r.getPostId());
+        if (p == null) {
+            throw new IllegalStateException("Post " + r.getPostId() + " non presente nella replica");
+        }
+        return p;
+    }
+
+    /**
+     * @return La replica come rete moderata
+     * @throws IllegalStateException Se la replica non è una rete moderata
+     */
+    private ModeratedSocialNetworkImpl moderated() {
+        if (!(replica instanceof ModeratedSocialNetworkImpl)) {
+            throw new IllegalStateException("Il journal contiene operazioni di moderazione ma la replica non è moderata");
+        }
+        return (ModeratedSocialNetworkImpl) replica;
+    }
+}
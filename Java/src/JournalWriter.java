@@ -0,0 +1,366 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+import Exceptions.Post.PostNotFoundException;
+
+/** Overview:
+ *      JournalWriter è un dato mutabile che scrive in un file (il journal) tutte le operazioni
+ *      effettuate su una rete sociale primaria, una per riga nel formato di JournalRecord, in
+ *      modo che delle repliche (JournalReplica) possano applicarle. Le operazioni vengono
+ *      lette dal flusso degli eventi della rete primaria tramite un'iscrizione bloccante (vedi
+ *      SocialNetworkImpl.subscribeBlocking) da un thread dedicato, avviato alla creazione,
+ *      che le codifica e le scrive su file senza mai acquisire il lock della rete. La
+ *      scrittura su disco non rallenta le operazioni sulla rete primaria finché il thread non
+ *      resta indietro di più della capacità del buffer degli eventi della rete, dopodiché le
+ *      operazioni attendono che il thread legga gli eventi più vecchi. Nessuna operazione
+ *      viene quindi persa; il journal diventa inutilizzabile solo se la scrittura del file
+ *      fallisce.
+ *
+ *      Se la rete primaria ha già subito delle modifiche, il journal inizia con le operazioni
+ *      che ricostruiscono il suo stato al momento della creazione del JournalWriter (parole
+ *      proibite, utenti, post con i loro like e segnalazioni manuali, nell'ordine in cui li
+ *      scrive BulkExporter), tutte con il numero progressivo dell'ultimo evento della rete.
+ *
+ *  Typical element:
+ *      <journal, written, pending> in cui:
+ *          - journal è il file su cui vengono scritte le operazioni
+ *          - written è il numero progressivo dell'ultima operazione scritta
+ *          - pending sono le operazioni effettuate e non ancora scritte, in ordine, precedute
+ *              dallo stato iniziale di primary se non è ancora stato scritto
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = out != null && subscription != null && thread != null &&
+ *          batch != null && (broken => subscription è chiusa)
+ */
+public class JournalWriter implements AutoCloseable {
+    /**
+     * Numero massimo di operazioni scritte prima di svuotare il buffer del file
+     */
+    private static final int BATCH = 256;
+    /**
+     * Attesa massima del thread di scrittura prima di ricontrollare se deve terminare, in
+     * nanosecondi
+     */
+    private static final long IDLE_WAIT_NANOS = 10_000_000;
+
+    /**
+     * File su cui vengono scritte le operazioni
+     */
+    private final BufferedWriter out;
+    /**
+     * Iscrizione bloccante al flusso degli eventi di primary
+     */
+    private final EventRingBuffer.Subscription subscription;
+    /**
+     * Righe del blocco di operazioni in corso di scrittura, usato solo dal thread di scrittura
+     */
+    private final StringBuilder batch;
+    /**
+     * Numero progressivo dell'ultima operazione di batch
+     */
+    private long batchSequence;
+    /**
+     * Thread che copia le operazioni nel journal
+     */
+    private final Thread thread;
+    /**
+     * Snapshot di primary al momento della creazione, da scrivere all'inizio del journal; null
+     * dopo che è stato scritto
+     */
+    private SocialNetworkImpl initial;
+    /**
+     * Numero progressivo dell'ultimo evento di primary incluso in initial
+     */
+    private final long initialSequence;
+    /**
+     * True dopo la chiamata a close(): il thread scrive le operazioni già effettuate e termina
+     */
+    private volatile boolean closing;
+    /**
+     * True se la scrittura del journal è fallita
+     */
+    private volatile boolean broken;
+    /**
+     * Errore che ha interrotto la scrittura, null se la scrittura non è fallita
+     */
+    private volatile IOException failure;
+    /**
+     * Numero progressivo dell'ultima operazione scritta, -1 se non ne è stata scritta nessuna
+     */
+    private volatile long written;
+
+    /**
+     * @requires primary != null && journal != null && primary non è uno snapshot &&
+     *           le repliche partono da una rete nuova dello stesso tipo di primary, senza parole
+     *           proibite che primary non abbia
+     * @param primary La rete di cui registrare le operazioni
+     * @param journal Il file in cui scrivere le operazioni, a cui vengono aggiunte in coda
+     *
+     * @effects Crea un JournalWriter che scriverà lo stato attuale di primary e tutte le
+     *          operazioni effettuate su primary da questo momento in poi, e avvia il thread di
+     *          scrittura.
+     * @throws IOException Se non è possibile aprire journal in scrittura
+     * @throws NullPointerException Se primary == null || journal == null
+     * @throws UnsupportedOperationException Se primary è uno snapshot
+     */
+    public JournalWriter(SocialNetworkImpl primary, Path journal) throws IOException {
+        if (primary == null || journal == null) {
+            throw new NullPointerException("La rete e il journal non possono essere null");
+        }
+
+        this.batch = new StringBuilder();
+        this.out = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            // Lo stato iniziale e le operazioni successive devono essere consecutivi
+            synchronized (primary) {
+                this.subscription = primary.subscribeBlocking();
+                this.initial = (SocialNetworkImpl) primary.snapshot();
+                this.initialSequence = primary.getLastEventSequence();
+            }
+        }
+        catch (UnsupportedOperationException e) {
+            out.close();
+            throw e;
+        }
+        this.written = -1;
+        // Il thread parte subito: se nessuno leggesse l'iscrizione, le operazioni su primary
+        // resterebbero bloccate mantenendo il suo lock
+        this.thread = new Thread(this::run, "journal-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @effects Smette di registrare le operazioni di primary, scrive nel journal quelle già
+     *          effettuate, arresta il thread e chiude il file.
+     * @modifies this.closing, this.out
+     * @throws IOException Se non è possibile completare la scrittura del journal
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            subscription.close();
+            out.close();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (broken) {
+            throw new IOException("La scrittura del journal non è stata completata");
+        }
+    }
+
+    /**
+     * @return Il numero progressivo dell'ultima operazione scritta nel journal
+     */
+    public long getWrittenSequence() {
+        return written;
+    }
+
+    /**
+     * @return Il numero di operazioni effettuate sulla rete e non ancora scritte nel journal
+     */
+    public long getPending() {
+        return broken ? 0 : subscription.getLag();
+    }
+
+    /**
+     * @return True se la scrittura del journal è fallita: in tal caso le repliche non possono
+     *         più essere aggiornate tramite questo journal
+     */
+    public boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * @effects Copia le operazioni nel journal finché il JournalWriter non viene chiuso
+     * @modifies this.out, this.written, this.broken, this.batch
+     */
+    private void run() {
+        try {
+            writeInitial();
+            out.flush();
+
+            while (true) {
+                int n = subscription.poll(this::encode, BATCH);
+
+                if (n > 0) {
+                    out.append(batch);
+                    out.flush();
+                    written = batchSequence;
+                    batch.setLength(0);
+                }
+                else if (closing) {
+                    return;
+                }
+                else {
+                    subscription.awaitEvents(IDLE_WAIT_NANOS);
+                }
+            }
+        }
+        catch (IOException e) {
+            failure = e;
+            fail();
+        }
+        catch (RuntimeException e) {
+            // Il thread termina: senza chiudere l'iscrizione le operazioni su primary
+            // resterebbero bloccate
+            failure = new IOException("Errore durante la scrittura del journal", e);
+            fail();
+        }
+    }
+
+    /**
+     * @requires event != null
+     * @param event L'operazione effettuata su primary
+     * @effects Aggiunge a batch la riga che rappresenta event
+     * @modifies this.batch, this.batchSequence
+     */
+    private void encode(SocialNetworkEvent event) {
+        batch.append(JournalRecord.encode(event, System.currentTimeMillis())).append(System.lineSeparator());
+        batchSequence = event.getSequence();
+    }
+
+    /**
+     * @effects Scrive nel journal le operazioni che ricostruiscono initial a partire da una rete
+     *          nuova: le parole proibite, gli utenti e i post in ordine di timestamp, ciascuno
+     *          seguito dai propri like e dalle proprie segnalazioni manuali. I post del livello
+     *          freddo seguono quelli in memoria.
+     * @modifies this.out, this.written, this.initial
+     * @throws IOException Se la scrittura fallisce
+     */
+    private void writeInitial() throws IOException {
+        SocialNetworkImpl network = initial;
+        initial = null;
+
+        ModeratedSocialNetworkImpl moderated = network instanceof ModeratedSocialNetworkImpl
+                ? (ModeratedSocialNetworkImpl) network : null;
+        if (moderated != null) {
+            for (String w : moderated.getForbiddenWords()) {
+                writeInitial(SocialNetworkEvent.Type.ADD_FORBIDDEN_WORD, null, null, w);
+            }
+        }
+
+        for (String u : network.userFollowing.keySet()) {
+            writeInitial(SocialNetworkEvent.Type.REGISTER_USER, u, null, null);
+        }
+
+        try {
+            for (Set<Post> sameTime : network.postsByTime.values()) {
+                for (Post p : sameTime) {
+                    writeInitial(SocialNetworkEvent.Type.PUBLISH_POST, p.getAuthor(), p, null);
+                    for (String liker : network.postLikes.get(p)) {
+                        writeInitial(SocialNetworkEvent.Type.LIKE, liker, p, null);
+                    }
+                    if (moderated != null) {
+                        for (Reporting r : moderated.getReportingsForPost(p)) {
+                            if (!Reporting.AUTOMATIC_REPORTING_AUTHOR.equals(r.getAuthor())) {
+                                writeInitial(SocialNetworkEvent.Type.REPORT, r.getAuthor(), p, null);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        catch (PostNotFoundException e) {
+            // Lo snapshot non cambia, per cui i post che contiene sono tutti pubblicati
+            throw new IllegalStateException(e);
+        }
+
+        if (network.coldView != null) {
+            Iterator<ColdPostStore.ColdPost> cold = network.coldView.stream().iterator();
+            while (cold.hasNext()) {
+                ColdPostStore.ColdPost c = cold.next();
+                writeInitial(SocialNetworkEvent.Type.PUBLISH_POST, c.getPost().getAuthor(), c.getPost(), null);
+                for (String liker : c.getLikes()) {
+                    writeInitial(SocialNetworkEvent.Type.LIKE, liker, c.getPost(), null);
+                }
+            }
+        }
+    }
+
+    /**
+     * @requires type != null
+     * @effects Scrive nel journal un'operazione dello stato iniziale di primary
+     * @modifies this.out, this.written
+     * @throws IOException Se la scrittura fallisce
+     */
+    private void writeInitial(SocialNetworkEvent.Type type, String user, Post post, String word) throws IOException {
+        SocialNetworkEvent event = new InitialEvent(initialSequence, type, user, post, word);
+        out.write(JournalRecord.encode(event, System.currentTimeMillis()));
+        out.newLine();
+        written = initialSequence;
+    }
+
+    /**
+     * @effects Segna il journal come inutilizzabile e chiude l'iscrizione, sbloccando le
+     *          operazioni su primary in attesa che il thread di scrittura legga i loro eventi.
+     * @modifies this.broken, this.subscription
+     */
+    private void fail() {
+        broken = true;
+        subscription.close();
+    }
+
+    /**
+     * Operazione che fa parte dello stato di primary al momento della creazione del journal
+     */
+    private static class InitialEvent implements SocialNetworkEvent {
+        private final long sequence;
+        private final Type type;
+        private final String user;
+        private final Post post;
+        private final String word;
+
+        private InitialEvent(long sequence, Type type, String user, Post post, String word) {
+            this.sequence = sequence;
+            this.type = type;
+            this.user = user;
+            this.post = post;
+            this.word = word;
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        @Override
+        public String getUser() {
+            return user;
+        }
+
+        @Override
+        public Post getPost() {
+            return post;
+        }
+
+        @Override
+        public String getWord() {
+            return word;
+        }
+    }
+}
@@ -0,0 +1,1187 @@
+import java.io.*;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** Overview:
+ *      LikeStore è un dato mutabile che memorizza le coppie (id del post, utente) dei like di
+ *      una rete sociale fuori dallo heap, con la struttura di un log-structured merge tree:
+ *          - le modifiche vengono registrate in una tabella ordinata in memoria (memtable), in
+ *              cui la rimozione di un like è un marcatore (tombstone)
+ *          - quando la memtable raggiunge memtableLimit coppie viene congelata e sostituita da
+ *              una memtable vuota; un thread in background scrive poi ogni memtable congelata,
+ *              dalla meno recente, su disco come run, un file immutabile ordinato per (id del
+ *              post, utente), senza bloccare le modifiche
+ *          - di ogni run resta in memoria soltanto un indice sparso (una chiave ogni
+ *              INDEX_INTERVAL coppie, con la sua posizione nel file) e due filtri di Bloom,
+ *              delle coppie e degli id dei post, con cui le ricerche saltano i run che
+ *              sicuramente non contengono ciò che cercano
+ *          - quando i run sono più di MAX_RUNS, un thread in background li fonde in un unico
+ *              run (compaction), eliminando le coppie sovrascritte e i tombstone
+ *      Una ricerca consulta la memtable, le memtable congelate e poi i run, dal più recente al
+ *      meno recente: il primo che contiene la coppia ne stabilisce lo stato. Il numero di like
+ *      di ogni post è mantenuto in memoria, in modo che size() e isEmpty() delle viste non
+ *      leggano i run.
+ *
+ *      Poiché memtable congelate e run non vengono mai modificati, view() fornisce una versione
+ *      in sola lettura dei like congelando la memtable corrente e fissando l'elenco dei run,
+ *      senza copiare i like: è la vista usata dagli snapshot della rete. I run sostituiti da
+ *      una compaction vengono cancellati soltanto quando nessuna versione li usa più.
+ *
+ *      La rete usa il LikeStore attraverso likesOf, che fornisce l'insieme dei like di un post
+ *      come vista (vedi SocialNetworkImpl.setLikeStore), per cui like, unLike e guessFollowers
+ *      mantengono la propria semantica. I run vivono quanto il LikeStore: close() li cancella,
+ *      e la persistenza della rete resta compito del journal (JournalWriter).
+ *
+ *  Typical element:
+ *      <likes> in cui likes = {(p1, u1), (p2, u2), ...} in cui ui ha messo like al post con
+ *      id pi
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{(p, u) | il primo tra c.memtable, c.frozen(0), c.frozen(1), ...,
+ *                      c.runs(0), c.runs(1), ... che contiene la chiave (p, u) la associa a true}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = directory != null && memtable != null && frozen != null && runs != null &&
+ *          counts != null && memtableLimit > 0 && memtable.size() < memtableLimit &&
+ *          frozen è ordinata dalla memtable congelata più recente alla meno recente &&
+ *          foreach t in frozen -> !t.isEmpty() && (!frozen.isEmpty() && flushFailure == null => flushing) &&
+ *          foreach p -> counts.getOrDefault(p, 0) == |{u | (p, u) in f(c)}| && !counts.containsValue(0) &&
+ *          runs è ordinata dal run più recente al meno recente &&
+ *          foreach r in runs -> r.count > 0 && le chiavi di r sono ordinate e distinte &&
+ *              r.pairs e r.posts contengono gli hash di tutte le chiavi di r
+ */
+public class LikeStore implements AutoCloseable {
+    /**
+     * Numero predefinito di coppie della memtable oltre il quale viene scritta su disco
+     */
+    public static final int DEFAULT_MEMTABLE_LIMIT = 64 * 1024;
+    /**
+     * Numero massimo di run prima della compaction
+     */
+    public static final int MAX_RUNS = 4;
+
+    /**
+     * Numero di coppie tra due chiavi consecutive dell'indice sparso di un run
+     */
+    private static final int INDEX_INTERVAL = 64;
+    /**
+     * Numero di bit dei filtri di Bloom dei run per ogni coppia
+     */
+    private static final int BLOOM_BITS = 10;
+    /**
+     * Rilascia i run usati dalle versioni di cui non resta alcun riferimento
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Cartella in cui vengono scritti i run
+     */
+    private final Path directory;
+    /**
+     * Numero di coppie della memtable oltre il quale viene scritta su disco
+     */
+    private final int memtableLimit;
+    /**
+     * Le ricerche acquisiscono il lock in lettura, le modifiche e la sostituzione dei run in
+     * scrittura
+     */
+    private final ReentrantReadWriteLock lock;
+    /**
+     * Modifiche non ancora scritte su disco: true per un like, false per un tombstone
+     */
+    private TreeMap<Key, Boolean> memtable;
+    /**
+     * Memtable congelate non ancora scritte su disco, dalla più recente alla meno recente. La
+     * lista e le memtable non vengono mai modificate, ma sostituite, perché possono essere
+     * condivise con le versioni fornite da view().
+     */
+    private List<TreeMap<Key, Boolean>> frozen;
+    /**
+     * Run su disco, dal più recente al meno recente. La lista non viene mai modificata, ma
+     * sostituita.
+     */
+    private List<Run> runs;
+    /**
+     * Numero di like di ogni post che ne ha almeno uno
+     */
+    private final Map<Long, Integer> counts;
+    /**
+     * Numero progressivo del prossimo run
+     */
+    private long nextRun;
+    /**
+     * Thread che scrive su disco le memtable congelate ed esegue la compaction
+     */
+    private final ExecutorService compactor;
+    /**
+     * True se la scrittura delle memtable congelate è in corso
+     */
+    private boolean flushing;
+    /**
+     * Errore dell'ultima scrittura di una memtable congelata, null se non è fallita
+     */
+    private volatile IOException flushFailure;
+    /**
+     * True se una compaction è in corso
+     */
+    private boolean compacting;
+    /**
+     * Errore dell'ultima compaction, null se non è fallita
+     */
+    private volatile IOException compactionFailure;
+    /**
+     * Statistiche
+     */
+    private long flushes;
+    private long compactions;
+    private final LongAdder blockReads;
+    private final LongAdder bloomSkips;
+
+    /**
+     * @requires directory != null && memtableLimit > 0
+     * @param directory     La cartella in cui scrivere i run, creata se non esiste
+     * @param memtableLimit Il numero di coppie della memtable oltre il quale viene scritta su disco
+     *
+     * @effects Crea un LikeStore vuoto
+     * @throws IOException Se non è possibile creare directory
+     * @throws NullPointerException Se directory == null
+     * @throws IllegalArgumentException Se memtableLimit <= 0
+     */
+    public LikeStore(Path directory, int memtableLimit) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("La cartella dei run non può essere null");
+        }
+        if (memtableLimit <= 0) {
+            throw new IllegalArgumentException("La dimensione della memtable deve essere positiva");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.memtableLimit = memtableLimit;
+        this.lock = new ReentrantReadWriteLock();
+        this.memtable = new TreeMap<>();
+        this.frozen = Collections.emptyList();
+        this.runs = Collections.emptyList();
+        this.counts = new HashMap<>();
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "like-store-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.blockReads = new LongAdder();
+        this.bloomSkips = new LongAdder();
+    }
+
+    /**
+     * @requires directory != null
+     * @param directory La cartella in cui scrivere i run, creata se non esiste
+     * @effects Crea un LikeStore vuoto con una memtable di DEFAULT_MEMTABLE_LIMIT coppie
+     * @throws IOException Se non è possibile creare directory
+     * @throws NullPointerException Se directory == null
+     */
+    public LikeStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_LIMIT);
+    }
+
+    /**
+     * @param postId L'id del post
+     * @return L'insieme dei like del post con id postId, come vista modificabile di this: le
+     *         modifiche all'insieme vengono registrate in this
+     */
+    public Set<String> likesOf(long postId) {
+        return new LikeSet(postId);
+    }
+
+    /**
+     * @effects Congela la memtable corrente (se non è vuota) e fissa l'elenco dei run,
+     *          senza copiare i like: le modifiche successive di this non sono visibili nella
+     *          versione restituita. I run usati dalla versione non vengono cancellati finché
+     *          ne resta un riferimento, salvo con close().
+     * @modifies this
+     * @return  Una versione in sola lettura dei like di this
+     */
+    public View view() {
+        lock.writeLock().lock();
+        try {
+            freeze();
+            return new View(frozen, runs, new HashMap<>(counts));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @requires user != null
+     * @param postId L'id del post
+     * @param user   L'utente
+     * @return True se user ha messo like al post con id postId
+     * @throws UncheckedIOException Se non è possibile leggere un run
+     */
+    public boolean contains(long postId, String user) {
+        lock.readLock().lock();
+        try {
+            return lookup(new Key(postId, user));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param postId L'id del post
+     * @return Il numero di like del post con id postId, senza leggere i run
+     */
+    public int count(long postId) {
+        lock.readLock().lock();
+        try {
+            return counts.getOrDefault(postId, 0);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @requires user != null
+     * @param postId  L'id del post
+     * @param user    L'utente
+     * @param present True per registrare il like di user al post, false per rimuoverlo
+     *
+     * @effects Registra la presenza o l'assenza del like di user al post con id postId,
+     *          congelando la memtable se raggiunge memtableLimit coppie: la scrittura su
+     *          disco avviene in background
+     * @modifies this
+     * @return  True se lo stato del like è cambiato
+     * @throws UncheckedIOException Se non è possibile leggere un run
+     */
+    public boolean put(long postId, String user, boolean present) {
+        Key key = new Key(postId, user);
+
+        lock.writeLock().lock();
+        try {
+            if (lookup(key) == present) {
+                return false;
+            }
+            memtable.put(key, present);
+            counts.merge(postId, present ? 1 : -1, (a, b) -> a + b == 0 ? null : a + b);
+            if (memtable.size() >= memtableLimit) {
+                freeze();
+            }
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @requires key != null && il thread possiede il lock in lettura o in scrittura
+     * @return Lo stato della coppia key: quello della memtable o del run più recente che la
+     *         contiene, false se nessuno la contiene
+     * @throws UncheckedIOException Se non è possibile leggere un run
+     */
+    private boolean lookup(Key key) {
+        Boolean present = memtable.get(key);
+        return present != null ? present : lookup(key, frozen, runs);
+    }
+
+    /**
+     * @requires key != null && tables != null && runs != null
+     * @return Lo stato della coppia key nella prima tra le memtable in tables e i run in runs
+     *         che la contiene, false se nessuno la contiene
+     * @throws UncheckedIOException Se non è possibile leggere un run
+     */
+    private static boolean lookup(Key key, List<TreeMap<Key, Boolean>> tables, List<Run> runs) {
+        for (TreeMap<Key, Boolean> t : tables) {
+            Boolean present = t.get(key);
+            if (present != null) {
+                return present;
+            }
+        }
+        for (Run r : runs) {
+            Boolean present = r.get(key);
+            if (present != null) {
+                return present;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param postId L'id del post
+     * @return Gli utenti che hanno messo like al post con id postId, in ordine alfabetico
+     * @throws UncheckedIOException Se non è possibile leggere un run
+     */
+    public List<String> scan(long postId) {
+        // Per ogni utente conta soltanto lo stato più recente: la memtable, poi le memtable
+        // congelate e i run dal più nuovo
+        Map<String, Boolean> latest = new TreeMap<>();
+
+        lock.readLock().lock();
+        try {
+            scan(postId, memtable, latest);
+            return scan(postId, frozen, runs, latest);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @requires tables != null && runs != null && latest != null
+     * @effects Completa latest con lo stato dei like al post postId nelle memtable in tables e
+     *          nei run in runs, nell'ordine, degli utenti non ancora presenti in latest
+     * @modifies latest
+     * @return  Gli utenti che hanno messo like al post con id postId secondo latest, in ordine
+     *          alfabetico
+     * @throws UncheckedIOException Se non è possibile leggere un run
+     */
+    private static List<String> scan(long postId, List<TreeMap<Key, Boolean>> tables, List<Run> runs,
+                                     Map<String, Boolean> latest) {
+        for (TreeMap<Key, Boolean> t : tables) {
+            scan(postId, t, latest);
+        }
+        for (Run r : runs) {
+            r.scan(postId, latest);
+        }
+
+        List<String> ret = new ArrayList<>();
+        for (Map.Entry<String, Boolean> e : latest.entrySet()) {
+            if (e.getValue()) {
+                ret.add(e.getKey());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @requires table != null && latest != null
+     * @effects Aggiunge a latest lo stato dei like al post postId in table degli utenti non
+     *          ancora presenti in latest
+     * @modifies latest
+     */
+    private static void scan(long postId, TreeMap<Key, Boolean> table, Map<String, Boolean> latest) {
+        for (Map.Entry<Key, Boolean> e : table.subMap(new Key(postId, ""), true, new Key(postId + 1, ""), false).entrySet()) {
+            latest.putIfAbsent(e.getKey().user, e.getValue());
+        }
+    }
+
+    /**
+     * @return Il numero di run su disco
+     */
+    public int getRuns() {
+        lock.readLock().lock();
+        try {
+            return runs.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Il numero di modifiche nella memtable
+     */
+    public int getMemtableSize() {
+        lock.readLock().lock();
+        try {
+            return memtable.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Il numero di memtable congelate non ancora scritte su disco
+     */
+    public int getFrozenTables() {
+        lock.readLock().lock();
+        try {
+            return frozen.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Il numero di memtable scritte su disco
+     */
+    public long getFlushes() {
+        lock.readLock().lock();
+        try {
+            return flushes;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Il numero di compaction completate
+     */
+    public long getCompactions() {
+        lock.readLock().lock();
+        try {
+            return compactions;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Il numero di blocchi letti dai run su disco
+     */
+    public long getBlockReads() {
+        return blockReads.sum();
+    }
+
+    /**
+     * @return Il numero di run saltati grazie ai filtri di Bloom
+     */
+    public long getBloomSkips() {
+        return bloomSkips.sum();
+    }
+
+    /**
+     * @return L'errore che ha interrotto l'ultima compaction, null se non è fallita
+     */
+    public IOException getCompactionFailure() {
+        return compactionFailure;
+    }
+
+    /**
+     * @return L'errore che ha interrotto l'ultima scrittura di una memtable congelata, null se
+     *         non è fallita (le memtable non scritte restano in memoria)
+     */
+    public IOException getFlushFailure() {
+        return flushFailure;
+    }
+
+    /**
+     * @effects Attende che le memtable congelate siano scritte su disco e che la compaction
+     *          in corso, se ce n'è una, termini
+     * @throws InterruptedException Se il thread viene interrotto durante l'attesa
+     */
+    public void awaitCompaction() throws InterruptedException {
+        while (true) {
+            try {
+                compactor.submit(() -> { }).get();
+            }
+            catch (java.util.concurrent.ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+
+            lock.readLock().lock();
+            try {
+                if (!flushing && !compacting) {
+                    return;
+                }
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @effects Arresta la compaction e cancella i run: i like registrati vanno persi
+     * @modifies this
+     * @throws IOException Se non è possibile cancellare un run
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+
+        lock.writeLock().lock();
+        try {
+            for (Run r : runs) {
+                r.delete();
+            }
+            runs = Collections.emptyList();
+            frozen = Collections.emptyList();
+            memtable = new TreeMap<>();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @requires il thread possiede il lock in scrittura
+     * @effects Se la memtable non è vuota la aggiunge alle memtable congelate, la sostituisce
+     *          con una memtable vuota e ne avvia la scrittura in background
+     * @modifies this
+     */
+    private void freeze() {
+        if (memtable.isEmpty()) {
+            return;
+        }
+
+        List<TreeMap<Key, Boolean>> updated = new ArrayList<>(frozen.size() + 1);
+        updated.add(memtable);
+        updated.addAll(frozen);
+        frozen = Collections.unmodifiableList(updated);
+        memtable = new TreeMap<>();
+
+        if (!flushing) {
+            flushing = true;
+            compactor.execute(this::flush);
+        }
+    }
+
+    /**
+     * @effects Scrive su disco, una alla volta e dalla meno recente, le memtable congelate,
+     *          sostituendo ognuna con il run corrispondente; avvia la compaction se i run sono
+     *          più di MAX_RUNS. Se una scrittura fallisce, le memtable restanti restano in
+     *          memoria e la scrittura riprende al prossimo congelamento.
+     * @modifies this
+     */
+    private void flush() {
+        while (true) {
+            TreeMap<Key, Boolean> oldest;
+            Path file;
+            lock.writeLock().lock();
+            try {
+                if (frozen.isEmpty()) {
+                    flushing = false;
+                    return;
+                }
+                oldest = frozen.get(frozen.size() - 1);
+                file = directory.resolve("run-" + nextRun++ + ".lsm");
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+
+            Run run;
+            try {
+                RunWriter w = new RunWriter(file, oldest.size());
+                try {
+                    for (Map.Entry<Key, Boolean> e : oldest.entrySet()) {
+                        w.append(e.getKey(), e.getValue());
+                    }
+                }
+                catch (IOException e) {
+                    w.abort();
+                    throw e;
+                }
+                run = w.finish();
+                flushFailure = null;
+            }
+            catch (IOException e) {
+                flushFailure = e;
+                lock.writeLock().lock();
+                try {
+                    flushing = false;
+                }
+                finally {
+                    lock.writeLock().unlock();
+                }
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                // Le memtable congelate nel frattempo sono in testa: oldest è ancora l'ultima
+                frozen = Collections.unmodifiableList(new ArrayList<>(frozen.subList(0, frozen.size() - 1)));
+                List<Run> updated = new ArrayList<>(runs.size() + 1);
+                updated.add(run);
+                updated.addAll(runs);
+                runs = Collections.unmodifiableList(updated);
+                flushes++;
+
+                if (runs.size() > MAX_RUNS && !compacting) {
+                    compacting = true;
+                    compactor.execute(this::compact);
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @effects Fonde tutti i run presenti all'avvio in un unico run, eliminando le coppie
+     *          sovrascritte e i tombstone, e lo sostituisce ad essi. I run scritti nel
+     *          frattempo restano invariati.
+     * @modifies this
+     */
+    private void compact() {
+        List<Run> toMerge;
+        Path file;
+        lock.readLock().lock();
+        try {
+            toMerge = new ArrayList<>(runs);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            file = directory.resolve("run-" + nextRun++ + ".lsm");
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        Run merged = null;
+        try {
+            merged = merge(toMerge, file);
+            compactionFailure = null;
+        }
+        catch (IOException e) {
+            compactionFailure = e;
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException ignored) {}
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (compactionFailure == null) {
+                List<Run> updated = new ArrayList<>();
+                for (Run r : runs) {
+                    if (!toMerge.contains(r)) {
+                        updated.add(r);
+                    }
+                }
+                // Il run fuso è più vecchio di tutti quelli scritti durante la compaction
+                if (merged != null) {
+                    updated.add(merged);
+                }
+                runs = Collections.unmodifiableList(updated);
+                for (Run r : toMerge) {
+                    r.retired = true;
+                    r.deleteIfUnused();
+                }
+                compactions++;
+            }
+
+            compacting = false;
+            if (compactionFailure == null && runs.size() > MAX_RUNS) {
+                compacting = true;
+                compactor.execute(this::compact);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @requires toMerge è ordinata dal run più recente al meno recente e contiene tutti i run
+     *           più vecchi del più recente di toMerge
+     * @effects Scrive in file la fusione di toMerge: per ogni chiave lo stato del run più
+     *          recente che la contiene, esclusi i tombstone
+     * @return  Il run fuso, null se la fusione è vuota (in tal caso file non viene creato)
+     * @throws IOException Se non è possibile leggere un run o scrivere file
+     */
+    private Run merge(List<Run> toMerge, Path file) throws IOException {
+        int expected = 0;
+        for (Run r : toMerge) {
+            expected += r.count;
+        }
+
+        List<RunReader> readers = new ArrayList<>();
+        RunWriter w = new RunWriter(file, expected);
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>();
+            for (int i=0; i<toMerge.size(); i++) {
+                RunReader reader = new RunReader(toMerge.get(i), i);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader newest = queue.poll();
+                Key key = newest.key;
+                if (newest.present) {
+                    w.append(key, true);
+                }
+
+                // Scarto la stessa chiave nei run più vecchi
+                if (newest.advance()) {
+                    queue.add(newest);
+                }
+                while (!queue.isEmpty() && queue.peek().key.compareTo(key) == 0) {
+                    RunReader older = queue.poll();
+                    if (older.advance()) {
+                        queue.add(older);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            w.abort();
+            throw e;
+        }
+        finally {
+            for (RunReader r : readers) {
+                r.close();
+            }
+        }
+
+        return w.isEmpty() ? w.abortEmpty() : w.finish();
+    }
+
+    /**
+     * Chiave di un like: id del post e utente
+     */
+    private static final class Key implements Comparable<Key> {
+        private final long postId;
+        private final String user;
+
+        private Key(long postId, String user) {
+            if (user == null) {
+                throw new NullPointerException("L'utente di un like non può essere null");
+            }
+            this.postId = postId;
+            this.user = user;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int byPost = Long.compare(postId, o.postId);
+            return byPost != 0 ? byPost : user.compareTo(o.user);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return postId == k.postId && user.equals(k.user);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(postId) + user.hashCode();
+        }
+    }
+
+    /**
+     * Run su disco, con l'indice sparso e i filtri di Bloom
+     */
+    private class Run {
+        private final Path file;
+        private final FileChannel channel;
+        private final long length;
+        private final int count;
+        private final long[] indexPosts;
+        private final String[] indexUsers;
+        private final long[] indexOffsets;
+        private final BloomFilter pairs;
+        private final BloomFilter posts;
+        /**
+         * Numero di versioni che usano il run e true se il run è stato sostituito da una
+         * compaction, accessibili solo con il lock in scrittura di LikeStore
+         */
+        private int pins;
+        private boolean retired;
+
+        private Run(Path file, long length, int count, long[] indexPosts, String[] indexUsers, long[] indexOffsets,
+                    BloomFilter pairs, BloomFilter posts) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.length = length;
+            this.count = count;
+            this.indexPosts = indexPosts;
+            this.indexUsers = indexUsers;
+            this.indexOffsets = indexOffsets;
+            this.pairs = pairs;
+            this.posts = posts;
+        }
+
+        /**
+         * @return Lo stato di key in questo run, null se il run non contiene key
+         */
+        private Boolean get(Key key) {
+            if (!pairs.mightContain(BloomFilter.hash(key.postId, key.user))) {
+                bloomSkips.increment();
+                return null;
+            }
+
+            int block = floor(key);
+            if (block < 0) {
+                return null;
+            }
+            for (Map.Entry<Key, Boolean> e : readBlock(block)) {
+                int cmp = e.getKey().compareTo(key);
+                if (cmp == 0) {
+                    return e.getValue();
+                }
+                if (cmp > 0) {
+                    break;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @effects Aggiunge a latest lo stato dei like al post postId degli utenti non ancora
+         *          presenti in latest
+         * @modifies latest
+         */
+        private void scan(long postId, Map<String, Boolean> latest) {
+            if (!posts.mightContain(BloomFilter.hash(postId))) {
+                bloomSkips.increment();
+                return;
+            }
+
+            for (int block=Math.max(0, floor(new Key(postId, ""))); block<indexOffsets.length; block++) {
+                for (Map.Entry<Key, Boolean> e : readBlock(block)) {
+                    if (e.getKey().postId > postId) {
+                        return;
+                    }
+                    if (e.getKey().postId == postId) {
+                        latest.putIfAbsent(e.getKey().user, e.getValue());
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return L'indice dell'ultimo blocco la cui prima chiave è minore o uguale a key, -1
+         *         se key precede la prima chiave del run
+         */
+        private int floor(Key key) {
+            int lo = 0;
+            int hi = indexOffsets.length - 1;
+            int ret = -1;
+
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = Long.compare(indexPosts[mid], key.postId);
+                if (cmp == 0) {
+                    cmp = indexUsers[mid].compareTo(key.user);
+                }
+                if (cmp <= 0) {
+                    ret = mid;
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid - 1;
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * @return Le coppie del blocco block, in ordine
+         * @throws UncheckedIOException Se non è possibile leggere il blocco
+         */
+        private List<Map.Entry<Key, Boolean>> readBlock(int block) {
+            long start = indexOffsets[block];
+            long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : length;
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+            List<Map.Entry<Key, Boolean>> ret = new ArrayList<>(INDEX_INTERVAL);
+
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new EOFException("Run " + file + " troncato");
+                    }
+                }
+                blockReads.increment();
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+                while (in.available() > 0) {
+                    long postId = in.readLong();
+                    String user = in.readUTF();
+                    ret.add(new AbstractMap.SimpleImmutableEntry<>(new Key(postId, user), in.readBoolean()));
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return ret;
+        }
+
+        private void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+
+        /**
+         * @requires il thread possiede il lock in scrittura di LikeStore
+         * @effects Cancella il run se è stato sostituito e nessuna versione lo usa più
+         */
+        private void deleteIfUnused() {
+            if (retired && pins == 0) {
+                try {
+                    delete();
+                }
+                catch (IOException ignored) {
+                    // Il file resta su disco ma non viene più letto
+                }
+            }
+        }
+    }
+
+    /**
+     * Scrittura sequenziale di un nuovo run
+     */
+    private class RunWriter {
+        private final Path file;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream entry;
+        private final DataOutputStream entryOut;
+        private final List<Key> index;
+        private final List<Long> offsets;
+        private final BloomFilter pairs;
+        private final BloomFilter posts;
+        private long length;
+        private int count;
+
+        private RunWriter(Path file, int expected) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 64 * 1024));
+            this.entry = new ByteArrayOutputStream();
+            this.entryOut = new DataOutputStream(entry);
+            this.index = new ArrayList<>();
+            this.offsets = new ArrayList<>();
+            this.pairs = new BloomFilter(expected, BLOOM_BITS);
+            this.posts = new BloomFilter(expected, BLOOM_BITS);
+        }
+
+        private void append(Key key, boolean present) throws IOException {
+            if (count % INDEX_INTERVAL == 0) {
+                index.add(key);
+                offsets.add(length);
+            }
+
+            entry.reset();
+            entryOut.writeLong(key.postId);
+            entryOut.writeUTF(key.user);
+            entryOut.writeBoolean(present);
+            entry.writeTo(out);
+
+            length += entry.size();
+            count++;
+            pairs.add(BloomFilter.hash(key.postId, key.user));
+            posts.add(BloomFilter.hash(key.postId));
+        }
+
+        private boolean isEmpty() {
+            return count == 0;
+        }
+
+        private Run finish() throws IOException {
+            out.close();
+
+            long[] indexPosts = new long[index.size()];
+            String[] indexUsers = new String[index.size()];
+            long[] indexOffsets = new long[index.size()];
+            for (int i=0; i<indexPosts.length; i++) {
+                indexPosts[i] = index.get(i).postId;
+                indexUsers[i] = index.get(i).user;
+                indexOffsets[i] = offsets.get(i);
+            }
+            return new Run(file, length, count, indexPosts, indexUsers, indexOffsets, pairs, posts);
+        }
+
+        private Run abortEmpty() throws IOException {
+            abort();
+            return null;
+        }
+
+        private void abort() throws IOException {
+            out.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Lettura sequenziale di un run durante la compaction
+     */
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        private final int age;
+        private long remaining;
+        private Key key;
+        private boolean present;
+
+        private RunReader(Run run, int age) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file), 64 * 1024));
+            this.age = age;
+            this.remaining = run.count;
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            long postId = in.readLong();
+            key = new Key(postId, in.readUTF());
+            present = in.readBoolean();
+            return true;
+        }
+
+        private void close() {
+            try {
+                in.close();
+            }
+            catch (IOException ignored) {}
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            int byKey = key.compareTo(o.key);
+            // A parità di chiave prevale il run più recente (age minore)
+            return byKey != 0 ? byKey : Integer.compare(age, o.age);
+        }
+    }
+
+    /**
+     * Versione in sola lettura dei like, ottenuta con view(). Le sue memtable e i suoi run non
+     * vengono mai modificati; i run vengono rilasciati quando la versione non è più
+     * raggiungibile.
+     */
+    public final class View {
+        private final List<TreeMap<Key, Boolean>> tables;
+        private final List<Run> runs;
+        private final Map<Long, Integer> counts;
+
+        private View(List<TreeMap<Key, Boolean>> tables, List<Run> runs, Map<Long, Integer> counts) {
+            this.tables = tables;
+            this.runs = runs;
+            this.counts = counts;
+            for (Run r : runs) {
+                r.pins++;
+            }
+            CLEANER.register(this, new Release(runs));
+        }
+
+        /**
+         * @param postId L'id del post
+         * @return L'insieme immodificabile dei like del post con id postId in questa versione
+         */
+        public Set<String> likesOf(long postId) {
+            return new AbstractSet<String>() {
+                @Override
+                public boolean contains(Object o) {
+                    return o instanceof String && lookup(new Key(postId, (String) o), tables, runs);
+                }
+
+                @Override
+                public int size() {
+                    return counts.getOrDefault(postId, 0);
+                }
+
+                @Override
+                public Iterator<String> iterator() {
+                    return Collections.unmodifiableList(scan(postId, tables, runs, new TreeMap<>())).iterator();
+                }
+            };
+        }
+    }
+
+    /**
+     * Rilascio dei run di una versione non più raggiungibile
+     */
+    private class Release implements Runnable {
+        private final List<Run> runs;
+
+        private Release(List<Run> runs) {
+            this.runs = runs;
+        }
+
+        @Override
+        public void run() {
+            lock.writeLock().lock();
+            try {
+                for (Run r : runs) {
+                    r.pins--;
+                    r.deleteIfUnused();
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Insieme dei like di un post, vista di this
+     */
+    private class LikeSet extends AbstractSet<String> {
+        private final long postId;
+
+        private LikeSet(long postId) {
+            this.postId = postId;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && LikeStore.this.contains(postId, (String) o);
+        }
+
+        @Override
+        public boolean add(String user) {
+            return put(postId, user, true);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof String && put(postId, (String) o, false);
+        }
+
+        @Override
+        public int size() {
+            return count(postId);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count(postId) == 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            Iterator<String> it = scan(postId).iterator();
+
+            return new Iterator<String>() {
+                private String last;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    last = it.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    put(postId, last, false);
+                    last = null;
+                }
+            };
+        }
+    }
+}
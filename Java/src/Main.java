@@ -1,4 +1,19 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import Exceptions.Likes.AutoLikeException;
 import Exceptions.Likes.LikeNotFoundException;
@@ -6,6 +21,7 @@ import Exceptions.Post.EmptyContentException;
 import Exceptions.Post.PostAlreadyPublishedException;
 import Exceptions.Post.PostLengthExceededException;
 import Exceptions.Post.PostNotFoundException;
+import Exceptions.RateLimit.RateLimitExceededException;
 import Exceptions.Reporting.AutoReportException;
 import Exceptions.Reporting.ReportingAlreadySentException;
 import Exceptions.User.InvalidUsernameException;
@@ -1079,5 +1095,1246 @@ public class Main {
         catch (Exception e) {
             System.out.println("Errore grave nella getReportingsForPost");
         }
+
+        /***********************************TEST SNAPSHOT******************************************/
+        System.out.println("\nTest snapshot\n");
+        System.out.println("Creo uno snapshot di una rete e continuo a modificare la rete: lo snapshot non deve " +
+                "vedere le modifiche successive");
+
+        try {
+            SocialNetworkImpl live = new SocialNetworkImpl();
+            live.registerUser(marco);
+            live.registerUser(laura);
+            live.registerUser(federico);
+            Post primo = new PostImpl(marco, "Primo post prima dello #snapshot");
+            live.publishPost(primo);
+            live.like(primo, laura);
+
+            SocialNetwork snapshot = live.snapshot();
+
+            Post secondo = new PostImpl(marco, "Secondo post dopo lo #snapshot");
+            live.publishPost(secondo);
+            live.unLike(primo, laura);
+            live.like(secondo, federico);
+
+            List<Post> snapshotPosts = snapshot.writtenBy(marco);
+            List<Post> livePosts = live.writtenBy(marco);
+            Set<String> snapshotFollowers = snapshot.guessFollowers(snapshotPosts).get(marco);
+            Set<String> liveFollowers = live.guessFollowers(livePosts).get(marco);
+            System.out.println("Post di Marco nello snapshot: " + snapshotPosts.size() + ", nella rete: " + livePosts.size());
+            System.out.println("Follower di Marco nello snapshot: " + snapshotFollowers + ", nella rete: " + liveFollowers);
+            if (snapshotPosts.size() != 1 || livePosts.size() != 2 ||
+                    !snapshotFollowers.equals(Collections.singleton(laura)) ||
+                    !liveFollowers.equals(Collections.singleton(federico))) {
+                System.out.println("Errore grave nello snapshot");
+            }
+
+            System.out.println("Provo a pubblicare un post nello snapshot");
+            try {
+                snapshot.publishPost(new PostImpl(laura, "Post nello snapshot"));
+                System.out.println("Errore grave nello snapshot");
+            }
+            catch (UnsupportedOperationException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nello snapshot");
+        }
+
+        /***********************************TEST JOURNAL******************************************/
+        System.out.println("\nTest journal\n");
+        System.out.println("Registro in un journal le operazioni di una rete e le applico a una replica: la " +
+                "replica deve arrivare allo stesso stato della rete");
+
+        try {
+            Path journal = Files.createTempFile("journal", ".log");
+            SocialNetworkImpl primary = new SocialNetworkImpl();
+            JournalWriter writer = new JournalWriter(primary, journal);
+
+            primary.registerUser(marco);
+            primary.registerUser(laura);
+            primary.registerUser(federico);
+            Post primo = new PostImpl(marco, "Primo post #replicato");
+            Post secondo = new PostImpl(marco, "Secondo post #replicato");
+            Post terzo = new PostImpl(laura, "Post da cancellare");
+            primary.publishPost(primo);
+            primary.publishPost(secondo);
+            primary.publishPost(terzo);
+            primary.like(primo, laura);
+            primary.like(secondo, federico);
+            primary.unLike(primo, laura);
+            primary.deletePost(terzo);
+            writer.close();
+
+            JournalReplica replica = new JournalReplica(new SocialNetworkImpl(), journal);
+            replica.start();
+            for (int i=0; i<5000 && replica.getAppliedSequence() < writer.getWrittenSequence(); i++) {
+                Thread.sleep(1);
+            }
+            replica.close();
+
+            SocialNetwork replicated = replica.read();
+            System.out.println("Operazioni scritte: " + (writer.getWrittenSequence() + 1) +
+                    ", applicate: " + (replica.getAppliedSequence() + 1));
+            System.out.println("Post di Marco nella replica: " + replicated.writtenBy(marco).size() +
+                    ", post di Laura: " + replicated.writtenBy(laura).size());
+            System.out.println("Follower di Marco nella replica: " +
+                    replicated.guessFollowers(replicated.writtenBy(marco)).get(marco));
+            if (replica.getAppliedSequence() != writer.getWrittenSequence() || replica.getFailure() != null ||
+                    replicated.writtenBy(marco).size() != 2 || !replicated.writtenBy(laura).isEmpty() ||
+                    !replicated.guessFollowers(replicated.writtenBy(marco)).get(marco)
+                            .equals(primary.guessFollowers(primary.writtenBy(marco)).get(marco))) {
+                System.out.println("Errore grave nel journal");
+            }
+            Files.delete(journal);
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nel journal");
+        }
+
+        /***********************************TEST SHARDEDSOCIALNETWORK******************************************/
+        System.out.println("\nTest ShardedSocialNetwork\n");
+        System.out.println("Eseguo le stesse operazioni su una rete divisa in partizioni e su una rete non " +
+                "partizionata: like tra utenti di partizioni diverse e rimozione di un utente devono dare lo " +
+                "stesso risultato");
+
+        try {
+            ShardedSocialNetwork sharded = new ShardedSocialNetwork(4);
+            SocialNetworkImpl single = new SocialNetworkImpl();
+            String[] users = {marco, laura, federico, "Sofia", "Michele", "Giulia"};
+            List<Post> shardedPosts = new ArrayList<>();
+
+            for (SocialNetwork net : Arrays.asList(sharded, single)) {
+                List<Post> netPosts = new ArrayList<>();
+                for (String u : users) {
+                    net.registerUser(u);
+                }
+                for (String u : users) {
+                    Post p = new PostImpl(u, "Post di " + u + " con #partizioni");
+                    net.publishPost(p);
+                    netPosts.add(p);
+                }
+                // Ogni utente mette like ai post dei due utenti successivi
+                for (int i=0; i<users.length; i++) {
+                    net.like(netPosts.get((i + 1) % users.length), users[i]);
+                    net.like(netPosts.get((i + 2) % users.length), users[i]);
+                }
+                net.removeUser(laura);
+                netPosts.remove(1);
+                if (net == sharded) {
+                    shardedPosts = netPosts;
+                }
+            }
+
+            System.out.println("Partizioni: " + sharded.getShardCount());
+            List<Post> singlePosts = new ArrayList<>();
+            for (String u : users) {
+                if (!u.equals(laura)) {
+                    singlePosts.addAll(single.writtenBy(u));
+                }
+            }
+            Map<String, Set<String>> shardedFollowers = new TreeMap<>(sharded.guessFollowers(shardedPosts));
+            Map<String, Set<String>> singleFollowers = new TreeMap<>(single.guessFollowers(singlePosts));
+            for (Map.Entry<String, Set<String>> e : shardedFollowers.entrySet()) {
+                System.out.println(e.getKey() + " è seguito/a da: " + new TreeSet<>(e.getValue()));
+            }
+            if (!shardedFollowers.equals(singleFollowers)) {
+                System.out.println("Errore grave nella ShardedSocialNetwork");
+            }
+
+            System.out.println("Provo a mettere like con l'utente rimosso");
+            try {
+                sharded.like(shardedPosts.get(0), laura);
+                System.out.println("Errore grave nella ShardedSocialNetwork");
+            }
+            catch (UserNotFoundException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella ShardedSocialNetwork");
+        }
+
+        /***********************************TEST QUERYCACHE******************************************/
+        System.out.println("\nTest invalidazione dei risultati in cache\n");
+        System.out.println("Ripeto guessFollowers e writtenBy sulla stessa lista di post dopo like, unLike e " +
+                "deletePost: i risultati in cache non devono essere più vecchi della rete");
+
+        try {
+            SocialNetworkImpl cachedNetwork = new SocialNetworkImpl();
+            cachedNetwork.registerUser(marco);
+            cachedNetwork.registerUser(laura);
+            cachedNetwork.registerUser(federico);
+            Post primo = new PostImpl(marco, "Primo post in #cache");
+            Post secondo = new PostImpl(laura, "Secondo post in #cache");
+            cachedNetwork.publishPost(primo);
+            cachedNetwork.publishPost(secondo);
+            List<Post> query = Arrays.asList(primo, secondo);
+
+            System.out.println("Prima dei like: " + cachedNetwork.guessFollowers(query));
+            // Una modifica al risultato restituito non deve alterare quello in cache
+            cachedNetwork.guessFollowers(query).clear();
+            Map<String, Set<String>> before = cachedNetwork.guessFollowers(query);
+            cachedNetwork.like(primo, laura);
+            cachedNetwork.like(secondo, federico);
+            Map<String, Set<String>> afterLike = new TreeMap<>(cachedNetwork.guessFollowers(query));
+            System.out.println("Dopo i like: " + afterLike);
+            cachedNetwork.unLike(primo, laura);
+            Map<String, Set<String>> afterUnlike = new TreeMap<>(cachedNetwork.guessFollowers(query));
+            System.out.println("Dopo l'unlike: " + afterUnlike);
+            if (!before.values().stream().allMatch(Set::isEmpty) ||
+                    !afterLike.get(marco).equals(Collections.singleton(laura)) ||
+                    !afterLike.get(laura).equals(Collections.singleton(federico)) ||
+                    !afterUnlike.get(marco).isEmpty()) {
+                System.out.println("Errore grave nella cache delle interrogazioni");
+            }
+
+            System.out.println("Post di Laura nella lista: " + cachedNetwork.writtenBy(query, laura).size());
+            cachedNetwork.deletePost(secondo);
+            System.out.println("Cancello il post di Laura e ripeto la writtenBy sulla stessa lista");
+            try {
+                cachedNetwork.writtenBy(query, laura);
+                System.out.println("Errore grave nella cache delle interrogazioni");
+            }
+            catch (PostNotFoundException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella cache delle interrogazioni");
+        }
+
+        /***********************************TEST LIKESTORE******************************************/
+        System.out.println("\nTest LikeStore\n");
+        System.out.println("Memorizzo i like in un LikeStore con una memtable piccola, in modo che vengano scritti " +
+                "più run e fusi dalla compaction: i like devono restare gli stessi di una rete in memoria");
+
+        try {
+            Path likesDirectory = Files.createTempDirectory("likes");
+            LikeStore store = new LikeStore(likesDirectory, 4);
+            SocialNetworkImpl stored = new SocialNetworkImpl();
+            SocialNetworkImpl inMemory = new SocialNetworkImpl();
+            stored.setLikeStore(store);
+            String[] users = {marco, laura, federico, "Sofia", "Michele"};
+            List<Post> storedPosts = new ArrayList<>();
+            List<Post> inMemoryPosts = new ArrayList<>();
+
+            for (String u : users) {
+                stored.registerUser(u);
+                inMemory.registerUser(u);
+            }
+            for (int i=0; i<10; i++) {
+                Post p = new PostImpl(users[i % users.length], "Post numero " + i + " nel #likestore");
+                Post q = new PostImpl(users[i % users.length], "Post numero " + i + " nel #likestore");
+                stored.publishPost(p);
+                inMemory.publishPost(q);
+                storedPosts.add(p);
+                inMemoryPosts.add(q);
+            }
+            // Ogni utente mette like a tutti i post degli altri e poi ne toglie la metà
+            for (int i=0; i<10; i++) {
+                for (String u : users) {
+                    if (!u.equals(storedPosts.get(i).getAuthor())) {
+                        stored.like(storedPosts.get(i), u);
+                        inMemory.like(inMemoryPosts.get(i), u);
+                    }
+                }
+            }
+            for (int i=0; i<10; i+=2) {
+                for (String u : users) {
+                    if (!u.equals(storedPosts.get(i).getAuthor())) {
+                        stored.unLike(storedPosts.get(i), u);
+                        inMemory.unLike(inMemoryPosts.get(i), u);
+                    }
+                }
+            }
+            stored.deletePost(storedPosts.remove(1));
+            inMemory.deletePost(inMemoryPosts.remove(1));
+            store.awaitCompaction();
+
+            Map<String, Set<String>> storedFollowers = new TreeMap<>(stored.guessFollowers(storedPosts));
+            System.out.println("Almeno una compaction eseguita: " + (store.getCompactions() > 0));
+            for (Map.Entry<String, Set<String>> e : storedFollowers.entrySet()) {
+                System.out.println(e.getKey() + " è seguito/a da: " + new TreeSet<>(e.getValue()));
+            }
+            if (store.getCompactions() == 0 || store.getCompactionFailure() != null ||
+                    !storedFollowers.equals(new TreeMap<>(inMemory.guessFollowers(inMemoryPosts)))) {
+                System.out.println("Errore grave nel LikeStore");
+            }
+
+            store.close();
+            Files.delete(likesDirectory);
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nel LikeStore");
+        }
+
+        /***********************************TEST LIVELLO FREDDO******************************************/
+        System.out.println("\nTest livello freddo\n");
+        System.out.println("Sposto su disco i post più vecchi di una data: le operazioni che li riguardano devono " +
+                "riportarli in memoria con i loro like");
+
+        try {
+            Path coldDirectory = Files.createTempDirectory("cold");
+            ColdPostStore coldStore = new ColdPostStore(coldDirectory);
+            SocialNetworkImpl tiered = new SocialNetworkImpl();
+            tiered.setColdStore(coldStore);
+            tiered.registerUser(marco);
+            tiered.registerUser(laura);
+            tiered.registerUser(federico);
+
+            LocalDateTime old = LocalDateTime.of(2020, 1, 1, 12, 0);
+            Post vecchio1 = new PostImpl(marco, "Vecchio post per il #livellofreddo", old);
+            Post vecchio2 = new PostImpl(marco, "Altro vecchio post", old.plusMinutes(1));
+            Post recente = new PostImpl(laura, "Post recente", old.plusYears(1));
+            tiered.publishPost(vecchio1);
+            tiered.publishPost(vecchio2);
+            tiered.publishPost(recente);
+            tiered.like(vecchio1, laura);
+            tiered.like(recente, federico);
+
+            int evicted = tiered.evictColdPosts(old.plusMonths(1));
+            System.out.println("Post spostati nel livello freddo: " + evicted + ", post freddi: " + coldStore.getColdPosts());
+
+            System.out.println("Metto like a un post freddo e leggo i post di Marco");
+            tiered.like(vecchio2, federico);
+            List<Post> marcoPosts = tiered.writtenBy(marco);
+            Map<String, Set<String>> followers = new TreeMap<>(tiered.guessFollowers(marcoPosts));
+            System.out.println("Post di Marco: " + marcoPosts.size() + ", post freddi: " + coldStore.getColdPosts());
+            System.out.println("Marco è seguito/a da: " + new TreeSet<>(followers.get(marco)));
+            if (evicted != 2 || marcoPosts.size() != 2 || coldStore.getColdPosts() != 0 ||
+                    !followers.get(marco).equals(new TreeSet<>(Arrays.asList(laura, federico)))) {
+                System.out.println("Errore grave nel livello freddo");
+            }
+
+            coldStore.close();
+            Files.delete(coldDirectory);
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nel livello freddo");
+        }
+
+        /***********************************TEST MODERAZIONE ASINCRONA******************************************/
+        System.out.println("\nTest moderazione asincrona\n");
+        System.out.println("Collego una ModerationPipeline a una rete moderata: le segnalazioni automatiche devono " +
+                "essere le stesse della moderazione sincrona, anche dopo la chiusura della pipeline");
+
+        try {
+            Set<String> forbidden = new TreeSet<>(Arrays.asList("parolaccia", "insulto"));
+            ModeratedSocialNetworkImpl async = new ModeratedSocialNetworkImpl(forbidden);
+            ModeratedSocialNetworkImpl sync = new ModeratedSocialNetworkImpl(forbidden);
+            ModerationPipeline pipeline = new ModerationPipeline(2, 16, 4);
+            async.setModerationPipeline(pipeline);
+
+            List<Post> asyncPosts = new ArrayList<>();
+            List<Post> syncPosts = new ArrayList<>();
+            for (ModeratedSocialNetworkImpl net : Arrays.asList(async, sync)) {
+                net.registerUser(marco);
+                net.registerUser(laura);
+                for (int i=0; i<40; i++) {
+                    String text = i % 4 == 0 ? "Post " + i + " con una parolaccia e un insulto" : "Post " + i + " pulito";
+                    Post p = new PostImpl(i % 2 == 0 ? marco : laura, text);
+                    net.publishPost(p);
+                    (net == async ? asyncPosts : syncPosts).add(p);
+                }
+            }
+
+            boolean idle = pipeline.awaitIdle(5000);
+            pipeline.close();
+            Post afterClose = new PostImpl(marco, "Un insulto dopo la chiusura della pipeline");
+            async.publishPost(afterClose);
+            asyncPosts.add(afterClose);
+            Post afterCloseSync = new PostImpl(marco, "Un insulto dopo la chiusura della pipeline");
+            sync.publishPost(afterCloseSync);
+            syncPosts.add(afterCloseSync);
+
+            int asyncReportings = 0;
+            int syncReportings = 0;
+            boolean same = true;
+            for (int i=0; i<asyncPosts.size(); i++) {
+                int a = async.getReportingsForPost(asyncPosts.get(i)).size();
+                int s = sync.getReportingsForPost(syncPosts.get(i)).size();
+                asyncReportings += a;
+                syncReportings += s;
+                same = same && a == s;
+            }
+            System.out.println("Segnalazioni con la pipeline: " + asyncReportings + ", senza: " + syncReportings);
+            // I post rifiutati perché la coda era piena sono stati controllati in modo sincrono
+            System.out.println("Post controllati dai worker o in modo sincrono: " +
+                    (pipeline.getChecked() + pipeline.getRejected()));
+            if (!idle || !same || pipeline.getChecked() + pipeline.getRejected() != 40 || pipeline.getFailures() != 0) {
+                System.out.println("Errore grave nella moderazione asincrona");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella moderazione asincrona");
+        }
+
+        /***********************************TEST FINESTRA DI TENDENZA******************************************/
+        System.out.println("\nTest finestra degli hashtag di tendenza\n");
+        System.out.println("Conto gli hashtag in una finestra di un'ora divisa in 6 intervalli e faccio avanzare " +
+                "l'orologio: gli intervalli usciti dalla finestra non devono essere più contati");
+
+        try {
+            ManualClock clock = new ManualClock(Instant.parse("2021-06-01T12:00:00Z"));
+            TrendingWindow window = new TrendingWindow(Duration.ofHours(1), 6, clock);
+            LocalDateTime now = LocalDateTime.now(clock);
+            window.add(new PostImpl(marco, "Notizie di #calciomercato e di #calcio", now.minusMinutes(50)));
+            window.add(new PostImpl(laura, "Ancora #calcio e un po' di #meteo", now.minusMinutes(5)));
+            window.add(new PostImpl(federico, "Post #vecchio fuori dalla finestra", now.minusHours(2)));
+            List<String> atStart = window.getTrending();
+            System.out.println("Hashtag di tendenza: " + atStart);
+
+            clock.advance(Duration.ofMinutes(20));
+            List<String> afterExpiry = window.getTrending();
+            System.out.println("Dopo 20 minuti: " + afterExpiry);
+            clock.advance(Duration.ofHours(1));
+            List<String> afterWindow = window.getTrending();
+            System.out.println("Dopo un'altra ora: " + afterWindow);
+            if (!atStart.equals(Arrays.asList("calcio", "calciomercato", "meteo")) ||
+                    !afterExpiry.equals(Arrays.asList("calcio", "meteo")) || !afterWindow.isEmpty()) {
+                System.out.println("Errore grave nella finestra di tendenza");
+            }
+
+            SocialNetworkImpl trendingNetwork = new SocialNetworkImpl();
+            trendingNetwork.registerUser(marco);
+            trendingNetwork.registerUser(laura);
+            System.out.println("Chiedo gli hashtag di tendenza senza aver configurato la finestra");
+            try {
+                trendingNetwork.getTrendingNow();
+                System.out.println("Errore grave nella finestra di tendenza");
+            }
+            catch (IllegalStateException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+
+            Post recente = new PostImpl(marco, "Post #recente");
+            Post daCancellare = new PostImpl(laura, "Un altro post #recente da #cancellare");
+            trendingNetwork.publishPost(new PostImpl(laura, "Post #vecchio", LocalDateTime.now().minusDays(1)));
+            trendingNetwork.publishPost(recente);
+            trendingNetwork.setTrendingWindow(Duration.ofHours(1), 6);
+            trendingNetwork.publishPost(daCancellare);
+            List<String> inNetwork = trendingNetwork.getTrendingNow();
+            trendingNetwork.deletePost(daCancellare);
+            List<String> afterDelete = trendingNetwork.getTrendingNow();
+            System.out.println("Hashtag di tendenza nella rete: " + inNetwork + ", dopo la cancellazione: " + afterDelete);
+            if (!inNetwork.equals(Arrays.asList("recente", "cancellare")) ||
+                    !afterDelete.equals(Collections.singletonList("recente"))) {
+                System.out.println("Errore grave nella finestra di tendenza");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella finestra di tendenza");
+        }
+
+        /***********************************TEST HOMETIMELINE******************************************/
+        System.out.println("\nTest homeTimeline\n");
+        System.out.println("Leggo a pagine la home timeline di Laura con una cache piccola, in cui Federico ha " +
+                "troppi follower per il fan-out in scrittura: le pagine devono contenere tutti i post degli " +
+                "autori seguiti, dal più recente, anche dopo nuove pubblicazioni, like e unLike");
+
+        try {
+            SocialNetworkImpl timelineNetwork = new SocialNetworkImpl();
+            timelineNetwork.setTimelineCache(new TimelineCache(3, 1, 10));
+            timelineNetwork.registerUser(marco);
+            timelineNetwork.registerUser(laura);
+            timelineNetwork.registerUser(federico);
+            timelineNetwork.registerUser(anna);
+
+            LocalDateTime start = LocalDateTime.of(2021, 6, 1, 12, 0);
+            List<Post> marcoTimeline = new ArrayList<>();
+            List<Post> federicoTimeline = new ArrayList<>();
+            for (int i=0; i<4; i++) {
+                Post m = new PostImpl(marco, "Post " + i + " di Marco", start.plusMinutes(2 * i));
+                Post f = new PostImpl(federico, "Post " + i + " di Federico", start.plusMinutes(2 * i + 1));
+                timelineNetwork.publishPost(m);
+                timelineNetwork.publishPost(f);
+                marcoTimeline.add(m);
+                federicoTimeline.add(f);
+            }
+            timelineNetwork.like(marcoTimeline.get(0), laura);
+            timelineNetwork.like(federicoTimeline.get(0), laura);
+            timelineNetwork.like(federicoTimeline.get(0), anna);
+
+            List<List<Post>> pages = new ArrayList<>();
+            for (int round=0; round<4; round++) {
+                if (round == 1) {
+                    // Post pubblicati dopo che la timeline di Laura è entrata in cache
+                    Post m = new PostImpl(marco, "Post recente di Marco", start.plusHours(1));
+                    Post f = new PostImpl(federico, "Post recente di Federico", start.plusHours(1).plusMinutes(1));
+                    timelineNetwork.publishPost(m);
+                    timelineNetwork.publishPost(f);
+                    marcoTimeline.add(m);
+                    federicoTimeline.add(f);
+                }
+                else if (round == 2) {
+                    timelineNetwork.unLike(marcoTimeline.get(0), laura);
+                }
+                else if (round == 3) {
+                    timelineNetwork.like(marcoTimeline.get(1), laura);
+                }
+
+                List<Post> read = new ArrayList<>();
+                List<Post> page = timelineNetwork.homeTimeline(laura, null, 2);
+                while (!page.isEmpty()) {
+                    read.addAll(page);
+                    page = timelineNetwork.homeTimeline(laura, page.get(page.size() - 1), 2);
+                }
+                pages.add(read);
+            }
+
+            List<Post> expectedBoth = new ArrayList<>(marcoTimeline);
+            expectedBoth.addAll(federicoTimeline);
+            expectedBoth.sort(TimelineCache.NEWEST_FIRST);
+            List<Post> expectedFederico = new ArrayList<>(federicoTimeline);
+            expectedFederico.sort(TimelineCache.NEWEST_FIRST);
+
+            System.out.println("Post nella timeline prima delle nuove pubblicazioni: " + pages.get(0).size() +
+                    ", dopo: " + pages.get(1).size());
+            System.out.println("Primo post della timeline: " + pages.get(1).get(0).getText());
+            System.out.println("Post nella timeline dopo l'unLike a Marco: " + pages.get(2).size() +
+                    ", dopo un nuovo like: " + pages.get(3).size());
+            if (!pages.get(0).equals(expectedBoth.subList(2, expectedBoth.size())) ||
+                    !pages.get(1).equals(expectedBoth) || !pages.get(2).equals(expectedFederico) ||
+                    !pages.get(3).equals(expectedBoth)) {
+                System.out.println("Errore grave nella homeTimeline");
+            }
+
+            System.out.println("Provo a leggere la timeline di un utente non registrato");
+            try {
+                timelineNetwork.homeTimeline(nomeLungo, null, 2);
+                System.out.println("Errore grave nella homeTimeline");
+            }
+            catch (UserNotFoundException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella homeTimeline");
+        }
+
+        /***********************************TEST WHOTOFOLLOW******************************************/
+        System.out.println("\nTest whoToFollow\n");
+        System.out.println("Suggerisco a Laura chi seguire tra gli utenti seguiti dagli altri follower di Marco: " +
+                "i suggerimenti devono essere ordinati per numero di follower in comune e non comprendere chi " +
+                "Laura segue già");
+
+        try {
+            SocialNetworkImpl graphNetwork = new SocialNetworkImpl();
+            Map<String, Post> postOf = new HashMap<>();
+            for (String u : Arrays.asList(marco, laura, federico, anna, michele, sofia)) {
+                graphNetwork.registerUser(u);
+                Post p = new PostImpl(u, "Post di " + u);
+                graphNetwork.publishPost(p);
+                postOf.put(u, p);
+            }
+
+            System.out.println("Chiedo dei suggerimenti senza aver abilitato il grafo \"segue\"");
+            try {
+                graphNetwork.whoToFollow(laura, 5);
+                System.out.println("Errore grave nella whoToFollow");
+            }
+            catch (IllegalStateException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+
+            // Metà degli archi esiste già quando il grafo viene abilitato, il resto viene aggiunto dopo
+            graphNetwork.like(postOf.get(marco), laura);
+            graphNetwork.like(postOf.get(marco), federico);
+            graphNetwork.like(postOf.get(michele), federico);
+            graphNetwork.enableFollowGraph();
+            graphNetwork.like(postOf.get(marco), anna);
+            graphNetwork.like(postOf.get(michele), anna);
+            graphNetwork.like(postOf.get(sofia), federico);
+
+            List<String> suggested = graphNetwork.whoToFollow(laura, 5);
+            List<String> limited = graphNetwork.whoToFollow(laura, 1);
+            System.out.println("Suggerimenti per Laura: " + suggested + ", il primo: " + limited);
+            graphNetwork.like(postOf.get(michele), laura);
+            List<String> afterFollow = graphNetwork.whoToFollow(laura, 5);
+            System.out.println("Suggerimenti dopo aver seguito Michele: " + afterFollow);
+            if (!suggested.equals(Arrays.asList(michele, sofia)) ||
+                    !limited.equals(Collections.singletonList(michele)) ||
+                    !afterFollow.equals(Collections.singletonList(sofia))) {
+                System.out.println("Errore grave nella whoToFollow");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella whoToFollow");
+        }
+
+        /***********************************TEST INFLUENCERSBYRANK******************************************/
+        System.out.println("\nTest influencersByRank\n");
+        System.out.println("Calcolo la classifica di influenza sul grafo \"segue\", la ricalcolo dopo averlo " +
+                "modificato con refreshInfluence e controllo che la nuova classifica segua il grafo");
+
+        try {
+            SocialNetworkImpl rankNetwork = new SocialNetworkImpl();
+            Map<String, Post> postOf = new HashMap<>();
+            for (String u : Arrays.asList(marco, laura, federico, anna, michele, sofia)) {
+                rankNetwork.registerUser(u);
+                Post p = new PostImpl(u, "Post di " + u);
+                rankNetwork.publishPost(p);
+                postOf.put(u, p);
+            }
+
+            System.out.println("Chiedo la classifica senza aver abilitato il grafo \"segue\"");
+            try {
+                rankNetwork.influencersByRank(3);
+                System.out.println("Errore grave nella influencersByRank");
+            }
+            catch (IllegalStateException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+
+            rankNetwork.enableFollowGraph();
+            for (String u : Arrays.asList(federico, anna, michele, sofia)) {
+                rankNetwork.like(postOf.get(marco), u);
+            }
+            // Laura riceve tutta l'influenza di Marco, l'unico utente che segue
+            rankNetwork.like(postOf.get(laura), marco);
+            List<String> first = rankNetwork.influencersByRank(2);
+            System.out.println("Utenti più influenti: " + first);
+
+            rankNetwork.unLike(postOf.get(laura), marco);
+            for (String u : Arrays.asList(marco, laura, federico, anna, michele)) {
+                rankNetwork.like(postOf.get(sofia), u);
+            }
+            rankNetwork.refreshInfluence().join();
+            List<String> refreshed = rankNetwork.influencersByRank(2);
+            System.out.println("Utenti più influenti dopo il ricalcolo: " + refreshed);
+            if (!first.equals(Arrays.asList(laura, marco)) || !refreshed.equals(Arrays.asList(sofia, marco)) ||
+                    !rankNetwork.influencersByRank(0).isEmpty()) {
+                System.out.println("Errore grave nella influencersByRank");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella influencersByRank");
+        }
+
+        /***********************************TEST STATISTICHE APPROSSIMATE******************************************/
+        System.out.println("\nTest statistiche approssimate\n");
+        System.out.println("Confronto le stime di NetworkSketches con i valori esatti: le stime devono restare nei " +
+                "limiti di errore dichiarati, anche per i post pubblicati prima di setSketches");
+
+        try {
+            SocialNetworkImpl sketchedNetwork = new SocialNetworkImpl();
+            NetworkSketches sketches = new NetworkSketches();
+            List<String> sketchUsers = new ArrayList<>();
+            sketchedNetwork.registerUser(marco);
+            for (int i=0; i<500; i++) {
+                String u = "utente" + i;
+                sketchedNetwork.registerUser(u);
+                sketchUsers.add(u);
+            }
+            Post popolare = new PostImpl(marco, "Post con molti like");
+            sketchedNetwork.publishPost(popolare);
+
+            // 300 utenti distinti usano #calcio, 100 usano #meteo e 3 usano #raro, metà prima di setSketches
+            for (int i=0; i<403; i++) {
+                String tag = i < 300 ? "#calcio" : i < 400 ? "#meteo" : "#raro";
+                sketchedNetwork.publishPost(new PostImpl(sketchUsers.get(i), "Parliamo di " + tag + " con @" + marco));
+                if (i == 199) {
+                    sketchedNetwork.setSketches(sketches);
+                }
+            }
+            for (String u : sketchUsers) {
+                sketchedNetwork.like(popolare, u);
+            }
+
+            long likers = sketches.estimateDistinctLikers(marco);
+            long taggers = sketches.estimateDistinctTaggers("calcio");
+            long calcio = sketches.estimateHashtagCount("calcio");
+            long raro = sketches.estimateHashtagCount("raro");
+            long mentions = sketches.estimateMentionCount(marco);
+            // Errore del CountMinSketch con le dimensioni predefinite: e / DEFAULT_WIDTH delle occorrenze totali
+            long maxCountError = (long) Math.ceil(Math.E / CountMinSketch.DEFAULT_WIDTH * 403);
+            System.out.println("Utenti distinti che hanno messo like a Marco: 500, stimati: " + likers);
+            System.out.println("Utenti distinti che hanno usato #calcio: 300, stimati: " + taggers);
+            System.out.println("Occorrenze di #calcio: 300, stimate: " + calcio + "; di #raro: 3, stimate: " + raro);
+            System.out.println("Menzioni di Marco: 403, stimate: " + mentions);
+            System.out.println("Hashtag più frequenti: " + sketches.topHashtags(2));
+            // L'errore standard dell'HyperLogLog è del 3.25%: ammetto tre volte l'errore standard
+            if (Math.abs(likers - 500) > 500 * 0.0975 || Math.abs(taggers - 300) > 300 * 0.0975 ||
+                    calcio < 300 || calcio > 300 + maxCountError || raro < 3 || raro > 3 + maxCountError ||
+                    mentions < 403 || mentions > 403 + maxCountError ||
+                    !sketches.topHashtags(2).equals(Arrays.asList("calcio", "meteo"))) {
+                System.out.println("Errore grave nelle statistiche approssimate");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nelle statistiche approssimate");
+        }
+
+        /***********************************TEST REQUESTEXECUTOR******************************************/
+        System.out.println("\nTest RequestExecutor\n");
+        System.out.println("Occupo tutti i posti delle analisi con delle chiamate bloccate: le analisi in eccesso " +
+                "devono essere accodate o rifiutate, mentre le scritture devono essere eseguite subito");
+
+        try {
+            SocialNetworkImpl executed = new SocialNetworkImpl();
+            RequestExecutor executor = new RequestExecutor(1, 1, 2, 1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+
+            List<CompletableFuture<List<String>>> analytics = new ArrayList<>();
+            for (int i=0; i<4; i++) {
+                analytics.add(executor.submit(RequestExecutor.Kind.ANALYTICS, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        release.await();
+                        return executed.influencers();
+                    }
+                    finally {
+                        running.decrementAndGet();
+                    }
+                }));
+            }
+            // Le prime due analisi sono in esecuzione, la terza in coda e la quarta viene rifiutata
+            executor.submit(RequestExecutor.Kind.WRITE, () -> {
+                executed.registerUser(marco);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            RequestExecutor.Stats blocked = executor.getStats(RequestExecutor.Kind.ANALYTICS);
+            System.out.println("Scrittura completata mentre le analisi sono bloccate");
+            System.out.println("Analisi in coda: " + blocked.getQueued() + ", rifiutate: " + blocked.getRejected());
+
+            System.out.println("Attendo la quarta analisi");
+            try {
+                analytics.get(3).join();
+                System.out.println("Errore grave nel RequestExecutor");
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    System.out.println("Eccezione generata correttamente");
+                }
+                else {
+                    System.out.println("Errore grave nel RequestExecutor");
+                }
+            }
+
+            release.countDown();
+            for (int i=0; i<3; i++) {
+                analytics.get(i).get(5, TimeUnit.SECONDS);
+            }
+            RequestExecutor.Stats done = executor.getStats(RequestExecutor.Kind.ANALYTICS);
+            System.out.println("Analisi inviate: " + done.getSubmitted() + ", completate: " + done.getCompleted() +
+                    ", al più " + maxRunning.get() + " contemporaneamente");
+            if (blocked.getQueued() != 1 || blocked.getRejected() != 1 || done.getSubmitted() != 4 ||
+                    done.getCompleted() != 3 || maxRunning.get() != 2 ||
+                    executor.getStats(RequestExecutor.Kind.WRITE).getCompleted() != 1) {
+                System.out.println("Errore grave nel RequestExecutor");
+            }
+
+            executor.close();
+            System.out.println("Invio una scrittura dopo la chiusura dell'esecutore");
+            try {
+                executor.submit(RequestExecutor.Kind.WRITE, executed::influencers).join();
+                System.out.println("Errore grave nel RequestExecutor");
+            }
+            catch (CompletionException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nel RequestExecutor");
+        }
+
+        /***********************************TEST RETE ASINCRONA******************************************/
+        System.out.println("\nTest rete asincrona\n");
+        System.out.println("Accodo delle operazioni a una rete asincrona senza attenderne il completamento: le " +
+                "interrogazioni successive devono vederne l'effetto, e un'operazione fallita non deve fermare " +
+                "il ciclo degli eventi");
+
+        try {
+            AsyncSocialNetworkImpl async = new AsyncSocialNetworkImpl(new SocialNetworkImpl());
+            Post primo = new PostImpl(marco, "Primo post #asincrono");
+            Post secondo = new PostImpl(laura, "Secondo post #asincrono");
+            async.registerUser(marco);
+            async.registerUser(laura);
+            async.registerUser(federico);
+            async.publishPost(primo);
+            async.publishPost(secondo);
+            async.like(primo, laura);
+            async.like(primo, federico);
+            async.like(secondo, marco);
+            CompletableFuture<Void> failed = async.like(primo, nomeLungo);
+            CompletableFuture<List<String>> influencers = async.influencers();
+            CompletableFuture<List<String>> trending = async.getTrending();
+            CompletableFuture<Map<String, Set<String>>> followers = async.guessFollowers(Arrays.asList(primo, secondo));
+
+            System.out.println("Utenti più influenti: " + influencers.get(5, TimeUnit.SECONDS));
+            System.out.println("Hashtag di tendenza: " + trending.get(5, TimeUnit.SECONDS));
+            Map<String, Set<String>> asyncFollowers = new TreeMap<>(followers.get(5, TimeUnit.SECONDS));
+            System.out.println("Follower: " + asyncFollowers);
+            if (!influencers.get().get(0).equals(marco) ||
+                    !trending.get().equals(Collections.singletonList("asincrono")) ||
+                    !asyncFollowers.get(marco).equals(new TreeSet<>(Arrays.asList(laura, federico))) ||
+                    !asyncFollowers.get(laura).equals(Collections.singleton(marco))) {
+                System.out.println("Errore grave nella rete asincrona");
+            }
+
+            System.out.println("Attendo il like di un utente non registrato");
+            try {
+                failed.join();
+                System.out.println("Errore grave nella rete asincrona");
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof UserNotFoundException) {
+                    System.out.println("Eccezione generata correttamente");
+                }
+                else {
+                    System.out.println("Errore grave nella rete asincrona");
+                }
+            }
+
+            async.close();
+            System.out.println("Registro un utente dopo la chiusura della rete asincrona");
+            try {
+                async.registerUser(anna).join();
+                System.out.println("Errore grave nella rete asincrona");
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    System.out.println("Eccezione generata correttamente");
+                }
+                else {
+                    System.out.println("Errore grave nella rete asincrona");
+                }
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella rete asincrona");
+        }
+
+        System.out.println("\nTest rete moderata asincrona\n");
+        System.out.println("Pubblico e segnalo dei post su una rete moderata asincrona: le interrogazioni devono " +
+                "vedere sia le segnalazioni automatiche sia quelle manuali accodate prima di esse");
+
+        try {
+            AsyncModeratedSocialNetworkImpl asyncModerated =
+                    new AsyncModeratedSocialNetworkImpl(new ModeratedSocialNetworkImpl(new TreeSet<>()));
+            Post offensivo = new PostImpl(marco, "Un post con un insulto");
+            Post pulito = new PostImpl(marco, "Un post pulito");
+            asyncModerated.registerUser(marco);
+            asyncModerated.registerUser(laura);
+            asyncModerated.addForbiddenWord("insulto");
+            asyncModerated.publishPost(offensivo);
+            asyncModerated.publishPost(pulito);
+            asyncModerated.report(laura, pulito);
+            CompletableFuture<Void> repeated = asyncModerated.report(laura, pulito);
+            CompletableFuture<List<Post>> controversial = asyncModerated.getControversialPosts();
+            CompletableFuture<List<Reporting>> byLaura = asyncModerated.getReportingsByAuthor(laura);
+            CompletableFuture<List<Reporting>> forOffensive = asyncModerated.getReportingsForPost(offensivo);
+
+            System.out.println("Post controversi: " + controversial.get(5, TimeUnit.SECONDS).size());
+            System.out.println("Segnalazioni di Laura: " + byLaura.get(5, TimeUnit.SECONDS).size() +
+                    ", segnalazioni del post offensivo: " + forOffensive.get(5, TimeUnit.SECONDS).size());
+            if (controversial.get().size() != 2 || byLaura.get().size() != 1 || forOffensive.get().size() != 1 ||
+                    !Reporting.AUTOMATIC_REPORTING_AUTHOR.equals(forOffensive.get().get(0).getAuthor())) {
+                System.out.println("Errore grave nella rete moderata asincrona");
+            }
+
+            System.out.println("Attendo la seconda segnalazione di Laura allo stesso post");
+            try {
+                repeated.join();
+                System.out.println("Errore grave nella rete moderata asincrona");
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof ReportingAlreadySentException) {
+                    System.out.println("Eccezione generata correttamente");
+                }
+                else {
+                    System.out.println("Errore grave nella rete moderata asincrona");
+                }
+            }
+            asyncModerated.close();
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella rete moderata asincrona");
+        }
+
+        /***********************************TEST POST DUPLICATI******************************************/
+        System.out.println("\nTest segnalazione dei post duplicati\n");
+        System.out.println("Pubblico un post, una sua copia, una sua variante quasi uguale e un post diverso: " +
+                "soltanto la copia e la variante devono ricevere una segnalazione automatica");
+
+        try {
+            ModeratedSocialNetworkImpl spamNetwork = new ModeratedSocialNetworkImpl(new TreeSet<>());
+            spamNetwork.registerUser(marco);
+            spamNetwork.registerUser(laura);
+            spamNetwork.registerUser(federico);
+            String spam = "Guadagna mille euro al giorno lavorando da casa, clicca sul link del profilo!";
+            Post originale = new PostImpl(marco, spam);
+            Post copia = new PostImpl(laura, spam);
+            Post variante = new PostImpl(federico, "guadagna MILLE euro al giorno lavorando da casa: clicca sul link del profilo");
+            Post diverso = new PostImpl(laura, "Oggi sono andata al mare con gli amici e abbiamo mangiato una pizza");
+            List<Post> spamPosts = Arrays.asList(originale, copia, variante, diverso);
+            for (Post p : spamPosts) {
+                spamNetwork.publishPost(p);
+            }
+
+            int[] automatic = new int[spamPosts.size()];
+            for (int i=0; i<spamPosts.size(); i++) {
+                for (Reporting r : spamNetwork.getReportingsForPost(spamPosts.get(i))) {
+                    if (Reporting.AUTOMATIC_REPORTING_AUTHOR.equals(r.getAuthor())) {
+                        automatic[i]++;
+                    }
+                }
+            }
+            System.out.println("Segnalazioni automatiche dell'originale, della copia, della variante e del post " +
+                    "diverso: " + Arrays.toString(automatic));
+            System.out.println("La copia condivide il testo dell'originale: " + (copia.getText() == originale.getText()));
+            if (!Arrays.equals(automatic, new int[] {0, 1, 1, 0}) || copia.getText() != originale.getText()) {
+                System.out.println("Errore grave nella segnalazione dei post duplicati");
+            }
+
+            System.out.println("Cancello tutte le copie del testo e lo ripubblico");
+            for (Post p : Arrays.asList(originale, copia, variante)) {
+                spamNetwork.deletePost(p);
+            }
+            Post ripubblicato = new PostImpl(marco, spam);
+            spamNetwork.publishPost(ripubblicato);
+            int reportingsAfterDelete = spamNetwork.getReportingsForPost(ripubblicato).size();
+            System.out.println("Segnalazioni del post ripubblicato: " + reportingsAfterDelete);
+            if (reportingsAfterDelete != 0) {
+                System.out.println("Errore grave nella segnalazione dei post duplicati");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nella segnalazione dei post duplicati");
+        }
+
+        /***********************************TEST RATELIMITER******************************************/
+        System.out.println("\nTest RateLimiter\n");
+        System.out.println("Limito i post, i like e le segnalazioni di ogni utente con dei bucket che non si " +
+                "ricaricano durante il test: le operazioni oltre il limite devono essere rifiutate senza " +
+                "modificare la rete, e il limite di un utente non deve riguardare gli altri");
+
+        try {
+            RateLimiter limiter = new RateLimiter();
+            limiter.setLimit(RateLimiter.Kind.POST, 0.001, 3);
+            limiter.setLimit(RateLimiter.Kind.LIKE, 0.001, 2);
+            limiter.setLimit(RateLimiter.Kind.REPORT, 0.001, 1);
+            ModeratedSocialNetworkImpl limitedTarget = new ModeratedSocialNetworkImpl(new TreeSet<>());
+            RateLimitedModeratedSocialNetwork limited = new RateLimitedModeratedSocialNetwork(limitedTarget, limiter);
+            limited.registerUser(marco);
+            limited.registerUser(laura);
+            limited.registerUser(federico);
+
+            int rejectedPosts = 0;
+            List<Post> marcoPosts = new ArrayList<>();
+            for (int i=0; i<5; i++) {
+                Post p = new PostImpl(marco, "Post numero " + i + " di Marco");
+                try {
+                    limited.publishPost(p);
+                    marcoPosts.add(p);
+                }
+                catch (RateLimitExceededException e) {
+                    rejectedPosts++;
+                }
+            }
+            limited.publishPost(new PostImpl(laura, "Laura non ha ancora pubblicato"));
+            System.out.println("Post di Marco pubblicati: " + limitedTarget.writtenBy(marco).size() +
+                    ", rifiutati: " + rejectedPosts + "; post di Laura: " + limitedTarget.writtenBy(laura).size());
+
+            limited.like(marcoPosts.get(0), federico);
+            limited.like(marcoPosts.get(1), federico);
+            System.out.println("Provo a mettere un terzo like con Federico");
+            try {
+                limited.like(marcoPosts.get(2), federico);
+                System.out.println("Errore grave nel RateLimiter");
+            }
+            catch (RateLimitExceededException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+
+            limited.report(laura, marcoPosts.get(0));
+            System.out.println("Provo a inviare una seconda segnalazione con Laura");
+            try {
+                limited.report(laura, marcoPosts.get(1));
+                System.out.println("Errore grave nel RateLimiter");
+            }
+            catch (RateLimitExceededException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+
+            System.out.println("Operazioni ammesse: " + limiter.getAdmitted(RateLimiter.Kind.POST) + " post, " +
+                    limiter.getAdmitted(RateLimiter.Kind.LIKE) + " like, " +
+                    limiter.getAdmitted(RateLimiter.Kind.REPORT) + " segnalazioni; rifiutate: " +
+                    limiter.getRejected(RateLimiter.Kind.POST) + " post, " +
+                    limiter.getRejected(RateLimiter.Kind.LIKE) + " like, " +
+                    limiter.getRejected(RateLimiter.Kind.REPORT) + " segnalazioni");
+            // Il like rifiutato non deve aver raggiunto la rete
+            boolean thirdLiked = !limitedTarget.guessFollowers(marcoPosts.subList(2, 3)).get(marco).isEmpty();
+            int trackedBefore = limiter.getTrackedUsers();
+            limited.removeUser(federico);
+            if (limitedTarget.writtenBy(marco).size() != 3 || rejectedPosts != 2 ||
+                    limitedTarget.writtenBy(laura).size() != 1 ||
+                    thirdLiked ||
+                    limitedTarget.getReportingsByAuthor(laura).size() != 1 ||
+                    limiter.getRejected(RateLimiter.Kind.LIKE) != 1 || limiter.getRejected(RateLimiter.Kind.REPORT) != 1 ||
+                    limiter.getTrackedUsers() != trackedBefore - 1) {
+                System.out.println("Errore grave nel RateLimiter");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nel RateLimiter");
+        }
+
+        /***********************************TEST AUTOCOMPLETAMENTO******************************************/
+        System.out.println("\nTest autocompletamento\n");
+        System.out.println("Completo dei prefissi di utenti e hashtag: gli utenti devono essere ordinati per " +
+                "numero di follower e gli hashtag per occorrenze, a parità in ordine alfabetico, anche dopo " +
+                "like, unLike e cancellazioni");
+
+        try {
+            SocialNetworkImpl completed = new SocialNetworkImpl();
+            String mario = "Mario";
+            String marta = "Marta";
+            String martina = "Martina";
+            for (String u : Arrays.asList(marco, mario, marta, martina, laura, federico)) {
+                completed.registerUser(u);
+            }
+            System.out.println("Completo un prefisso senza aver abilitato l'autocompletamento");
+            try {
+                completed.completeUsername("Mar", 5);
+                System.out.println("Errore grave nell'autocompletamento");
+            }
+            catch (IllegalStateException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+
+            Post diMarta = new PostImpl(marta, "Forza #Calcio");
+            Post diMarco = new PostImpl(marco, "Il mio #cane e il #calcio");
+            completed.publishPost(diMarta);
+            completed.publishPost(diMarco);
+            completed.like(diMarta, laura);
+            // Gli indici vengono costruiti dallo stato corrente e poi aggiornati a ogni modifica
+            completed.enableAutocomplete();
+            completed.like(diMarta, federico);
+            completed.like(diMarco, laura);
+            Post secondoCalcio = new PostImpl(laura, "Ancora #calcio e #calciomercato");
+            completed.publishPost(secondoCalcio);
+            completed.publishPost(new PostImpl(federico, "Un altro #cane"));
+
+            List<String> users = completed.completeUsername("@Mar", 10);
+            List<String> firstTwo = completed.completeUsername("Mar", 2);
+            List<String> tags = completed.completeHashtag("#CA", 10);
+            List<String> calTags = completed.completeHashtag("cal", 10);
+            System.out.println("Utenti che iniziano con Mar: " + users + ", i primi due: " + firstTwo);
+            System.out.println("Hashtag che iniziano con ca: " + tags + ", con cal: " + calTags);
+
+            completed.unLike(diMarta, federico);
+            completed.deletePost(secondoCalcio);
+            List<String> usersAfter = completed.completeUsername("Mar", 10);
+            List<String> tagsAfter = completed.completeHashtag("ca", 10);
+            System.out.println("Dopo un unLike e una cancellazione: " + usersAfter + ", " + tagsAfter);
+            if (!users.equals(Arrays.asList(marta, marco, mario, martina)) ||
+                    !firstTwo.equals(Arrays.asList(marta, marco)) ||
+                    !tags.equals(Arrays.asList("calcio", "cane", "calciomercato")) ||
+                    !calTags.equals(Arrays.asList("calcio", "calciomercato")) ||
+                    !usersAfter.equals(Arrays.asList(marco, marta, mario, martina)) ||
+                    !tagsAfter.equals(Arrays.asList("calcio", "cane"))) {
+                System.out.println("Errore grave nell'autocompletamento");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nell'autocompletamento");
+        }
+
+        /***********************************TEST ESPORTAZIONE E IMPORTAZIONE******************************************/
+        System.out.println("\nTest esportazione e importazione\n");
+        System.out.println("Esporto una rete moderata in entrambi i formati e la importo in una rete nuova: " +
+                "riesportando la rete importata devo ottenere lo stesso file, anche con testi che contengono " +
+                "virgole, virgolette, tabulazioni e fine riga");
+
+        try {
+            ModeratedSocialNetworkImpl exported = new ModeratedSocialNetworkImpl(new TreeSet<>(Arrays.asList("insulto")));
+            for (String u : Arrays.asList(marco, laura, federico, anna)) {
+                exported.registerUser(u);
+            }
+            String[] texts = {"Un post, con \"virgolette\" e una virgola", "Perché\tcosì?\nSeconda riga #strano",
+                    "Un insulto da segnalare", "Un post qualunque di @" + laura};
+            List<Post> exportedPosts = new ArrayList<>();
+            for (int i=0; i<texts.length; i++) {
+                Post p = new PostImpl(i % 2 == 0 ? marco : laura, texts[i]);
+                exported.publishPost(p);
+                exportedPosts.add(p);
+            }
+            exported.like(exportedPosts.get(0), laura);
+            exported.like(exportedPosts.get(0), federico);
+            exported.like(exportedPosts.get(1), anna);
+            exported.report(federico, exportedPosts.get(1));
+            exported.removeUser(anna);
+
+            for (BulkRecord.Format format : BulkRecord.Format.values()) {
+                Path file = Files.createTempFile("bulk", "." + format.name().toLowerCase());
+                Path again = Files.createTempFile("bulk", "." + format.name().toLowerCase());
+                BulkStats written = new BulkExporter(exported).export(file, format);
+                ModeratedSocialNetworkImpl imported = new ModeratedSocialNetworkImpl(new TreeSet<>());
+                BulkStats read = new BulkImporter(imported, 2).importFrom(file, format);
+                new BulkExporter(imported).export(again, format);
+                boolean identical = Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(again));
+                BulkStats repeated = new BulkImporter(imported, 2).importFrom(file, format);
+
+                System.out.println("Formato " + format + ": record esportati " + written.getRecords() +
+                        ", importati " + read.getRecords() + " (" + read.getRejected() + " rifiutati)");
+                System.out.println("Stesso file dopo l'importazione: " + identical);
+                System.out.println("Record rifiutati importando di nuovo lo stesso file: " + repeated.getRejected());
+                if (written.getRecords() != read.getRecords() || read.getRejected() != 0 || !identical ||
+                        repeated.getRejected() != repeated.getRecords() ||
+                        !imported.getForbiddenWords().equals(exported.getForbiddenWords()) ||
+                        !imported.getControversialPosts().equals(exported.getControversialPosts()) ||
+                        !imported.guessFollowers(imported.writtenBy(marco))
+                                .equals(exported.guessFollowers(exported.writtenBy(marco)))) {
+                    System.out.println("Errore grave nell'esportazione e importazione");
+                }
+                Files.delete(file);
+                Files.delete(again);
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nell'esportazione e importazione");
+        }
+
+        /***********************************TEST INTERROGAZIONI A STREAM******************************************/
+        System.out.println("\nTest interrogazioni a stream\n");
+        System.out.println("Confronto le interrogazioni a stream su uno snapshot con le interrogazioni che " +
+                "restituiscono una lista: devono fornire gli stessi post, ciascuno una volta sola");
+
+        try {
+            ModeratedSocialNetworkImpl streamed = new ModeratedSocialNetworkImpl(new TreeSet<>(Arrays.asList("insulto")));
+            streamed.registerUser(marco);
+            streamed.registerUser(laura);
+            LocalDateTime start = LocalDateTime.of(2021, 6, 1, 12, 0);
+            String[] texts = {"Partita di calcio", "Che meteo oggi", "Calcio e meteo insieme", "Un insulto",
+                    "Niente di speciale", "Ancora calcio"};
+            for (int i=0; i<texts.length; i++) {
+                // Due post per ogni minuto, per avere dei post con lo stesso timestamp
+                streamed.publishPost(new PostImpl(i % 2 == 0 ? marco : laura, texts[i], start.plusMinutes(i / 2)));
+            }
+            ModeratedSocialNetworkImpl frozen = (ModeratedSocialNetworkImpl) streamed.snapshot();
+            List<String> words = Arrays.asList("calcio", "meteo");
+            LocalDateTime from = start;
+            LocalDateTime to = start.plusMinutes(2);
+
+            List<Post> streamedByMarco = frozen.streamWrittenBy(marco).collect(Collectors.toList());
+            List<Post> streamedContaining = frozen.streamContaining(words).collect(Collectors.toList());
+            List<Post> streamedBetween = frozen.streamBetween(from, to).collect(Collectors.toList());
+            List<Post> streamedContainingBetween = frozen.streamContaining(words, from, to).collect(Collectors.toList());
+            List<Post> firstTwo = frozen.streamBetween(from, to).limit(2).collect(Collectors.toList());
+            Post offensive = frozen.containing(Collections.singletonList("insulto")).get(0);
+            long streamedReportings = frozen.streamReportingsForPost(offensive).count();
+            // containing restituisce un post una volta per ogni parola cercata che contiene
+            List<Post> distinctContainingBetween = new ArrayList<>(new LinkedHashSet<>(frozen.containing(words, from, to)));
+
+            System.out.println("Post di Marco: " + streamedByMarco.size() + ", con le parole cercate: " +
+                    streamedContaining.size() + ", nell'intervallo: " + streamedBetween.size() +
+                    ", con le parole cercate nell'intervallo: " + streamedContainingBetween.size());
+            System.out.println("Segnalazioni del post offensivo: " + streamedReportings);
+            if (!new HashSet<>(streamedByMarco).equals(new HashSet<>(frozen.writtenBy(marco))) ||
+                    streamedByMarco.size() != frozen.writtenBy(marco).size() ||
+                    !new HashSet<>(streamedContaining).equals(new HashSet<>(frozen.containing(words))) ||
+                    streamedContaining.size() != new HashSet<>(streamedContaining).size() ||
+                    !streamedBetween.equals(frozen.postsBetween(from, to)) ||
+                    !streamedContainingBetween.equals(distinctContainingBetween) ||
+                    !firstTwo.equals(frozen.postsBetween(from, to).subList(0, 2)) ||
+                    streamedReportings != frozen.getReportingsForPost(offensive).size()) {
+                System.out.println("Errore grave nelle interrogazioni a stream");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nelle interrogazioni a stream");
+        }
+
+        /***********************************TEST INTERVALLI DI TEMPO******************************************/
+        System.out.println("\nTest interrogazioni su intervalli di tempo\n");
+        System.out.println("Cerco i post pubblicati in un intervallo [from, to), anche usando LocalDateTime.MIN e " +
+                "LocalDateTime.MAX come estremi: i post devono essere ordinati dal meno recente e quelli con " +
+                "timestamp to esclusi");
+
+        try {
+            SocialNetworkImpl timed = new SocialNetworkImpl();
+            timed.registerUser(marco);
+            timed.registerUser(laura);
+            LocalDateTime noon = LocalDateTime.of(2021, 6, 1, 12, 0);
+            Post vecchio = new PostImpl(marco, "Un vecchio post sul calcio", LocalDateTime.of(1990, 1, 1, 0, 0));
+            Post mezzogiorno1 = new PostImpl(laura, "Il calcio a mezzogiorno", noon);
+            Post mezzogiorno2 = new PostImpl(marco, "Il meteo a mezzogiorno", noon);
+            Post dopo = new PostImpl(laura, "Il calcio dopo mezzogiorno", noon.plusMinutes(5));
+            Post futuro = new PostImpl(marco, "Un post dal futuro sul calcio", LocalDateTime.of(2100, 1, 1, 0, 0));
+            // Pubblico in ordine diverso da quello dei timestamp
+            for (Post p : Arrays.asList(dopo, futuro, mezzogiorno1, vecchio, mezzogiorno2)) {
+                timed.publishPost(p);
+            }
+
+            List<Post> atNoon = timed.postsBetween(noon, noon.plusMinutes(5));
+            List<Post> all = timed.postsBetween(LocalDateTime.MIN, LocalDateTime.MAX);
+            List<Post> beforeNoon = timed.postsBetween(LocalDateTime.MIN, noon);
+            List<Post> empty = timed.postsBetween(noon, noon);
+            List<Post> marcoAll = timed.writtenBy(marco, LocalDateTime.MIN, LocalDateTime.MAX);
+            List<Post> marcoFromNoon = timed.writtenBy(marco, noon, LocalDateTime.MAX);
+            List<Post> calcioFromNoon = timed.containing(Collections.singletonList("calcio"), noon, LocalDateTime.MAX);
+
+            System.out.println("Post a mezzogiorno: " + atNoon.size() + ", in tutto: " + all.size() +
+                    ", prima di mezzogiorno: " + beforeNoon.size() + ", nell'intervallo vuoto: " + empty.size());
+            System.out.println("Post di Marco: " + marcoAll.size() + ", da mezzogiorno: " + marcoFromNoon.size());
+            System.out.println("Post sul calcio da mezzogiorno: " + calcioFromNoon.size());
+            if (!atNoon.equals(Arrays.asList(mezzogiorno1, mezzogiorno2)) ||
+                    !all.equals(Arrays.asList(vecchio, mezzogiorno1, mezzogiorno2, dopo, futuro)) ||
+                    !beforeNoon.equals(Collections.singletonList(vecchio)) || !empty.isEmpty() ||
+                    !marcoAll.equals(Arrays.asList(vecchio, mezzogiorno2, futuro)) ||
+                    !marcoFromNoon.equals(Arrays.asList(mezzogiorno2, futuro)) ||
+                    !calcioFromNoon.equals(Arrays.asList(mezzogiorno1, dopo, futuro)) ||
+                    !timed.streamBetween(LocalDateTime.MIN, LocalDateTime.MAX).collect(Collectors.toList()).equals(all)) {
+                System.out.println("Errore grave nelle interrogazioni su intervalli di tempo");
+            }
+
+            System.out.println("Cerco i post in un intervallo con from successivo a to");
+            try {
+                timed.postsBetween(LocalDateTime.MAX, LocalDateTime.MIN);
+                System.out.println("Errore grave nelle interrogazioni su intervalli di tempo");
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println("Eccezione generata correttamente");
+            }
+        }
+        catch (Exception e) {
+            System.out.println("Errore grave nelle interrogazioni su intervalli di tempo");
+        }
+    }
+
+    /**
+     * Orologio che avanza soltanto quando richiesto, per provare le finestre temporali senza
+     * attendere
+     */
+    private static class ManualClock extends Clock {
+        private Instant now;
+
+        private ManualClock(Instant start) {
+            this.now = start;
+        }
+
+        private void advance(Duration d) {
+            now = now.plus(d);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
     }
 }
@@ -5,13 +5,18 @@ import Exceptions.Reporting.ReportingAlreadySentException;
 import Exceptions.User.UserNotFoundException;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 /** Overview:
  *      ModeratedSocialNetwork è un dato mutabile che rappresenta una rete sociale in cui,
  *      oltre alle operazioni ereditate e descritte in SocialNetwork, è anche possibile
  *      raccogliere delle segnalazioni rigardo a contenuti considerati non consoni. Si
  *      effettuano inoltre segnalazioni automatiche al momento della pubblicazione di un
- *      post.
+ *      post, sia per le parole proibite sia per i post il cui testo è uguale o quasi uguale a
+ *      quello di un post già pubblicato (ondate di spam, vedi DuplicateIndex). I post
+ *      PostImpl con lo stesso testo ne condividono la memoria. Con setModerationPipeline il
+ *      controllo delle parole proibite viene eseguito in modo asincrono, dopo la
+ *      pubblicazione.
  *
  *  Typical Element:
  *      <postLikes, userPublished, userFollowing, reportings, forbiddenWords>, in cui:
@@ -68,7 +73,10 @@ import java.util.*;
  *          (foreach r in reportings(p) -> r.automatic => r.weight == 1) &&
  *      // Le segnalazioni non automatiche devono avere peso 2
  *      foreach p in reporting.leys ->
- *          (foreach r in reportings(p) -> !r.automatic => r.weight == 2)
+ *          (foreach r in reportings(p) -> !r.automatic => r.weight == 2) &&
+ *
+ *      // L'indice dei duplicati contiene tutti e soli i post pubblicati (assente negli snapshot)
+ *      (duplicates != null => duplicates.texts == {p.text | p in postLikes.keys})
  *
  */
 public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements ModeratedSocialNetwork{
@@ -80,6 +88,20 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * Lista delle parole considerate inappropriate
      */
     private Set<String> forbiddenWords;
+    /**
+     * Copia immutabile di forbiddenWords usata dalla moderazione asincrona, null se
+     * forbiddenWords è cambiato dall'ultima copia
+     */
+    private volatile Set<String> forbiddenCopy;
+    /**
+     * Impronte dei testi dei post pubblicati, null negli snapshot
+     */
+    private final DuplicateIndex duplicates;
+    /**
+     * Pipeline che controlla le parole proibite dopo la pubblicazione, null se il controllo
+     * è sincrono e negli snapshot
+     */
+    private ModerationPipeline moderation;
 
     /**
      * @requires forbiddenWords != null
@@ -91,7 +113,22 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * @throws  NullPointerException Se forbiddenWords == null
      */
     public ModeratedSocialNetworkImpl(Set<String> forbiddenWords) {
-        super();
+        this(forbiddenWords, StorageStrategy.ORDERED);
+    }
+
+    /**
+     * @requires forbiddenWords != null && storage != null
+     * @param forbiddenWords La lista delle parole considerate inappropriate per questa rete
+     * @param storage        Le collezioni da usare per memorizzare lo stato della rete
+     *
+     * @effects Crea un oggetto di tipo ModeratedSocialNetworkImpl che memorizza il proprio
+     *          stato, comprese le segnalazioni, con le collezioni fornite da storage
+     * @modifies this.forbiddenWords, this.reportings, this.postLikes, this.userPublished,
+     *           this.userFollowing
+     * @throws  NullPointerException Se forbiddenWords == null || storage == null
+     */
+    public ModeratedSocialNetworkImpl(Set<String> forbiddenWords, StorageStrategy storage) {
+        super(storage);
 
         if (forbiddenWords == null) {
             throw new NullPointerException("La lista delle parole proibite non può essere null");
@@ -101,7 +138,51 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
         for (String s : forbiddenWords) {
             this.forbiddenWords.add(s.toLowerCase());
         }
-        reportings = new TreeMap<>();
+        reportings = storage.newPostMap();
+        duplicates = new DuplicateIndex();
+    }
+
+    /**
+     * @requires source != null
+     * @param source La rete moderata di cui creare una copia in sola lettura
+     *
+     * @effects Crea una copia immutabile dello stato di source, comprese le segnalazioni
+     *          e le parole proibite.
+     * @modifies this.forbiddenWords, this.reportings, this.postLikes, this.userPublished,
+     *           this.userFollowing
+     * @throws NullPointerException Se source == null
+     */
+    protected ModeratedSocialNetworkImpl(ModeratedSocialNetworkImpl source) {
+        super(source);
+
+        reportings = Collections.unmodifiableMap(shareOf(source.reportings, storage.newPostMap()));
+        forbiddenWords = Collections.unmodifiableSet(new TreeSet<>(source.forbiddenWords));
+        duplicates = null;
+    }
+
+    /**
+     * @effects Fornisce una vista immutabile e consistente della rete sociale moderata, su cui
+     *          è possibile eseguire tutte le interrogazioni (comprese getControversialPosts e
+     *          getReportingsByAuthor) mentre la rete originale continua a essere modificata.
+     * @modifies this.lastSnapshot, this.lastSnapshotVersion
+     * @return  Lo snapshot della rete: le operazioni di modifica su di esso lanciano
+     *          UnsupportedOperationException.
+     */
+    @Override
+    public synchronized ModeratedSocialNetwork snapshot() {
+        return (ModeratedSocialNetwork) super.snapshot();
+    }
+
+    /**
+     * @effects Come snapshot(), riutilizzando l'ultimo snapshot se risale a non più di
+     *          maxAgeMillis millisecondi fa (vedi SocialNetworkImpl.snapshot(long))
+     * @modifies this.lastSnapshot, this.lastSnapshotVersion
+     * @return  Lo snapshot della rete
+     * @throws IllegalArgumentException Se maxAgeMillis < 0
+     */
+    @Override
+    public synchronized ModeratedSocialNetwork snapshot(long maxAgeMillis) {
+        return (ModeratedSocialNetwork) super.snapshot(maxAgeMillis);
     }
 
     /**
@@ -122,39 +203,75 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * @throws NullPointerException Se author == null || post == null
      */
     @Override
-    public void report(String author, Post post)
+    public synchronized void report(String author, Post post)
             throws ReportingAlreadySentException, AutoReportException, UserNotFoundException, PostNotFoundException {
+        switch (reportStatus(author, post)) {
+            case POST_NOT_FOUND:
+                throw new PostNotFoundException(post.getId());
+            case USER_NOT_FOUND:
+                throw new UserNotFoundException(author);
+            case AUTO_REPORT:
+                throw new AutoReportException("Impossibile segnalare un post scritto da sé stessi");
+            case REPORTING_ALREADY_SENT:
+                throw new ReportingAlreadySentException("L'utente " + author + " ha già segnalato questo post");
+        }
+    }
+
+    /**
+     * @requires author != null && post != null
+     * @param author L'autore della segnalazione
+     * @param post   Il post da segnalare
+     *
+     * @effects Come report, ma segnala gli esiti negativi con il valore restituito invece che
+     *          con un'eccezione.
+     * @modifies this.reportings
+     * @return  OK se la segnalazione è stata aggiunta, POST_NOT_FOUND, USER_NOT_FOUND,
+     *          AUTO_REPORT o REPORTING_ALREADY_SENT altrimenti
+     * @throws NullPointerException Se author == null || post == null
+     */
+    public synchronized OperationStatus tryReport(String author, Post post) {
+        return reportStatus(author, post);
+    }
+
+    /**
+     * @effects Implementazione comune di report e tryReport
+     * @modifies this.reportings
+     * @return  L'esito dell'operazione
+     */
+    private OperationStatus reportStatus(String author, Post post) {
+        checkWritable();
         if (post == null) {
             throw new NullPointerException("Il post da segnalare non può essere null");
         }
+        ensureHot(post);
         if (postLikes.get(post) == null) {
-            throw new PostNotFoundException(post.getId());
+            return OperationStatus.POST_NOT_FOUND;
         }
         if (author == null) {
             throw new NullPointerException("L'utente che invia la segnalazione non può essere null");
         }
         if (!userFollowing.containsKey(author)) {
-            throw new UserNotFoundException(author);
+            return OperationStatus.USER_NOT_FOUND;
         }
         if (post.getAuthor().equals(author)) {
-            throw new AutoReportException("Impossibile segnalare un post scritto da sé stessi");
+            return OperationStatus.AUTO_REPORT;
         }
 
-        Reporting reporting = new ReportingImpl(author, MANUAL_REPORTING_WEIGHT);
-
         if (reportings.get(post) != null) {
             for (Reporting r : reportings.get(post)) {
                 if (r.getAuthor().equals(author)) {
-                    throw new ReportingAlreadySentException("L'utente " + author + " ha già segnalato questo post");
+                    return OperationStatus.REPORTING_ALREADY_SENT;
                 }
             }
         }
 
         if (reportings.get(post) == null) {
-            reportings.put(post, new TreeSet<>());
+            putOwned(reportings, post, storage.newSet());
         }
 
-        reportings.get(post).add(reporting);
+        writable(reportings, post, storage::newSet).add(new ReportingImpl(author, MANUAL_REPORTING_WEIGHT));
+        changed(SocialNetworkEvent.Type.REPORT, author, post, null);
+        return OperationStatus.OK;
     }
 
     /**
@@ -209,6 +326,13 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
         return ret;
     }
 
+    /**
+     * @return Una copia dell'insieme delle parole considerate inappropriate
+     */
+    public synchronized Set<String> getForbiddenWords() {
+        return new TreeSet<>(forbiddenWords);
+    }
+
     /**
      * @requires toAdd != null && !forbiddenWords.contains(toAdd)
      * @param toAdd La parola da aggiungere all'insieme
@@ -218,12 +342,15 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * @throws NullPointerException Se toAdd == null
      */
     @Override
-    public void addForbiddenWord(String toAdd) {
+    public synchronized void addForbiddenWord(String toAdd) {
+        checkWritable();
         if (toAdd == null) {
             throw new NullPointerException("Impossibile aggiungere una stringa null alla lista delle parole proibite");
         }
 
         forbiddenWords.add(toAdd);
+        forbiddenCopy = null;
+        changed(SocialNetworkEvent.Type.ADD_FORBIDDEN_WORD, null, null, toAdd);
     }
 
     /**
@@ -236,7 +363,8 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * @throws NullPointerException Se toRemove == null
      */
     @Override
-    public void removeForbiddenWord(String toRemove) {
+    public synchronized void removeForbiddenWord(String toRemove) {
+        checkWritable();
         if (toRemove == null) {
             throw new NullPointerException("Impossibile rimuovere una stringa null alla lista delle parole proibite");
         }
@@ -245,6 +373,8 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
             throw new NoSuchElementException("La parola da rimuovere non era presente nella lista");
         }
         forbiddenWords.remove(toRemove);
+        forbiddenCopy = null;
+        changed(SocialNetworkEvent.Type.REMOVE_FORBIDDEN_WORD, null, null, toRemove);
     }
 
     /**
@@ -301,6 +431,7 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
         if (post == null) {
             throw new NullPointerException("Il post di cui ottenre le segnalazioni non può essere null");
         }
+        ensureHot(post);
         if (!postLikes.containsKey(post)) {
             throw new PostNotFoundException(post.getId());
         }
@@ -314,6 +445,32 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
         }
     }
 
+    /**
+     * @requires post != null && postLikes(post) != null &&
+     *           la rete non viene modificata mentre lo stream viene consumato (ad esempio è
+     *           uno snapshot)
+     * @param post Il post di cui ottenere le segnalazioni
+     *
+     * @effects Come getReportingsForPost(post), ma visita le segnalazioni soltanto man mano che
+     *          vengono consumate, senza copiarle
+     * @return  Lo stream delle segnalazioni relative a post, vuoto se il post non ha
+     *          segnalazioni
+     * @throws PostNotFoundException Se post non è stato pubblicato nella rete
+     * @throws NullPointerException  Se post == null
+     */
+    public Stream<Reporting> streamReportingsForPost(Post post) throws PostNotFoundException {
+        if (post == null) {
+            throw new NullPointerException("Il post di cui ottenere le segnalazioni non può essere null");
+        }
+        ensureHot(post);
+        if (!postLikes.containsKey(post)) {
+            throw new PostNotFoundException(post.getId());
+        }
+
+        Set<Reporting> rep = reportings.get(post);
+        return rep == null ? Stream.empty() : rep.stream();
+    }
+
     /**
      * @requires toDelete != null && postLikes(toDelete) != null
      * @param toDelete  Il post da rimuovere dalla rete sociale.
@@ -327,11 +484,12 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * @throws NullPointerException Se toDelete == null
      */
     @Override
-    public void deletePost(Post toDelete) throws PostNotFoundException {
+    public synchronized void deletePost(Post toDelete) throws PostNotFoundException {
         super.deletePost(toDelete);
 
         // Rimuovo anche tutte le segnalazioni relative al post
         reportings.remove(toDelete);
+        duplicates.remove(toDelete);
     }
 
     /**
@@ -347,15 +505,16 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      * @throws NullPointerException Se user == null
      */
     @Override
-    public void removeUser(String user) throws UserNotFoundException {
+    public synchronized void removeUser(String user) throws UserNotFoundException {
         super.removeUser(user);
         Map<Post, Set<Reporting>> copy = new TreeMap<>(reportings);
 
-        // Rimuovo anche tutte le segnalazioni effettuate dall'utente
+        // Rimuovo anche tutte le segnalazioni effettuate dall'utente. writable può restituire
+        // lo stesso insieme che sto visitando, per cui scorro una copia delle segnalazioni
         for (Post p : copy.keySet()) {
-            for (Reporting r : copy.get(p)) {
+            for (Reporting r : new ArrayList<>(copy.get(p))) {
                 if (r.getAuthor().equals(user)) {
-                    reportings.get(p).remove(r);
+                    writable(reportings, p, storage::newSet).remove(r);
                 }
             }
         }
@@ -366,28 +525,197 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
      *           userFollowing(toPublish.author) != null
      * @param toPublish Il post da pubblicare
      *
-     * @effects Aggiunge un post alla rete sociale.
-     * @modifies this.postLikes, this.userPublished
+     * @effects Aggiunge un post alla rete sociale, segnalandolo automaticamente se contiene
+     *          parole proibite o se è un duplicato di un post già pubblicato.
+     * @modifies this.postLikes, this.userPublished, this.reportings
      * @throws UserNotFoundException Se l'autore del post non è registrato nella rete sociale
      * @throws NullPointerException Se toPublish == null
      */
     @Override
-    public void publishPost(Post toPublish) throws UserNotFoundException{
+    public synchronized void publishPost(Post toPublish) throws UserNotFoundException{
+        boolean published = true;
+
         try {
             super.publishPost(toPublish);
         }
         catch (PostAlreadyPublishedException e) {
             System.err.println("Il controllo delle parole proibite è già stato effettuato per il post " + toPublish.getId()
             + ": potrebbe essere già stato pubblicato");
+            published = false;
         }
 
-        for (String s : toPublish.getText().split(" ")) {
-            for (String w : forbiddenWords) {
-                if (s.toLowerCase().contains(w)) {
-                    automaticReport(toPublish);
+        screen(toPublish, published);
+    }
+
+    /**
+     * @requires toPublish != null
+     * @param toPublish Il post da pubblicare
+     *
+     * @effects Come publishPost, ma segnala gli esiti negativi con il valore restituito invece
+     *          che con un'eccezione. Un post già pubblicato non viene segnalato di nuovo.
+     * @modifies this.postLikes, this.userPublished, this.reportings
+     * @return  OK se il post è stato pubblicato, POST_ALREADY_PUBLISHED o USER_NOT_FOUND
+     *          altrimenti
+     * @throws NullPointerException Se toPublish == null
+     */
+    @Override
+    public synchronized OperationStatus tryPublish(Post toPublish) {
+        OperationStatus ret = super.tryPublish(toPublish);
+        if (ret == OperationStatus.OK) {
+            screen(toPublish, true);
+        }
+        return ret;
+    }
+
+    /**
+     * @requires toPublish != null && postLikes(toPublish) != null
+     * @param toPublish Il post di cui è stata richiesta la pubblicazione
+     * @param published True se toPublish è stato appena pubblicato, false se lo era già
+     *
+     * @effects Esegue i controlli automatici su toPublish, nello stesso ordine per publishPost
+     *          e tryPublish: se è stato appena pubblicato lo confronta con i post già
+     *          pubblicati (checkDuplicates), poi controlla le parole proibite (moderate)
+     * @modifies this.reportings, this.duplicates, this.moderation
+     */
+    private void screen(Post toPublish, boolean published) {
+        if (published) {
+            checkDuplicates(toPublish);
+        }
+        moderate(toPublish);
+    }
+
+    /**
+     * @requires toPublish != null && postLikes(toPublish) != null
+     * @effects Controlla le parole proibite contenute nel testo di toPublish: lo accoda alla
+     *          pipeline di moderazione, se è configurata e ha posto, altrimenti esegue subito
+     *          checkForbiddenWords
+     * @modifies this.reportings, this.moderation
+     */
+    private void moderate(Post toPublish) {
+        if (moderation == null || !moderation.submit(toPublish)) {
+            checkForbiddenWords(toPublish);
+        }
+    }
+
+    /**
+     * @requires toPublish != null && postLikes(toPublish) != null
+     * @effects Aggiunge a toPublish una segnalazione automatica per ogni parola proibita
+     *          contenuta nel testo
+     * @modifies this.reportings
+     */
+    private void checkForbiddenWords(Post toPublish) {
+        for (int i=forbiddenMatches(toPublish.getText(), forbiddenWords); i>0; i--) {
+            automaticReport(toPublish);
+        }
+    }
+
+    /**
+     * @requires text != null && words != null
+     * @return Il numero di coppie (parola di text, parola proibita di words) in cui la prima
+     *         contiene la seconda, senza distinguere maiuscole e minuscole: il numero di
+     *         segnalazioni automatiche di un post con testo text
+     */
+    static int forbiddenMatches(String text, Collection<String> words) {
+        int ret = 0;
+
+        for (String s : text.split(" ")) {
+            String lower = s.toLowerCase();
+            for (String w : words) {
+                if (lower.contains(w)) {
+                    ret++;
                 }
             }
         }
+        return ret;
+    }
+
+    /**
+     * @return Una copia immutabile delle parole proibite, ricostruita soltanto se sono
+     *         cambiate dall'ultima richiesta
+     */
+    Set<String> forbiddenWordsForModeration() {
+        Set<String> ret = forbiddenCopy;
+        if (ret != null) {
+            return ret;
+        }
+
+        synchronized (this) {
+            if (forbiddenCopy == null) {
+                forbiddenCopy = Collections.unmodifiableSet(new TreeSet<>(forbiddenWords));
+            }
+            return forbiddenCopy;
+        }
+    }
+
+    /**
+     * @requires posts != null && matches != null && posts.size() == matches.size()
+     * @param posts   I post controllati dalla pipeline di moderazione
+     * @param matches Il numero di segnalazioni automatiche da aggiungere a ogni post
+     *
+     * @effects Aggiunge matches.get(i) segnalazioni automatiche a posts.get(i), se è ancora
+     *          pubblicato
+     * @modifies this.reportings
+     */
+    synchronized void applyModeration(List<Post> posts, List<Integer> matches) {
+        for (int i=0; i<posts.size(); i++) {
+            Post p = posts.get(i);
+            ensureHot(p);
+            if (!postLikes.containsKey(p)) {
+                continue;
+            }
+            for (int k=matches.get(i); k>0; k--) {
+                automaticReport(p);
+            }
+        }
+    }
+
+    /**
+     * @requires pipeline != null
+     * @param pipeline La pipeline con cui controllare le parole proibite
+     *
+     * @effects Collega pipeline a this: da ora in poi publishPost e tryPublish accodano i
+     *          post a pipeline e terminano senza cercare le parole proibite, le cui
+     *          segnalazioni automatiche vengono aggiunte dai worker di pipeline. Se la coda di
+     *          pipeline è piena o pipeline è stata chiusa, il controllo torna sincrono. Il
+     *          controllo dei duplicati resta sincrono. Gli snapshot non vedono le
+     *          segnalazioni dei post ancora in coda.
+     * @modifies this.moderation, pipeline
+     * @throws NullPointerException Se pipeline == null
+     * @throws IllegalStateException Se pipeline è già collegata a una rete o è stata chiusa,
+     *                               oppure se this ha già una pipeline
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setModerationPipeline(ModerationPipeline pipeline) {
+        checkWritable();
+        if (pipeline == null) {
+            throw new NullPointerException("La pipeline di moderazione non può essere null");
+        }
+        if (moderation != null) {
+            throw new IllegalStateException("La pipeline di moderazione è già stata configurata");
+        }
+
+        pipeline.attach(this);
+        moderation = pipeline;
+    }
+
+    /**
+     * @return La pipeline di moderazione configurata con setModerationPipeline, con le sue
+     *         statistiche; null se il controllo delle parole proibite è sincrono
+     */
+    public ModerationPipeline getModerationPipeline() {
+        return moderation;
+    }
+
+    /**
+     * @requires toPublish != null && postLikes(toPublish) != null
+     * @effects Indicizza il testo di toPublish e gli aggiunge una segnalazione automatica se è
+     *          uguale o quasi uguale a quello di un post già pubblicato.
+     * @modifies this.reportings, this.duplicates
+     */
+    private void checkDuplicates(Post toPublish) {
+        if (duplicates.add(toPublish)) {
+            automaticReport(toPublish);
+        }
     }
 
     /**
@@ -401,9 +729,29 @@ public class ModeratedSocialNetworkImpl extends SocialNetworkImpl implements Mod
         Reporting reporting = new ReportingImpl(Reporting.AUTOMATIC_REPORTING_AUTHOR, AUTOMATIC_REPORTING_WEIGHT);
 
         if (reportings.get(p) == null) {
-            reportings.put(p, new TreeSet<>());
+            putOwned(reportings, p, storage.newSet());
         }
 
-        reportings.get(p).add(reporting);
+        writable(reportings, p, storage::newSet).add(reporting);
+        changed(SocialNetworkEvent.Type.REPORT, Reporting.AUTOMATIC_REPORTING_AUTHOR, p, null);
+    }
+
+    /**
+     * @requires p != null
+     * @return True se p è stato segnalato: le segnalazioni usano il post come chiave, per cui
+     *         un post segnalato resta in memoria invece di essere spostato nel livello freddo
+     */
+    @Override
+    protected boolean keepHot(Post p) {
+        return reportings.containsKey(p);
+    }
+
+    /**
+     * @effects Crea lo snapshot della rete moderata
+     * @return  Una copia in sola lettura di this
+     */
+    @Override
+    protected SocialNetwork createSnapshot() {
+        return new ModeratedSocialNetworkImpl(this);
     }
 }
@@ -0,0 +1,419 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Overview:
+ *      ModerationPipeline è un dato mutabile che esegue fuori dal percorso di pubblicazione il
+ *      controllo delle parole proibite di una rete moderata (vedi
+ *      ModeratedSocialNetworkImpl.setModerationPipeline): publishPost accoda il post e
+ *      termina, mentre un gruppo di worker preleva i post dalla coda a lotti, cerca le parole
+ *      proibite senza bloccare la rete e la blocca soltanto per aggiungere le segnalazioni
+ *      automatiche dei post che ne contengono.
+ *
+ *      La coda ha capacità limitata: quando è piena il post viene rifiutato e publishPost
+ *      esegue il controllo in modo sincrono, rallentando chi pubblica finché i worker non
+ *      smaltiscono la coda (backpressure). Un post viene controllato con le parole proibite
+ *      presenti nel momento in cui il suo lotto viene elaborato; se nel frattempo è stato
+ *      cancellato non viene segnalato.
+ *
+ *      Il ritardo della moderazione (moderation lag) di un post è il tempo trascorso tra il
+ *      suo inserimento in coda e l'elaborazione del suo lotto: ne vengono misurati il valore
+ *      medio e massimo, insieme all'età del post più vecchio in coda.
+ *
+ *  Typical element:
+ *      <network, queue> in cui:
+ *          - network è la rete di cui vengono controllati i post, null finché la pipeline non
+ *              viene collegata a una rete
+ *          - queue = [(p1, t1), (p2, t2), ...] sono i post in attesa di controllo, con
+ *              l'istante in cui sono stati accodati
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = queue != null && workers > 0 && batchSize > 0 &&
+ *          (threads != null <=> network != null) && pending >= queue.size()
+ */
+public class ModerationPipeline implements AutoCloseable {
+    /**
+     * Capacità predefinita della coda
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    /**
+     * Numero predefinito di post elaborati insieme da un worker
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * Intervallo con cui un worker senza lavoro controlla se la pipeline è stata chiusa
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Post in attesa di controllo
+     */
+    private final BlockingQueue<Task> queue;
+    /**
+     * Numero di worker
+     */
+    private final int workers;
+    /**
+     * Numero massimo di post elaborati insieme da un worker
+     */
+    private final int batchSize;
+    /**
+     * Rete di cui vengono controllati i post
+     */
+    private volatile ModeratedSocialNetworkImpl network;
+    /**
+     * Thread dei worker, avviati quando la pipeline viene collegata a una rete
+     */
+    private ExecutorService threads;
+    /**
+     * True se la pipeline non accetta più post
+     */
+    private volatile boolean closed;
+    /**
+     * Numero di post accodati e non ancora elaborati. Il lock idle protegge pending e rende
+     * atomici il controllo di closed e l'inserimento in coda rispetto a close
+     */
+    private long pending;
+    private final Object idle;
+    /**
+     * Statistiche
+     */
+    private final LongAdder submitted;
+    private final LongAdder rejected;
+    private final LongAdder checked;
+    private final LongAdder flagged;
+    private final LongAdder batches;
+    private final LongAdder failures;
+    private final LongAdder lagNanos;
+    private final AtomicLong maxLagNanos;
+
+    /**
+     * @requires workers > 0 && queueCapacity > 0 && batchSize > 0
+     * @param workers       Il numero di worker che controllano i post
+     * @param queueCapacity Il numero massimo di post in attesa di controllo
+     * @param batchSize     Il numero massimo di post elaborati insieme da un worker
+     *
+     * @effects Crea una pipeline non collegata ad alcuna rete
+     * @throws IllegalArgumentException Se workers <= 0 || queueCapacity <= 0 || batchSize <= 0
+     */
+    public ModerationPipeline(int workers, int queueCapacity, int batchSize) {
+        if (workers <= 0 || queueCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Parametri della pipeline di moderazione non validi");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.idle = new Object();
+        this.submitted = new LongAdder();
+        this.rejected = new LongAdder();
+        this.checked = new LongAdder();
+        this.flagged = new LongAdder();
+        this.batches = new LongAdder();
+        this.failures = new LongAdder();
+        this.lagNanos = new LongAdder();
+        this.maxLagNanos = new AtomicLong();
+    }
+
+    /**
+     * @effects Crea una pipeline con un worker per processore, una coda di capacità
+     *          DEFAULT_QUEUE_CAPACITY e lotti di DEFAULT_BATCH_SIZE post
+     */
+    public ModerationPipeline() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @requires network != null
+     * @param network La rete di cui controllare i post
+     *
+     * @effects Collega la pipeline a network e avvia i worker
+     * @modifies this
+     * @throws IllegalStateException Se la pipeline è già collegata a una rete o è stata chiusa
+     */
+    synchronized void attach(ModeratedSocialNetworkImpl network) {
+        if (this.network != null) {
+            throw new IllegalStateException("La pipeline di moderazione è già collegata a una rete");
+        }
+        if (closed) {
+            throw new IllegalStateException("La pipeline di moderazione è stata chiusa");
+        }
+
+        this.network = network;
+        threads = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "moderation-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i=0; i<workers; i++) {
+            threads.execute(this::work);
+        }
+    }
+
+    /**
+     * @requires p != null
+     * @param p Il post pubblicato da controllare
+     *
+     * @effects Accoda p per il controllo delle parole proibite, se c'è posto nella coda
+     * @modifies this
+     * @return  True se p è stato accodato, false se la coda è piena o la pipeline è chiusa:
+     *          in tal caso il controllo di p spetta al chiamante
+     */
+    boolean submit(Post p) {
+        synchronized (idle) {
+            if (closed || network == null) {
+                return false;
+            }
+            if (!queue.offer(new Task(p, System.nanoTime()))) {
+                rejected.increment();
+                return false;
+            }
+            pending++;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    /**
+     * @return Il numero di post in attesa di controllo
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return Il numero di post accodati
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return Il numero di post rifiutati perché la coda era piena, e quindi controllati da
+     *         publishPost
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return Il numero di post controllati dai worker
+     */
+    public long getChecked() {
+        return checked.sum();
+    }
+
+    /**
+     * @return Il numero di post controllati dai worker che contenevano parole proibite
+     */
+    public long getFlagged() {
+        return flagged.sum();
+    }
+
+    /**
+     * @return Il numero di lotti elaborati
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return Il numero di lotti la cui elaborazione è fallita con un'eccezione
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return Il ritardo medio della moderazione dei post controllati, in nanosecondi
+     */
+    public double getAverageLagNanos() {
+        long n = checked.sum();
+        return n == 0 ? 0 : (double) lagNanos.sum() / n;
+    }
+
+    /**
+     * @return Il ritardo massimo della moderazione dei post controllati, in nanosecondi
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    /**
+     * @return Il tempo trascorso dall'inserimento in coda del post più vecchio in attesa, in
+     *         nanosecondi; 0 se la coda è vuota
+     */
+    public long getOldestPendingNanos() {
+        Task oldest = queue.peek();
+        return oldest == null ? 0 : Math.max(0, System.nanoTime() - oldest.queuedAt);
+    }
+
+    /**
+     * @requires timeoutMillis >= 0
+     * @param timeoutMillis Il tempo massimo di attesa, in millisecondi
+     *
+     * @effects Attende che tutti i post accodati siano stati controllati
+     * @return  True se non ci sono post in attesa, false se è trascorso timeoutMillis
+     * @throws InterruptedException Se il thread viene interrotto durante l'attesa
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        synchronized (idle) {
+            while (pending > 0) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    return false;
+                }
+                idle.wait(left);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @effects Smette di accettare post, attende che i worker abbiano controllato quelli già
+     *          accodati e li arresta: da ora in poi publishPost controlla i post in modo
+     *          sincrono
+     * @modifies this
+     */
+    @Override
+    public void close() {
+        ExecutorService t;
+        synchronized (this) {
+            // Dopo aver impostato closed sotto idle nessun post può più entrare in coda
+            synchronized (idle) {
+                closed = true;
+            }
+            t = threads;
+        }
+        if (t == null) {
+            return;
+        }
+
+        t.shutdown();
+        try {
+            t.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // Post rimasti in coda se un worker è terminato prima dell'ultimo inserimento
+        List<Task> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            try {
+                check(rest);
+            }
+            finally {
+                done(rest.size());
+            }
+        }
+    }
+
+    /**
+     * @effects Preleva i post dalla coda a lotti e li controlla, finché la pipeline non viene
+     *          chiusa e la coda non è vuota
+     */
+    private void work() {
+        List<Task> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            Task first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                check(batch);
+            }
+            catch (RuntimeException e) {
+                // Il worker sopravvive: le segnalazioni del lotto vanno perse
+                failures.increment();
+            }
+            finally {
+                done(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @requires batch != null && !batch.isEmpty()
+     * @effects Cerca le parole proibite nei post di batch senza bloccare la rete, poi aggiunge
+     *          in un'unica sezione critica le segnalazioni automatiche dei post che ne
+     *          contengono
+     * @modifies network
+     */
+    private void check(List<Task> batch) {
+        ModeratedSocialNetworkImpl net = network;
+        Set<String> words = net.forbiddenWordsForModeration();
+        List<Post> posts = new ArrayList<>();
+        List<Integer> matches = new ArrayList<>();
+
+        for (Task t : batch) {
+            int n = ModeratedSocialNetworkImpl.forbiddenMatches(t.post.getText(), words);
+            if (n > 0) {
+                posts.add(t.post);
+                matches.add(n);
+            }
+        }
+        if (!posts.isEmpty()) {
+            net.applyModeration(posts, matches);
+        }
+
+        long now = System.nanoTime();
+        for (Task t : batch) {
+            long lag = now - t.queuedAt;
+            lagNanos.add(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+        }
+        checked.add(batch.size());
+        flagged.add(posts.size());
+        batches.increment();
+    }
+
+    /**
+     * @effects Registra che n post accodati sono stati elaborati, risvegliando chi attende
+     *          in awaitIdle se non ne restano
+     * @modifies this.pending
+     */
+    private void done(int n) {
+        synchronized (idle) {
+            pending -= n;
+            if (pending == 0) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Post in attesa di controllo, con l'istante in cui è stato accodato
+     */
+    private static final class Task {
+        private final Post post;
+        private final long queuedAt;
+
+        private Task(Post post, long queuedAt) {
+            this.post = post;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+import Exceptions.Likes.AutoLikeException;
+import Exceptions.Likes.LikeNotFoundException;
+import Exceptions.Post.PostAlreadyPublishedException;
+import Exceptions.Post.PostNotFoundException;
+import Exceptions.Reporting.AutoReportException;
+import Exceptions.Reporting.ReportingAlreadySentException;
+import Exceptions.User.InvalidUsernameException;
+import Exceptions.User.UserAlreadyRegisteredExeption;
+import Exceptions.User.UserNotFoundException;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Overview:
+ *      NetworkClient è un dato mutabile che rappresenta una connessione a un NetworkServer e
+ *      implementa ModeratedSocialNetwork inoltrando ogni chiamata al server. Le eccezioni
+ *      lanciate dal server vengono rilanciate al chiamante; gli errori di connessione
+ *      vengono segnalati con UncheckedIOException.
+ *
+ *      Il client può essere condiviso tra più thread: le richieste vengono inviate senza
+ *      attendere le risposte dei thread precedenti (pipelining) e le richieste accodate mentre
+ *      un altro thread sta scrivendo vengono inviate insieme alla sua con un'unica scrittura.
+ *      Un thread dedicato legge le risposte e le consegna ai chiamanti.
+ *
+ *      L'id dei post pubblicati viene assegnato dal server. publish restituisce il post
+ *      registrato dal server; publishPost ricorda invece l'id assegnato al post passato, che
+ *      può così essere usato nelle chiamate successive, finché il post non viene cancellato.
+ *
+ *  Typical element:
+ *      <server, pending> in cui server è l'indirizzo del server e pending l'insieme delle
+ *      richieste inviate in attesa di risposta
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = channel != null && pending != null && outgoing != null && reader != null &&
+ *          published != null
+ */
+public class NetworkClient implements ModeratedSocialNetwork, AutoCloseable {
+    private final SocketChannel channel;
+    /**
+     * Richieste inviate in attesa di risposta, per identificatore
+     */
+    private final Map<Integer, CompletableFuture<Response>> pending;
+    /**
+     * Frame in attesa di essere scritti
+     */
+    private final Queue<ByteBuffer> outgoing;
+    /**
+     * Lock del thread che sta scrivendo sul canale
+     */
+    private final ReentrantLock writeLock;
+    private final AtomicInteger nextId;
+    /**
+     * Id assegnato dal server a ogni post pubblicato con publishPost e non ancora cancellato,
+     * per identità del post passato dal chiamante
+     */
+    private final Map<Post, Long> published;
+    /**
+     * Thread che legge le risposte
+     */
+    private final Thread reader;
+    /**
+     * Errore che ha interrotto la connessione, null se la connessione è attiva
+     */
+    private volatile IOException failure;
+
+    /**
+     * @requires address != null
+     * @param address L'indirizzo del server
+     * @effects Apre una connessione con il server in ascolto su address
+     * @throws IOException Se la connessione fallisce
+     * @throws NullPointerException Se address == null
+     */
+    public NetworkClient(InetSocketAddress address) throws IOException {
+        if (address == null) {
+            throw new NullPointerException("L'indirizzo del server non può essere null");
+        }
+
+        channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        pending = new ConcurrentHashMap<>();
+        outgoing = new ConcurrentLinkedQueue<>();
+        writeLock = new ReentrantLock();
+        nextId = new AtomicInteger();
+        published = Collections.synchronizedMap(new IdentityHashMap<>());
+        reader = new Thread(this::read, "network-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * @effects Chiude la connessione: le richieste in attesa falliscono con UncheckedIOException
+     * @throws IOException Se la chiusura del canale fallisce
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            reader.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws PostNotFoundException {
+        return call(NetworkProtocol.Operation.GUESS_FOLLOWERS, out -> writePosts(out, ps))
+                .check(PostNotFoundException.class).followers();
+    }
+
+    @Override
+    public List<String> influencers() {
+        return call(NetworkProtocol.Operation.INFLUENCERS, out -> {}).strings();
+    }
+
+    @Override
+    public Set<String> getMentionedUsers() {
+        return new LinkedHashSet<>(call(NetworkProtocol.Operation.MENTIONED_USERS, out -> {}).strings());
+    }
+
+    @Override
+    public Set<String> getMentionedUsers(List<Post> ps) throws PostNotFoundException {
+        return new LinkedHashSet<>(call(NetworkProtocol.Operation.MENTIONED_USERS_IN, out -> writePosts(out, ps))
+                .check(PostNotFoundException.class).strings());
+    }
+
+    @Override
+    public List<Post> writtenBy(String username) throws UserNotFoundException {
+        return call(NetworkProtocol.Operation.WRITTEN_BY, out -> out.writeUTF(username))
+                .check(UserNotFoundException.class).posts();
+    }
+
+    @Override
+    public List<Post> writtenBy(List<Post> ps, String username) throws UserNotFoundException, PostNotFoundException {
+        return call(NetworkProtocol.Operation.WRITTEN_BY_IN, out -> {
+            writePosts(out, ps);
+            out.writeUTF(username);
+        }).check(UserNotFoundException.class).check(PostNotFoundException.class).posts();
+    }
+
+    @Override
+    public List<Post> containing(List<String> words) {
+        return call(NetworkProtocol.Operation.CONTAINING, out -> NetworkProtocol.writeStrings(out, words)).posts();
+    }
+
+    @Override
+    public void like(Post toLike, String follower) throws PostNotFoundException, AutoLikeException,
+            UserNotFoundException {
+        call(NetworkProtocol.Operation.LIKE, out -> {
+            writePost(out, toLike);
+            out.writeUTF(follower);
+        }).check(PostNotFoundException.class).check(AutoLikeException.class).check(UserNotFoundException.class).done();
+    }
+
+    @Override
+    public void unLike(Post toUnlike, String follower) throws PostNotFoundException, UserNotFoundException,
+            LikeNotFoundException {
+        call(NetworkProtocol.Operation.UNLIKE, out -> {
+            writePost(out, toUnlike);
+            out.writeUTF(follower);
+        }).check(PostNotFoundException.class).check(UserNotFoundException.class).check(LikeNotFoundException.class).done();
+    }
+
+    /**
+     * @effects Pubblica toPublish come publishPost, ricordando l'id assegnato dal server in modo
+     *          che toPublish possa essere passato alle chiamate successive. Pubblicare di nuovo
+     *          lo stesso oggetto lancia PostAlreadyPublishedException.
+     * @modifies this.published
+     */
+    @Override
+    public void publishPost(Post toPublish) throws PostAlreadyPublishedException, UserNotFoundException {
+        // Il server assegna un nuovo id a ogni pubblicazione: i duplicati vanno rilevati qui
+        if (toPublish != null && published.containsKey(toPublish)) {
+            throw new PostAlreadyPublishedException(toPublish.getId());
+        }
+        published.put(toPublish, publish(toPublish).getId());
+    }
+
+    /**
+     * @requires toPublish != null
+     * @param toPublish Il post da pubblicare, di cui il server ignora l'id
+     *
+     * @effects Pubblica sul server un post con autore, testo e timestamp di toPublish
+     * @return  Il post registrato dal server, con l'id assegnato dal server
+     * @throws PostAlreadyPublishedException Se il post è già stato pubblicato
+     * @throws UserNotFoundException Se l'autore non è registrato nella rete
+     * @throws NullPointerException Se toPublish == null
+     */
+    public Post publish(Post toPublish) throws PostAlreadyPublishedException, UserNotFoundException {
+        if (toPublish == null) {
+            throw new NullPointerException("Il post da pubblicare non può essere null");
+        }
+
+        return call(NetworkProtocol.Operation.PUBLISH_POST, out -> NetworkProtocol.writePost(out, toPublish))
+                .check(PostAlreadyPublishedException.class).check(UserNotFoundException.class).post();
+    }
+
+    @Override
+    public void deletePost(Post toDelete) throws PostNotFoundException {
+        call(NetworkProtocol.Operation.DELETE_POST, out -> writePost(out, toDelete))
+                .check(PostNotFoundException.class).done();
+        published.remove(toDelete);
+    }
+
+    @Override
+    public void registerUser(String toRegister) throws InvalidUsernameException, UserAlreadyRegisteredExeption {
+        call(NetworkProtocol.Operation.REGISTER_USER, out -> out.writeUTF(toRegister))
+                .check(InvalidUsernameException.class).check(UserAlreadyRegisteredExeption.class).done();
+    }
+
+    @Override
+    public void removeUser(String user) throws UserNotFoundException {
+        call(NetworkProtocol.Operation.REMOVE_USER, out -> out.writeUTF(user))
+                .check(UserNotFoundException.class).done();
+    }
+
+    @Override
+    public List<String> getTrending() {
+        return call(NetworkProtocol.Operation.TRENDING, out -> {}).strings();
+    }
+
+    @Override
+    public void report(String author, Post post)
+            throws ReportingAlreadySentException, AutoReportException, UserNotFoundException, PostNotFoundException {
+        call(NetworkProtocol.Operation.REPORT, out -> {
+            out.writeUTF(author);
+            writePost(out, post);
+        }).check(ReportingAlreadySentException.class).check(AutoReportException.class)
+                .check(UserNotFoundException.class).check(PostNotFoundException.class).done();
+    }
+
+    @Override
+    public List<Post> getControversialPosts() {
+        return call(NetworkProtocol.Operation.CONTROVERSIAL_POSTS, out -> {}).posts();
+    }
+
+    @Override
+    public void addForbiddenWord(String toAdd) {
+        call(NetworkProtocol.Operation.ADD_FORBIDDEN_WORD, out -> out.writeUTF(toAdd)).done();
+    }
+
+    @Override
+    public void removeForbiddenWord(String toRemove) {
+        call(NetworkProtocol.Operation.REMOVE_FORBIDDEN_WORD, out -> out.writeUTF(toRemove)).done();
+    }
+
+    @Override
+    public List<Reporting> getReportingsByAuthor(String author) throws UserNotFoundException {
+        return call(NetworkProtocol.Operation.REPORTINGS_BY_AUTHOR, out -> out.writeUTF(author))
+                .check(UserNotFoundException.class).reportings();
+    }
+
+    @Override
+    public List<Reporting> getReportingsForPost(Post post) throws PostNotFoundException {
+        return call(NetworkProtocol.Operation.REPORTINGS_FOR_POST, out -> writePost(out, post))
+                .check(PostNotFoundException.class).reportings();
+    }
+
+    /**
+     * @requires out != null && p != null
+     * @effects Scrive p su out con l'id assegnato dal server, se p è stato pubblicato con
+     *          publishPost
+     * @throws IOException Se la scrittura fallisce
+     */
+    private void writePost(DataOutputStream out, Post p) throws IOException {
+        Long id = published.get(p);
+        NetworkProtocol.writePost(out, p, id != null ? id : p.getId());
+    }
+
+    /**
+     * @requires out != null && ps != null && foreach p in ps -> p != null
+     * @effects Scrive la lista ps su out come NetworkProtocol.writePosts, usando per ogni post
+     *          l'id assegnato dal server
+     * @throws IOException Se la scrittura fallisce
+     */
+    private void writePosts(DataOutputStream out, List<Post> ps) throws IOException {
+        out.writeInt(ps.size());
+        for (Post p : ps) {
+            writePost(out, p);
+        }
+    }
+
+    /**
+     * @requires op != null && params != null
+     * @param op     L'operazione da eseguire
+     * @param params La scrittura dei parametri dell'operazione
+     *
+     * @effects Invia la richiesta al server e ne attende la risposta
+     * @return  La risposta del server
+     * @throws UncheckedIOException Se la connessione con il server è stata interrotta
+     */
+    private Response call(NetworkProtocol.Operation op, Params params) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            params.write(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int id = nextId.getAndIncrement();
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        pending.put(id, response);
+        if (failure != null) {
+            pending.remove(id);
+            throw new UncheckedIOException(failure);
+        }
+
+        outgoing.add(NetworkProtocol.frame(id, (byte) op.ordinal(), bytes.toByteArray()));
+        flush();
+
+        try {
+            return response.join();
+        }
+        catch (CompletionException e) {
+            throw new UncheckedIOException((IOException) e.getCause());
+        }
+    }
+
+    /**
+     * @effects Scrive sul canale i frame in attesa, se nessun altro thread lo sta già facendo.
+     *          Chi rilascia il lock controlla di nuovo la coda, per cui nessun frame resta in
+     *          attesa.
+     * @modifies this.outgoing
+     */
+    private void flush() {
+        while (!outgoing.isEmpty() && writeLock.tryLock()) {
+            try {
+                List<ByteBuffer> batch = new ArrayList<>();
+                for (ByteBuffer b = outgoing.poll(); b != null; b = outgoing.poll()) {
+                    batch.add(b);
+                }
+
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+            catch (IOException e) {
+                fail(e);
+                return;
+            }
+            finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @effects Legge le risposte del server e le consegna alle richieste corrispondenti
+     *          finché la connessione non viene chiusa
+     */
+    private void read() {
+        ByteBuffer header = ByteBuffer.allocate(4 + NetworkProtocol.HEADER_SIZE);
+
+        try {
+            while (true) {
+                header.clear();
+                readFully(header);
+                header.flip();
+
+                int length = header.getInt();
+                int id = header.getInt();
+                byte status = header.get();
+                if (length < NetworkProtocol.HEADER_SIZE || length > NetworkProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Frame non valido");
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length - NetworkProtocol.HEADER_SIZE);
+                readFully(payload);
+
+                CompletableFuture<Response> response = pending.remove(id);
+                if (response != null) {
+                    response.complete(new Response(status, payload.array()));
+                }
+            }
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * @requires buffer != null
+     * @effects Legge dal canale finché buffer non è pieno
+     * @throws IOException Se la connessione viene chiusa o la lettura fallisce
+     */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connessione chiusa dal server");
+            }
+        }
+    }
+
+    /**
+     * @requires e != null
+     * @effects Interrompe la connessione facendo fallire tutte le richieste in attesa
+     * @modifies this.failure, this.pending
+     */
+    private void fail(IOException e) {
+        failure = e;
+        try {
+            channel.close();
+        }
+        catch (IOException ignored) {
+            // La connessione è comunque persa
+        }
+
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<Response> response = pending.remove(id);
+            if (response != null) {
+                response.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Scrittura dei parametri di una richiesta
+     */
+    private interface Params {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Risposta del server a una richiesta
+     */
+    private static class Response {
+        private final byte[] payload;
+        private final Exception error;
+
+        private Response(byte status, byte[] payload) throws IOException {
+            this.payload = payload;
+            this.error = status == NetworkProtocol.OK ? null : NetworkProtocol.readError(payload);
+        }
+
+        /**
+         * @requires type != null
+         * @effects Rilancia l'eccezione lanciata dal server se è di tipo type
+         * @return  this
+         * @throws E L'eccezione lanciata dal server, se è di tipo type
+         */
+        private <E extends Exception> Response check(Class<E> type) throws E {
+            if (type.isInstance(error)) {
+                throw type.cast(error);
+            }
+            return this;
+        }
+
+        /**
+         * @effects Rilancia l'eccezione lanciata dal server, che non essendo stata controllata
+         *          da check è un'eccezione non controllata
+         * @return  Il risultato della richiesta
+         * @throws RuntimeException L'eccezione lanciata dal server
+         */
+        private DataInputStream done() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new IllegalStateException("Eccezione inattesa dal server", error);
+            }
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+
+        private Post post() {
+            try {
+                return NetworkProtocol.readPost(done());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<Post> posts() {
+            try {
+                return NetworkProtocol.readPosts(done());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<String> strings() {
+            try {
+                return NetworkProtocol.readStrings(done());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Map<String, Set<String>> followers() {
+            try {
+                return NetworkProtocol.readFollowers(done());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<Reporting> reportings() {
+            try {
+                return NetworkProtocol.readReportings(done());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import Exceptions.Post.EmptyContentException;
+import Exceptions.Post.PostLengthExceededException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/** Overview:
+ *      NetworkProtocol definisce il protocollo binario con cui NetworkClient e NetworkServer
+ *      si scambiano le chiamate ai metodi di SocialNetwork e ModeratedSocialNetwork. Ogni
+ *      messaggio è un frame formato da:
+ *          - la lunghezza del resto del frame (int)
+ *          - l'identificatore della richiesta (int), che la risposta riporta invariato
+ *          - l'operazione richiesta (byte) oppure, nelle risposte, l'esito (OK o ERROR)
+ *          - i parametri o il risultato, codificati con DataOutputStream
+ *      Le risposte hanno lo stesso identificatore della richiesta, per cui un client può
+ *      inviare più richieste senza attendere le risposte (pipelining). Le eccezioni lanciate
+ *      dal server vengono serializzate e rilanciate dal client.
+ *
+ *      I post vengono trasmessi per intero (id, autore, testo e timestamp) e identificati
+ *      dal loro id. L'id dei post pubblicati viene assegnato dal server, che ignora quello
+ *      inviato dal client e restituisce nella risposta il post così come è stato registrato:
+ *      le richieste successive devono usare l'id restituito dal server.
+ */
+public class NetworkProtocol {
+    /**
+     * Dimensione dell'intestazione di un frame dopo il campo lunghezza
+     */
+    public static final int HEADER_SIZE = 5;
+    /**
+     * Dimensione massima di un frame, oltre la quale la connessione viene chiusa
+     */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Esito di una richiesta eseguita correttamente
+     */
+    public static final byte OK = 0;
+    /**
+     * Esito di una richiesta che ha lanciato un'eccezione
+     */
+    public static final byte ERROR = 1;
+
+    /**
+     * Filtro delle classi che il client accetta di deserializzare come eccezioni
+     */
+    private static final ObjectInputFilter ERROR_FILTER =
+            ObjectInputFilter.Config.createFilter("Exceptions.**;java.lang.**;java.util.**;!*");
+
+    /**
+     * Operazioni disponibili, identificate dal loro ordinale
+     */
+    public enum Operation {
+        GUESS_FOLLOWERS, INFLUENCERS, MENTIONED_USERS, MENTIONED_USERS_IN, WRITTEN_BY, WRITTEN_BY_IN,
+        CONTAINING, LIKE, UNLIKE, PUBLISH_POST, DELETE_POST, REGISTER_USER, REMOVE_USER, TRENDING,
+        REPORT, CONTROVERSIAL_POSTS, ADD_FORBIDDEN_WORD, REMOVE_FORBIDDEN_WORD, REPORTINGS_BY_AUTHOR,
+        REPORTINGS_FOR_POST;
+
+        private static final Operation[] VALUES = values();
+
+        /**
+         * @return L'operazione con codice code
+         * @throws IllegalArgumentException Se code non è il codice di un'operazione
+         */
+        public static Operation of(byte code) {
+            if (code < 0 || code >= VALUES.length) {
+                throw new IllegalArgumentException("Operazione sconosciuta: " + code);
+            }
+            return VALUES[code];
+        }
+    }
+
+    private NetworkProtocol() {
+    }
+
+    /**
+     * @requires payload != null
+     * @param id      L'identificatore della richiesta
+     * @param code    Il codice dell'operazione o dell'esito
+     * @param payload I parametri o il risultato già codificati
+     *
+     * @effects Costruisce un frame completo, pronto per essere scritto sul canale
+     * @return  Il buffer del frame, in lettura
+     */
+    public static ByteBuffer frame(int id, byte code, byte[] payload) {
+        ByteBuffer ret = ByteBuffer.allocate(4 + HEADER_SIZE + payload.length);
+        ret.putInt(HEADER_SIZE + payload.length).putInt(id).put(code).put(payload);
+        return ret.flip();
+    }
+
+    /**
+     * @requires out != null && p != null
+     * @effects Scrive p su out
+     * @throws IOException Se la scrittura fallisce
+     */
+    public static void writePost(DataOutputStream out, Post p) throws IOException {
+        writePost(out, p, p.getId());
+    }
+
+    /**
+     * @requires out != null && p != null
+     * @effects Scrive p su out al posto dell'id di p
+     * @throws IOException Se la scrittura fallisce
+     */
+    public static void writePost(DataOutputStream out, Post p, long id) throws IOException {
+        out.writeLong(id);
+        out.writeUTF(p.getAuthor());
+        out.writeUTF(p.getText());
+        out.writeLong(PostImpl.epochNanosOf(p));
+    }
+
+    /**
+     * @requires in != null
+     * @effects Legge un post scritto con writePost
+     * @return  Il post letto
+     * @throws IOException Se la lettura fallisce o il post non è valido
+     */
+    public static Post readPost(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        String author = in.readUTF();
+        String text = in.readUTF();
+        LocalDateTime timestamp = PostImpl.fromEpochNanos(in.readLong());
+
+        try {
+            return new PostImpl(id, author, text, timestamp);
+        }
+        catch (PostLengthExceededException | EmptyContentException | RuntimeException e) {
+            throw new IOException("Post " + id + " non valido", e);
+        }
+    }
+
+    /**
+     * @requires in != null
+     * @effects Legge un post scritto con writePost da pubblicare, ignorandone l'id
+     * @return  Un nuovo post con lo stesso autore, testo e timestamp del post letto e un id
+     *          assegnato da questo processo
+     * @throws IOException Se la lettura fallisce o il post non è valido
+     */
+    public static Post readNewPost(DataInputStream in) throws IOException {
+        in.readLong();
+        String author = in.readUTF();
+        String text = in.readUTF();
+        LocalDateTime timestamp = PostImpl.fromEpochNanos(in.readLong());
+
+        try {
+            return new PostImpl(author, text, timestamp);
+        }
+        catch (PostLengthExceededException | EmptyContentException | RuntimeException e) {
+            throw new IOException("Post di " + author + " non valido", e);
+        }
+    }
+
+    /**
+     * @requires out != null && ps != null && foreach p in ps -> p != null
+     * @effects Scrive la lista ps su out
+     * @throws IOException Se la scrittura fallisce
+     */
+    public static void writePosts(DataOutputStream out, List<Post> ps) throws IOException {
+        out.writeInt(ps.size());
+        for (Post p : ps) {
+            writePost(out, p);
+        }
+    }
+
+    /**
+     * @requires in != null
+     * @effects Legge una lista di post scritta con writePosts
+     * @return  La lista letta
+     * @throws IOException Se la lettura fallisce
+     */
+    public static List<Post> readPosts(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<Post> ret = new ArrayList<>(n);
+        for (int i=0; i<n; i++) {
+            ret.add(readPost(in));
+        }
+        return ret;
+    }
+
+    /**
+     * @requires out != null && strings != null && foreach s in strings -> s != null
+     * @effects Scrive strings su out, nell'ordine di iterazione
+     * @throws IOException Se la scrittura fallisce
+     */
+    public static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+
+    /**
+     * @requires in != null
+     * @effects Legge una lista di stringhe scritta con writeStrings
+     * @return  La lista letta
+     * @throws IOException Se la lettura fallisce
+     */
+    public static List<String> readStrings(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<String> ret = new ArrayList<>(n);
+        for (int i=0; i<n; i++) {
+            ret.add(in.readUTF());
+        }
+        return ret;
+    }
+
+    /**
+     * @requires out != null && followers != null
+     * @effects Scrive su out la mappa autore -> follower restituita da guessFollowers
+     * @throws IOException Se la scrittura fallisce
+     */
+    public static void writeFollowers(DataOutputStream out, Map<String, Set<String>> followers) throws IOException {
+        out.writeInt(followers.size());
+        for (Map.Entry<String, Set<String>> e : followers.entrySet()) {
+            out.writeUTF(e.getKey());
+            writeStrings(out, e.getValue());
+        }
+    }
+
+    /**
+     * @requires in != null
+     * @effects Legge una mappa scritta con writeFollowers
+     * @return  La mappa letta
+     * @throws IOException Se la lettura fallisce
+     */
+    public static Map<String, Set<String>> readFollowers(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Map<String, Set<String>> ret = new TreeMap<>();
+        for (int i=0; i<n; i++) {
+            String author = in.readUTF();
+            ret.put(author, new TreeSet<>(readStrings(in)));
+        }
+        return ret;
+    }
+
+    /**
+     * @requires out != null && rs != null && foreach r in rs -> r != null
+     * @effects Scrive su out la lista di segnalazioni rs
+     * @throws IOException Se la scrittura fallisce
+     */
+    public static void writeReportings(DataOutputStream out, List<Reporting> rs) throws IOException {
+        out.writeInt(rs.size());
+        for (Reporting r : rs) {
+            out.writeInt(r.getId());
+            out.writeUTF(r.getAuthor());
+            out.writeInt(r.getWeight());
+        }
+    }
+
+    /**
+     * @requires in != null
+     * @effects Legge una lista di segnalazioni scritta con writeReportings
+     * @return  La lista letta
+     * @throws IOException Se la lettura fallisce
+     */
+    public static List<Reporting> readReportings(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<Reporting> ret = new ArrayList<>(n);
+        for (int i=0; i<n; i++) {
+            int id = in.readInt();
+            String author = in.readUTF();
+            ret.add(new RemoteReporting(id, author, in.readInt()));
+        }
+        return ret;
+    }
+
+    /**
+     * @requires e != null
+     * @effects Serializza l'eccezione e
+     * @return  Il risultato di una richiesta che ha lanciato e
+     */
+    public static byte[] writeError(Exception e) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(e);
+        }
+        catch (IOException notSerializable) {
+            return writeError(new IllegalStateException(e.toString()));
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @requires payload != null
+     * @effects Deserializza un'eccezione scritta con writeError, accettando soltanto le
+     *          eccezioni della rete sociale e quelle della libreria standard
+     * @return  L'eccezione letta
+     * @throws IOException Se payload non contiene un'eccezione accettata
+     */
+    public static Exception readError(byte[] payload) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            in.setObjectInputFilter(ERROR_FILTER);
+            Object ret = in.readObject();
+            if (!(ret instanceof Exception)) {
+                throw new IOException("Risposta di errore non valida");
+            }
+            return (Exception) ret;
+        }
+        catch (ClassNotFoundException | InvalidClassException e) {
+            throw new IOException("Risposta di errore non valida", e);
+        }
+    }
+
+    /**
+     * Segnalazione ricevuta dal server, identificata dall'id assegnato dal server
+     */
+    private static class RemoteReporting implements Reporting {
+        private final int id;
+        private final String author;
+        private final int weight;
+
+        private RemoteReporting(int id, String author, int weight) {
+            this.id = id;
+            this.author = author;
+            this.weight = weight;
+        }
+
+        @Override
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String getAuthor() {
+            return author;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RemoteReporting && ((RemoteReporting) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return "Author: " + author + ", weight: " + weight + "\n";
+        }
+    }
+}
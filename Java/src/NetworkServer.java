@@ -0,0 +1,521 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** Overview:
+ *      NetworkServer è un dato mutabile che espone una rete sociale (moderata o meno) sulla
+ *      rete tramite il protocollo binario di NetworkProtocol. Un unico thread gestisce tutte
+ *      le connessioni con un Selector e canali non bloccanti: per ogni connessione legge
+ *      tutti i frame disponibili, esegue le richieste nell'ordine di arrivo e invia le
+ *      risposte accumulate con un'unica scrittura, per cui un client che invia più richieste
+ *      senza attendere le risposte (pipelining) le vede elaborate in blocco.
+ *
+ *      Se viene fornito un RequestExecutor, le richieste vengono eseguite dall'esecutore invece
+ *      che dal thread delle connessioni e le risposte vengono inviate appena pronte, anche in
+ *      ordine diverso da quello delle richieste: le analisi lente non ritardano così le
+ *      scritture. Le scritture di una stessa connessione vengono comunque eseguite una alla
+ *      volta e nell'ordine di arrivo (una publishPost inviata dopo la registerUser del suo
+ *      autore la trova sempre eseguita); soltanto le analisi possono superarle. Se la rete
+ *      esposta è un SocialNetworkImpl, in questo caso le analisi vengono eseguite su un suo
+ *      snapshot vecchio al più getSnapshotMaxAge() millisecondi, in modo che un flusso
+ *      continuo di scritture non obblighi a copiare lo stato della rete per ogni analisi.
+ *
+ *      Le operazioni di moderazione su una rete non moderata rispondono con
+ *      UnsupportedOperationException.
+ *
+ *  Typical element:
+ *      <network, address, connections> in cui network è la rete esposta, address l'indirizzo
+ *      su cui il server è in ascolto e connections l'insieme dei client connessi
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = network != null && ready != null && selector != null && server != null &&
+ *          thread != null
+ */
+public class NetworkServer implements AutoCloseable {
+    /**
+     * Dimensione iniziale del buffer di lettura di ogni connessione
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Età massima predefinita, in millisecondi, dello snapshot su cui vengono eseguite le analisi
+     */
+    public static final long DEFAULT_SNAPSHOT_MAX_AGE_MILLIS = 100;
+
+    /**
+     * Rete esposta dal server
+     */
+    private final SocialNetwork network;
+    /**
+     * Esecutore delle richieste, null se vengono eseguite dal thread delle connessioni
+     */
+    private final RequestExecutor executor;
+    /**
+     * Connessioni con risposte completate dall'esecutore e non ancora accodate
+     */
+    private final Queue<SelectionKey> ready;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    /**
+     * Thread che gestisce le connessioni
+     */
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile long snapshotMaxAgeMillis = DEFAULT_SNAPSHOT_MAX_AGE_MILLIS;
+
+    /**
+     * @requires network != null && address != null
+     * @param network La rete da esporre
+     * @param address L'indirizzo su cui mettersi in ascolto, con porta 0 per sceglierne una libera
+     *
+     * @effects Crea un server in ascolto su address. Le connessioni vengono gestite dopo start().
+     * @throws IOException Se non è possibile mettersi in ascolto su address
+     * @throws NullPointerException Se network == null || address == null
+     */
+    public NetworkServer(SocialNetwork network, InetSocketAddress address) throws IOException {
+        this(network, address, null);
+    }
+
+    /**
+     * @requires network != null && address != null
+     * @param network  La rete da esporre
+     * @param address  L'indirizzo su cui mettersi in ascolto, con porta 0 per sceglierne una libera
+     * @param executor L'esecutore delle richieste, null per eseguirle sul thread delle connessioni
+     *
+     * @effects Crea un server in ascolto su address. Le connessioni vengono gestite dopo start().
+     * @throws IOException Se non è possibile mettersi in ascolto su address
+     * @throws NullPointerException Se network == null || address == null
+     */
+    public NetworkServer(SocialNetwork network, InetSocketAddress address, RequestExecutor executor)
+            throws IOException {
+        if (network == null || address == null) {
+            throw new NullPointerException("La rete e l'indirizzo del server non possono essere null");
+        }
+
+        this.network = network;
+        this.executor = executor;
+        this.ready = new ConcurrentLinkedQueue<>();
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "network-server");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * @effects Avvia il thread che gestisce le connessioni
+     * @modifies this.running
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * @requires millis >= 0
+     * @param millis L'età massima dello snapshot su cui vengono eseguite le analisi, 0 perché
+     *               ogni analisi veda tutte le scritture già completate
+     *
+     * @effects Imposta l'età massima dello snapshot usato dalle analisi eseguite dall'esecutore
+     * @modifies this.snapshotMaxAgeMillis
+     * @throws IllegalArgumentException Se millis < 0
+     */
+    public void setSnapshotMaxAge(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("L'età massima dello snapshot non può essere negativa");
+        }
+        snapshotMaxAgeMillis = millis;
+    }
+
+    /**
+     * @return L'età massima, in millisecondi, dello snapshot su cui vengono eseguite le analisi
+     */
+    public long getSnapshotMaxAge() {
+        return snapshotMaxAgeMillis;
+    }
+
+    /**
+     * @return La porta su cui il server è in ascolto
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @effects Arresta il server e chiude tutte le connessioni
+     * @modifies this.running
+     * @throws IOException Se la chiusura dei canali fallisce
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @effects Gestisce le connessioni finché il server non viene chiuso
+     */
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            }
+            catch (IOException e) {
+                return;
+            }
+
+            for (SelectionKey key = ready.poll(); key != null; key = ready.poll()) {
+                flushCompleted(key);
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    else {
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    }
+                }
+                catch (IOException | CancelledKeyException e) {
+                    disconnect(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @effects Accetta una nuova connessione
+     * @throws IOException Se la configurazione del canale fallisce
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+    /**
+     * @requires key è la chiave di una connessione leggibile
+     * @effects Legge i dati disponibili, esegue tutte le richieste complete e invia le risposte
+     * @throws IOException Se la connessione è stata chiusa o contiene un frame non valido
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        if (channel.read(c.in) < 0) {
+            throw new EOFException();
+        }
+
+        c.in.flip();
+        while (c.in.remaining() >= 4) {
+            int length = c.in.getInt(c.in.position());
+            if (length < NetworkProtocol.HEADER_SIZE || length > NetworkProtocol.MAX_FRAME_SIZE) {
+                throw new IOException("Frame non valido");
+            }
+            if (c.in.remaining() < 4 + length) {
+                break;
+            }
+
+            c.in.getInt();
+            int id = c.in.getInt();
+            byte code = c.in.get();
+            byte[] payload = new byte[length - NetworkProtocol.HEADER_SIZE];
+            c.in.get(payload);
+            if (executor == null) {
+                c.out.add(execute(network, id, code, payload));
+            }
+            else {
+                submit(key, id, code, payload);
+            }
+        }
+        c.in.compact();
+
+        // Un frame più grande del buffer richiede un buffer più grande
+        if (!c.in.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(c.in.capacity() * 2);
+            c.in.flip();
+            larger.put(c.in);
+            c.in = larger;
+        }
+
+        write(key);
+    }
+
+    /**
+     * @requires key è la chiave di una connessione && executor != null && payload != null
+     * @effects Affida la richiesta all'esecutore; la risposta verrà accodata alla connessione
+     *          dal thread delle connessioni quando sarà pronta. Una scrittura viene affidata
+     *          all'esecutore soltanto dopo il completamento della scrittura precedente della
+     *          stessa connessione.
+     * @modifies key
+     */
+    private void submit(SelectionKey key, int id, byte code, byte[] payload) {
+        Connection c = (Connection) key.attachment();
+        RequestExecutor.Kind kind;
+
+        try {
+            kind = RequestExecutor.kindOf(NetworkProtocol.Operation.of(code));
+        }
+        catch (IllegalArgumentException e) {
+            c.out.add(NetworkProtocol.frame(id, NetworkProtocol.ERROR, NetworkProtocol.writeError(e)));
+            return;
+        }
+
+        // Lo snapshot viene creato dal thread dell'esecutore, per non bloccare il thread delle
+        // connessioni sul lock della rete, e riusato finché non supera l'età massima
+        boolean analytics = kind == RequestExecutor.Kind.ANALYTICS && network instanceof SocialNetworkImpl;
+        long maxAge = snapshotMaxAgeMillis;
+        Callable<ByteBuffer> task = () -> execute(analytics ? ((SocialNetworkImpl) network).snapshot(maxAge) : network,
+                id, code, payload);
+
+        CompletableFuture<ByteBuffer> result;
+        if (kind == RequestExecutor.Kind.WRITE) {
+            result = c.lastWrite.handle((frame, e) -> null).thenCompose(ignored -> executor.submit(kind, task));
+            c.lastWrite = result;
+        }
+        else {
+            result = executor.submit(kind, task);
+        }
+
+        result.whenComplete((frame, e) -> {
+            c.completed.add(frame != null ? frame
+                    : NetworkProtocol.frame(id, NetworkProtocol.ERROR, NetworkProtocol.writeError(unwrap(e))));
+            ready.add(key);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * @requires key è la chiave di una connessione
+     * @effects Accoda e invia le risposte completate dall'esecutore per la connessione di key
+     */
+    private void flushCompleted(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        Connection c = (Connection) key.attachment();
+        for (ByteBuffer frame = c.completed.poll(); frame != null; frame = c.completed.poll()) {
+            c.out.add(frame);
+        }
+
+        try {
+            write(key);
+        }
+        catch (IOException | CancelledKeyException e) {
+            disconnect(key);
+        }
+    }
+
+    /**
+     * @requires e != null
+     * @return La causa di e se e è stata aggiunta da un CompletableFuture, e altrimenti
+     */
+    private static Exception unwrap(Throwable e) {
+        Throwable ret = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return ret instanceof Exception ? (Exception) ret : new IllegalStateException(ret);
+    }
+
+    /**
+     * @requires key è la chiave di una connessione
+     * @effects Scrive le risposte in attesa con un'unica scrittura e, se il canale non può
+     *          accettarle tutte, smette di leggere nuove richieste finché non diventa di nuovo
+     *          scrivibile, in modo che un client lento non faccia crescere le risposte in coda.
+     * @modifies key
+     * @throws IOException Se la scrittura fallisce
+     */
+    private void write(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        if (!c.out.isEmpty()) {
+            channel.write(c.out.toArray(new ByteBuffer[0]));
+            while (!c.out.isEmpty() && !c.out.peekFirst().hasRemaining()) {
+                c.out.pollFirst();
+            }
+        }
+
+        key.interestOps(c.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * @effects Chiude la connessione di key
+     */
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException ignored) {
+            // La connessione è comunque persa
+        }
+    }
+
+    /**
+     * @requires target != null && payload != null
+     * @param target  La rete su cui eseguire l'operazione
+     * @param id      L'identificatore della richiesta
+     * @param code    Il codice dell'operazione
+     * @param payload I parametri dell'operazione
+     *
+     * @effects Esegue un'operazione su target
+     * @return  Il frame di risposta, con il risultato o l'eccezione lanciata
+     */
+    private static ByteBuffer execute(SocialNetwork target, int id, byte code, byte[] payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            DataOutputStream out = new DataOutputStream(bytes);
+            execute(target, NetworkProtocol.Operation.of(code), in, out);
+            out.flush();
+        }
+        catch (Exception e) {
+            return NetworkProtocol.frame(id, NetworkProtocol.ERROR, NetworkProtocol.writeError(e));
+        }
+
+        return NetworkProtocol.frame(id, NetworkProtocol.OK, bytes.toByteArray());
+    }
+
+    /**
+     * @requires network != null && op != null && in != null && out != null
+     * @effects Legge i parametri di op da in, esegue op su network e scrive il risultato su out
+     * @modifies network
+     * @throws Exception L'eccezione lanciata dall'operazione
+     */
+    private static void execute(SocialNetwork network, NetworkProtocol.Operation op, DataInputStream in,
+                                DataOutputStream out) throws Exception {
+        switch (op) {
+            case GUESS_FOLLOWERS:
+                NetworkProtocol.writeFollowers(out, network.guessFollowers(NetworkProtocol.readPosts(in)));
+                break;
+            case INFLUENCERS:
+                NetworkProtocol.writeStrings(out, network.influencers());
+                break;
+            case MENTIONED_USERS:
+                NetworkProtocol.writeStrings(out, network.getMentionedUsers());
+                break;
+            case MENTIONED_USERS_IN:
+                NetworkProtocol.writeStrings(out, network.getMentionedUsers(NetworkProtocol.readPosts(in)));
+                break;
+            case WRITTEN_BY:
+                NetworkProtocol.writePosts(out, network.writtenBy(in.readUTF()));
+                break;
+            case WRITTEN_BY_IN:
+                List<Post> ps = NetworkProtocol.readPosts(in);
+                NetworkProtocol.writePosts(out, network.writtenBy(ps, in.readUTF()));
+                break;
+            case CONTAINING:
+                NetworkProtocol.writePosts(out, network.containing(NetworkProtocol.readStrings(in)));
+                break;
+            case LIKE:
+                network.like(NetworkProtocol.readPost(in), in.readUTF());
+                break;
+            case UNLIKE:
+                network.unLike(NetworkProtocol.readPost(in), in.readUTF());
+                break;
+            case PUBLISH_POST:
+                // L'id lo assegna il server: quelli dei client possono coincidere
+                Post published = NetworkProtocol.readNewPost(in);
+                network.publishPost(published);
+                NetworkProtocol.writePost(out, published);
+                break;
+            case DELETE_POST:
+                network.deletePost(NetworkProtocol.readPost(in));
+                break;
+            case REGISTER_USER:
+                network.registerUser(in.readUTF());
+                break;
+            case REMOVE_USER:
+                network.removeUser(in.readUTF());
+                break;
+            case TRENDING:
+                NetworkProtocol.writeStrings(out, network.getTrending());
+                break;
+            case REPORT:
+                String author = in.readUTF();
+                moderated(network).report(author, NetworkProtocol.readPost(in));
+                break;
+            case CONTROVERSIAL_POSTS:
+                NetworkProtocol.writePosts(out, moderated(network).getControversialPosts());
+                break;
+            case ADD_FORBIDDEN_WORD:
+                moderated(network).addForbiddenWord(in.readUTF());
+                break;
+            case REMOVE_FORBIDDEN_WORD:
+                moderated(network).removeForbiddenWord(in.readUTF());
+                break;
+            case REPORTINGS_BY_AUTHOR:
+                NetworkProtocol.writeReportings(out, moderated(network).getReportingsByAuthor(in.readUTF()));
+                break;
+            case REPORTINGS_FOR_POST:
+                NetworkProtocol.writeReportings(out, moderated(network).getReportingsForPost(NetworkProtocol.readPost(in)));
+                break;
+        }
+    }
+
+    /**
+     * @requires network != null
+     * @return network come rete moderata
+     * @throws UnsupportedOperationException Se network non è moderata
+     */
+    private static ModeratedSocialNetwork moderated(SocialNetwork network) {
+        if (!(network instanceof ModeratedSocialNetwork)) {
+            throw new UnsupportedOperationException("La rete esposta dal server non è moderata");
+        }
+        return (ModeratedSocialNetwork) network;
+    }
+
+    /**
+     * Stato di una connessione
+     */
+    private static class Connection {
+        /**
+         * Dati ricevuti e non ancora elaborati
+         */
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        /**
+         * Risposte non ancora inviate
+         */
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        /**
+         * Risposte completate dall'esecutore, non ancora spostate in out
+         */
+        private final Queue<ByteBuffer> completed = new ConcurrentLinkedQueue<>();
+        /**
+         * Ultima scrittura affidata all'esecutore, usata solo dal thread delle connessioni
+         */
+        private CompletableFuture<?> lastWrite = CompletableFuture.completedFuture(null);
+    }
+}
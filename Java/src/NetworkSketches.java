@@ -0,0 +1,199 @@
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Overview:
+ *      NetworkSketches è un dato mutabile che raccoglie statistiche approssimate su una rete
+ *      sociale usando memoria limitata, come alternativa economica a getTrending e
+ *      getMentionedUsers per i cruscotti. Viene alimentato dalle pubblicazioni e dai like e
+ *      non tiene conto delle cancellazioni dei post e dei like: le stime si riferiscono a tutta
+ *      la storia della rete. Quando un utente viene rimosso vengono invece eliminate le
+ *      statistiche sui like ricevuti dai suoi post.
+ *
+ *      Limiti di errore:
+ *          - numero di utenti distinti (HyperLogLog): errore standard relativo di circa
+ *              1.04 / sqrt(2^HyperLogLog.DEFAULT_PRECISION), cioè 3.25%
+ *          - frequenze (CountMinSketch): stima mai inferiore al valore esatto e, con
+ *              probabilità 1 - e^(-CountMinSketch.DEFAULT_DEPTH), superiore al più di
+ *              e / CountMinSketch.DEFAULT_WIDTH per il numero totale di occorrenze
+ *          - elementi più frequenti (SpaceSaving): conteggi sovrastimati al più di N / k, in
+ *              cui k è il numero di contatori
+ *
+ *      Memoria: un HyperLogLog per ogni utente registrato che ha ricevuto like, che occupa 4
+ *      byte per ogni registro usato e al più 1 KB (gli autori con pochi like distinti occupano
+ *      quindi pochi byte), un HyperLogLog per ciascuno dei k hashtag più frequenti, due
+ *      CountMinSketch e due SpaceSaving di dimensione fissa.
+ *
+ *  Typical element:
+ *      <likers, taggers, hashtagCounts, mentionCounts, topHashtags, topMentions>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      likers != null && taggers != null && hashtagCounts != null && mentionCounts != null &&
+ *      topHashtags != null && topMentions != null &&
+ *      // Gli utenti distinti vengono stimati solo per gli hashtag più frequenti
+ *      foreach t in taggers.keys -> topHashtags.contains(t)
+ */
+public class NetworkSketches {
+    /**
+     * Numero predefinito di hashtag e di utenti menzionati monitorati come più frequenti
+     */
+    public static final int DEFAULT_HEAVY_HITTERS = 256;
+
+    private static final Pattern MENTION_PATTERN = Pattern.compile("@" + SocialNetwork.USERNAME_REGEX);
+
+    /**
+     * Utenti distinti che hanno messo like ai post di ogni autore
+     */
+    private final Map<String, HyperLogLog> likers;
+    /**
+     * Utenti distinti che hanno usato ciascuno degli hashtag più frequenti
+     */
+    private final Map<String, HyperLogLog> taggers;
+    /**
+     * Frequenza degli hashtag
+     */
+    private final CountMinSketch hashtagCounts;
+    /**
+     * Frequenza delle menzioni
+     */
+    private final CountMinSketch mentionCounts;
+    /**
+     * Hashtag più frequenti
+     */
+    private final SpaceSaving topHashtags;
+    /**
+     * Utenti menzionati più di frequente
+     */
+    private final SpaceSaving topMentions;
+
+    /**
+     * @requires heavyHitters > 0
+     * @param heavyHitters Il numero di hashtag e di utenti menzionati da monitorare
+     * @effects Crea un insieme di statistiche vuoto
+     * @throws IllegalArgumentException Se heavyHitters <= 0
+     */
+    public NetworkSketches(int heavyHitters) {
+        likers = new HashMap<>();
+        taggers = new HashMap<>();
+        hashtagCounts = new CountMinSketch();
+        mentionCounts = new CountMinSketch();
+        topHashtags = new SpaceSaving(heavyHitters);
+        topMentions = new SpaceSaving(heavyHitters);
+    }
+
+    /**
+     * @effects Crea un insieme di statistiche vuoto che monitora DEFAULT_HEAVY_HITTERS elementi
+     */
+    public NetworkSketches() {
+        this(DEFAULT_HEAVY_HITTERS);
+    }
+
+    /**
+     * @requires p != null && isUser != null
+     * @param p      Il post pubblicato
+     * @param isUser Il predicato che stabilisce se un nome è un utente registrato
+     *
+     * @effects Conta gli hashtag e le menzioni di p. Come in getMentionedUsers, una menzione
+     *          viene contata solo se si riferisce a un utente registrato.
+     * @modifies this
+     */
+    public synchronized void postPublished(Post p, Predicate<String> isUser) {
+        Matcher m = SocialNetworkImpl.HASHTAG_PATTERN.matcher(p.getText());
+        while (m.find()) {
+            String tag = m.group().substring(1).toLowerCase();
+
+            hashtagCounts.add(tag, 1);
+            String evicted = topHashtags.add(tag);
+            if (evicted != null) {
+                taggers.remove(evicted);
+            }
+            if (topHashtags.contains(tag)) {
+                taggers.computeIfAbsent(tag, k -> new HyperLogLog()).add(p.getAuthor());
+            }
+        }
+
+        m = MENTION_PATTERN.matcher(p.getText());
+        while (m.find()) {
+            String user = m.group().substring(1);
+
+            if (isUser.test(user)) {
+                mentionCounts.add(user, 1);
+                topMentions.add(user);
+            }
+        }
+    }
+
+    /**
+     * @requires author != null && liker != null
+     * @param author L'autore del post che ha ricevuto il like
+     * @param liker  L'utente che ha messo like
+     * @effects Conta liker tra gli utenti che hanno messo like ai post di author
+     * @modifies this.likers
+     */
+    public synchronized void liked(String author, String liker) {
+        likers.computeIfAbsent(author, k -> new HyperLogLog()).add(liker);
+    }
+
+    /**
+     * @requires user != null
+     * @param user L'utente rimosso dalla rete
+     * @effects Elimina le statistiche sui like ricevuti dai post di user
+     * @modifies this.likers
+     */
+    public synchronized void userRemoved(String user) {
+        likers.remove(user);
+    }
+
+    /**
+     * @requires author != null
+     * @return La stima del numero di utenti distinti che hanno messo like ai post di author
+     */
+    public synchronized long estimateDistinctLikers(String author) {
+        HyperLogLog hll = likers.get(author);
+        return hll == null ? 0 : hll.estimate();
+    }
+
+    /**
+     * @requires tag != null
+     * @return La stima del numero di utenti distinti che hanno usato l'hashtag tag, 0 se tag
+     *         non è tra gli hashtag più frequenti
+     */
+    public synchronized long estimateDistinctTaggers(String tag) {
+        HyperLogLog hll = taggers.get(tag.toLowerCase());
+        return hll == null ? 0 : hll.estimate();
+    }
+
+    /**
+     * @requires tag != null
+     * @return La stima del numero di occorrenze dell'hashtag tag, mai inferiore al valore esatto
+     */
+    public synchronized long estimateHashtagCount(String tag) {
+        return hashtagCounts.estimate(tag.toLowerCase());
+    }
+
+    /**
+     * @requires user != null
+     * @return La stima del numero di menzioni di user, mai inferiore al valore esatto
+     */
+    public synchronized long estimateMentionCount(String user) {
+        return mentionCounts.estimate(user);
+    }
+
+    /**
+     * @requires k >= 0
+     * @return Al più k hashtag tra i più frequenti, in ordine non crescente di occorrenze stimate
+     */
+    public synchronized List<String> topHashtags(int k) {
+        return topHashtags.top(k);
+    }
+
+    /**
+     * @requires k >= 0
+     * @return Al più k utenti tra i più menzionati, in ordine non crescente di menzioni stimate
+     */
+    public synchronized List<String> topMentions(int k) {
+        return topMentions.top(k);
+    }
+}
@@ -0,0 +1,39 @@
+/** Overview:
+ *      OperationStatus rappresenta l'esito di un'operazione di modifica di una rete sociale
+ *      eseguita con i metodi try (tryLike, tryUnlike, tryPublish, tryReport), che segnalano
+ *      gli esiti negativi più comuni restituendo un valore invece di lanciare un'eccezione.
+ */
+public enum OperationStatus {
+    /**
+     * L'operazione è stata eseguita
+     */
+    OK,
+    /**
+     * L'utente indicato non è registrato nella rete (UserNotFoundException)
+     */
+    USER_NOT_FOUND,
+    /**
+     * Il post indicato non è stato pubblicato nella rete (PostNotFoundException)
+     */
+    POST_NOT_FOUND,
+    /**
+     * Il post è già stato pubblicato (PostAlreadyPublishedException)
+     */
+    POST_ALREADY_PUBLISHED,
+    /**
+     * L'utente ha cercato di mettere like a un proprio post (AutoLikeException)
+     */
+    AUTO_LIKE,
+    /**
+     * L'utente non aveva messo like al post (LikeNotFoundException)
+     */
+    LIKE_NOT_FOUND,
+    /**
+     * L'utente ha cercato di segnalare un proprio post (AutoReportException)
+     */
+    AUTO_REPORT,
+    /**
+     * L'utente aveva già segnalato il post (ReportingAlreadySentException)
+     */
+    REPORTING_ALREADY_SENT
+}
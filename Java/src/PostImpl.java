@@ -2,6 +2,7 @@ import Exceptions.Post.EmptyContentException;
 import Exceptions.Post.PostLengthExceededException;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  *  Overview:
@@ -16,15 +17,15 @@ import java.time.LocalDateTime;
  *          - timestamp rappresenta la data e l'ora in cui il post è stato scritto
  *
  *  Abstraction Function:
- *      f(c): C -> A = <c.id, c.autore, c.testo, c.timestamp>
+ *      f(c): C -> A = <c.id, c.autore, c.testo, fromEpochNanos(c.timestamp)>, in cui c.testo è
+ *      c.text se è una String, PostTextStore.decode(c.text) se è compresso (PostTextStore.Packed)
  *
  *  Representation invariant:
  *      f(c): C -> Bool =
  *      this.author != null &&
- *      this.text != null &&
+ *      this.text != null && (this.text instanceof String || this.text instanceof PostTextStore.Packed) &&
  *      this.text = "" &&
- *      this.text.length <= MAX_LENGTH &&
- *      this.timestamp != null
+ *      this.text.length <= MAX_LENGTH
  *
  */
 public class PostImpl implements Post, Comparable<Post>{
@@ -39,14 +40,16 @@ public class PostImpl implements Post, Comparable<Post>{
     private String author;
 
     /**
-     * Testo del post
+     * Testo del post: una String, condivisa da tutti i post con lo stesso testo (String.intern),
+     * oppure il testo compresso da PostTextStore
      */
-    private String text;
+    private volatile Object text;
 
     /**
-     * Timestamp del post (momento di pubblicazione)
+     * Timestamp del post (momento di pubblicazione) in nanosecondi dalla mezzanotte del
+     * 1 gennaio 1970, senza fuso orario come LocalDateTime
      */
-    private LocalDateTime timestamp;
+    private long timestamp;
 
     /**
      * Identificatore per il prossimo post che verrà creato
@@ -72,13 +75,81 @@ public class PostImpl implements Post, Comparable<Post>{
      * @throws NullPointerException se author == null || text == null
      */
     public PostImpl(String author, String text) throws PostLengthExceededException, EmptyContentException {
-        this.id = globalId;
-        this.timestamp = LocalDateTime.now();
+        setText(text);
+        setAuthor(author);
+
+        this.id = nextId(-1);
+        this.timestamp = toEpochNanos(LocalDateTime.now());
+    }
+
+    /** Costruttore degli oggetti di tipo PostImpl con un timestamp assegnato dal chiamante e un
+     *  nuovo id univoco, usato ad esempio dal server per registrare un post ricevuto da un
+     *  client senza fidarsi dell'id assegnato dal client.
+     *
+     * @requires author != null && text != null && 0 < text.length <= MAX_LENGTH &&
+     *           timestamp != null && timestamp è compreso tra gli anni 1678 e 2261
+     *
+     * @param author    L'autore del post
+     * @param text      Il testo del post
+     * @param timestamp Il momento in cui il post è stato creato
+     *
+     * @effects Crea un oggetto di tipo PostImpl con autore, testo e timestamp passati come
+     *          parametro e incrementa globalId di 1
+     * @modifies this, globalId
+     *
+     * @throws PostLengthExceededException se text.length > MAX_LENGTH
+     * @throws EmptyContentException se text.length == 0
+     * @throws NullPointerException se author == null || text == null || timestamp == null
+     * @throws ArithmeticException se timestamp non è rappresentabile in nanosecondi
+     */
+    public PostImpl(String author, String text, LocalDateTime timestamp)
+            throws PostLengthExceededException, EmptyContentException {
+        if (timestamp == null) {
+            throw new NullPointerException("Timestamp of the post can't be null.");
+        }
 
         setText(text);
         setAuthor(author);
 
-        globalId++;
+        this.timestamp = toEpochNanos(timestamp);
+        this.id = nextId(-1);
+    }
+
+    /** Costruttore degli oggetti di tipo PostImpl che ricostruisce un post già creato altrove
+     *  (ad esempio letto da un journal o da un file), mantenendone id e timestamp.
+     *
+     * @requires author != null && text != null && 0 < text.length <= MAX_LENGTH &&
+     *           timestamp != null && id >= 0 && timestamp è compreso tra gli anni 1678 e 2261
+     *
+     * @param id        L'id del post
+     * @param author    L'autore del post
+     * @param text      Il testo del post
+     * @param timestamp Il momento in cui il post è stato creato
+     *
+     * @effects Crea un oggetto di tipo PostImpl con i valori passati come parametro e fa in modo
+     *          che i post creati successivamente abbiano un id maggiore di id.
+     * @modifies this, globalId
+     *
+     * @throws PostLengthExceededException se text.length > MAX_LENGTH
+     * @throws EmptyContentException se text.length == 0
+     * @throws NullPointerException se author == null || text == null || timestamp == null
+     * @throws IllegalArgumentException se id < 0
+     * @throws ArithmeticException se timestamp non è rappresentabile in nanosecondi
+     */
+    public PostImpl(long id, String author, String text, LocalDateTime timestamp)
+            throws PostLengthExceededException, EmptyContentException {
+        if (timestamp == null) {
+            throw new NullPointerException("Timestamp of the post " + id + " can't be null.");
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("L'id di un post non può essere negativo");
+        }
+
+        setText(text);
+        setAuthor(author);
+
+        this.id = nextId(id);
+        this.timestamp = toEpochNanos(timestamp);
     }
 
     /**
@@ -102,7 +173,43 @@ public class PostImpl implements Post, Comparable<Post>{
      */
     @Override
     public String getText() {
-        return this.text;
+        Object t = this.text;
+        return t instanceof String ? (String) t : PostTextStore.decode((PostTextStore.Packed) t);
+    }
+
+    /**
+     * @requires packed != null && PostTextStore.decode(packed).equals(getText())
+     * @param packed Il testo del post compresso da PostTextStore
+     *
+     * @effects Sostituisce il testo del post con la sua versione compressa, che getText
+     *          decomprime a ogni chiamata. Lo stato astratto del post non cambia.
+     * @modifies this.text
+     */
+    void packText(PostTextStore.Packed packed) {
+        this.text = packed;
+    }
+
+    /**
+     * @return Il testo compresso del post, null se il testo è in chiaro
+     */
+    PostTextStore.Packed packedText() {
+        Object t = this.text;
+        return t instanceof PostTextStore.Packed ? (PostTextStore.Packed) t : null;
+    }
+
+    /**
+     * @requires repacked == null || PostTextStore.decode(repacked).equals(getText())
+     * @param old      Il testo compresso che il chiamante ha letto con packedText
+     * @param repacked Il testo ricompresso, null per tornare al testo in chiaro
+     *
+     * @effects Se il testo del post è ancora old, lo sostituisce con repacked (o con il testo
+     *          in chiaro). Lo stato astratto del post non cambia.
+     * @modifies this.text
+     */
+    synchronized void repackText(PostTextStore.Packed old, PostTextStore.Packed repacked) {
+        if (this.text == old) {
+            this.text = repacked != null ? repacked : PostTextStore.decode(old).intern();
+        }
     }
 
     /**
@@ -111,9 +218,57 @@ public class PostImpl implements Post, Comparable<Post>{
      */
     @Override
     public LocalDateTime getTimestamp() {
+        return fromEpochNanos(this.timestamp);
+    }
+
+    /**
+     * @return Il timestamp del post in nanosecondi dalla mezzanotte del 1 gennaio 1970
+     */
+    public long getEpochNanos() {
         return this.timestamp;
     }
 
+    /**
+     * @requires p != null
+     * @return Il timestamp di p in nanosecondi dalla mezzanotte del 1 gennaio 1970, senza
+     *         costruire un LocalDateTime se p è un PostImpl
+     */
+    public static long epochNanosOf(Post p) {
+        return p instanceof PostImpl ? ((PostImpl) p).timestamp : toEpochNanos(p.getTimestamp());
+    }
+
+    /**
+     * @requires t != null
+     * @return Il numero di nanosecondi trascorsi dalla mezzanotte del 1 gennaio 1970 a t
+     * @throws ArithmeticException Se il risultato non è rappresentabile con un long
+     */
+    public static long toEpochNanos(LocalDateTime t) {
+        return Math.addExact(Math.multiplyExact(t.toEpochSecond(ZoneOffset.UTC), 1_000_000_000L), t.getNano());
+    }
+
+    /**
+     * @requires t != null
+     * @return Come toEpochNanos(t), ma Long.MIN_VALUE o Long.MAX_VALUE se t è precedente o
+     *         successivo agli istanti rappresentabili con un long (ad esempio LocalDateTime.MIN
+     *         e LocalDateTime.MAX usati come estremi di un intervallo)
+     */
+    public static long clampedEpochNanos(LocalDateTime t) {
+        try {
+            return toEpochNanos(t);
+        }
+        catch (ArithmeticException e) {
+            return t.getYear() < 1970 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return Il LocalDateTime che si trova nanos nanosecondi dopo la mezzanotte del 1 gennaio 1970
+     */
+    public static LocalDateTime fromEpochNanos(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
     /**
      * @return La rappresentazione del post sottoforma di stringa
      */
@@ -123,12 +278,29 @@ public class PostImpl implements Post, Comparable<Post>{
 
         ret += "Id: " + this.id + "\n";
         ret += "Author: " + this.author + "\n";
-        ret += "Text: " + this.text + "\n";
-        ret += "Timestamp: " + this.timestamp.toString() + "\n";
+        ret += "Text: " + getText() + "\n";
+        ret += "Timestamp: " + getTimestamp().toString() + "\n";
 
         return ret;
     }
 
+    /**
+     * @param reserved L'id da riservare, -1 per ottenere un nuovo id
+     *
+     * @effects Fornisce l'id di un nuovo post, oppure riserva reserved facendo in modo che i
+     *          post creati successivamente abbiano un id maggiore.
+     * @modifies globalId
+     * @return  Il nuovo id se reserved == -1, reserved altrimenti
+     */
+    private static synchronized long nextId(long reserved) {
+        if (reserved < 0) {
+            return globalId++;
+        }
+
+        globalId = Math.max(globalId, reserved + 1);
+        return reserved;
+    }
+
     /**
      * @requires author != null
      *
@@ -170,7 +342,9 @@ public class PostImpl implements Post, Comparable<Post>{
                 throw new EmptyContentException("Il contenuto del post non può essere null");
             }
             else {
-                this.text = text;
+                // I post con lo stesso testo, come quelli di un'ondata di spam, ne condividono
+                // un'unica istanza
+                this.text = text.intern();
             }
         }
         else {
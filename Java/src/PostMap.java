@@ -0,0 +1,269 @@
+import java.util.*;
+
+/** Overview:
+ *      PostMap è un dato mutabile che rappresenta una map da post a valori, in cui i post
+ *      sono identificati dal loro id. Le chiavi sono memorizzate in un array di long con
+ *      indirizzamento aperto e scansione lineare, per cui una ricerca calcola l'hash dell'id
+ *      (mescolandone i bit, dal momento che gli id sono consecutivi) e confronta dei long,
+ *      senza allocare un nodo per ogni elemento. L'ordine di visita non è specificato.
+ *
+ *  Typical element:
+ *      {(p1, v1), (p2, v2), ...} in cui pi è un post e vi il valore associato
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = {(c.posts[i], c.values[i]) | c.posts[i] != null && c.posts[i] != DELETED}
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = ids.length == posts.length == values.length && ids.length è una
+ *          potenza di 2 && used < ids.length / 2 &&
+ *          foreach i -> (posts[i] è un Post => ids[i] == posts[i].getId() &&
+ *              il post è raggiungibile scandendo da slot(ids[i]) senza incontrare slot vuoti) &&
+ *          size == #{i | posts[i] è un Post} && used == size + #{i | posts[i] == DELETED}
+ */
+public class PostMap<V> extends AbstractMap<Post, V> {
+    /**
+     * Segnaposto degli elementi rimossi, che non interrompe le scansioni
+     */
+    private static final Object DELETED = new Object();
+
+    private long[] ids;
+    /**
+     * Post di ogni slot: null se lo slot è vuoto, DELETED se l'elemento è stato rimosso
+     */
+    private Object[] posts;
+    private Object[] values;
+    private int size;
+    /**
+     * Slot non vuoti, compresi quelli rimossi
+     */
+    private int used;
+    /**
+     * Numero di modifiche strutturali, per rilevare le modifiche durante una visita
+     */
+    private int modCount;
+
+    /**
+     * @effects Crea una map vuota
+     */
+    public PostMap() {
+        allocate(16);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Post && find(((Post) key).getId()) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = key instanceof Post ? find(((Post) key).getId()) : -1;
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    /**
+     * @requires key != null
+     * @effects Associa value a key
+     * @modifies this
+     * @return  Il valore precedentemente associato a key, null se non c'era
+     * @throws NullPointerException Se key == null
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(Post key, V value) {
+        if (key == null) {
+            throw new NullPointerException("La chiave di una PostMap non può essere null");
+        }
+
+        int i = find(key.getId());
+        if (i >= 0) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+
+        if (used + 1 >= ids.length / 2) {
+            rehash(size + 1 >= ids.length / 4 ? ids.length * 2 : ids.length);
+        }
+
+        i = slot(key.getId());
+        while (posts[i] != null && posts[i] != DELETED) {
+            i = (i + 1) & (ids.length - 1);
+        }
+        if (posts[i] == null) {
+            used++;
+        }
+        ids[i] = key.getId();
+        posts[i] = key;
+        values[i] = value;
+        size++;
+        modCount++;
+
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = key instanceof Post ? find(((Post) key).getId()) : -1;
+        if (i < 0) {
+            return null;
+        }
+
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        allocate(16);
+        size = 0;
+        used = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<Post, V>> entrySet() {
+        return new AbstractSet<Entry<Post, V>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<Post, V>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    /**
+     * @return La posizione dell'elemento con id id, -1 se non è presente
+     */
+    private int find(long id) {
+        int i = slot(id);
+        while (posts[i] != null) {
+            if (posts[i] != DELETED && ids[i] == id) {
+                return i;
+            }
+            i = (i + 1) & (ids.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * @return Lo slot da cui iniziare la scansione per l'id id
+     */
+    private int slot(long id) {
+        // Finalizzazione di MurmurHash3: gli id consecutivi finiscono in slot lontani
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        return (int) id & (ids.length - 1);
+    }
+
+    /**
+     * @effects Rimuove l'elemento in posizione i
+     * @modifies this
+     */
+    private void removeAt(int i) {
+        posts[i] = DELETED;
+        values[i] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * @effects Sposta gli elementi in array di lunghezza capacity, eliminando i segnaposto
+     * @modifies this
+     */
+    private void rehash(int capacity) {
+        long[] oldIds = ids;
+        Object[] oldPosts = posts;
+        Object[] oldValues = values;
+
+        allocate(capacity);
+        for (int j=0; j<oldIds.length; j++) {
+            if (oldPosts[j] != null && oldPosts[j] != DELETED) {
+                int i = slot(oldIds[j]);
+                while (posts[i] != null) {
+                    i = (i + 1) & (ids.length - 1);
+                }
+                ids[i] = oldIds[j];
+                posts[i] = oldPosts[j];
+                values[i] = oldValues[j];
+            }
+        }
+        used = size;
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        posts = new Object[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Iteratore sugli elementi, che supporta la rimozione dell'elemento corrente
+     */
+    private class EntryIterator implements Iterator<Entry<Post, V>> {
+        private int next = advance(0);
+        private int current = -1;
+        private int expectedModCount = modCount;
+
+        private int advance(int i) {
+            while (i < ids.length && (posts[i] == null || posts[i] == DELETED)) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < ids.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<Post, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            current = next;
+            next = advance(next + 1);
+            final int i = current;
+            final Object[] vs = values;
+            return new SimpleEntry<Post, V>((Post) posts[i], (V) vs[i]) {
+                @Override
+                public V setValue(V value) {
+                    vs[i] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+            removeAt(current);
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
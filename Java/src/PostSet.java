@@ -0,0 +1,167 @@
+import java.util.*;
+
+/** Overview:
+ *      PostSet è un dato mutabile che rappresenta un insieme di post identificati dal loro id,
+ *      memorizzati in un array ordinato per id crescente. Dal momento che i post vengono
+ *      pubblicati perlopiù in ordine di id, l'inserimento consiste di solito in un'aggiunta in
+ *      coda; la ricerca è binaria e la visita segue l'ordine degli id.
+ *
+ *  Typical element:
+ *      {p1, p2, ...} in cui pi è un post
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = {c.posts[i] | 0 <= i < c.size}
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = posts != null && 0 <= size <= posts.length &&
+ *          foreach i in [0, size) -> posts[i] != null &&
+ *          foreach i in [1, size) -> posts[i-1].getId() < posts[i].getId()
+ */
+public class PostSet extends AbstractSet<Post> {
+    private Post[] posts;
+    private int size;
+    /**
+     * Numero di modifiche strutturali, per rilevare le modifiche durante una visita
+     */
+    private int modCount;
+
+    /**
+     * @effects Crea un insieme vuoto
+     */
+    public PostSet() {
+        posts = new Post[4];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Post && indexOf(((Post) o).getId()) >= 0;
+    }
+
+    /**
+     * @requires p != null
+     * @effects Aggiunge p all'insieme se non contiene già un post con lo stesso id
+     * @modifies this
+     * @return  True se p è stato aggiunto
+     * @throws NullPointerException Se p == null
+     */
+    @Override
+    public boolean add(Post p) {
+        if (p == null) {
+            throw new NullPointerException("Un PostSet non può contenere null");
+        }
+
+        int i = size > 0 && posts[size - 1].getId() < p.getId() ? -(size + 1) : indexOf(p.getId());
+        if (i >= 0) {
+            return false;
+        }
+
+        i = -(i + 1);
+        if (size == posts.length) {
+            posts = Arrays.copyOf(posts, size * 2);
+        }
+        System.arraycopy(posts, i, posts, i + 1, size - i);
+        posts[i] = p;
+        size++;
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int i = o instanceof Post ? indexOf(((Post) o).getId()) : -1;
+        if (i < 0) {
+            return false;
+        }
+
+        removeAt(i);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(posts, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<Post> iterator() {
+        return new Iterator<Post>() {
+            private int next = 0;
+            private boolean canRemove = false;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Post next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return posts[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+
+                removeAt(--next);
+                canRemove = false;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * @return La posizione del post con id id se è presente, altrimenti -(punto di inserimento + 1)
+     */
+    private int indexOf(long id) {
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = posts[mid].getId();
+
+            if (midId < id) {
+                low = mid + 1;
+            }
+            else if (midId > id) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * @effects Rimuove il post in posizione i
+     * @modifies this
+     */
+    private void removeAt(int i) {
+        System.arraycopy(posts, i + 1, posts, i, size - i - 1);
+        posts[--size] = null;
+        modCount++;
+    }
+}
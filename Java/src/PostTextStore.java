@@ -0,0 +1,741 @@
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/** Overview:
+ *      PostTextStore è un dato mutabile che comprime i testi dei post con un dizionario
+ *      condiviso di sottostringhe frequenti, addestrato sui testi degli ultimi SAMPLE_SIZE post
+ *      compressi e riaddestrato in background ogni retrainInterval post. I testi sono brevi,
+ *      per cui una compressione generica di ogni testo è inefficace, ma si ripetono molto tra
+ *      un post e l'altro: il dizionario cattura queste ripetizioni.
+ *
+ *      Un testo compresso (Packed) è il riferimento al dizionario con cui è stato compresso e
+ *      una sequenza di byte di codici:
+ *          - 0x00-0x7F: il carattere ASCII corrispondente
+ *          - 0x80-0xBF: una delle 64 voci del dizionario più usate
+ *          - 0xC0-0xFE seguito da un byte: una delle altre voci del dizionario
+ *          - 0xFF seguito da due byte: un carattere qualsiasi
+ *      Per ogni testo viene scelta la sequenza di codici più corta. La decompressione
+ *      (decode) legge i codici e accoda le voci corrispondenti, senza stato condiviso, per cui
+ *      PostImpl.getText decomprime il proprio testo a ogni chiamata senza ulteriori strutture.
+ *      Il testo compresso prende il posto della String, per cui occupa un oggetto in più
+ *      soltanto per i byte dei codici.
+ *
+ *      Un dizionario sostituito da un riaddestramento resta in memoria finché è raggiungibile
+ *      da un testo compresso. Se è stata indicata con setRepackSource la collezione dei post da
+ *      mantenere compressi (ad esempio quelli di una rete sociale), dopo ogni addestramento i
+ *      testi di quei post compressi con un dizionario precedente vengono ricompressi in
+ *      background con quello nuovo, in modo che i dizionari precedenti smettano di essere
+ *      raggiungibili e vengano liberati dal garbage collector.
+ *
+ *  Typical element:
+ *      <current, sample, pending> in cui:
+ *          - current è il dizionario con cui vengono compressi i nuovi testi, null prima del
+ *              primo addestramento
+ *          - sample = [t1, t2, ...] sono i testi degli ultimi SAMPLE_SIZE post compressi
+ *          - pending = {p1, p2, ...} sono i post da comprimere non appena sarà disponibile
+ *              il primo dizionario
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.current, {c.sample[i] | 0 <= i < min(c.seen, SAMPLE_SIZE)}, c.pending>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = sample != null && sample.length == SAMPLE_SIZE && pending != null &&
+ *          retrainInterval > 0 && (current != null -> pending.isEmpty()) && retired != null &&
+ *          foreach r in retired -> r.get() != current.dictionary
+ */
+public class PostTextStore {
+    /**
+     * Numero di testi recenti su cui viene addestrato il dizionario
+     */
+    public static final int SAMPLE_SIZE = 2048;
+    /**
+     * Numero predefinito di post compressi tra due addestramenti del dizionario
+     */
+    public static final int DEFAULT_RETRAIN_INTERVAL = 100_000;
+    /**
+     * Numero massimo di voci di un dizionario
+     */
+    public static final int MAX_ENTRIES = 64 + 63 * 256;
+
+    /**
+     * Lunghezza massima di una voce del dizionario
+     */
+    private static final int MAX_ENTRY_LENGTH = 24;
+    /**
+     * Numero minimo di occorrenze nei testi di addestramento di una voce del dizionario
+     */
+    private static final int MIN_COUNT = 3;
+    /**
+     * Numero di voci con un codice di un byte
+     */
+    private static final int SHORT_CODES = 64;
+
+    /**
+     * Numero massimo di voci dei dizionari addestrati da this
+     */
+    private final int maxEntries;
+    /**
+     * Numero di post compressi tra due addestramenti del dizionario
+     */
+    private final int retrainInterval;
+    /**
+     * Dizionario con cui vengono compressi i nuovi testi
+     */
+    private volatile Encoder current;
+    /**
+     * Testi degli ultimi post compressi, in un buffer circolare
+     */
+    private final String[] sample;
+    /**
+     * Numero di testi passati a compress
+     */
+    private long seen;
+    /**
+     * Valore di seen all'avvio dell'ultimo addestramento in background
+     */
+    private long trainedAt;
+    /**
+     * Dizionari sostituiti da un riaddestramento, che restano in memoria finché un testo
+     * compresso li usa
+     */
+    private final List<WeakReference<Dictionary>> retired;
+    /**
+     * Post i cui testi vengono ricompressi dopo ogni addestramento, null se non è stata indicata
+     */
+    private volatile Supplier<? extends Collection<? extends Post>> repackSource;
+    /**
+     * Post pubblicati prima del primo addestramento
+     */
+    private List<PostImpl> pending;
+    /**
+     * True se un addestramento è in corso
+     */
+    private boolean training;
+    /**
+     * Thread che addestra i dizionari
+     */
+    private final ExecutorService trainer;
+    /**
+     * Statistiche
+     */
+    private long compressedTexts;
+    private long uncompressedTexts;
+    private long rawBytes;
+    private long packedBytes;
+    private long dictionaries;
+    private long repackedTexts;
+
+    /**
+     * @requires maxEntries > 0 && maxEntries <= MAX_ENTRIES && retrainInterval > 0
+     * @param maxEntries      Il numero massimo di voci di un dizionario
+     * @param retrainInterval Il numero di post compressi tra due addestramenti del dizionario
+     *
+     * @effects Crea un PostTextStore senza dizionario: il primo viene addestrato quando sono
+     *          stati passati a compress SAMPLE_SIZE testi
+     * @throws IllegalArgumentException Se maxEntries <= 0 || maxEntries > MAX_ENTRIES ||
+     *                                  retrainInterval <= 0
+     */
+    public PostTextStore(int maxEntries, int retrainInterval) {
+        if (maxEntries <= 0 || maxEntries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("Il numero di voci del dizionario deve essere compreso tra 1 e " + MAX_ENTRIES);
+        }
+        if (retrainInterval <= 0) {
+            throw new IllegalArgumentException("L'intervallo di addestramento deve essere positivo");
+        }
+
+        this.maxEntries = maxEntries;
+        this.retrainInterval = retrainInterval;
+        this.sample = new String[SAMPLE_SIZE];
+        this.pending = new ArrayList<>();
+        this.retired = new ArrayList<>();
+        this.trainer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "post-text-trainer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @effects Crea un PostTextStore con dizionari di al più 4096 voci, riaddestrati ogni
+     *          DEFAULT_RETRAIN_INTERVAL post
+     */
+    public PostTextStore() {
+        this(4096, DEFAULT_RETRAIN_INTERVAL);
+    }
+
+    /**
+     * @requires p != null
+     * @param p Il post di cui comprimere il testo
+     *
+     * @effects Se p è un PostImpl, ne comprime il testo con il dizionario corrente; se non ci
+     *          sono ancora dizionari, il testo verrà compresso al termine del primo
+     *          addestramento. Il testo resta in chiaro se la compressione non lo accorcia.
+     *          Aggiunge il testo a quelli di addestramento e avvia un addestramento in
+     *          background se è il momento di farlo.
+     * @modifies this, p.text
+     * @throws NullPointerException Se p == null
+     */
+    public void compress(Post p) {
+        if (p == null) {
+            throw new NullPointerException("Il post da comprimere non può essere null");
+        }
+        if (!(p instanceof PostImpl)) {
+            return;
+        }
+
+        PostImpl post = (PostImpl) p;
+        String text = post.getText();
+        Encoder dict;
+
+        synchronized (this) {
+            dict = current;
+            sample[(int) (seen++ % SAMPLE_SIZE)] = text;
+            if (dict == null) {
+                pending.add(post);
+            }
+            if (!training && seen - trainedAt >= (dict == null ? SAMPLE_SIZE : retrainInterval)) {
+                training = true;
+                trainedAt = seen;
+                trainer.execute(this::train);
+            }
+        }
+
+        if (dict != null) {
+            pack(post, text, dict);
+        }
+    }
+
+    /**
+     * @effects Addestra un nuovo dizionario sui testi di addestramento e lo usa per i testi
+     *          compressi da ora in poi, comprimendo i post in attesa del primo dizionario. Non
+     *          fa nulla se non ci sono testi di addestramento.
+     * @modifies this
+     */
+    public void retrain() {
+        String[] texts;
+        synchronized (this) {
+            texts = Arrays.copyOf(sample, (int) Math.min(seen, SAMPLE_SIZE));
+        }
+        if (texts.length == 0) {
+            return;
+        }
+
+        // Il dizionario precedente resta raggiungibile dai testi già compressi
+        Encoder dict = new Encoder(new Dictionary(train(Arrays.asList(texts), maxEntries)));
+        List<PostImpl> toPack;
+        synchronized (this) {
+            if (current != null) {
+                retired.add(new WeakReference<>(current.dictionary));
+            }
+            current = dict;
+            dictionaries++;
+            toPack = pending;
+            pending = new ArrayList<>();
+        }
+
+        for (PostImpl p : toPack) {
+            pack(p, p.getText(), dict);
+        }
+    }
+
+    /**
+     * @param source Fornisce i post i cui testi vanno mantenuti compressi con il dizionario
+     *               corrente, null per non ricomprimere alcun testo. La collezione fornita
+     *               viene visitata in background, per cui non deve essere modificata durante
+     *               la visita (ad esempio sono i post di uno snapshot).
+     *
+     * @effects Dopo ogni addestramento, ricomprime in background con il nuovo dizionario i
+     *          testi dei post forniti da source compressi con un dizionario precedente
+     * @modifies this.repackSource
+     */
+    public void setRepackSource(Supplier<? extends Collection<? extends Post>> source) {
+        repackSource = source;
+    }
+
+    /**
+     * @requires posts != null && posts non viene modificata durante la chiamata
+     * @param posts I post di cui ricomprimere il testo
+     *
+     * @effects Ricomprime con il dizionario corrente i testi dei post di posts compressi con
+     *          un dizionario precedente; quelli che non si accorciano tornano in chiaro. Un
+     *          dizionario precedente viene liberato quando nessun testo compresso lo usa più.
+     * @modifies this, p.text per ogni p in posts
+     * @return  Il numero di testi ricompressi
+     */
+    public int repack(Collection<? extends Post> posts) {
+        Encoder dict = current;
+        if (dict == null) {
+            return 0;
+        }
+
+        int ret = 0;
+        for (Post p : posts) {
+            if (p instanceof PostImpl) {
+                PostImpl post = (PostImpl) p;
+                Packed packed = post.packedText();
+                if (packed != null && packed.dictionary != dict.dictionary) {
+                    String text = decode(packed);
+                    Packed repacked = new Packed(dict.dictionary, encode(text, dict));
+                    post.repackText(packed, repacked.codes.length < rawSize(text) ? repacked : null);
+                    ret++;
+                }
+            }
+        }
+
+        synchronized (this) {
+            repackedTexts += ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return Il numero di testi ricompressi con un dizionario più recente
+     */
+    public synchronized long getRepackedTexts() {
+        return repackedTexts;
+    }
+
+    /**
+     * @effects Dimentica i dizionari precedenti già liberati
+     * @modifies this.retired
+     * @return  Il numero di dizionari ancora in memoria, compreso quello corrente
+     */
+    public synchronized int getLiveDictionaries() {
+        retired.removeIf(r -> r.get() == null);
+        return retired.size() + (current == null ? 0 : 1);
+    }
+
+    /**
+     * @return Il numero di testi compressi
+     */
+    public synchronized long getCompressedTexts() {
+        return compressedTexts;
+    }
+
+    /**
+     * @return Il numero di testi rimasti in chiaro perché la compressione non li accorciava
+     */
+    public synchronized long getUncompressedTexts() {
+        return uncompressedTexts;
+    }
+
+    /**
+     * @return Il numero di byte che i testi compressi occupavano in chiaro
+     */
+    public synchronized long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return Il numero di byte occupati dai testi compressi
+     */
+    public synchronized long getPackedBytes() {
+        return packedBytes;
+    }
+
+    /**
+     * @return Il rapporto tra i byte occupati dai testi compressi e quelli che occupavano in
+     *         chiaro, 1 se non è stato compresso alcun testo
+     */
+    public synchronized double getCompressionRatio() {
+        return rawBytes == 0 ? 1 : (double) packedBytes / rawBytes;
+    }
+
+    /**
+     * @return Il numero di dizionari addestrati da this, compresi quelli già liberati
+     */
+    public synchronized long getDictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * @return Il numero di voci del dizionario corrente, 0 se non è stato ancora addestrato
+     */
+    public int getDictionarySize() {
+        Encoder dict = current;
+        return dict == null ? 0 : dict.dictionary.entries.length;
+    }
+
+    /**
+     * @requires packed != null
+     * @param packed Il testo compresso
+     * @return Il testo decompresso
+     */
+    static String decode(Packed packed) {
+        Dictionary dict = packed.dictionary;
+        byte[] codes = packed.codes;
+
+        // Quasi sempre il testo è Latin-1: lo ricostruisco direttamente nei byte della String
+        byte[] out = new byte[Post.MAX_LENGTH];
+        int n = 0;
+        for (int k=0; k<codes.length; ) {
+            int code = codes[k++] & 0xFF;
+            byte[] entry;
+            if (code < 0x80) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, 2 * out.length);
+                }
+                out[n++] = (byte) code;
+                continue;
+            }
+            else if (code < 0xC0) {
+                entry = dict.latin1[code - 0x80];
+            }
+            else if (code < 0xFF) {
+                entry = dict.latin1[SHORT_CODES + ((code - 0xC0) << 8 | (codes[k++] & 0xFF))];
+            }
+            else {
+                return decodeChars(codes, dict);
+            }
+
+            if (entry == null) {
+                return decodeChars(codes, dict);
+            }
+            if (n + entry.length > out.length) {
+                out = Arrays.copyOf(out, Math.max(2 * out.length, n + entry.length));
+            }
+            System.arraycopy(entry, 0, out, n, entry.length);
+            n += entry.length;
+        }
+        return new String(out, 0, n, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @requires packed sono i codici di un testo compresso con dict
+     * @return Il testo decompresso, anche se contiene caratteri non Latin-1
+     */
+    private static String decodeChars(byte[] packed, Dictionary dict) {
+        String[] entries = dict.entries;
+        StringBuilder ret = new StringBuilder(Post.MAX_LENGTH);
+        int i = 0;
+
+        while (i < packed.length) {
+            int code = packed[i++] & 0xFF;
+            if (code < 0x80) {
+                ret.append((char) code);
+            }
+            else if (code < 0xC0) {
+                ret.append(entries[code - 0x80]);
+            }
+            else if (code < 0xFF) {
+                ret.append(entries[SHORT_CODES + ((code - 0xC0) << 8 | (packed[i++] & 0xFF))]);
+            }
+            else {
+                ret.append((char) ((packed[i] & 0xFF) << 8 | (packed[i + 1] & 0xFF)));
+                i += 2;
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @effects Addestra un dizionario in background, ricomprime i testi dei post forniti da
+     *          repackSource e segnala che l'addestramento è concluso
+     * @modifies this
+     */
+    private void train() {
+        try {
+            retrain();
+
+            Supplier<? extends Collection<? extends Post>> source = repackSource;
+            if (source != null && getLiveDictionaries() > 1) {
+                repack(source.get());
+            }
+        }
+        finally {
+            synchronized (this) {
+                training = false;
+            }
+        }
+    }
+
+    /**
+     * @requires post.getText().equals(text)
+     * @effects Comprime il testo di post con dict, se la compressione lo accorcia
+     * @modifies this, post.text
+     */
+    private void pack(PostImpl post, String text, Encoder dict) {
+        byte[] packed = encode(text, dict);
+        int raw = rawSize(text);
+
+        synchronized (this) {
+            if (packed.length < raw) {
+                compressedTexts++;
+                rawBytes += raw;
+                packedBytes += packed.length;
+            }
+            else {
+                uncompressedTexts++;
+            }
+        }
+        if (packed.length < raw) {
+            post.packText(new Packed(dict.dictionary, packed));
+        }
+    }
+
+    /**
+     * @return Il numero di byte occupati dai caratteri di s in una String (uno per carattere
+     *         se sono tutti Latin-1, due altrimenti)
+     */
+    private static int rawSize(String s) {
+        for (int i=0; i<s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                return 2 * s.length();
+            }
+        }
+        return s.length();
+    }
+
+    /**
+     * @requires s != null && dict != null
+     * @return I codici di s compresso con il dizionario di dict, con la sequenza di codici
+     *         più corta
+     */
+    private static byte[] encode(String s, Encoder dict) {
+        int n = s.length();
+        // cost[i] è il numero minimo di byte con cui codificare s[i..n), ottenuto con la voce
+        // code[i] (-1 per il carattere s[i]) di lunghezza length[i]
+        int[] cost = new int[n + 1];
+        int[] code = new int[n];
+        int[] length = new int[n];
+
+        for (int i=n-1; i>=0; i--) {
+            cost[i] = (s.charAt(i) < 0x80 ? 1 : 3) + cost[i + 1];
+            code[i] = -1;
+            length[i] = 1;
+
+            Node node = dict.trie;
+            for (int j=i; j<n && j-i<MAX_ENTRY_LENGTH; j++) {
+                node = node.child(s.charAt(j));
+                if (node == null) {
+                    break;
+                }
+                if (node.code >= 0) {
+                    int c = (node.code < SHORT_CODES ? 1 : 2) + cost[j + 1];
+                    if (c < cost[i]) {
+                        cost[i] = c;
+                        code[i] = node.code;
+                        length[i] = j - i + 1;
+                    }
+                }
+            }
+        }
+
+        byte[] ret = new byte[cost[0]];
+        int k = 0;
+
+        for (int i=0; i<n; i+=length[i]) {
+            if (code[i] >= SHORT_CODES) {
+                int c = code[i] - SHORT_CODES;
+                ret[k++] = (byte) (0xC0 + (c >>> 8));
+                ret[k++] = (byte) c;
+            }
+            else if (code[i] >= 0) {
+                ret[k++] = (byte) (0x80 + code[i]);
+            }
+            else if (s.charAt(i) < 0x80) {
+                ret[k++] = (byte) s.charAt(i);
+            }
+            else {
+                ret[k++] = (byte) 0xFF;
+                ret[k++] = (byte) (s.charAt(i) >>> 8);
+                ret[k++] = (byte) s.charAt(i);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @requires texts != null && !texts.isEmpty() && maxEntries > 0
+     * @return Le voci di un dizionario per texts, al più maxEntries, dalla più usata: le
+     *         sottostringhe frequenti che fanno risparmiare più byte
+     */
+    private static String[] train(List<String> texts, int maxEntries) {
+        // Conto le sottostringhe per lunghezza crescente, estendendo soltanto quelle frequenti:
+        // counters.get(t)[i] è il contatore della sottostringa di texts(t) che inizia in i,
+        // null se non è frequente
+        Map<String, int[]> counts = new HashMap<>();
+        List<int[][]> counters = new ArrayList<>();
+        for (String t : texts) {
+            int[][] c = new int[t.length()][];
+            Arrays.fill(c, new int[] { MIN_COUNT });
+            counters.add(c);
+        }
+        for (int len=2; len<=MAX_ENTRY_LENGTH; len++) {
+            Map<String, int[]> level = new HashMap<>();
+            for (int t=0; t<texts.size(); t++) {
+                String text = texts.get(t);
+                int[][] c = counters.get(t);
+                for (int i=0; i<c.length; i++) {
+                    if (c[i] != null && c[i][0] >= MIN_COUNT && i + len <= c.length) {
+                        c[i] = level.computeIfAbsent(text.substring(i, i + len), k -> new int[1]);
+                        c[i][0]++;
+                    }
+                    else {
+                        c[i] = null;
+                    }
+                }
+            }
+
+            level.values().removeIf(c -> c[0] < MIN_COUNT);
+            if (level.isEmpty()) {
+                break;
+            }
+            counts.putAll(level);
+        }
+
+        // Scarto le sottostringhe che compaiono quasi sempre all'interno di una più lunga
+        Map<String, Integer> extended = new HashMap<>();
+        for (Map.Entry<String, int[]> e : counts.entrySet()) {
+            String s = e.getKey();
+            if (s.length() > 2) {
+                extended.merge(s.substring(0, s.length() - 1), e.getValue()[0], Math::max);
+                extended.merge(s.substring(1), e.getValue()[0], Math::max);
+            }
+        }
+        List<String> candidates = new ArrayList<>();
+        for (Map.Entry<String, int[]> e : counts.entrySet()) {
+            if (extended.getOrDefault(e.getKey(), 0) * 4 < e.getValue()[0] * 3) {
+                candidates.add(e.getKey());
+            }
+        }
+        candidates.sort(Comparator.comparingLong((String s) -> -(long) counts.get(s)[0] * (s.length() - 1))
+                .thenComparing(Comparator.naturalOrder()));
+        if (candidates.size() > maxEntries) {
+            candidates = candidates.subList(0, maxEntries);
+        }
+
+        // Comprimo i testi con le voci candidate e tengo quelle usate, dalla più usata
+        Encoder trial = new Encoder(new Dictionary(candidates.toArray(new String[0])));
+        long[] uses = new long[candidates.size()];
+        for (String t : texts) {
+            countUses(t, trial, uses);
+        }
+        List<Integer> used = new ArrayList<>();
+        for (int i=0; i<uses.length; i++) {
+            if (uses[i] > 0) {
+                used.add(i);
+            }
+        }
+        used.sort(Comparator.comparingLong((Integer i) -> -uses[i]).thenComparing(Comparator.naturalOrder()));
+
+        String[] ret = new String[used.size()];
+        for (int i=0; i<ret.length; i++) {
+            ret[i] = trial.dictionary.entries[used.get(i)];
+        }
+        return ret;
+    }
+
+    /**
+     * @effects Incrementa uses[c] per ogni occorrenza della voce c nella compressione di s
+     *          con dict
+     * @modifies uses
+     */
+    private static void countUses(String s, Encoder dict, long[] uses) {
+        byte[] packed = encode(s, dict);
+        for (int i=0; i<packed.length; i++) {
+            int code = packed[i] & 0xFF;
+            if (code >= 0x80 && code < 0xC0) {
+                uses[code - 0x80]++;
+            }
+            else if (code >= 0xC0 && code < 0xFF) {
+                uses[SHORT_CODES + ((code - 0xC0) << 8 | (packed[++i] & 0xFF))]++;
+            }
+            else if (code == 0xFF) {
+                i += 2;
+            }
+        }
+    }
+
+    /**
+     * Testo compresso: il dizionario con cui è stato compresso e i codici
+     */
+    static final class Packed {
+        private final Dictionary dictionary;
+        private final byte[] codes;
+
+        private Packed(Dictionary dictionary, byte[] codes) {
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+    }
+
+    /**
+     * Dizionario: voci indicizzate per codice e, per la decompressione dei testi Latin-1, i
+     * loro byte (null per le voci con caratteri non Latin-1)
+     */
+    private static class Dictionary {
+        private final String[] entries;
+        private final byte[][] latin1;
+
+        private Dictionary(String[] entries) {
+            this.entries = entries;
+            this.latin1 = new byte[entries.length][];
+            for (int c=0; c<entries.length; c++) {
+                if (rawSize(entries[c]) == entries[c].length()) {
+                    latin1[c] = entries[c].getBytes(StandardCharsets.ISO_8859_1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dizionario con il trie delle sue voci, per la compressione: soltanto il dizionario
+     * corrente ne ha uno
+     */
+    private static class Encoder {
+        private final Dictionary dictionary;
+        private final Node trie;
+
+        private Encoder(Dictionary dictionary) {
+            this.dictionary = dictionary;
+            this.trie = new Node();
+            for (int c=0; c<dictionary.entries.length; c++) {
+                Node node = trie;
+                for (int i=0; i<dictionary.entries[c].length(); i++) {
+                    node = node.addChild(dictionary.entries[c].charAt(i));
+                }
+                node.code = c;
+            }
+        }
+    }
+
+    /**
+     * Nodo del trie delle voci di un dizionario: figli ordinati per carattere e codice della
+     * voce che termina nel nodo, -1 se non ce n'è una
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int code = -1;
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node addChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+
+            i = -i - 1;
+            char[] k = new char[keys.length + 1];
+            Node[] ch = new Node[children.length + 1];
+            System.arraycopy(keys, 0, k, 0, i);
+            System.arraycopy(children, 0, ch, 0, i);
+            System.arraycopy(keys, i, k, i + 1, keys.length - i);
+            System.arraycopy(children, i, ch, i + 1, children.length - i);
+            k[i] = c;
+            ch[i] = new Node();
+            keys = k;
+            children = ch;
+            return ch[i];
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.*;
+
+/** Overview:
+ *      PrefixIndex è un dato mutabile che associa a un insieme di stringhe (termini) un peso
+ *      positivo e fornisce i termini più pesanti che iniziano con un certo prefisso, come
+ *      serve per l'autocompletamento delle menzioni e degli hashtag.
+ *
+ *      I termini sono memorizzati in un trie: ogni nodo mantiene i figli in un array ordinato
+ *      di caratteri (ricerca binaria) e il peso massimo del proprio sottoalbero. Il
+ *      completamento raggiunge il nodo del prefisso e visita i sottoalberi in ordine di peso
+ *      massimo con una coda di priorità, fermandosi dopo k termini: il costo dipende dalla
+ *      lunghezza del prefisso e da k, non dal numero di termini.
+ *
+ *  Typical element:
+ *      <weights> in cui weights = {(t1, w1), (t2, w2), ...} in cui wi > 0 è il peso del
+ *      termine ti
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{(t, n.weight) | n è il nodo raggiunto da c.root seguendo t && n.weight > 0}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = root != null && size >= 0 &&
+ *          foreach n nodo del trie -> n.labels.length == n.children.length &&
+ *              n.labels è ordinato in modo strettamente crescente && n.weight >= 0 &&
+ *              n.max == max({n.weight} U {c.max | c in n.children}) &&
+ *              // Ogni nodo diverso dalla radice porta ad almeno un termine
+ *              (n != root => n.max > 0) &&
+ *          size == |{n | n.weight > 0}|
+ */
+public class PrefixIndex {
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * Radice del trie, corrispondente alla stringa vuota
+     */
+    private final Node root;
+    /**
+     * Numero di termini
+     */
+    private int size;
+
+    /**
+     * @effects Crea un indice vuoto
+     */
+    public PrefixIndex() {
+        root = new Node();
+        size = 0;
+    }
+
+    /**
+     * @requires term != null && weight >= 0
+     * @param term   Il termine
+     * @param weight Il nuovo peso di term, 0 per rimuoverlo
+     *
+     * @effects Assegna a term il peso weight, aggiungendolo o rimuovendolo se necessario
+     * @modifies this
+     * @throws NullPointerException Se term == null
+     * @throws IllegalArgumentException Se weight < 0
+     */
+    public synchronized void put(String term, long weight) {
+        if (term == null) {
+            throw new NullPointerException("Il termine da indicizzare non può essere null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Il peso di un termine non può essere negativo");
+        }
+
+        Node[] path = new Node[term.length() + 1];
+        path[0] = root;
+        for (int i=0; i<term.length(); i++) {
+            Node next = path[i].child(term.charAt(i));
+            if (next == null) {
+                if (weight == 0) {
+                    return;
+                }
+                next = path[i].addChild(term.charAt(i));
+            }
+            path[i + 1] = next;
+        }
+
+        Node last = path[term.length()];
+        if (last.weight == 0 && weight > 0) {
+            size++;
+        }
+        else if (last.weight > 0 && weight == 0) {
+            size--;
+        }
+        last.weight = weight;
+
+        // Aggiorno i massimi risalendo verso la radice e tolgo i nodi che non portano a termini
+        for (int i=term.length(); i>=0; i--) {
+            path[i].updateMax();
+            if (i > 0 && path[i].max == 0) {
+                path[i - 1].removeChild(term.charAt(i - 1));
+            }
+        }
+    }
+
+    /**
+     * @requires term != null
+     * @param term  Il termine
+     * @param delta La variazione del peso di term
+     *
+     * @effects Somma delta al peso di term, aggiungendolo se non era presente e rimuovendolo
+     *          se il nuovo peso non è positivo
+     * @modifies this
+     * @throws NullPointerException Se term == null
+     */
+    public synchronized void add(String term, long delta) {
+        put(term, Math.max(0, weightOf(term) + delta));
+    }
+
+    /**
+     * @requires term != null
+     * @return Il peso di term, 0 se term non è presente
+     */
+    public synchronized long weightOf(String term) {
+        Node n = find(term);
+        return n == null ? 0 : n.weight;
+    }
+
+    /**
+     * @return Il numero di termini
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @requires prefix != null && k >= 0
+     * @param prefix Il prefisso da completare
+     * @param k      Il numero massimo di termini da restituire
+     *
+     * @effects Fornisce i k termini più pesanti che iniziano con prefix
+     * @return  Al più k termini che iniziano con prefix, in ordine non crescente di peso e, a
+     *          parità di peso, in ordine alfabetico
+     * @throws NullPointerException Se prefix == null
+     * @throws IllegalArgumentException Se k < 0
+     */
+    public synchronized List<String> complete(String prefix, int k) {
+        if (prefix == null) {
+            throw new NullPointerException("Il prefisso da completare non può essere null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("Il numero di completamenti non può essere negativo");
+        }
+
+        List<String> ret = new ArrayList<>();
+        Node start = find(prefix);
+        if (start == null || start.max == 0 || k == 0) {
+            return ret;
+        }
+
+        // Un elemento della coda è un termine (term == true) o un sottoalbero da visitare: a
+        // parità di peso i termini precedono i sottoalberi che iniziano con lo stesso testo, e
+        // i testi minori precedono quelli maggiori, per cui i termini escono in ordine
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(start, prefix, start.max, false));
+
+        while (!queue.isEmpty() && ret.size() < k) {
+            Candidate c = queue.poll();
+
+            if (c.term) {
+                ret.add(c.text);
+                continue;
+            }
+            if (c.node.weight > 0) {
+                queue.add(new Candidate(c.node, c.text, c.node.weight, true));
+            }
+            for (int i=0; i<c.node.labels.length; i++) {
+                Node child = c.node.children[i];
+                queue.add(new Candidate(child, c.text + c.node.labels[i], child.max, false));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return Il nodo raggiunto dalla radice seguendo s, null se non esiste
+     */
+    private Node find(String s) {
+        Node n = root;
+        for (int i=0; i<s.length() && n != null; i++) {
+            n = n.child(s.charAt(i));
+        }
+        return n;
+    }
+
+    /**
+     * Nodo del trie
+     */
+    private static class Node {
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private long weight;
+        private long max;
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node addChild(char c) {
+            int i = -(Arrays.binarySearch(labels, c) + 1);
+            char[] l = new char[labels.length + 1];
+            Node[] ch = new Node[children.length + 1];
+
+            System.arraycopy(labels, 0, l, 0, i);
+            System.arraycopy(children, 0, ch, 0, i);
+            l[i] = c;
+            ch[i] = new Node();
+            System.arraycopy(labels, i, l, i + 1, labels.length - i);
+            System.arraycopy(children, i, ch, i + 1, children.length - i);
+
+            labels = l;
+            children = ch;
+            return ch[i];
+        }
+
+        private void removeChild(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i < 0) {
+                return;
+            }
+            if (labels.length == 1) {
+                labels = NO_LABELS;
+                children = NO_CHILDREN;
+                return;
+            }
+
+            char[] l = new char[labels.length - 1];
+            Node[] ch = new Node[children.length - 1];
+            System.arraycopy(labels, 0, l, 0, i);
+            System.arraycopy(children, 0, ch, 0, i);
+            System.arraycopy(labels, i + 1, l, i, labels.length - i - 1);
+            System.arraycopy(children, i + 1, ch, i, children.length - i - 1);
+            labels = l;
+            children = ch;
+        }
+
+        private void updateMax() {
+            long m = weight;
+            for (Node child : children) {
+                m = Math.max(m, child.max);
+            }
+            max = m;
+        }
+    }
+
+    /**
+     * Elemento della coda di priorità di complete
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        private final Node node;
+        private final String text;
+        private final long weight;
+        private final boolean term;
+
+        private Candidate(Node node, String text, long weight, boolean term) {
+            this.node = node;
+            this.text = text;
+            this.weight = weight;
+            this.term = term;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int byWeight = Long.compare(o.weight, weight);
+            if (byWeight != 0) {
+                return byWeight;
+            }
+            int byText = text.compareTo(o.text);
+            if (byText != 0) {
+                return byText;
+            }
+            return Boolean.compare(o.term, term);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.util.*;
+
+/** Overview:
+ *      QueryCache è un dato mutabile che memorizza i risultati delle interrogazioni di una rete
+ *      sociale su liste di post (guessFollowers e writtenBy(List, String)), in modo che le
+ *      interrogazioni ripetute sulla stessa lista non debbano controllare di nuovo ogni post e
+ *      ricostruire il risultato.
+ *
+ *      Un risultato è identificato dagli id dei post della lista (confrontati per intero, con
+ *      un hash precalcolato) e, per writtenBy, dall'utente cercato. Ogni risultato è marcato
+ *      con le versioni, al momento del calcolo, degli autori dei post della lista:
+ *          - per guessFollowers la versione dei like, incrementata da like, unLike e deletePost
+ *              su un post dell'autore
+ *          - per writtenBy la versione dei post, incrementata da deletePost su un post
+ *              dell'autore
+ *      Un risultato è valido finché nessuna delle versioni cambia, per cui le modifiche
+ *      invalidano soltanto i risultati che riguardano gli autori coinvolti. La rimozione di un
+ *      utente invalida tutti i risultati. Vengono mantenuti al più capacity risultati, scartando
+ *      quelli usati meno di recente.
+ *
+ *  Typical element:
+ *      <results> in cui results = {(k1, r1), (k2, r2), ...} in cui ri è il risultato valido
+ *      dell'interrogazione ki
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{(k, e.result) | (k, e) in c.entries && e.key è valida}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = capacity > 0 && entries != null && likeVersions != null &&
+ *          postVersions != null && entries.size() <= capacity &&
+ *          foreach k in entries.keys -> entries(k).key.equals(k) &&
+ *              k.authors.length == k.stamps.length
+ */
+public class QueryCache {
+    /**
+     * Numero predefinito di risultati mantenuti
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+    /**
+     * Numero massimo di post della lista di un'interrogazione il cui risultato viene mantenuto
+     */
+    public static final int MAX_POSTS = 10000;
+
+    /**
+     * Numero massimo di risultati mantenuti
+     */
+    private final int capacity;
+    /**
+     * Risultati mantenuti, dal meno recentemente usato al più recentemente usato
+     */
+    private final LinkedHashMap<Key, Entry> entries;
+    /**
+     * Versione dei like e dei post di ogni autore, assente se pari a 0
+     */
+    private final Map<String, Long> likeVersions;
+    private final Map<String, Long> postVersions;
+    /**
+     * Incrementato da clear, invalida le chiavi create in precedenza
+     */
+    private long generation;
+    /**
+     * Numero di interrogazioni servite dalla cache e di risultati calcolati
+     */
+    private long hits;
+    private long misses;
+
+    /**
+     * @requires capacity > 0
+     * @param capacity Il numero massimo di risultati da mantenere
+     * @effects Crea una cache vuota
+     * @throws IllegalArgumentException Se capacity <= 0
+     */
+    public QueryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacità della cache deve essere positiva");
+        }
+
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.likeVersions = new HashMap<>();
+        this.postVersions = new HashMap<>();
+    }
+
+    /**
+     * @effects Crea una cache vuota di capacità DEFAULT_CAPACITY
+     */
+    public QueryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @requires ps != null
+     * @param ps La lista dei post di guessFollowers
+     *
+     * @effects Crea la chiave di guessFollowers(ps), marcata con le versioni attuali dei like
+     *          degli autori dei post di ps
+     * @return  La chiave, null se il risultato non deve essere mantenuto (ps contiene null o
+     *          più di MAX_POSTS post)
+     */
+    public synchronized Key followersKey(List<Post> ps) {
+        return key(ps, null, likeVersions);
+    }
+
+    /**
+     * @requires ps != null && username != null
+     * @param ps       La lista dei post di writtenBy
+     * @param username L'utente cercato
+     *
+     * @effects Crea la chiave di writtenBy(ps, username), marcata con le versioni attuali dei
+     *          post degli autori dei post di ps
+     * @return  La chiave, null se il risultato non deve essere mantenuto
+     */
+    public synchronized Key writtenByKey(List<Post> ps, String username) {
+        return key(ps, username, postVersions);
+    }
+
+    /**
+     * @param key La chiave dell'interrogazione, null se non è stata creata
+     *
+     * @effects Cerca il risultato di key
+     * @modifies this.entries
+     * @return  Il risultato mantenuto se è ancora valido, null altrimenti
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(Key key) {
+        if (key == null) {
+            return null;
+        }
+
+        Entry e = entries.get(key);
+        if (e != null) {
+            // Controllo le versioni con cui è stato marcato il risultato, non quelle di key
+            if (isValid(e.key)) {
+                hits++;
+                return (T) e.result;
+            }
+            entries.remove(key);
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * @requires result != null && result non viene modificato dopo la chiamata
+     * @param key    La chiave creata prima di calcolare result, null se non è stata creata
+     * @param result Il risultato dell'interrogazione
+     *
+     * @effects Mantiene result come risultato di key, scartando il risultato usato meno di
+     *          recente se la cache è piena. Se la rete è stata modificata dopo la creazione di
+     *          key, il risultato non sarà mai restituito.
+     * @modifies this.entries
+     */
+    public synchronized void put(Key key, Object result) {
+        if (key == null || !isValid(key)) {
+            return;
+        }
+
+        entries.remove(key);
+        entries.put(key, new Entry(key, result));
+        if (entries.size() > capacity) {
+            Iterator<Key> it = entries.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * @requires author != null
+     * @effects Invalida i risultati di guessFollowers che riguardano i post di author
+     * @modifies this.likeVersions
+     */
+    public synchronized void likesChanged(String author) {
+        likeVersions.merge(author, 1L, Long::sum);
+    }
+
+    /**
+     * @requires author != null
+     * @effects Invalida i risultati che riguardano i post di author
+     * @modifies this.likeVersions, this.postVersions
+     */
+    public synchronized void postDeleted(String author) {
+        likeVersions.merge(author, 1L, Long::sum);
+        postVersions.merge(author, 1L, Long::sum);
+    }
+
+    /**
+     * @effects Invalida tutti i risultati
+     * @modifies this
+     */
+    public synchronized void clear() {
+        entries.clear();
+        likeVersions.clear();
+        postVersions.clear();
+        generation++;
+    }
+
+    /**
+     * @return Il numero di interrogazioni servite dalla cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Il numero di interrogazioni il cui risultato non era nella cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @effects Crea la chiave di un'interrogazione su ps, marcata con le versioni di versions
+     * @return  La chiave, null se il risultato non deve essere mantenuto
+     */
+    private Key key(List<Post> ps, String user, Map<String, Long> versions) {
+        if (ps.size() > MAX_POSTS) {
+            return null;
+        }
+
+        long[] ids = new long[ps.size()];
+        Map<String, Long> stamps = new HashMap<>();
+        for (int i=0; i<ids.length; i++) {
+            Post p = ps.get(i);
+            if (p == null) {
+                return null;
+            }
+            ids[i] = p.getId();
+            stamps.putIfAbsent(p.getAuthor(), versions.getOrDefault(p.getAuthor(), 0L));
+        }
+
+        String[] authors = stamps.keySet().toArray(new String[0]);
+        long[] authorStamps = new long[authors.length];
+        for (int i=0; i<authors.length; i++) {
+            authorStamps[i] = stamps.get(authors[i]);
+        }
+
+        return new Key(ids, user, generation, versions == likeVersions, authors, authorStamps);
+    }
+
+    /**
+     * @effects Stabilisce se le versioni con cui è marcata key sono ancora quelle attuali
+     * @return  True se il risultato di key è ancora valido
+     */
+    private boolean isValid(Key key) {
+        if (key.generation != generation) {
+            return false;
+        }
+
+        Map<String, Long> versions = key.likes ? likeVersions : postVersions;
+        for (int i=0; i<key.authors.length; i++) {
+            if (versions.getOrDefault(key.authors[i], 0L) != key.stamps[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Risultato mantenuto, con la chiave marcata con le versioni al momento del calcolo
+     */
+    private static class Entry {
+        private final Key key;
+        private final Object result;
+
+        private Entry(Key key, Object result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Chiave di un'interrogazione, marcata con le versioni degli autori al momento della
+     * creazione. Due chiavi sono uguali se riguardano la stessa interrogazione sugli stessi
+     * post, indipendentemente dalle versioni.
+     */
+    public static final class Key {
+        private final long[] ids;
+        private final String user;
+        private final long generation;
+        private final boolean likes;
+        private final String[] authors;
+        private final long[] stamps;
+        private final int hash;
+
+        private Key(long[] ids, String user, long generation, boolean likes, String[] authors, long[] stamps) {
+            this.ids = ids;
+            this.user = user;
+            this.generation = generation;
+            this.likes = likes;
+            this.authors = authors;
+            this.stamps = stamps;
+            this.hash = 31 * (31 * Arrays.hashCode(ids) + Objects.hashCode(user)) + Boolean.hashCode(likes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+            return hash == k.hash && likes == k.likes && Objects.equals(user, k.user) && Arrays.equals(ids, k.ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
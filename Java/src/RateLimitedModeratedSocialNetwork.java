@@ -0,0 +1,70 @@
+import Exceptions.Post.PostNotFoundException;
+import Exceptions.RateLimit.RateLimitExceededException;
+import Exceptions.Reporting.AutoReportException;
+import Exceptions.Reporting.ReportingAlreadySentException;
+import Exceptions.User.UserNotFoundException;
+
+import java.util.*;
+
+/** Overview:
+ *      RateLimitedModeratedSocialNetwork è un dato mutabile che aggiunge a una rete moderata
+ *      il controllo di ammissione di RateLimitedSocialNetwork, limitando anche le
+ *      segnalazioni inviate da ogni utente.
+ *
+ *  Typical element: come in RateLimitedSocialNetwork
+ */
+public class RateLimitedModeratedSocialNetwork extends RateLimitedSocialNetwork implements ModeratedSocialNetwork {
+    /**
+     * Rete a cui vengono inoltrate le operazioni, uguale a network
+     */
+    private final ModeratedSocialNetwork moderated;
+
+    /**
+     * @requires network != null && limiter != null
+     * @param network La rete moderata a cui inoltrare le operazioni
+     * @param limiter Il limitatore delle operazioni di ogni utente
+     *
+     * @effects Crea una rete moderata che limita le operazioni di network secondo limiter
+     * @throws NullPointerException Se network == null || limiter == null
+     */
+    public RateLimitedModeratedSocialNetwork(ModeratedSocialNetwork network, RateLimiter limiter) {
+        super(network, limiter);
+        this.moderated = network;
+    }
+
+    /**
+     * @effects Come ModeratedSocialNetwork.report, dopo aver consumato un gettone REPORT di author
+     * @throws RateLimitExceededException Se author ha esaurito i gettoni REPORT
+     */
+    @Override
+    public void report(String author, Post post)
+            throws ReportingAlreadySentException, AutoReportException, UserNotFoundException, PostNotFoundException {
+        admit(RateLimiter.Kind.REPORT, author);
+        moderated.report(author, post);
+    }
+
+    @Override
+    public List<Post> getControversialPosts() {
+        return moderated.getControversialPosts();
+    }
+
+    @Override
+    public void addForbiddenWord(String toAdd) {
+        moderated.addForbiddenWord(toAdd);
+    }
+
+    @Override
+    public void removeForbiddenWord(String toRemove) {
+        moderated.removeForbiddenWord(toRemove);
+    }
+
+    @Override
+    public List<Reporting> getReportingsByAuthor(String author) throws UserNotFoundException {
+        return moderated.getReportingsByAuthor(author);
+    }
+
+    @Override
+    public List<Reporting> getReportingsForPost(Post post) throws PostNotFoundException {
+        return moderated.getReportingsForPost(post);
+    }
+}
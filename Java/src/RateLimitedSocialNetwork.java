@@ -0,0 +1,164 @@
+import Exceptions.Likes.*;
+import Exceptions.Post.PostAlreadyPublishedException;
+import Exceptions.Post.PostNotFoundException;
+import Exceptions.RateLimit.RateLimitExceededException;
+import Exceptions.User.InvalidUsernameException;
+import Exceptions.User.UserAlreadyRegisteredExeption;
+import Exceptions.User.UserNotFoundException;
+
+import java.util.*;
+
+/** Overview:
+ *      RateLimitedSocialNetwork è un dato mutabile che aggiunge a una rete sociale un
+ *      controllo di ammissione: prima di raggiungere la rete (e il suo lock), like e
+ *      publishPost consumano un gettone dal bucket del loro autore in un RateLimiter, e se il
+ *      bucket è vuoto vengono rifiutate con RateLimitExceededException senza modificare la
+ *      rete. In questo modo un singolo client abusivo non può rallentare le operazioni degli
+ *      altri utenti. Tutte le altre operazioni vengono inoltrate alla rete senza limiti.
+ *
+ *  Typical element:
+ *      <network, limiter> in cui network è la rete a cui vengono inoltrate le operazioni e
+ *      limiter è il limitatore delle operazioni di ogni utente
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = f(c.network)
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = network != null && limiter != null
+ */
+public class RateLimitedSocialNetwork implements SocialNetwork {
+    /**
+     * Rete a cui vengono inoltrate le operazioni
+     */
+    protected final SocialNetwork network;
+    /**
+     * Limitatore delle operazioni di ogni utente
+     */
+    protected final RateLimiter limiter;
+
+    /**
+     * @requires network != null && limiter != null
+     * @param network La rete a cui inoltrare le operazioni
+     * @param limiter Il limitatore delle operazioni di ogni utente
+     *
+     * @effects Crea una rete che limita le operazioni di network secondo limiter
+     * @throws NullPointerException Se network == null || limiter == null
+     */
+    public RateLimitedSocialNetwork(SocialNetwork network, RateLimiter limiter) {
+        if (network == null || limiter == null) {
+            throw new NullPointerException("La rete e il limitatore non possono essere null");
+        }
+
+        this.network = network;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return Il limitatore delle operazioni, da cui leggere i contatori delle chiamate rifiutate
+     */
+    public RateLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @requires kind != null
+     * @param kind Il tipo di operazione
+     * @param user L'utente che esegue l'operazione, null se la rete lo rifiuterà comunque
+     *
+     * @effects Consuma un gettone dal bucket di user per le operazioni di tipo kind
+     * @modifies this.limiter
+     * @throws RateLimitExceededException Se user ha esaurito i gettoni per kind
+     */
+    protected void admit(RateLimiter.Kind kind, String user) {
+        if (user != null && !limiter.tryAcquire(kind, user)) {
+            throw new RateLimitExceededException(user, kind.name());
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws PostNotFoundException {
+        return network.guessFollowers(ps);
+    }
+
+    @Override
+    public List<String> influencers() {
+        return network.influencers();
+    }
+
+    @Override
+    public Set<String> getMentionedUsers() throws PostNotFoundException {
+        return network.getMentionedUsers();
+    }
+
+    @Override
+    public Set<String> getMentionedUsers(List<Post> ps) throws PostNotFoundException {
+        return network.getMentionedUsers(ps);
+    }
+
+    @Override
+    public List<Post> writtenBy(String username) throws UserNotFoundException {
+        return network.writtenBy(username);
+    }
+
+    @Override
+    public List<Post> writtenBy(List<Post> ps, String username) throws UserNotFoundException, PostNotFoundException {
+        return network.writtenBy(ps, username);
+    }
+
+    @Override
+    public List<Post> containing(List<String> words) {
+        return network.containing(words);
+    }
+
+    /**
+     * @effects Come SocialNetwork.like, dopo aver consumato un gettone LIKE di follower
+     * @throws RateLimitExceededException Se follower ha esaurito i gettoni LIKE
+     */
+    @Override
+    public void like(Post toLike, String follower) throws PostNotFoundException, AutoLikeException,
+            UserNotFoundException {
+        admit(RateLimiter.Kind.LIKE, follower);
+        network.like(toLike, follower);
+    }
+
+    @Override
+    public void unLike(Post toUnlike, String follower) throws PostNotFoundException, UserNotFoundException,
+            LikeNotFoundException {
+        network.unLike(toUnlike, follower);
+    }
+
+    /**
+     * @effects Come SocialNetwork.publishPost, dopo aver consumato un gettone POST dell'autore
+     *          di toPublish
+     * @throws RateLimitExceededException Se l'autore di toPublish ha esaurito i gettoni POST
+     */
+    @Override
+    public void publishPost(Post toPublish) throws PostAlreadyPublishedException, UserNotFoundException {
+        admit(RateLimiter.Kind.POST, toPublish == null ? null : toPublish.getAuthor());
+        network.publishPost(toPublish);
+    }
+
+    @Override
+    public void deletePost(Post toDelete) throws PostNotFoundException {
+        network.deletePost(toDelete);
+    }
+
+    @Override
+    public void registerUser(String toRegister) throws InvalidUsernameException, UserAlreadyRegisteredExeption {
+        network.registerUser(toRegister);
+    }
+
+    /**
+     * @effects Come SocialNetwork.removeUser, dimenticando inoltre i bucket di user
+     */
+    @Override
+    public void removeUser(String user) throws UserNotFoundException {
+        network.removeUser(user);
+        limiter.forget(user);
+    }
+
+    @Override
+    public List<String> getTrending() {
+        return network.getTrending();
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Overview:
+ *      RateLimiter è un dato mutabile che limita il numero di operazioni che ogni utente può
+ *      eseguire, con un token bucket per utente e per tipo di operazione: il bucket contiene al
+ *      più burst gettoni, si ricarica di rate gettoni al secondo e ogni operazione ne consuma
+ *      uno. Le operazioni che trovano il bucket vuoto vengono rifiutate.
+ *
+ *      Ogni bucket è memorizzato in un solo long, secondo l'algoritmo GCRA (generic cell rate
+ *      algorithm): invece di gettoni e istante dell'ultima ricarica si memorizza l'istante
+ *      teorico tat in cui il bucket sarà di nuovo pieno, per cui un'operazione è ammessa se
+ *      tat - now <= (burst - 1) * interval, in cui interval = 1 / rate, e in tal caso tat
+ *      diventa max(tat, now) + interval. I bucket di un utente sono un AtomicLongArray con un
+ *      elemento per tipo di operazione, aggiornato con compareAndSet senza lock.
+ *
+ *  Typical element:
+ *      <limits, buckets, rejected> in cui:
+ *          - limits = {(k1, (r1, b1)), (k2, (r2, b2)), ...} in cui ri è il numero di operazioni
+ *              di tipo ki al secondo e bi il numero di operazioni consecutive ammesse
+ *          - buckets = {((u1, k1), t1), ...} in cui ti è l'istante teorico in cui il bucket
+ *              dell'utente ui per le operazioni ki sarà pieno
+ *          - rejected = {(k1, n1), (k2, n2), ...} in cui ni è il numero di operazioni di tipo ki
+ *              rifiutate
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = buckets != null && limits != null && admitted != null && rejected != null &&
+ *          limits.length == 2 * Kind.values().length &&
+ *          admitted.length == rejected.length == Kind.values().length &&
+ *          foreach k -> limits[2k] > 0 && limits[2k + 1] >= 0 &&
+ *          foreach u in buckets.keys -> buckets(u).length() == Kind.values().length
+ */
+public class RateLimiter {
+    /**
+     * Tipi di operazione limitati, ognuno con il proprio bucket
+     */
+    public enum Kind {
+        /**
+         * Pubblicazione di un post
+         */
+        POST,
+        /**
+         * Like a un post
+         */
+        LIKE,
+        /**
+         * Segnalazione di un post
+         */
+        REPORT
+    }
+
+    /**
+     * Numero predefinito di operazioni al secondo ammesse per ogni tipo
+     */
+    public static final double DEFAULT_RATE = 10;
+    /**
+     * Numero predefinito di operazioni consecutive ammesse per ogni tipo
+     */
+    public static final int DEFAULT_BURST = 20;
+
+    private static final int KINDS = Kind.values().length;
+
+    /**
+     * Per ogni tipo di operazione k, limits[2k] è l'intervallo tra due gettoni in nanosecondi e
+     * limits[2k + 1] l'anticipo massimo di tat rispetto all'istante corrente, cioè
+     * (burst - 1) * interval. L'array non viene mai modificato, ma sostituito da setLimit.
+     */
+    private volatile long[] limits;
+    /**
+     * Bucket di ogni utente, indicizzati per Kind.ordinal()
+     */
+    private final Map<String, AtomicLongArray> buckets;
+    /**
+     * Numero di operazioni ammesse e rifiutate per ogni tipo
+     */
+    private final LongAdder[] admitted;
+    private final LongAdder[] rejected;
+
+    /**
+     * @effects Crea un limitatore che ammette, per ogni tipo di operazione, DEFAULT_RATE
+     *          operazioni al secondo e DEFAULT_BURST operazioni consecutive
+     */
+    public RateLimiter() {
+        limits = new long[2 * KINDS];
+        buckets = new ConcurrentHashMap<>();
+        admitted = new LongAdder[KINDS];
+        rejected = new LongAdder[KINDS];
+
+        for (Kind k : Kind.values()) {
+            admitted[k.ordinal()] = new LongAdder();
+            rejected[k.ordinal()] = new LongAdder();
+            setLimit(k, DEFAULT_RATE, DEFAULT_BURST);
+        }
+    }
+
+    /**
+     * @requires kind != null && rate > 0 && burst > 0
+     * @param kind  Il tipo di operazione
+     * @param rate  Il numero di operazioni di tipo kind al secondo ammesse per ogni utente
+     * @param burst Il numero di operazioni consecutive di tipo kind ammesse per ogni utente
+     *
+     * @effects Cambia il limite delle operazioni di tipo kind. I bucket esistenti mantengono
+     *          il proprio stato.
+     * @modifies this.limits
+     * @throws NullPointerException Se kind == null
+     * @throws IllegalArgumentException Se rate <= 0 || burst <= 0 || rate non è finito
+     */
+    public synchronized void setLimit(Kind kind, double rate, int burst) {
+        if (kind == null) {
+            throw new NullPointerException("Il tipo di operazione da limitare non può essere null");
+        }
+        if (!(rate > 0) || Double.isInfinite(rate) || burst <= 0) {
+            throw new IllegalArgumentException("Limite di frequenza non valido");
+        }
+
+        long interval = Math.max(1, Math.round(1e9 / rate));
+        long[] updated = limits.clone();
+        updated[2 * kind.ordinal()] = interval;
+        updated[2 * kind.ordinal() + 1] = interval * (burst - 1);
+        limits = updated;
+    }
+
+    /**
+     * @requires kind != null && user != null
+     * @param kind Il tipo di operazione
+     * @param user L'utente che esegue l'operazione
+     *
+     * @effects Consuma un gettone dal bucket di user per le operazioni di tipo kind, se ce n'è
+     *          almeno uno, senza acquisire lock.
+     * @modifies this.buckets, this.rejected
+     * @return  True se l'operazione è ammessa, false se deve essere rifiutata
+     * @throws NullPointerException Se kind == null || user == null
+     */
+    public boolean tryAcquire(Kind kind, String user) {
+        if (kind == null || user == null) {
+            throw new NullPointerException("Il tipo di operazione e l'utente non possono essere null");
+        }
+
+        int k = kind.ordinal();
+        long[] current = limits;
+        long interval = current[2 * k];
+        long tolerance = current[2 * k + 1];
+        AtomicLongArray userBuckets = buckets.computeIfAbsent(user, u -> new AtomicLongArray(KINDS));
+        long now = System.nanoTime();
+
+        while (true) {
+            long tat = userBuckets.get(k);
+            // Un bucket mai usato (tat == 0) o ricaricato del tutto riparte da now
+            long start = tat == 0 || tat - now < 0 ? now : tat;
+
+            if (start - now > tolerance) {
+                rejected[k].increment();
+                return false;
+            }
+            if (userBuckets.compareAndSet(k, tat, start + interval)) {
+                admitted[k].increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @requires user != null
+     * @param user L'utente da dimenticare
+     * @effects Rimuove i bucket di user, ad esempio perché è stato rimosso dalla rete
+     * @modifies this.buckets
+     */
+    public void forget(String user) {
+        buckets.remove(user);
+    }
+
+    /**
+     * @effects Rimuove i bucket degli utenti che sono tutti pieni: per questi utenti la
+     *          prossima operazione verrebbe comunque ammessa, per cui non occorre ricordarli.
+     *          Un'operazione concorrente con la rimozione può andare persa, concedendo al più
+     *          un'operazione in più all'utente.
+     * @modifies this.buckets
+     * @return  Il numero di utenti rimossi
+     */
+    public int purge() {
+        long now = System.nanoTime();
+        int ret = 0;
+
+        for (Map.Entry<String, AtomicLongArray> e : buckets.entrySet()) {
+            boolean full = true;
+            for (int k=0; k<KINDS && full; k++) {
+                long tat = e.getValue().get(k);
+                full = tat == 0 || tat - now <= 0;
+            }
+            if (full && buckets.remove(e.getKey(), e.getValue())) {
+                ret++;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return Il numero di utenti di cui vengono mantenuti i bucket
+     */
+    public int getTrackedUsers() {
+        return buckets.size();
+    }
+
+    /**
+     * @requires kind != null
+     * @return Il numero di operazioni di tipo kind ammesse
+     */
+    public long getAdmitted(Kind kind) {
+        return admitted[kind.ordinal()].sum();
+    }
+
+    /**
+     * @requires kind != null
+     * @return Il numero di operazioni di tipo kind rifiutate
+     */
+    public long getRejected(Kind kind) {
+        return rejected[kind.ordinal()].sum();
+    }
+}
@@ -0,0 +1,315 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Overview:
+ *      RequestExecutor è un dato mutabile che esegue le chiamate alla rete sociale limitando
+ *      separatamente il numero di chiamate in esecuzione per le operazioni di scrittura,
+ *      brevi, e per le analisi, lunghe. In questo modo delle analisi lente (influencers,
+ *      containing, ...) non possono occupare tutti i thread e ritardare i like.
+ *
+ *      Ogni tipo di operazione ha un proprio pool con tanti thread quante sono le chiamate che
+ *      può eseguire contemporaneamente (thread virtuali se la JVM li supporta), creati solo
+ *      quando servono e chiusi dopo un periodo di inattività. Le chiamate in eccesso attendono,
+ *      senza occupare thread, in una coda di capacità limitata; quando la coda è piena vengono
+ *      rifiutate con RejectedExecutionException.
+ *
+ *      Per ogni tipo di operazione vengono misurati il tempo passato in coda e il tempo di
+ *      esecuzione.
+ *
+ *  Typical element:
+ *      <limits, queues, stats> in cui, per ogni tipo di operazione k:
+ *          - limits(k) è il numero massimo di chiamate di tipo k eseguite contemporaneamente
+ *          - queues(k) è la capacità della coda delle chiamate di tipo k
+ *          - stats(k) sono le misure delle chiamate di tipo k
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool = lanes != null && lanes.length == Kind.values().length &&
+ *          foreach l in lanes -> l.pool != null && l.pool.getMaximumPoolSize() == l.concurrency &&
+ *              l.concurrency > 0 && 0 <= l.running <= l.concurrency
+ */
+public class RequestExecutor implements AutoCloseable {
+    /**
+     * Tipi di operazione, con limiti di concorrenza e code separati
+     */
+    public enum Kind {
+        /**
+         * Operazioni di modifica della rete, brevi
+         */
+        WRITE,
+        /**
+         * Interrogazioni e analisi, potenzialmente lunghe
+         */
+        ANALYTICS
+    }
+
+    /**
+     * Capacità predefinita della coda di ogni tipo di operazione
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /**
+     * Secondi di inattività dopo cui un thread di un pool viene chiuso
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * True se i thread dei pool sono virtuali
+     */
+    private final boolean virtual;
+    /**
+     * Limiti e misure di ogni tipo di operazione, indicizzati per Kind.ordinal()
+     */
+    private final Lane[] lanes;
+
+    /**
+     * @requires writeConcurrency > 0 && writeQueue >= 0 && analyticsConcurrency > 0 &&
+     *           analyticsQueue >= 0
+     * @param writeConcurrency     Il numero massimo di scritture eseguite contemporaneamente
+     * @param writeQueue           Il numero massimo di scritture in attesa
+     * @param analyticsConcurrency Il numero massimo di analisi eseguite contemporaneamente
+     * @param analyticsQueue       Il numero massimo di analisi in attesa
+     *
+     * @effects Crea un esecutore con i limiti passati come parametro
+     * @throws IllegalArgumentException Se uno dei limiti non è valido
+     */
+    public RequestExecutor(int writeConcurrency, int writeQueue, int analyticsConcurrency, int analyticsQueue) {
+        if (writeConcurrency <= 0 || writeQueue < 0 || analyticsConcurrency <= 0 || analyticsQueue < 0) {
+            throw new IllegalArgumentException("Limiti dell'esecutore non validi");
+        }
+
+        ThreadFactory factory;
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException e) {
+            factory = null;
+        }
+        virtual = factory != null;
+        if (factory == null) {
+            factory = r -> {
+                Thread t = new Thread(r, "request-executor");
+                t.setDaemon(true);
+                return t;
+            };
+        }
+
+        lanes = new Lane[] {new Lane(writeConcurrency, writeQueue, factory),
+                new Lane(analyticsConcurrency, analyticsQueue, factory)};
+    }
+
+    /**
+     * @effects Crea un esecutore che esegue al più tante scritture quanti sono i processori e
+     *          al più metà di quel numero di analisi, con code di capacità DEFAULT_QUEUE_CAPACITY
+     */
+    public RequestExecutor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @requires op != null
+     * @return Il tipo dell'operazione op del protocollo di rete
+     */
+    public static Kind kindOf(NetworkProtocol.Operation op) {
+        switch (op) {
+            case LIKE:
+            case UNLIKE:
+            case PUBLISH_POST:
+            case DELETE_POST:
+            case REGISTER_USER:
+            case REMOVE_USER:
+            case REPORT:
+            case ADD_FORBIDDEN_WORD:
+            case REMOVE_FORBIDDEN_WORD:
+                return Kind.WRITE;
+            default:
+                return Kind.ANALYTICS;
+        }
+    }
+
+    /**
+     * @requires kind != null && task != null
+     * @param kind Il tipo dell'operazione
+     * @param task La chiamata da eseguire
+     *
+     * @effects Esegue task su un thread del pool di kind non appena le chiamate di tipo kind
+     *          in esecuzione sono meno del loro limite. Se la coda di kind è piena, task non
+     *          viene eseguita.
+     * @return  Un future completato con il risultato o con l'eccezione di task, oppure con
+     *          RejectedExecutionException se task è stata rifiutata
+     * @throws NullPointerException Se kind == null || task == null
+     */
+    public <T> CompletableFuture<T> submit(Kind kind, Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("La chiamata da eseguire non può essere null");
+        }
+
+        Lane lane = lanes[kind.ordinal()];
+        CompletableFuture<T> ret = new CompletableFuture<>();
+
+        lane.submitted.increment();
+        long queuedAt = System.nanoTime();
+        try {
+            lane.pool.execute(() -> run(lane, task, ret, queuedAt));
+        }
+        catch (RejectedExecutionException e) {
+            lane.rejected.increment();
+            ret.completeExceptionally(lane.pool.isShutdown() ? e
+                    : new RejectedExecutionException("Coda delle operazioni " + kind + " piena"));
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires kind != null
+     * @return Le misure delle chiamate di tipo kind
+     */
+    public Stats getStats(Kind kind) {
+        Lane lane = lanes[kind.ordinal()];
+        return new Stats(lane.submitted.sum(), lane.completed.sum(), lane.rejected.sum(), lane.running.get(),
+                lane.pool.getQueue().size(), lane.queueNanos.sum(), lane.serviceNanos.sum());
+    }
+
+    /**
+     * @return True se le chiamate vengono eseguite su thread virtuali
+     */
+    public boolean usesVirtualThreads() {
+        return virtual;
+    }
+
+    /**
+     * @effects Smette di accettare nuove chiamate; quelle già accettate vengono completate
+     */
+    @Override
+    public void close() {
+        for (Lane lane : lanes) {
+            lane.pool.shutdown();
+        }
+    }
+
+    /**
+     * @effects Esegue task e ne registra le misure in lane. Anche un Error lanciato da task
+     *          completa ret, in modo che chi attende il risultato non resti bloccato.
+     * @modifies lane, ret
+     */
+    private static <T> void run(Lane lane, Callable<T> task, CompletableFuture<T> ret, long queuedAt) {
+        long startedAt = System.nanoTime();
+        lane.queueNanos.add(startedAt - queuedAt);
+        lane.running.incrementAndGet();
+
+        try {
+            ret.complete(task.call());
+        }
+        catch (Throwable e) {
+            ret.completeExceptionally(e);
+        }
+        finally {
+            lane.serviceNanos.add(System.nanoTime() - startedAt);
+            lane.completed.increment();
+            lane.running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Misure immutabili delle chiamate di un tipo di operazione
+     */
+    public static class Stats {
+        private final long submitted;
+        private final long completed;
+        private final long rejected;
+        private final int running;
+        private final int queued;
+        private final long queueNanos;
+        private final long serviceNanos;
+
+        private Stats(long submitted, long completed, long rejected, int running, int queued,
+                      long queueNanos, long serviceNanos) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.running = running;
+            this.queued = queued;
+            this.queueNanos = queueNanos;
+            this.serviceNanos = serviceNanos;
+        }
+
+        /**
+         * @return Il numero di chiamate inviate, comprese quelle rifiutate
+         */
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return Il numero di chiamate completate
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return Il numero di chiamate rifiutate perché la coda era piena
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return Il numero di chiamate in esecuzione
+         */
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * @return Il numero di chiamate in coda
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return Il tempo medio passato in coda dalle chiamate completate, in millisecondi
+         */
+        public double getAverageQueueMillis() {
+            return completed == 0 ? 0 : queueNanos / 1e6 / completed;
+        }
+
+        /**
+         * @return Il tempo medio di esecuzione delle chiamate completate, in millisecondi
+         */
+        public double getAverageServiceMillis() {
+            return completed == 0 ? 0 : serviceNanos / 1e6 / completed;
+        }
+    }
+
+    /**
+     * Limiti e misure di un tipo di operazione
+     */
+    private static class Lane {
+        private final int concurrency;
+        /**
+         * Pool di al più concurrency thread, con una coda di capacità limitata
+         */
+        private final ThreadPoolExecutor pool;
+        /**
+         * Chiamate in esecuzione
+         */
+        private final AtomicInteger running = new AtomicInteger();
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+        private final LongAdder serviceNanos = new LongAdder();
+
+        private Lane(int concurrency, int queueCapacity, ThreadFactory factory) {
+            this.concurrency = concurrency;
+            this.pool = new ThreadPoolExecutor(concurrency, concurrency, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(), factory);
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+    }
+}
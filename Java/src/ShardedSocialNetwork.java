@@ -0,0 +1,847 @@
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Exceptions.Likes.*;
+import Exceptions.Post.PostAlreadyPublishedException;
+import Exceptions.Post.PostNotFoundException;
+import Exceptions.User.InvalidUsernameException;
+import Exceptions.User.UserAlreadyRegisteredExeption;
+import Exceptions.User.UserNotFoundException;
+
+/** Overview:
+ *      ShardedSocialNetwork è un dato mutabile che rappresenta una rete sociale, con le stesse
+ *      operazioni e lo stesso stato astratto di SocialNetwork, suddivisa in N partizioni
+ *      (shard) indipendenti. Ogni utente, insieme ai post che ha pubblicato, ai like ricevuti
+ *      da quei post e all'insieme degli utenti che segue, appartiene allo shard determinato
+ *      dall'hash del suo nome. Ogni shard ha un proprio lock, per cui operazioni su utenti di
+ *      shard diversi non si bloccano a vicenda; le interrogazioni globali vengono eseguite in
+ *      parallelo su tutti gli shard e i risultati parziali vengono poi uniti.
+ *
+ *  Typical element:
+ *      <postLikes, userPublished, userFollowing> come in SocialNetwork
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <postLikes, userPublished, userFollowing>, in cui:
+ *          postLikes = unione di c.shards[i].postLikes per i in [0, N)
+ *          userPublished = unione di c.shards[i].userPublished per i in [0, N)
+ *          userFollowing = unione di c.shards[i].userFollowing per i in [0, N)
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      shards != null && shards.length > 0 && foreach i in [0, N) -> shards[i] != null &&
+ *      foreach i in [0, N) -> shards[i].userFollowing.keys.containsAll(shards[i].removing) &&
+ *      // Ogni utente e ogni post si trovano nello shard del loro autore
+ *      foreach i in [0, N) ->
+ *          (foreach u in shards[i].userFollowing.keys -> shardOf(u) == i) &&
+ *          (foreach p in shards[i].postLikes.keys -> shardOf(p.author) == i) &&
+ *      // Ogni shard rispetta l'invariante di SocialNetworkImpl, con la differenza che gli
+ *      // utenti che hanno messo like o che sono seguiti possono essere registrati in un
+ *      // altro shard
+ *      foreach i in [0, N) ->
+ *          (foreach p in shards[i].postLikes.keys ->
+ *              (foreach u in shards[i].postLikes(p) -> shards[shardOf(u)].userFollowing(u) != null)) &&
+ *          (foreach u in shards[i].userFollowing.keys ->
+ *              (foreach v in shards[i].userFollowing(u) ->
+ *                  exists p in shards[shardOf(v)].postLikes.keys ->
+ *                      p.author == v && shards[shardOf(v)].postLikes(p).contains(u)))
+ *
+ *  Concorrenza:
+ *      Le operazioni su un solo utente acquisiscono il lock del suo shard; like e unLike
+ *      acquisiscono i lock dei due shard coinvolti in ordine crescente di indice, per cui non
+ *      possono verificarsi deadlock. Le interrogazioni globali acquisiscono un lock alla
+ *      volta, per cui riflettono lo stato di ciascuno shard in un momento diverso.
+ *      removeUser tocca più shard e non può mantenere tutti i lock: segna quindi l'utente come
+ *      in rimozione nel suo shard, dopodiché l'utente non può più pubblicare né mettere like e
+ *      i suoi post non possono più ricevere like né essere cancellati da altre operazioni,
+ *      finché la rimozione non termina.
+ */
+public class ShardedSocialNetwork implements SocialNetwork {
+    /**
+     * Partizioni della rete
+     */
+    private final Shard[] shards;
+
+    /**
+     * @requires nShards > 0
+     * @param nShards Il numero di partizioni
+     *
+     * @effects Crea una rete sociale vuota divisa in nShards partizioni
+     * @modifies this.shards
+     * @throws IllegalArgumentException Se nShards <= 0
+     */
+    public ShardedSocialNetwork(int nShards) {
+        if (nShards <= 0) {
+            throw new IllegalArgumentException("Il numero di partizioni deve essere positivo");
+        }
+
+        shards = new Shard[nShards];
+        for (int i=0; i<nShards; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * @effects Crea una rete sociale vuota con una partizione per ogni processore disponibile
+     */
+    public ShardedSocialNetwork() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return Il numero di partizioni della rete
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @requires ps != null && foreach p in ps -> p != null &&
+     *           foreach p in ps -> postLikes(p) != null
+     *
+     * @param ps Lista di post di cui ottenere la rete sociale
+     *
+     * @effects Ritorna una rete sociale che collega gli autori dei post in ps agli utenti
+     *          che li seguono.
+     * @return  La rete sociale ottenuta dalla lista ps e rappresentata sottoforma di mappa
+     *          con chiave data dall'utente (autore di un post in ps) e valori che sono
+     *          costituiti da insiemi di utenti (i follower del relativo utente chiave).
+     * @throws PostNotFoundException Se uno dei post in ps non è presente nella rete sociale
+     * @throws NullPointerException Se ps == null || exists(p in ps -> p == null)
+     */
+    @Override
+    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws PostNotFoundException {
+        if (ps == null) {
+            throw new NullPointerException("La lista di cui ottenere la rete sociale non può essere null");
+        }
+        Map<String, Set<String>> ret = new TreeMap<>();
+
+        for (Post p : ps) {
+            if (p == null) {
+                throw new NullPointerException("Uno dei post della lista era null");
+            }
+            Shard shard = shardOf(p.getAuthor());
+
+            synchronized (shard) {
+                Set<String> likes = shard.postLikes.get(p);
+                if (likes == null) {
+                    throw new PostNotFoundException(p.getId());
+                }
+                ret.computeIfAbsent(p.getAuthor(), k -> new TreeSet<>()).addAll(likes);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @effects Fornisce gli utenti della rete sociale in ordine di quantità di followers
+     *          non crescente. Ogni shard conta i follower dei propri utenti e i conteggi
+     *          vengono poi uniti e ordinati; a parità di follower gli utenti sono in ordine
+     *          alfabetico.
+     * @return  Gli utenti della rete sociale oridnati per quantità di followers non crescente
+     *          rappresentati come elementi di una lista. Ritorna una lista vuota se non
+     *          ci sono utenti nella rete.
+     */
+    @Override
+    public List<String> influencers() {
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+        List<String> ret = new ArrayList<>();
+
+        for (Map<String, Integer> partial : scatter(Shard::followerCounts)) {
+            counts.addAll(partial.entrySet());
+        }
+
+        counts.sort(new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                int byCount = Integer.compare(b.getValue(), a.getValue());
+                return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+            }
+        });
+
+        for (Map.Entry<String, Integer> entry : counts) {
+            ret.add(entry.getKey());
+        }
+
+        return ret;
+    }
+
+    /**
+     * @effects Fornisce l'insieme degli utenti menzionati da altri utenti all'interno del
+     *          social network. Una menzione avviene quando un utente include nel testo di un
+     *          post la dicitura "@nome_utente" in cui @ segnala che la parola seguente è un
+     *          nome utente e nome_utente è il nome dell'utente menzionato. Una stringa del
+     *          tipo @nome_utente si considera menzione se e solo se nome_utente è un utente
+     *          registrato nella rete.
+     *
+     * @return  L'insieme degli utenti menzionati nella rete sociale, ritorna un insieme vuoto
+     *          se non ce ne sono.
+     */
+    @Override
+    public Set<String> getMentionedUsers() {
+        Set<String> candidates = new TreeSet<>();
+
+        for (Set<String> partial : scatter(Shard::mentions)) {
+            candidates.addAll(partial);
+        }
+
+        return registered(candidates);
+    }
+
+    /**
+     * @requires    ps != null && foreach p in ps -> p != null &&
+     *              foreach p in ps -> postLikes(p) != null
+     * @param ps    La lista di post da cui ottenere gli utenti menzionati.
+     *
+     * @effects Fornisce l'insieme degli utenti menzionati da altri utenti all'interno della
+     *          lista passata come parametro. Una menzione avviene quando un utente include
+     *          nel testo di un post la dicitura "@nome_utente" in cui @ segnala che la parola
+     *          seguente è un nome utente e nome_utente è il nome dell'utente menzionato.
+     *          Una stringa del tipo @nome_utente si considera menzione se e solo se
+     *          "nome_utente" è un utente registrato nella rete.
+     * @return  L'insieme degli utenti menzionati all'interno della lista di post ps, ritorna
+     *          un insieme vuoto se non ce ne sono.
+     *
+     * @throws NullPointerException se ps == null || exists(p in ps -> p == null)
+     * @throws PostNotFoundException Se uno dei post della lista ps non è stato pubblicato
+     */
+    @Override
+    public Set<String> getMentionedUsers(List<Post> ps) throws PostNotFoundException {
+        if (ps == null) {
+            throw new NullPointerException("La lista di post in cui cercare non può essere null");
+        }
+        Set<String> candidates = new TreeSet<>();
+
+        for (Post p : ps) {
+            if (p == null) {
+                throw new NullPointerException("Uno dei post della lista è null");
+            }
+            Shard shard = shardOf(p.getAuthor());
+
+            synchronized (shard) {
+                if (!shard.postLikes.containsKey(p)) {
+                    throw new PostNotFoundException(p.getId());
+                }
+            }
+            Matcher m = Shard.MENTION.matcher(p.getText());
+            while (m.find()) {
+                candidates.add(m.group().substring(1));
+            }
+        }
+
+        return registered(candidates);
+    }
+
+    /**
+     * @requires username != null && userFollowing.containsKey(username)
+     * @param username  L'utente di cui ottenere i post
+     *
+     * @effects Fornisce la lista dei post scritti dall'utente con nome utente "username"
+     * @return  I post scritti dall'utente "username" sottoforma di lista, restituisce una
+     *          lista vuota se l'utente non ha scritto nessun post.
+     *
+     * @throws UserNotFoundException Se l'utente username non è registrato nel social network
+     * @throws NullPointerException Se username == null
+     */
+    @Override
+    public List<Post> writtenBy(String username) throws UserNotFoundException {
+        if (username == null) {
+            throw new NullPointerException("L'autore dei post da cercare non può essere null");
+        }
+        Shard shard = shardOf(username);
+
+        synchronized (shard) {
+            if (!shard.userFollowing.containsKey(username)) {
+                throw new UserNotFoundException(username);
+            }
+
+            return new ArrayList<>(shard.userPublished.get(username));
+        }
+    }
+
+    /**
+     * @requires username != null && ps != null && foreach p in ps -> p != null &&
+     *           userFollowing.containsKey(username) && foreach p in ps -> postLikes(p) != null
+     * @param ps La lista dei post in cui cercare post scritti da username
+     * @param username Utente di cui fornire la lista dei post da lui o da lei scritti
+     *
+     * @effects Fornisce la lista dei post appartenenti alla lista passata come parametro
+     *          e scritti dall'utente anch'esso passato come parametro.
+     * @return  La lista dei post appartenenti a ps e scritti da username. Ritorna una lista
+     *          vuota se non ne esistono.
+     * @throws UserNotFoundException Se l'utente username non è registrato nel social network
+     * @throws PostNotFoundException Se uno dei post passati come parametro non è stato pubblicato
+     * @throws NullPointerException Se ps == null || exists(p in ps -> p == null)
+     */
+    @Override
+    public List<Post> writtenBy(List<Post> ps, String username) throws UserNotFoundException, PostNotFoundException {
+        if (ps == null) {
+            throw new NullPointerException("La lista dei post in cui cercare non può essere null");
+        }
+        if (username == null) {
+            throw new NullPointerException("L'autore dei post da cercare non può essere null");
+        }
+        if (!isRegistered(username)) {
+            throw new UserNotFoundException(username);
+        }
+        List<Post> ret = new ArrayList<>();
+
+        for (Post p : ps) {
+            if (p == null) {
+                throw new NullPointerException("Uno dei post della lista era null");
+            }
+            Shard shard = shardOf(p.getAuthor());
+
+            synchronized (shard) {
+                if (!shard.postLikes.containsKey(p)) {
+                    throw new PostNotFoundException("Il post " + p + " non è stato pubblicato");
+                }
+            }
+            if (p.getAuthor().equals(username)) {
+                ret.add(p);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires words != null && foreach word in words -> word != null
+     * @param words La lista delle parole di cui controllare la presenza nei post
+     *
+     * @effects Fornisce una lista dei post che contengono almeno una tra le parole
+     *      contenute nella lista passata come parametro. Una parola che combacia parzialmente ("test" con "testo")
+     *      non viene presa in considerazione. La funzione è case insensitive. Ogni shard cerca
+     *      tra i propri post e i risultati sono ordinati per autore e, per lo stesso autore,
+     *      per id come in SocialNetworkImpl.
+     * @return La lista dei post contenti almeno una delle parole presenti in words,
+     *         restituisce una lista vuota se non esistono post come quelli descritti sopra.
+     * @throws NullPointerException Se words == null || exists(word in words -> word == null)
+     */
+    @Override
+    public List<Post> containing(List<String> words) {
+        if (words == null) {
+            throw new NullPointerException("La lista di parole da cercare non può essere null");
+        }
+        Set<String> lowered = new HashSet<>();
+        for (String w : words) {
+            if (w == null) {
+                throw new NullPointerException("Una delle parole da cercare è null");
+            }
+            lowered.add(w.toLowerCase());
+        }
+
+        List<Post> ret = new ArrayList<>();
+        for (List<Post> partial : scatter(shard -> shard.containing(lowered))) {
+            ret.addAll(partial);
+        }
+
+        ret.sort(new Comparator<Post>() {
+            public int compare(Post a, Post b) {
+                int byAuthor = a.getAuthor().compareTo(b.getAuthor());
+                return byAuthor != 0 ? byAuthor : Long.compare(a.getId(), b.getId());
+            }
+        });
+
+        return ret;
+    }
+
+    /**
+     * @requires toLike != null && follower != null && postLikes(toLike) != null &&
+     *           userFollowing(follower) != null && toLike.author != follower
+     * @param toLike Il post a cui mettere like
+     * @param follower L'utente che ha messo like a toLike
+     *
+     * @effects Aggiunge un like da parte di un utente a un post nella rete sociale. Il like
+     *          viene registrato nello shard dell'autore del post, mentre il fatto che follower
+     *          segua l'autore viene registrato nello shard di follower.
+     * @modifies this.shards
+     * @throws PostNotFoundException Se il post a cui mettere like non è presente nella rete sociale
+     * @throws AutoLikeException Se follower è l'autore di toLike
+     * @throws UserNotFoundException Se follower non è registrato nella rete sociale
+     * @throws NullPointerException Se toLike == null || follower == null
+     */
+    @Override
+    public void like(Post toLike, String follower) throws PostNotFoundException, AutoLikeException,
+            UserNotFoundException {
+        if (toLike == null) {
+            throw new NullPointerException("Il post a cui mettere like è null");
+        }
+        if (follower == null) {
+            throw new NullPointerException("L'utente che mette like non può essere null");
+        }
+        Shard followerShard = shardOf(follower);
+        Shard authorShard = shardOf(toLike.getAuthor());
+
+        synchronized (first(followerShard, authorShard)) {
+            synchronized (second(followerShard, authorShard)) {
+                if (!followerShard.userFollowing.containsKey(follower) || followerShard.removing.contains(follower)) {
+                    throw new UserNotFoundException(follower);
+                }
+                if (toLike.getAuthor().equals(follower) && authorShard.postLikes.containsKey(toLike)) {
+                    throw new AutoLikeException(follower, toLike.getId());
+                }
+                // I post di un utente in rimozione stanno per essere cancellati
+                if (!authorShard.postLikes.containsKey(toLike) || authorShard.removing.contains(toLike.getAuthor())) {
+                    throw new PostNotFoundException(toLike.getId());
+                }
+
+                authorShard.postLikes.get(toLike).add(follower);
+                followerShard.userFollowing.get(follower).add(toLike.getAuthor());
+            }
+        }
+    }
+
+    /**
+     * @requires toUnlike != null && follower != null && userFollowing(follower) != null &&
+     *           postLikes(toUnlike) != null && postLikes(toUnlike).contains(follower)
+     * @param toUnlike Il post a cui togliere like
+     * @param follower L'utente che toglie il like da toUnlike
+     * @effects Rimuove un like di un post da parte di un utente: se è l'unico post a cui
+     *          aveva messo like, l'utente smette di seguire l'autore del post
+     * @modifies this.shards
+     * @throws PostNotFoundException Se il post a cui togliere like non è presente nella rete
+     * @throws UserNotFoundException Se l'utente che toglie il like non è registrato nella rete
+     * @throws LikeNotFoundException Se si sta cercando di rimuovere un like non registrato
+     * @throws NullPointerException Se toUnlike == null || follower == null
+     */
+    @Override
+    public void unLike(Post toUnlike, String follower) throws PostNotFoundException, UserNotFoundException,
+            LikeNotFoundException {
+        if (toUnlike == null) {
+            throw new NullPointerException("Il post a cui togliere like non può essere null");
+        }
+        if (follower == null) {
+            throw new NullPointerException("L'utente che toglie il like non può essere null");
+        }
+        Shard followerShard = shardOf(follower);
+        Shard authorShard = shardOf(toUnlike.getAuthor());
+
+        synchronized (first(followerShard, authorShard)) {
+            synchronized (second(followerShard, authorShard)) {
+                if (!followerShard.userFollowing.containsKey(follower)) {
+                    throw new UserNotFoundException(follower);
+                }
+                if (!authorShard.postLikes.containsKey(toUnlike)) {
+                    throw new PostNotFoundException(toUnlike.getId());
+                }
+                if (!authorShard.postLikes.get(toUnlike).contains(follower)) {
+                    throw new LikeNotFoundException(follower, toUnlike.getId());
+                }
+
+                authorShard.postLikes.get(toUnlike).remove(follower);
+                // I post dell'autore sono tutti nel suo shard
+                if (!authorShard.likesAnyPostOf(follower, toUnlike.getAuthor())) {
+                    followerShard.userFollowing.get(follower).remove(toUnlike.getAuthor());
+                }
+            }
+        }
+    }
+
+    /**
+     * @requires toPublish != null && postLikes(toPublish) == null &&
+     *           userFollowing(toPublish.author) != null
+     * @param toPublish Il post da pubblicare
+     *
+     * @effects Aggiunge un post alla rete sociale, nello shard del suo autore.
+     * @modifies this.shards
+     * @throws PostAlreadyPublishedException Se il post è già stato pubblicato
+     * @throws UserNotFoundException Se l'autore del post non è registrato nella rete sociale
+     * @throws NullPointerException Se toPublish == null
+     */
+    @Override
+    public void publishPost(Post toPublish) throws PostAlreadyPublishedException, UserNotFoundException {
+        if (toPublish == null) {
+            throw new NullPointerException("Il post da pubblicare non può essere null");
+        }
+        Shard shard = shardOf(toPublish.getAuthor());
+
+        synchronized (shard) {
+            if (shard.postLikes.containsKey(toPublish)) {
+                throw new PostAlreadyPublishedException(toPublish.getId());
+            }
+            if (!shard.userFollowing.containsKey(toPublish.getAuthor()) || shard.removing.contains(toPublish.getAuthor())) {
+                throw new UserNotFoundException(toPublish.getAuthor());
+            }
+
+            shard.postLikes.put(toPublish, new TreeSet<>());
+            shard.userPublished.get(toPublish.getAuthor()).add(toPublish);
+        }
+    }
+
+    /**
+     * @requires toDelete != null && postLikes(toDelete) != null
+     * @param toDelete  Il post da rimuovere dalla rete sociale.
+     *
+     * @effects Rimuove un post dalla rete sociale: rimuove anche i like di quel post, di
+     *          conseguenza se il post era l'unico like da parte di un certo utente,
+     *          quell'utente smette di seguire l'autore del post.
+     * @modifies this.shards
+     * @throws PostNotFoundException Se toDelete non è presente all'interno della rete sociale
+     * @throws NullPointerException Se toDelete == null
+     */
+    @Override
+    public void deletePost(Post toDelete) throws PostNotFoundException {
+        if (toDelete == null) {
+            throw new NullPointerException("Il post da cancellare non può essere null");
+        }
+
+        deletePost(toDelete, false);
+    }
+
+    /**
+     * @requires toDelete != null
+     * @param toDelete  Il post da rimuovere dalla rete sociale
+     * @param byRemoval True se la cancellazione fa parte della rimozione dell'autore
+     *
+     * @effects Come deletePost(toDelete); se byRemoval è false, i post di un autore in
+     *          rimozione vengono considerati già cancellati.
+     * @modifies this.shards
+     * @throws PostNotFoundException Se toDelete non è presente all'interno della rete sociale
+     */
+    private void deletePost(Post toDelete, boolean byRemoval) throws PostNotFoundException {
+        Shard shard = shardOf(toDelete.getAuthor());
+        Set<String> likes;
+        Set<String> unfollowing = new TreeSet<>();
+
+        synchronized (shard) {
+            if (!byRemoval && shard.removing.contains(toDelete.getAuthor())) {
+                throw new PostNotFoundException(toDelete.getId());
+            }
+            likes = shard.postLikes.remove(toDelete);
+            if (likes == null) {
+                throw new PostNotFoundException(toDelete.getId());
+            }
+            shard.userPublished.get(toDelete.getAuthor()).remove(toDelete);
+
+            // Soltanto chi aveva messo like al post può smettere di seguire l'autore
+            for (String liker : likes) {
+                if (!shard.likesAnyPostOf(liker, toDelete.getAuthor())) {
+                    unfollowing.add(liker);
+                }
+            }
+        }
+
+        for (String liker : unfollowing) {
+            Shard likerShard = shardOf(liker);
+
+            synchronized (first(likerShard, shard)) {
+                synchronized (second(likerShard, shard)) {
+                    Set<String> following = likerShard.userFollowing.get(liker);
+                    // Ricontrollo: nel frattempo potrebbe aver messo like a un altro post
+                    if (following != null && !shard.likesAnyPostOf(liker, toDelete.getAuthor())) {
+                        following.remove(toDelete.getAuthor());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @requires toRegister != null && userFollowing(toRegister) == null &&
+     *           toRegister.matches(USERNAME_REGEX)
+     * @param toRegister Il nome dell'utente da registrare nella rete sociale.
+     *
+     * @effects Aggiunge un utente alla rete sociale, nello shard determinato dal suo nome
+     * @modifies this.shards
+     * @throws InvalidUsernameException Se lo username è composto da caratteri che non sono
+     *      alfanumerici o underscores (ovvero se !toRegister.matches(USERNAME_REGEX)
+     * @throws UserAlreadyRegisteredExeption Se l'utente toRegister è già presente nella rete
+     * @throws NullPointerException Se toRegister == null
+     */
+    @Override
+    public void registerUser(String toRegister) throws InvalidUsernameException, UserAlreadyRegisteredExeption {
+        if (toRegister == null) {
+            throw new NullPointerException("L'utente da registrare non può essere null");
+        }
+        Shard shard = shardOf(toRegister);
+
+        synchronized (shard) {
+            if (shard.userFollowing.containsKey(toRegister)) {
+                throw new UserAlreadyRegisteredExeption(toRegister);
+            }
+            if (!Shard.USERNAME.matcher(toRegister).matches()) {
+                throw new InvalidUsernameException(toRegister);
+            }
+
+            shard.userFollowing.put(toRegister, new TreeSet<>());
+            shard.userPublished.put(toRegister, new TreeSet<>());
+        }
+    }
+
+    /**
+     * @requires user != null && userFollowing(user) != null
+     * @param user L'utente da rimuovere dalla rete sociale
+     *
+     * @effects Rimuove un utente dalla rete sociale: rimuove anche tutti i suoi post e i
+     *          likes da lui o da lei pubblicati, e rimuove tale utente
+     *          dalla lista degli utenti seguiti degli altri. Durante la rimozione l'utente
+     *          risulta ancora registrato, ma non può pubblicare né mettere like.
+     * @modifies this.shards
+     * @throws UserNotFoundException Se l'utente non è registrato nella rete o se è già in
+     *                               corso la sua rimozione
+     * @throws NullPointerException Se user == null
+     * @throws IllegalStateException Se uno dei post dell'utente è stato cancellato durante la
+     *                               rimozione, violando l'invariante
+     */
+    @Override
+    public void removeUser(String user) throws UserNotFoundException {
+        if (user == null) {
+            throw new NullPointerException("L'utente da rimuovere dalla rete non può essere null");
+        }
+        Shard shard = shardOf(user);
+        List<Post> posts;
+        Set<String> followed;
+
+        synchronized (shard) {
+            if (!shard.userFollowing.containsKey(user) || !shard.removing.add(user)) {
+                throw new UserNotFoundException(user);
+            }
+            // Da qui in poi i post e gli autori seguiti dall'utente possono solo diminuire
+            posts = new ArrayList<>(shard.userPublished.get(user));
+            followed = new TreeSet<>(shard.userFollowing.get(user));
+        }
+
+        try {
+            // Cancello tutti i post dell'utente: nessun'altra operazione può farlo
+            for (Post p : posts) {
+                try {
+                    deletePost(p, true);
+                }
+                catch (PostNotFoundException e) {
+                    throw new IllegalStateException("Il post " + p.getId() + " di " + user +
+                            " è stato cancellato durante la rimozione dell'utente", e);
+                }
+            }
+
+            // I like dell'utente si trovano soltanto negli shard degli utenti che segue
+            for (String author : followed) {
+                Shard authorShard = shardOf(author);
+
+                synchronized (authorShard) {
+                    for (Post p : authorShard.userPublished.getOrDefault(author, Collections.emptySet())) {
+                        authorShard.postLikes.get(p).remove(user);
+                    }
+                }
+            }
+
+            synchronized (shard) {
+                shard.userPublished.remove(user);
+                shard.userFollowing.remove(user);
+            }
+        }
+        finally {
+            synchronized (shard) {
+                shard.removing.remove(user);
+            }
+        }
+    }
+
+    /**
+     * @effects Fornisce la lista degli hashtag presenti all'interno della rete in ordine
+     *          non crescente di numero di occorrenze all'interno dei testi dei post.
+     *          Si considera hashtag una qualsiasi stringa alfanumerica
+     *          potenzialmente contenente underscores (la lunghezza di un hashtag è
+     *          limitata alla lunghezza del testo di un post, overo 140 caratteri). Gli
+     *          hashtags sono case insensitive. Ogni shard conta gli hashtag dei propri post e
+     *          i conteggi vengono poi sommati.
+     * @return  La lista degli hashtag presenti all'interno della rete in ordine di
+     *          numero di occorrenze non crescente.
+     */
+    @Override
+    public List<String> getTrending() {
+        Map<String, Integer> totals = new TreeMap<>();
+        List<String> ret = new ArrayList<>();
+
+        for (Map<String, Integer> partial : scatter(Shard::tagCounts)) {
+            for (Map.Entry<String, Integer> entry : partial.entrySet()) {
+                totals.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> toSort = new ArrayList<>(totals.entrySet());
+        toSort.sort(new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return Integer.compare(b.getValue(), a.getValue());
+            }
+        });
+
+        for (Map.Entry<String, Integer> entry : toSort) {
+            ret.add(entry.getKey());
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires user != null
+     * @return Lo shard a cui appartiene user
+     */
+    private Shard shardOf(String user) {
+        return shards[Math.floorMod(user.hashCode(), shards.length)];
+    }
+
+    /**
+     * @requires user != null
+     * @return True se user è registrato nella rete
+     */
+    private boolean isRegistered(String user) {
+        Shard shard = shardOf(user);
+
+        synchronized (shard) {
+            return shard.userFollowing.containsKey(user);
+        }
+    }
+
+    /**
+     * @requires candidates != null
+     * @return L'insieme degli elementi di candidates che sono utenti registrati
+     */
+    private Set<String> registered(Set<String> candidates) {
+        Set<String> ret = new TreeSet<>();
+
+        for (String c : candidates) {
+            if (isRegistered(c)) {
+                ret.add(c);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires query != null
+     * @param query L'interrogazione da eseguire su ogni shard
+     *
+     * @effects Esegue query in parallelo su tutti gli shard, ciascuno sotto il proprio lock
+     * @return  I risultati parziali, uno per shard
+     */
+    private <T> List<T> scatter(Function<Shard, T> query) {
+        List<T> ret = new ArrayList<>();
+
+        Arrays.stream(shards).parallel().map(shard -> {
+            synchronized (shard) {
+                return query.apply(shard);
+            }
+        }).forEachOrdered(ret::add);
+
+        return ret;
+    }
+
+    /**
+     * @return Tra a e b, lo shard il cui lock va acquisito per primo
+     */
+    private static Shard first(Shard a, Shard b) {
+        return a.index <= b.index ? a : b;
+    }
+
+    /**
+     * @return Tra a e b, lo shard il cui lock va acquisito per secondo
+     */
+    private static Shard second(Shard a, Shard b) {
+        return a.index <= b.index ? b : a;
+    }
+
+    /** Overview:
+     *      Shard è una partizione della rete, che contiene gli utenti il cui nome ha un certo
+     *      hash, i post che hanno pubblicato con i relativi like e gli utenti che seguono.
+     *      Tutti gli accessi avvengono sotto il lock dello shard.
+     */
+    private static class Shard {
+        private static final Pattern USERNAME = Pattern.compile(USERNAME_REGEX);
+        private static final Pattern MENTION = Pattern.compile("@" + USERNAME_REGEX);
+
+        private final int index;
+        private final Map<Post, Set<String>> postLikes = new TreeMap<>();
+        private final Map<String, Set<Post>> userPublished = new TreeMap<>();
+        private final Map<String, Set<String>> userFollowing = new TreeMap<>();
+        /**
+         * Utenti dello shard di cui è in corso la rimozione
+         */
+        private final Set<String> removing = new TreeSet<>();
+
+        private Shard(int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return True se follower ha messo like ad almeno un post di author
+         */
+        private boolean likesAnyPostOf(String follower, String author) {
+            for (Post p : userPublished.getOrDefault(author, Collections.emptySet())) {
+                if (postLikes.get(p).contains(follower)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return Il numero di follower di ciascun utente dello shard
+         */
+        private Map<String, Integer> followerCounts() {
+            Map<String, Integer> ret = new TreeMap<>();
+
+            for (Map.Entry<String, Set<Post>> entry : userPublished.entrySet()) {
+                Set<String> followers = new TreeSet<>();
+                for (Post p : entry.getValue()) {
+                    followers.addAll(postLikes.get(p));
+                }
+                ret.put(entry.getKey(), followers.size());
+            }
+
+            return ret;
+        }
+
+        /**
+         * @return Le stringhe menzionate nei post dello shard, non necessariamente registrate
+         */
+        private Set<String> mentions() {
+            Set<String> ret = new TreeSet<>();
+
+            for (Post p : postLikes.keySet()) {
+                Matcher m = MENTION.matcher(p.getText());
+                while (m.find()) {
+                    ret.add(m.group().substring(1));
+                }
+            }
+
+            return ret;
+        }
+
+        /**
+         * @requires words != null && foreach w in words -> w è minuscola
+         * @return I post dello shard che contengono almeno una parola di words
+         */
+        private List<Post> containing(Set<String> words) {
+            List<Post> ret = new ArrayList<>();
+
+            for (Post p : postLikes.keySet()) {
+                for (String postWord : p.getText().split(" ")) {
+                    if (words.contains(postWord.toLowerCase())) {
+                        ret.add(p);
+                    }
+                }
+            }
+
+            return ret;
+        }
+
+        /**
+         * @return Il numero di occorrenze di ogni hashtag nei post dello shard
+         */
+        private Map<String, Integer> tagCounts() {
+            Map<String, Integer> ret = new TreeMap<>();
+
+            for (Post p : postLikes.keySet()) {
+                Matcher m = SocialNetworkImpl.HASHTAG_PATTERN.matcher(p.getText());
+                while (m.find()) {
+                    ret.merge(m.group().substring(1).toLowerCase(), 1, Integer::sum);
+                }
+            }
+
+            return ret;
+        }
+    }
+}
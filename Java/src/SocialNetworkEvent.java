@@ -0,0 +1,58 @@
+/** Overview:
+ *      SocialNetworkEvent rappresenta una modifica avvenuta allo stato di una rete sociale,
+ *      pubblicata dalla rete a chi si è iscritto al suo flusso di eventi.
+ *
+ *  Typical element:
+ *      <sequence, type, user, post, word> in cui:
+ *          - sequence è il numero progressivo dell'evento all'interno della rete
+ *          - type è il tipo di operazione che ha generato l'evento
+ *          - user è l'utente coinvolto nell'operazione (null se non ce n'è uno)
+ *          - post è il post coinvolto nell'operazione (null se non ce n'è uno)
+ *          - word è la parola proibita coinvolta nell'operazione (null se non ce n'è una)
+ *
+ *  Un evento è valido soltanto durante la chiamata a SocialNetworkListener.onEvent che lo
+ *  riceve: i suoi campi vanno copiati se devono essere conservati.
+ */
+public interface SocialNetworkEvent {
+    /**
+     * Tipi di operazioni che generano un evento
+     */
+    public enum Type {
+        REGISTER_USER,
+        REMOVE_USER,
+        PUBLISH_POST,
+        DELETE_POST,
+        LIKE,
+        UNLIKE,
+        REPORT,
+        ADD_FORBIDDEN_WORD,
+        REMOVE_FORBIDDEN_WORD
+    }
+
+    /**
+     * @return Il numero progressivo dell'evento
+     */
+    public long getSequence();
+
+    /**
+     * @return Il tipo di operazione che ha generato l'evento
+     */
+    public Type getType();
+
+    /**
+     * @return L'utente coinvolto nell'operazione: l'utente registrato o rimosso, l'autore del
+     *         like o della segnalazione, l'autore del post pubblicato o cancellato. Null per le
+     *         operazioni sulle parole proibite.
+     */
+    public String getUser();
+
+    /**
+     * @return Il post coinvolto nell'operazione, null se l'operazione non riguarda un post
+     */
+    public Post getPost();
+
+    /**
+     * @return La parola proibita aggiunta o rimossa, null per tutte le altre operazioni
+     */
+    public String getWord();
+}
@@ -1,6 +1,14 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import Exceptions.Likes.*;
 import Exceptions.Post.PostAlreadyPublishedException;
@@ -35,6 +43,17 @@ import Exceptions.User.UserNotFoundException;
  *              userPublished(u) = {p | p è un post pubblicato da u}
  *          userFollowing: String -> Set<String>
  *              userFollowing(u) = {v | v è seguito da u}
+ *      userFollowers è un indice inverso di userFollowing e followGraph ne è una copia con
+ *      identificatori numerici; postsByTime indicizza i post per timestamp: non fanno parte
+ *      dello stato astratto. userFollowers e followGraph, come le altre strutture ausiliarie
+ *      (cache delle timeline e delle interrogazioni, statistiche approssimate, indici per
+ *      l'autocompletamento), vengono mantenuti solo se abilitati con il metodo corrispondente
+ *      (setTimelineCache, enableFollowGraph, setQueryCache, setSketches, enableAutocomplete),
+ *      in modo che chi non li usa non ne paghi l'aggiornamento a ogni scrittura. Se è configurato un livello freddo (coldStore), postLikes
+ *      comprende anche i post freddi con i loro like, e userPublished i post freddi di ogni
+ *      utente.
+ *      Se è configurato un archivio dei like (likeStore), gli insiemi di postLikes sono
+ *      viste di likeStore.
  *
  *  Representation Invariant:
  *      f(c): C -> Bool =
@@ -85,10 +104,62 @@ import Exceptions.User.UserNotFoundException;
  *              (exists p in postLikes.keys -> postLikes(p).contains(u) && p.author = u)) &&
  *
  *      // I nomi utente devono essere validi
- *      foreach u in userFollowing.keys -> u.matches(USER_REGEX)
+ *      foreach u in userFollowing.keys -> u.matches(USER_REGEX) &&
+ *
+ *      // userFollowers è l'inverso di userFollowing, ed è mantenuto se e solo se lo sono le timeline
+ *      (userFollowers != null <=> timelines != null || (readOnly && userFollowers != null)) &&
+ *      (userFollowers != null => userFollowers.keys == userFollowing.keys &&
+ *          foreach u, v in userFollowing.keys ->
+ *              (userFollowing(u).contains(v) <=> userFollowers(v).contains(u))) &&
+ *      // followGraph, se abilitato, rappresenta lo stesso grafo di userFollowing
+ *      (followGraph != null => followGraph.users == userFollowing.keys &&
+ *          foreach u, v in userFollowing.keys ->
+ *              (userFollowing(u).contains(v) <=> followGraph.following.contains((u, v)))) &&
+ *      // postsByTime indicizza tutti e soli i post pubblicati per timestamp
+ *      postsByTime != null &&
+ *      foreach p in postLikes.keys -> postsByTime(PostImpl.epochNanosOf(p)).contains(p) &&
+ *      foreach t in postsByTime.keys -> !postsByTime(t).isEmpty() &&
+ *          (foreach p in postsByTime(t) -> postLikes.keys.contains(p) && PostImpl.epochNanosOf(p) == t) &&
+ *
+ *      // I post freddi sono pubblicati da utenti registrati e hanno like di utenti registrati
+ *      (coldStore != null => foreach (p, l) in coldStore.posts ->
+ *          !postLikes.keys.contains(p) && userFollowing.keys.contains(p.author) &&
+ *          (foreach u in l -> userFollowing.keys.contains(u))) &&
+ *
+ *      // La versione non decresce mai e uno snapshot è valido solo per la versione in cui è stato creato
+ *      version >= 0 && (lastSnapshot != null => lastSnapshotVersion <= version)
+ *
+ *  Concorrenza:
+ *      Le operazioni che modificano la rete sono sincronizzate sull'istanza. Le interrogazioni
+ *      lunghe (influencers, getTrending, containing, ...) possono essere eseguite su una vista
+ *      immutabile ottenuta con snapshot(), che blocca le scritture soltanto per copiare le map
+ *      dello stato (non gli insiemi, né i like): le interrogazioni
+ *      sullo snapshot non bloccano le scritture, che copiano ogni insieme condiviso con lo
+ *      snapshot la prima volta che lo modificano. Poiché la copia delle map costa O(utenti +
+ *      post), chi richiede uno snapshot per ogni interrogazione su una rete modificata di
+ *      continuo può accettarne uno un po' vecchio con snapshot(maxAgeMillis), che ne limita il
+ *      numero di creazioni.
+ *
+ *      Anche guessFollowers(ps) e writtenBy(ps, username), che salvano il risultato nella
+ *      cache delle interrogazioni, sono sincronizzate: sono proporzionali a ps e non devono
+ *      salvare in cache un risultato letto mentre una scrittura sostituisce gli insiemi.
  *
  */
 public class SocialNetworkImpl implements SocialNetwork{
+    /**
+     * Espressione regolare che individua gli hashtag all'interno del testo di un post
+     */
+    protected static final Pattern HASHTAG_PATTERN = Pattern.compile("#\\w+");
+    /**
+     * Espressione regolare che individua le menzioni all'interno del testo di un post
+     */
+    private static final Pattern MENTION_PATTERN = Pattern.compile("@" + USERNAME_REGEX);
+    /**
+     * Ordine dei risultati delle interrogazioni per intervallo di tempo: dal post meno recente
+     * al più recente, a parità di timestamp per id crescente
+     */
+    private static final Comparator<Post> OLDEST_FIRST = TimelineCache.NEWEST_FIRST.reversed();
+
     /**
      * Collega ogni post della rete sociale all'insieme dei like che ha ricevuto
      */
@@ -101,15 +172,261 @@ public class SocialNetworkImpl implements SocialNetwork{
      * Collega ogni utente della rete sociale all'insieme degli utenti che segue
      */
     protected Map<String, Set<String>> userFollowing;
+    /**
+     * Collega ogni utente della rete sociale all'insieme degli utenti che lo seguono
+     */
+    protected Map<String, Set<String>> userFollowers;
+    /**
+     * Indice dei post per timestamp (in nanosecondi, vedi PostImpl.epochNanosOf)
+     */
+    protected NavigableMap<Long, Set<Post>> postsByTime;
+    /**
+     * Collezioni usate per memorizzare lo stato della rete
+     */
+    protected final StorageStrategy storage;
+
+    /**
+     * Numero di modifiche subite dalla rete, incrementato da ogni operazione di scrittura
+     */
+    protected long version;
+    /**
+     * True se this è uno snapshot in sola lettura di un'altra rete
+     */
+    private final boolean readOnly;
+    /**
+     * Ultimo snapshot creato, riutilizzato finché la rete non viene modificata
+     */
+    private SocialNetwork lastSnapshot;
+    /**
+     * Versione della rete a cui si riferisce lastSnapshot
+     */
+    private long lastSnapshotVersion;
+    /**
+     * Istante di creazione di lastSnapshot, in nanosecondi (vedi System.nanoTime)
+     */
+    private long lastSnapshotNanos;
+    /**
+     * Insiemi delle map di this creati o copiati dopo l'ultimo snapshot, che possono essere
+     * modificati senza alterarlo; null se non è mai stato creato uno snapshot
+     */
+    private Set<Set<?>> owned;
+    /**
+     * Buffer tramite cui vengono pubblicati gli eventi di modifica della rete, null negli snapshot
+     */
+    private final EventRingBuffer events;
+    /**
+     * Conteggio degli hashtag nella finestra temporale più recente, null se non è stata configurata
+     */
+    private TrendingWindow trendingWindow;
+    /**
+     * Home timeline in cache degli utenti, null se non è stata configurata e negli snapshot
+     */
+    private TimelineCache timelines;
+    /**
+     * Grafo "segue" della rete con identificatori numerici, usato per le visite del grafo;
+     * null se non è stato abilitato
+     */
+    protected FollowGraph followGraph;
+    /**
+     * Classifica degli utenti calcolata con PageRank sul grafo "segue"
+     */
+    private final InfluenceRank influence;
+    /**
+     * True se il grafo "segue" è cambiato dall'ultima richiesta di calcolo della classifica
+     */
+    private boolean influenceStale;
+    /**
+     * Statistiche approssimate della rete, null se non sono state configurate e negli snapshot
+     */
+    private NetworkSketches sketches;
+    /**
+     * Risultati di guessFollowers e writtenBy(List, String) già calcolati, null se la cache
+     * non è stata configurata
+     */
+    private QueryCache queryCache;
+    /**
+     * Nomi degli utenti pesati per numero di follower più uno e hashtag pesati per numero di
+     * occorrenze nei post pubblicati, per l'autocompletamento; null se l'autocompletamento
+     * non è stato abilitato e negli snapshot
+     */
+    private PrefixIndex usernames;
+    private PrefixIndex hashtags;
+    /**
+     * Livello freddo in cui vengono spostati i post più vecchi, null se non è stato
+     * configurato e negli snapshot
+     */
+    private volatile ColdPostStore coldStore;
+    /**
+     * Versione del livello freddo della rete originale al momento della creazione dello
+     * snapshot, null nella rete originale e se il livello freddo era vuoto
+     */
+    protected final ColdPostStore.View coldView;
+    /**
+     * Archivio su disco dei like, null se i like sono memorizzati con le collezioni di storage
+     * e negli snapshot
+     */
+    private LikeStore likeStore;
+    /**
+     * Compressore dei testi dei post pubblicati, null se i testi restano in chiaro
+     */
+    private PostTextStore textStore;
 
     /**
      * @effects: Costruttore del tipo SocialNetworkImpl.
      * @modifies: this.postLikes, this.userPublished, this.userFollowing
      */
     public SocialNetworkImpl() {
-        postLikes = new TreeMap<>();
-        userPublished = new TreeMap<>();
-        userFollowing = new TreeMap<>();
+        this(EventRingBuffer.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @requires eventCapacity > 0
+     * @param eventCapacity Il numero di eventi che il buffer degli eventi deve poter contenere
+     *
+     * @effects Costruttore del tipo SocialNetworkImpl, con un buffer degli eventi di capacità
+     *          almeno pari a eventCapacity.
+     * @modifies this.postLikes, this.userPublished, this.userFollowing, this.events
+     * @throws IllegalArgumentException Se eventCapacity <= 0
+     */
+    public SocialNetworkImpl(int eventCapacity) {
+        this(eventCapacity, StorageStrategy.ORDERED);
+    }
+
+    /**
+     * @requires storage != null
+     * @param storage Le collezioni da usare per memorizzare lo stato della rete
+     *
+     * @effects Costruttore del tipo SocialNetworkImpl, che memorizza il proprio stato con le
+     *          collezioni fornite da storage. L'ordine dei risultati delle interrogazioni
+     *          dipende da storage come descritto in StorageStrategy.
+     * @throws NullPointerException Se storage == null
+     */
+    public SocialNetworkImpl(StorageStrategy storage) {
+        this(EventRingBuffer.DEFAULT_CAPACITY, storage);
+    }
+
+    /**
+     * @requires eventCapacity > 0 && storage != null
+     * @param eventCapacity Il numero di eventi che il buffer degli eventi deve poter contenere
+     * @param storage       Le collezioni da usare per memorizzare lo stato della rete
+     *
+     * @effects Costruttore del tipo SocialNetworkImpl, con un buffer degli eventi di capacità
+     *          almeno pari a eventCapacity e lo stato memorizzato con le collezioni di storage.
+     * @modifies this.postLikes, this.userPublished, this.userFollowing, this.events
+     * @throws IllegalArgumentException Se eventCapacity <= 0
+     * @throws NullPointerException Se storage == null
+     */
+    public SocialNetworkImpl(int eventCapacity, StorageStrategy storage) {
+        if (storage == null) {
+            throw new NullPointerException("La strategia di memorizzazione non può essere null");
+        }
+
+        this.storage = storage;
+        postLikes = storage.newPostMap();
+        userPublished = storage.newMap();
+        userFollowing = storage.newMap();
+        postsByTime = new TreeMap<>();
+        readOnly = false;
+        events = new EventRingBuffer(eventCapacity);
+        influence = new InfluenceRank();
+        coldView = null;
+    }
+
+    /**
+     * @requires source != null
+     * @param source La rete di cui creare una copia in sola lettura
+     *
+     * @effects Crea una copia immutabile dello stato di source. Vengono copiate soltanto le
+     *          map, mentre gli insiemi (e le liste di adiacenza del grafo "segue") sono
+     *          condivisi con source, che li copia prima di modificarli (vedi writable): le
+     *          modifiche successive a source non sono quindi visibili nella copia. Se source
+     *          memorizza i like in un LikeStore, la copia legge una versione congelata
+     *          dell'archivio; allo stesso modo, se source ha dei post nel livello freddo, la
+     *          copia ne legge una versione (vedi ColdPostStore.view).
+     * @modifies this.postLikes, this.userPublished, this.userFollowing, source.followGraph,
+     *           source.likeStore, source.coldStore
+     * @throws NullPointerException Se source == null
+     */
+    protected SocialNetworkImpl(SocialNetworkImpl source) {
+        if (source == null) {
+            throw new NullPointerException("La rete di cui creare lo snapshot non può essere null");
+        }
+
+        storage = source.storage;
+        // Le viste del LikeStore leggono lo stato corrente dell'archivio: lo snapshot legge una
+        // sua versione congelata
+        postLikes = Collections.unmodifiableMap(source.likeStore != null
+                ? viewOf(source.postLikes, source.likeStore.view(), storage.newPostMap())
+                : shareOf(source.postLikes, storage.newPostMap()));
+        userPublished = Collections.unmodifiableMap(shareOf(source.userPublished, storage.newMap()));
+        userFollowing = Collections.unmodifiableMap(shareOf(source.userFollowing, storage.newMap()));
+        userFollowers = source.userFollowers == null ? null
+                : Collections.unmodifiableMap(shareOf(source.userFollowers, storage.newMap()));
+        postsByTime = Collections.unmodifiableNavigableMap(new TreeMap<>(source.postsByTime));
+        version = source.version;
+        readOnly = true;
+        events = null;
+        timelines = null;
+        followGraph = source.followGraph == null ? null : source.followGraph.share();
+        influence = new InfluenceRank(source.influence);
+        influenceStale = source.influenceStale || source.influence.isRefreshPending();
+        sketches = null;
+        queryCache = source.queryCache == null ? null : new QueryCache();
+        usernames = null;
+        hashtags = null;
+        // I post freddi non sono in postLikes: lo snapshot li legge dalla versione del livello
+        // freddo contemporanea alle map copiate
+        ColdPostStore store = source.coldStore;
+        coldView = store == null || store.getColdPosts() == 0 ? null : store.view();
+    }
+
+    /**
+     * @effects Fornisce una vista immutabile e consistente della rete sociale, su cui è possibile
+     *          eseguire tutte le interrogazioni mentre la rete originale continua a essere
+     *          modificata. Finché la rete non subisce modifiche viene restituito sempre lo
+     *          stesso snapshot, senza effettuare ulteriori copie. La creazione copia soltanto
+     *          i riferimenti agli insiemi che compongono lo stato (O(utenti + post)); gli
+     *          insiemi vengono copiati uno alla volta dalla prima operazione che li modifica.
+     * @modifies this.lastSnapshot, this.lastSnapshotVersion, this.owned
+     * @return  Lo snapshot della rete: le operazioni di modifica su di esso lanciano
+     *          UnsupportedOperationException.
+     */
+    public synchronized SocialNetwork snapshot() {
+        return snapshot(0);
+    }
+
+    /**
+     * @requires maxAgeMillis >= 0
+     * @param maxAgeMillis L'età massima, in millisecondi, di uno snapshot riutilizzato anche se
+     *                     la rete è stata modificata dopo la sua creazione
+     *
+     * @effects Come snapshot(), ma restituisce l'ultimo snapshot creato se risale a non più di
+     *          maxAgeMillis millisecondi fa, anche se non riflette le modifiche successive: su
+     *          una rete modificata di continuo, al più uno snapshot ogni maxAgeMillis
+     *          millisecondi paga la copia delle map. snapshot(0) equivale a snapshot().
+     * @modifies this.lastSnapshot, this.lastSnapshotVersion, this.lastSnapshotNanos, this.owned
+     * @return  Lo snapshot della rete
+     * @throws IllegalArgumentException Se maxAgeMillis < 0
+     */
+    public synchronized SocialNetwork snapshot(long maxAgeMillis) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("L'età massima dello snapshot non può essere negativa");
+        }
+        if (readOnly) {
+            return this;
+        }
+
+        long now = System.nanoTime();
+        if (lastSnapshot == null || (lastSnapshotVersion != version
+                && (maxAgeMillis == 0 || now - lastSnapshotNanos > maxAgeMillis * 1_000_000))) {
+            lastSnapshot = createSnapshot();
+            lastSnapshotVersion = version;
+            lastSnapshotNanos = now;
+            // Da ora in poi tutti gli insiemi sono condivisi con lastSnapshot
+            owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+
+        return lastSnapshot;
     }
 
     /**
@@ -127,12 +444,37 @@ public class SocialNetworkImpl implements SocialNetwork{
      * @throws NullPointerException Se ps == null || exists(p in ps -> p == null)
      */
     @Override
-    public Map<String, Set<String>> guessFollowers(List<Post> ps) throws PostNotFoundException {
+    public synchronized Map<String, Set<String>> guessFollowers(List<Post> ps) throws PostNotFoundException {
         if (ps == null) {
             throw new NullPointerException("La lista di cui ottenere la rete sociale non può essere null");
         }
 
-        return getFollowersMap(ps);
+        QueryCache.Key key = queryCache == null ? null : queryCache.followersKey(ps);
+        Map<String, Set<String>> cached = key == null ? null : queryCache.get(key);
+        if (cached != null) {
+            return copyOfFollowers(cached);
+        }
+
+        ensureHot(ps);
+        Map<String, Set<String>> ret = getFollowersMap(ps);
+        if (key != null) {
+            queryCache.put(key, copyOfFollowers(ret));
+        }
+        return ret;
+    }
+
+    /**
+     * @requires followers != null && foreach k in followers.keys -> followers(k) è un TreeSet
+     * @effects Copia il risultato di getFollowersMap, in modo che la copia restituita al
+     *          chiamante e quella mantenuta in cache non condividano strutture modificabili
+     * @return  La copia di followers
+     */
+    private static Map<String, Set<String>> copyOfFollowers(Map<String, Set<String>> followers) {
+        Map<String, Set<String>> ret = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> e : followers.entrySet()) {
+            ret.put(e.getKey(), new TreeSet<>((SortedSet<String>) e.getValue()));
+        }
+        return ret;
     }
 
     /**
@@ -144,6 +486,11 @@ public class SocialNetworkImpl implements SocialNetwork{
      */
     @Override
     public List<String> influencers() {
+        SocialNetworkImpl withCold = coldSnapshot();
+        if (withCold != null) {
+            return withCold.influencers();
+        }
+
         ArrayList<String> ret = new ArrayList<>();
         Map<String, Set<String>> followersMap = new TreeMap<>();
         Map<String, Integer> nFollowersMap = new TreeMap<String, Integer>();
@@ -154,6 +501,13 @@ public class SocialNetworkImpl implements SocialNetwork{
         }
         catch (PostNotFoundException ignored) {}
 
+        // Aggiungo i like dei post freddi
+        if (coldView != null) {
+            Map<String, Set<String>> withColdLikes = followersMap;
+            coldView.stream().forEach(c -> withColdLikes.computeIfAbsent(c.getPost().getAuthor(),
+                    k -> new TreeSet<>()).addAll(c.getLikes()));
+        }
+
         // Uso una mappa intermedia con il numero di followers
         for (String name : followersMap.keySet()) {
             nFollowersMap.put(name, followersMap.get(name).size());
@@ -204,9 +558,18 @@ public class SocialNetworkImpl implements SocialNetwork{
      */
     @Override
     public Set<String> getMentionedUsers() {
+        SocialNetworkImpl withCold = coldSnapshot();
+        if (withCold != null) {
+            return withCold.getMentionedUsers();
+        }
+
         try {
             // Applico la funzione già esistente su tutti i post del social network
-            return getMentionedUsers(new ArrayList<Post>(postLikes.keySet()));
+            Set<String> ret = mentionedIn(new ArrayList<Post>(postLikes.keySet()));
+            if (coldView != null) {
+                coldView.stream().forEach(c -> addMentions(c.getPost().getText(), ret));
+            }
+            return ret;
         }
         catch (PostNotFoundException ignored) {}
 
@@ -235,10 +598,21 @@ public class SocialNetworkImpl implements SocialNetwork{
         if (ps == null) {
             throw new NullPointerException("La lista di post in cui cercare non può essere null");
         }
+
+        ensureHot(ps);
+        return mentionedIn(ps);
+    }
+
+    /**
+     * @requires ps != null
+     * @effects Implementazione comune di getMentionedUsers() e getMentionedUsers(ps), che non
+     *          riporta in memoria i post del livello freddo
+     * @return  L'insieme degli utenti menzionati all'interno della lista di post ps
+     * @throws NullPointerException se exists(p in ps -> p == null)
+     * @throws PostNotFoundException Se uno dei post della lista ps non è stato pubblicato
+     */
+    private Set<String> mentionedIn(List<Post> ps) throws PostNotFoundException {
         TreeSet<String> ret = new TreeSet<String>();
-        // Trova tutte le stringhe che iniziano con @ seguite da una stringa di caratteri alfanumerici,
-        // o underscore lunghe da 1 a 15 caratteri
-        Pattern regex = Pattern.compile("@"+USERNAME_REGEX);
 
         // Scorro tutti i post
         for (Post p : ps) {
@@ -250,19 +624,30 @@ public class SocialNetworkImpl implements SocialNetwork{
                 throw new PostNotFoundException(p.getId());
             }
 
-            Matcher m = regex.matcher(p.getText());
+            addMentions(p.getText(), ret);
+        }
 
-            while (m.find()) {
-                String toAdd = m.group().substring(1);
+        return ret;
+    }
 
-                // Aggiungo l'utente alla lista delle menzioni soltanto se è registrato
-                if (userFollowing.containsKey(toAdd)) {
-                    ret.add(toAdd);
-                }
+    /**
+     * @requires text != null && mentioned != null
+     * @effects Aggiunge a mentioned gli utenti registrati menzionati in text
+     * @modifies mentioned
+     */
+    private void addMentions(String text, Set<String> mentioned) {
+        // Trova tutte le stringhe che iniziano con @ seguite da una stringa di caratteri alfanumerici,
+        // o underscore lunghe da 1 a 15 caratteri
+        Matcher m = MENTION_PATTERN.matcher(text);
+
+        while (m.find()) {
+            String toAdd = m.group().substring(1);
+
+            // Aggiungo l'utente alla lista delle menzioni soltanto se è registrato
+            if (userFollowing.containsKey(toAdd)) {
+                mentioned.add(toAdd);
             }
         }
-
-        return ret;
     }
 
     /**
@@ -285,6 +670,8 @@ public class SocialNetworkImpl implements SocialNetwork{
             throw new UserNotFoundException(username);
         }
 
+        pageInUser(username);
+
         // Semplicemente ritorno il valore della chiave username nella mappa userPublished
         // sottoforma di List
         return new ArrayList<Post>(userPublished.get(username));
@@ -305,7 +692,8 @@ public class SocialNetworkImpl implements SocialNetwork{
      * @throws NullPointerException Se ps == null || exists(p in ps -> p == null)
      */
     @Override
-    public List<Post> writtenBy(List<Post> ps, String username) throws UserNotFoundException, PostNotFoundException {
+    public synchronized List<Post> writtenBy(List<Post> ps, String username)
+            throws UserNotFoundException, PostNotFoundException {
         if (ps == null) {
             throw new NullPointerException("La lista dei post in cui cercare non può essere null");
         }
@@ -316,6 +704,13 @@ public class SocialNetworkImpl implements SocialNetwork{
             throw new UserNotFoundException(username);
         }
 
+        QueryCache.Key key = queryCache == null ? null : queryCache.writtenByKey(ps, username);
+        List<Post> cached = key == null ? null : queryCache.get(key);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        ensureHot(ps);
+
         // Lista di ritorno
         List<Post> ret = new ArrayList<>();
 
@@ -334,6 +729,9 @@ public class SocialNetworkImpl implements SocialNetwork{
             }
         }
 
+        if (key != null) {
+            queryCache.put(key, new ArrayList<>(ret));
+        }
         return ret;
     }
 
@@ -353,14 +751,14 @@ public class SocialNetworkImpl implements SocialNetwork{
         if (words == null) {
             throw new NullPointerException("La lista di parole da cercare non può essere null");
         }
+        SocialNetworkImpl withCold = coldSnapshot();
+        if (withCold != null) {
+            return withCold.containing(words);
+        }
         // Ottengo tutti i post
         List <Set<Post>> publishedPosts = new ArrayList<>(userPublished.values());
         // Per comodità invece di avere una lista di insiemi, decido di avere una lista di post
         List<Post> posts = new ArrayList<>();
-        // Lista di ritorno
-        List<Post> ret = new ArrayList<>();
-        // Flag che stabilisce se ho trovato una parola (mi permette di interrompere il ciclo appena ne trovo una)
-        boolean foundWord;
 
         // Sono sicuro che i post siano univoci perché svolgo dei controlli quando pubblico un post
         for (int i=0; i<publishedPosts.size(); i++) {
@@ -368,6 +766,25 @@ public class SocialNetworkImpl implements SocialNetwork{
             posts.addAll(publishedPosts.get(i));
         }
 
+        List<Post> ret = containingIn(posts, words);
+        if (coldView != null) {
+            coldView.stream().forEach(c -> ret.addAll(containingIn(List.of(c.getPost()), words)));
+        }
+        return ret;
+    }
+
+    /**
+     * @requires posts != null && words != null && foreach word in words -> word != null
+     * @param posts I post in cui cercare
+     * @param words Le parole da cercare
+     *
+     * @effects Seleziona i post di posts che contengono almeno una delle parole di words, come
+     *          descritto in containing(words)
+     * @return  La lista dei post selezionati, nell'ordine di posts
+     */
+    private static List<Post> containingIn(Iterable<Post> posts, List<String> words) {
+        List<Post> ret = new ArrayList<>();
+
         // Per ogni post
         for (Post p : posts) {
             // Per ogni parola del post
@@ -394,119 +811,490 @@ public class SocialNetworkImpl implements SocialNetwork{
     }
 
     /**
-     * @requires toLike != null && follower != null && postLikes(toLike) != null &&
-     *           userFollowing(follower) != null && toLike.author != follower
-     * @param toLike Il post a cui mettere like
-     * @param follower L'utente che ha messo like a toLike
+     * @requires from != null && to != null && !from.isAfter(to)
+     * @param from L'istante iniziale dell'intervallo (incluso)
+     * @param to   L'istante finale dell'intervallo (escluso)
      *
-     * @effects Aggiunge un like da parte di un utente a un post nella rete sociale.
-     * @modifies this.postLikes, this.userFollowing
-     * @throws PostNotFoundException Se il post a cui mettere like non è presente nella rete sociale
-     * @throws AutoLikeException Se follower è l'autore di toLike
-     * @throws UserNotFoundException Se follower non è registrato nella rete sociale
-     * @throws NullPointerException Se toLike == null || follower == null
+     * @effects Fornisce i post pubblicati nell'intervallo [from, to), usando l'indice dei post
+     *          per timestamp: il costo è proporzionale al numero di post restituiti.
+     * @return  La lista dei post pubblicati nell'intervallo, dal meno recente al più recente e, a
+     *          parità di timestamp, per id crescente
+     * @throws NullPointerException Se from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
      */
-    @Override
-    public void like(Post toLike, String follower) throws PostNotFoundException,
-            AutoLikeException, UserNotFoundException {
-        if (toLike == null) {
-            throw new NullPointerException("Il post a cui mettere like è null");
-        }
-        if (follower == null) {
-            throw new NullPointerException("L'utente che mette like non può essere null");
-        }
-        if (!userFollowing.containsKey(follower)) {
-            throw new UserNotFoundException(follower);
-        }
+    public List<Post> postsBetween(LocalDateTime from, LocalDateTime to) {
+        List<Post> ret = new ArrayList<>();
 
-        if (userPublished.get(follower) != null && userPublished.get(follower).contains(toLike)) {
-            throw new AutoLikeException(follower, toLike.getId());
+        for (Set<Post> sameTime : hotRange(from, to).values()) {
+            ret.addAll(sameTime);
         }
+        ret.sort(OLDEST_FIRST);
 
-        if (postLikes.containsKey(toLike)) {
-            postLikes.get(toLike).add(follower);
-            
-            userFollowing.get(follower).add(toLike.getAuthor());
-        }
-        else {
-            throw new PostNotFoundException(toLike.getId());
-        }
+        return ret;
     }
 
     /**
-     * @requires toUnlike != null && follower != null && userFollowing(follower) != null &&
-     *           postLikes(toUnlike) != null && postLikes(toUnlike).contains(follower)
-     * @param toUnlike Il post a cui togliere like
-     * @param follower L'utente che toglie il like da toUnlike
-     * @effects Rimuove un like di un post da parte di un utente: se è l'unico post a cui
-     *          aveva messo like, l'utente smette di seguire l'autore del post
-     * @modifies this.postLikes, this.userFollowing
-     * @throws PostNotFoundException Se il post a cui togliere like non è presente nella rete
-     * @throws UserNotFoundException Se l'utente che toglie il like non è registrato nella rete
-     * @throws InvalidOperationException Se si sta cercando di rimuovere un like non registrato
-     * @throws NullPointerException Se toUnlike == null || follower == null
+     * @requires words != null && foreach word in words -> word != null && from != null &&
+     *           to != null && !from.isAfter(to)
+     * @param words La lista delle parole di cui controllare la presenza nei post
+     * @param from  L'istante iniziale dell'intervallo (incluso)
+     * @param to    L'istante finale dell'intervallo (escluso)
+     *
+     * @effects Come containing(words), ma cerca soltanto tra i post pubblicati nell'intervallo
+     *          [from, to) senza visitare gli altri.
+     * @return  La lista dei post dell'intervallo che contengono almeno una delle parole di words,
+     *          dal meno recente al più recente
+     * @throws NullPointerException Se words == null || exists(word in words -> word == null) ||
+     *                              from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
      */
-    public void unLike(Post toUnlike, String follower) throws PostNotFoundException, UserNotFoundException,
-            LikeNotFoundException {
-        if (toUnlike == null) {
-            throw new NullPointerException("Il post a cui togliere like non può essere null");
-        }
-        if (follower == null) {
-            throw new NullPointerException("L'utente che toglie il like non può essere null");
-        }
-        if (!userFollowing.containsKey(follower)) {
-            throw new UserNotFoundException(follower);
+    public List<Post> containing(List<String> words, LocalDateTime from, LocalDateTime to) {
+        if (words == null) {
+            throw new NullPointerException("La lista di parole da cercare non può essere null");
         }
-        if (!postLikes.containsKey(toUnlike)) {
-            throw new PostNotFoundException(toUnlike.getId());
+
+        return containingIn(postsBetween(from, to), words);
+    }
+
+    /**
+     * @requires username != null && userFollowing.containsKey(username) && from != null &&
+     *           to != null && !from.isAfter(to)
+     * @param username L'utente di cui ottenere i post
+     * @param from     L'istante iniziale dell'intervallo (incluso)
+     * @param to       L'istante finale dell'intervallo (escluso)
+     *
+     * @effects Fornisce i post scritti da username nell'intervallo [from, to)
+     * @return  La lista dei post di username pubblicati nell'intervallo, dal meno recente al più
+     *          recente
+     * @throws UserNotFoundException Se l'utente username non è registrato nel social network
+     * @throws NullPointerException Se username == null || from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
+     */
+    public List<Post> writtenBy(String username, LocalDateTime from, LocalDateTime to) throws UserNotFoundException {
+        if (username == null) {
+            throw new NullPointerException("L'autore dei post da cercare non può essere null");
         }
-        if (!postLikes.get(toUnlike).contains(follower)) {
-            throw new LikeNotFoundException(follower, toUnlike.getId());
+        if (!userFollowing.containsKey(username)) {
+            throw new UserNotFoundException(username);
         }
 
-        // Rimuovo l'utente dai like
-        postLikes.get(toUnlike).remove(follower);
+        NavigableMap<Long, Set<Post>> range = hotRange(from, to);
+        Set<Post> published = userPublished.get(username);
+        List<Post> ret = new ArrayList<>();
+
+        // Visito la più piccola tra le due collezioni: i post dell'autore o quelli dell'intervallo
+        if (published.size() < range.size()) {
+            long start = PostImpl.clampedEpochNanos(from);
+            long end = PostImpl.clampedEpochNanos(to);
 
-        // Se il post era l'unico like, allora follower non segue più l'autore
-        if (isOnlyLike(toUnlike, follower)) {
-            userFollowing.get(follower).remove(toUnlike.getAuthor());
+            for (Post p : published) {
+                long time = PostImpl.epochNanosOf(p);
+                if (time >= start && time < end) {
+                    ret.add(p);
+                }
+            }
+        }
+        else {
+            for (Set<Post> sameTime : range.values()) {
+                for (Post p : sameTime) {
+                    if (p.getAuthor().equals(username)) {
+                        ret.add(p);
+                    }
+                }
+            }
         }
+        ret.sort(OLDEST_FIRST);
+
+        return ret;
     }
 
     /**
-     * @requires toPublish != null && postLikes(toPublish) == null &&
-     *           userFollowing(toPublish.author) != null
-     * @param toPublish Il post da pubblicare
+     * @requires username != null && userFollowing.containsKey(username) &&
+     *           la rete non viene modificata mentre lo stream viene consumato (ad esempio è
+     *           uno snapshot)
+     * @param username L'utente di cui ottenere i post
      *
-     * @effects Aggiunge un post alla rete sociale.
-     * @modifies this.postLikes, this.userPublished
-     * @throws PostAlreadyPublishedException Se il post è già stato pubblicato
-     * @throws UserNotFoundException Se l'autore del post non è registrat nella rete sociale
-     * @throws NullPointerException Se toPublish == null
+     * @effects Come writtenBy(username), ma visita i post di username soltanto man mano che
+     *          vengono consumati, senza copiarli: limit e findFirst terminano la visita.
+     * @return  Lo stream dei post scritti da username
+     * @throws UserNotFoundException Se l'utente username non è registrato nel social network
+     * @throws NullPointerException Se username == null
      */
-    public void publishPost(Post toPublish) throws PostAlreadyPublishedException, UserNotFoundException {
-        if (toPublish == null) {
-            throw new NullPointerException("Il post da pubblicare non può essere null");
+    public Stream<Post> streamWrittenBy(String username) throws UserNotFoundException {
+        if (username == null) {
+            throw new NullPointerException("L'autore dei post da cercare non può essere null");
         }
-        if (postLikes.containsKey(toPublish)) {
-            throw new PostAlreadyPublishedException(toPublish.getId());
+        if (!userFollowing.containsKey(username)) {
+            throw new UserNotFoundException(username);
         }
-        if (!userFollowing.containsKey(toPublish.getAuthor())) {
-            throw new UserNotFoundException(toPublish.getAuthor());
+
+        pageInUser(username);
+        return userPublished.get(username).stream();
+    }
+
+    /**
+     * @requires words != null && foreach word in words -> word != null &&
+     *           la rete non viene modificata mentre lo stream viene consumato
+     * @param words La lista delle parole di cui controllare la presenza nei post
+     *
+     * @effects Come containing(words), ma controlla i post soltanto man mano che vengono
+     *          consumati. Ogni post compare al più una volta, anche se contiene più parole
+     *          di words.
+     * @return  Lo stream dei post che contengono almeno una delle parole di words
+     * @throws NullPointerException Se words == null || exists(word in words -> word == null)
+     */
+    public Stream<Post> streamContaining(List<String> words) {
+        Set<String> lowerWords = lowerCase(words);
+        SocialNetworkImpl withCold = coldSnapshot();
+        if (withCold != null) {
+            return withCold.streamContaining(words);
         }
 
-        // Metto il post nella mappa dei like
-        postLikes.put(toPublish, new TreeSet<>());
-        // Aggiungo un post all'autore
-        // Se l'autore non è già presente, creo un nuovo treeset
-        if (userPublished.get(toPublish.getAuthor()) == null) {
-            userPublished.put(toPublish.getAuthor(), new TreeSet<>());
+        Stream<Post> posts = userPublished.values().stream().flatMap(Set::stream);
+        if (coldView != null) {
+            posts = Stream.concat(posts, coldView.stream().map(ColdPostStore.ColdPost::getPost));
         }
-        userPublished.get(toPublish.getAuthor()).add(toPublish);
+        return posts.filter(p -> containsAny(p, lowerWords));
     }
 
     /**
-     * @requires toDelete != null && postLikes(toDelete) != null
+     * @requires from != null && to != null && !from.isAfter(to) &&
+     *           la rete non viene modificata mentre lo stream viene consumato
+     * @param from L'istante iniziale dell'intervallo (incluso)
+     * @param to   L'istante finale dell'intervallo (escluso)
+     *
+     * @effects Come postsBetween(from, to), ma visita l'indice dei post per timestamp soltanto
+     *          man mano che i post vengono consumati: leggere i primi n post dell'intervallo
+     *          costa O(n), indipendentemente dalla sua ampiezza.
+     * @return  Lo stream dei post pubblicati nell'intervallo, dal meno recente al più recente
+     *          e, a parità di timestamp, per id crescente
+     * @throws NullPointerException Se from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
+     */
+    public Stream<Post> streamBetween(LocalDateTime from, LocalDateTime to) {
+        return hotRange(from, to).values().stream()
+                .flatMap(sameTime -> sameTime.size() == 1 ? sameTime.stream() : sameTime.stream().sorted(OLDEST_FIRST));
+    }
+
+    /**
+     * @requires words != null && foreach word in words -> word != null && from != null &&
+     *           to != null && !from.isAfter(to) &&
+     *           la rete non viene modificata mentre lo stream viene consumato
+     * @param words La lista delle parole di cui controllare la presenza nei post
+     * @param from  L'istante iniziale dell'intervallo (incluso)
+     * @param to    L'istante finale dell'intervallo (escluso)
+     *
+     * @effects Come containing(words, from, to), ma controlla i post soltanto man mano che
+     *          vengono consumati. Ogni post compare al più una volta.
+     * @return  Lo stream dei post dell'intervallo che contengono almeno una delle parole di
+     *          words, dal meno recente al più recente
+     * @throws NullPointerException Se words == null || exists(word in words -> word == null) ||
+     *                              from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
+     */
+    public Stream<Post> streamContaining(List<String> words, LocalDateTime from, LocalDateTime to) {
+        Set<String> lowerWords = lowerCase(words);
+
+        return streamBetween(from, to).filter(p -> containsAny(p, lowerWords));
+    }
+
+    /**
+     * @requires words != null && foreach word in words -> word != null
+     * @return  L'insieme delle parole di words in minuscolo
+     * @throws NullPointerException Se words == null || exists(word in words -> word == null)
+     */
+    private static Set<String> lowerCase(List<String> words) {
+        if (words == null) {
+            throw new NullPointerException("La lista di parole da cercare non può essere null");
+        }
+
+        Set<String> ret = new HashSet<>();
+        for (String w : words) {
+            if (w == null) {
+                throw new NullPointerException("Una delle parole da cercare era null");
+            }
+            ret.add(w.toLowerCase());
+        }
+        return ret;
+    }
+
+    /**
+     * @requires p != null && lowerWords != null
+     * @return True se una delle parole del testo di p, in minuscolo, appartiene a lowerWords
+     */
+    private static boolean containsAny(Post p, Set<String> lowerWords) {
+        for (String postWord : p.getText().split(" ")) {
+            if (lowerWords.contains(postWord.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @requires from != null && to != null && !from.isAfter(to)
+     * @effects Fornisce la vista dell'indice dei post per timestamp relativa a [from, to)
+     * @return  La porzione di postsByTime con chiavi in [from, to)
+     * @throws NullPointerException Se from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
+     */
+    private NavigableMap<Long, Set<Post>> range(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            throw new NullPointerException("Gli estremi dell'intervallo non possono essere null");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("L'inizio dell'intervallo non può essere successivo alla fine");
+        }
+
+        // Gli estremi come LocalDateTime.MIN e LocalDateTime.MAX non sono rappresentabili in
+        // nanosecondi, ma includono comunque tutti i post precedenti o successivi
+        return postsByTime.subMap(PostImpl.clampedEpochNanos(from), true, PostImpl.clampedEpochNanos(to), false);
+    }
+
+    /**
+     * @requires from != null && to != null && !from.isAfter(to)
+     * @effects Come range(from, to), ma prima riporta in memoria i post del livello freddo
+     *          pubblicati nell'intervallo
+     * @modifies this
+     * @return  La porzione di postsByTime con chiavi in [from, to)
+     * @throws NullPointerException Se from == null || to == null
+     * @throws IllegalArgumentException Se from è successivo a to
+     */
+    private NavigableMap<Long, Set<Post>> hotRange(LocalDateTime from, LocalDateTime to) {
+        NavigableMap<Long, Set<Post>> ret = range(from, to);
+
+        ColdPostStore store = coldStore;
+        if (store != null) {
+            synchronized (this) {
+                restore(store.pageInRange(PostImpl.clampedEpochNanos(from), PostImpl.clampedEpochNanos(to)));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @requires toLike != null && follower != null && postLikes(toLike) != null &&
+     *           userFollowing(follower) != null && toLike.author != follower
+     * @param toLike Il post a cui mettere like
+     * @param follower L'utente che ha messo like a toLike
+     *
+     * @effects Aggiunge un like da parte di un utente a un post nella rete sociale.
+     * @modifies this.postLikes, this.userFollowing
+     * @throws PostNotFoundException Se il post a cui mettere like non è presente nella rete sociale
+     * @throws AutoLikeException Se follower è l'autore di toLike
+     * @throws UserNotFoundException Se follower non è registrato nella rete sociale
+     * @throws NullPointerException Se toLike == null || follower == null
+     */
+    @Override
+    public synchronized void like(Post toLike, String follower) throws PostNotFoundException,
+            AutoLikeException, UserNotFoundException {
+        switch (likeStatus(toLike, follower)) {
+            case USER_NOT_FOUND:
+                throw new UserNotFoundException(follower);
+            case AUTO_LIKE:
+                throw new AutoLikeException(follower, toLike.getId());
+            case POST_NOT_FOUND:
+                throw new PostNotFoundException(toLike.getId());
+        }
+    }
+
+    /**
+     * @requires toLike != null && follower != null
+     * @param toLike Il post a cui mettere like
+     * @param follower L'utente che ha messo like a toLike
+     *
+     * @effects Come like, ma segnala gli esiti negativi con il valore restituito invece che
+     *          con un'eccezione.
+     * @modifies this.postLikes, this.userFollowing
+     * @return  OK se il like è stato aggiunto, USER_NOT_FOUND, AUTO_LIKE o POST_NOT_FOUND
+     *          altrimenti
+     * @throws NullPointerException Se toLike == null || follower == null
+     */
+    public synchronized OperationStatus tryLike(Post toLike, String follower) {
+        return likeStatus(toLike, follower);
+    }
+
+    /**
+     * @effects Implementazione comune di like e tryLike
+     * @modifies this.postLikes, this.userFollowing
+     * @return  L'esito dell'operazione
+     */
+    private OperationStatus likeStatus(Post toLike, String follower) {
+        checkWritable();
+        if (toLike == null) {
+            throw new NullPointerException("Il post a cui mettere like è null");
+        }
+        if (follower == null) {
+            throw new NullPointerException("L'utente che mette like non può essere null");
+        }
+        if (!userFollowing.containsKey(follower)) {
+            return OperationStatus.USER_NOT_FOUND;
+        }
+        ensureHot(toLike);
+
+        if (userPublished.get(follower) != null && userPublished.get(follower).contains(toLike)) {
+            return OperationStatus.AUTO_LIKE;
+        }
+
+        if (!postLikes.containsKey(toLike)) {
+            return OperationStatus.POST_NOT_FOUND;
+        }
+
+        writableLikes(toLike).add(follower);
+
+        follow(follower, toLike.getAuthor());
+        changed(SocialNetworkEvent.Type.LIKE, follower, toLike, null);
+        return OperationStatus.OK;
+    }
+
+    /**
+     * @requires toUnlike != null && follower != null && userFollowing(follower) != null &&
+     *           postLikes(toUnlike) != null && postLikes(toUnlike).contains(follower)
+     * @param toUnlike Il post a cui togliere like
+     * @param follower L'utente che toglie il like da toUnlike
+     * @effects Rimuove un like di un post da parte di un utente: se è l'unico post a cui
+     *          aveva messo like, l'utente smette di seguire l'autore del post
+     * @modifies this.postLikes, this.userFollowing
+     * @throws PostNotFoundException Se il post a cui togliere like non è presente nella rete
+     * @throws UserNotFoundException Se l'utente che toglie il like non è registrato nella rete
+     * @throws InvalidOperationException Se si sta cercando di rimuovere un like non registrato
+     * @throws NullPointerException Se toUnlike == null || follower == null
+     */
+    public synchronized void unLike(Post toUnlike, String follower) throws PostNotFoundException, UserNotFoundException,
+            LikeNotFoundException {
+        switch (unlikeStatus(toUnlike, follower)) {
+            case USER_NOT_FOUND:
+                throw new UserNotFoundException(follower);
+            case POST_NOT_FOUND:
+                throw new PostNotFoundException(toUnlike.getId());
+            case LIKE_NOT_FOUND:
+                throw new LikeNotFoundException(follower, toUnlike.getId());
+        }
+    }
+
+    /**
+     * @requires toUnlike != null && follower != null
+     * @param toUnlike Il post a cui togliere like
+     * @param follower L'utente che toglie il like da toUnlike
+     *
+     * @effects Come unLike, ma segnala gli esiti negativi con il valore restituito invece che
+     *          con un'eccezione.
+     * @modifies this.postLikes, this.userFollowing
+     * @return  OK se il like è stato rimosso, USER_NOT_FOUND, POST_NOT_FOUND o LIKE_NOT_FOUND
+     *          altrimenti
+     * @throws NullPointerException Se toUnlike == null || follower == null
+     */
+    public synchronized OperationStatus tryUnlike(Post toUnlike, String follower) {
+        return unlikeStatus(toUnlike, follower);
+    }
+
+    /**
+     * @effects Implementazione comune di unLike e tryUnlike
+     * @modifies this.postLikes, this.userFollowing
+     * @return  L'esito dell'operazione
+     */
+    private OperationStatus unlikeStatus(Post toUnlike, String follower) {
+        checkWritable();
+        if (toUnlike == null) {
+            throw new NullPointerException("Il post a cui togliere like non può essere null");
+        }
+        if (follower == null) {
+            throw new NullPointerException("L'utente che toglie il like non può essere null");
+        }
+        if (!userFollowing.containsKey(follower)) {
+            return OperationStatus.USER_NOT_FOUND;
+        }
+        ensureHot(toUnlike);
+        if (!postLikes.containsKey(toUnlike)) {
+            return OperationStatus.POST_NOT_FOUND;
+        }
+        if (!postLikes.get(toUnlike).contains(follower)) {
+            return OperationStatus.LIKE_NOT_FOUND;
+        }
+
+        // Rimuovo l'utente dai like; isOnlyLike deve vedere anche i post freddi dell'autore
+        writableLikes(toUnlike).remove(follower);
+        pageInUser(toUnlike.getAuthor());
+
+        // Se il post era l'unico like, allora follower non segue più l'autore
+        if (isOnlyLike(toUnlike, follower)) {
+            unfollow(follower, toUnlike.getAuthor());
+        }
+        changed(SocialNetworkEvent.Type.UNLIKE, follower, toUnlike, null);
+        return OperationStatus.OK;
+    }
+
+    /**
+     * @requires toPublish != null && postLikes(toPublish) == null &&
+     *           userFollowing(toPublish.author) != null
+     * @param toPublish Il post da pubblicare
+     *
+     * @effects Aggiunge un post alla rete sociale.
+     * @modifies this.postLikes, this.userPublished
+     * @throws PostAlreadyPublishedException Se il post è già stato pubblicato
+     * @throws UserNotFoundException Se l'autore del post non è registrat nella rete sociale
+     * @throws NullPointerException Se toPublish == null
+     */
+    public synchronized void publishPost(Post toPublish) throws PostAlreadyPublishedException, UserNotFoundException {
+        switch (publishStatus(toPublish)) {
+            case POST_ALREADY_PUBLISHED:
+                throw new PostAlreadyPublishedException(toPublish.getId());
+            case USER_NOT_FOUND:
+                throw new UserNotFoundException(toPublish.getAuthor());
+        }
+    }
+
+    /**
+     * @requires toPublish != null
+     * @param toPublish Il post da pubblicare
+     *
+     * @effects Come publishPost, ma segnala gli esiti negativi con il valore restituito invece
+     *          che con un'eccezione.
+     * @modifies this.postLikes, this.userPublished
+     * @return  OK se il post è stato pubblicato, POST_ALREADY_PUBLISHED o USER_NOT_FOUND
+     *          altrimenti
+     * @throws NullPointerException Se toPublish == null
+     */
+    public synchronized OperationStatus tryPublish(Post toPublish) {
+        return publishStatus(toPublish);
+    }
+
+    /**
+     * @effects Implementazione comune di publishPost e tryPublish
+     * @modifies this.postLikes, this.userPublished
+     * @return  L'esito dell'operazione
+     */
+    private OperationStatus publishStatus(Post toPublish) {
+        checkWritable();
+        if (toPublish == null) {
+            throw new NullPointerException("Il post da pubblicare non può essere null");
+        }
+        ensureHot(toPublish);
+        if (postLikes.containsKey(toPublish)) {
+            return OperationStatus.POST_ALREADY_PUBLISHED;
+        }
+        if (!userFollowing.containsKey(toPublish.getAuthor())) {
+            return OperationStatus.USER_NOT_FOUND;
+        }
+
+        // Metto il post nella mappa dei like
+        putOwned(postLikes, toPublish, newLikeSet(toPublish));
+        // Aggiungo un post all'autore
+        // Se l'autore non è già presente, creo un nuovo treeset
+        if (userPublished.get(toPublish.getAuthor()) == null) {
+            putOwned(userPublished, toPublish.getAuthor(), storage.newPostSet());
+        }
+        writable(userPublished, toPublish.getAuthor(), storage::newPostSet).add(toPublish);
+        addByTime(toPublish);
+        if (textStore != null) {
+            textStore.compress(toPublish);
+        }
+        changed(SocialNetworkEvent.Type.PUBLISH_POST, toPublish.getAuthor(), toPublish, null);
+        return OperationStatus.OK;
+    }
+
+    /**
+     * @requires toDelete != null && postLikes(toDelete) != null
      * @param toDelete  Il post da rimuovere dalla rete sociale.
      *
      * @effects Rimuove un post dalla rete sociale: rimuove anche i like di quel post, di
@@ -516,26 +1304,34 @@ public class SocialNetworkImpl implements SocialNetwork{
      * @throws PostNotFoundException Se toDelete non è presente all'interno della rete sociale
      * @throws NullPointerException Se toDelete == null
      */
-    public void deletePost(Post toDelete) throws PostNotFoundException{
+    public synchronized void deletePost(Post toDelete) throws PostNotFoundException{
+        checkWritable();
         if (toDelete == null) {
             throw new NullPointerException("Il post da cancellare non può essere null");
         }
+        ensureHot(toDelete);
         if (!postLikes.containsKey(toDelete)) {
             throw new PostNotFoundException(toDelete.getId());
         }
+        // isOnlyLike deve vedere anche i post freddi dell'autore
+        pageInUser(toDelete.getAuthor());
 
+        // Chi smette di seguire l'autore ha messo like a toDelete: gli altri non vanno controllati
+        List<String> likers = new ArrayList<>(postLikes.get(toDelete));
         // Tolgo il post e cancello i like a quel post
-        postLikes.remove(toDelete);
+        dropLikes(toDelete);
         // Rimuovo il post da quelli pubblicati dall'utente
-        userPublished.get(toDelete.getAuthor()).remove(toDelete);
+        writable(userPublished, toDelete.getAuthor(), storage::newPostSet).remove(toDelete);
+        removeByTime(toDelete);
 
-        // Per ogni utente, controllo se il post era l'unico like o no
-        for (String s : userFollowing.keySet()) {
+        // Per ogni utente che aveva messo like al post, controllo se era l'unico like o no
+        for (String s : likers) {
             // Se era l'unico like, allora l'utente non segue più l'autore del post
             if (isOnlyLike(toDelete, s)) {
-                userFollowing.get(s).remove(toDelete.getAuthor());
+                unfollow(s, toDelete.getAuthor());
             }
         }
+        changed(SocialNetworkEvent.Type.DELETE_POST, toDelete.getAuthor(), toDelete, null);
     }
 
     /**
@@ -551,7 +1347,8 @@ public class SocialNetworkImpl implements SocialNetwork{
      * @throws NullPointerException Se toRegister == null
      */
     @Override
-    public void registerUser(String toRegister) throws InvalidUsernameException, UserAlreadyRegisteredExeption {
+    public synchronized void registerUser(String toRegister) throws InvalidUsernameException, UserAlreadyRegisteredExeption {
+        checkWritable();
         if (toRegister == null) {
             throw new NullPointerException("L'utente da registrare non può essere null");
         }
@@ -567,8 +1364,16 @@ public class SocialNetworkImpl implements SocialNetwork{
         }
 
         // Inizializzo le mappe relative all'utente
-        userFollowing.put(toRegister, new TreeSet<>());
-        userPublished.put(toRegister, new TreeSet<>());
+        putOwned(userFollowing, toRegister, storage.newSet());
+        if (userFollowers != null) {
+            putOwned(userFollowers, toRegister, storage.newSet());
+        }
+        if (followGraph != null) {
+            followGraph.addUser(toRegister);
+            influenceStale = true;
+        }
+        putOwned(userPublished, toRegister, storage.newPostSet());
+        changed(SocialNetworkEvent.Type.REGISTER_USER, toRegister, null, null);
     }
 
     /**
@@ -583,13 +1388,16 @@ public class SocialNetworkImpl implements SocialNetwork{
      * @throws NullPointerException Se user == null
      */
     @Override
-    public void removeUser(String user) throws UserNotFoundException {
+    public synchronized void removeUser(String user) throws UserNotFoundException {
+        checkWritable();
         if (user == null) {
             throw new NullPointerException("L'utente da rimuovere dalla rete non può essere null");
         }
         if (!userFollowing.containsKey(user)) {
             throw new UserNotFoundException(user);
         }
+        // Riporto in memoria i post freddi dell'utente e quelli a cui ha messo like
+        pageInUser(user);
 
         // Cancello tutti i post dell'utente
         for (Post p : new ArrayList<>(userPublished.get(user))) {
@@ -602,13 +1410,33 @@ public class SocialNetworkImpl implements SocialNetwork{
         }
         userPublished.remove(user);
 
-        // Rimuovo tutti i like messi dall'utente
+        // Rimuovo tutti i like messi dall'utente; isEmpty evita di consultare il LikeStore per i
+        // post senza like
         for (Post p : postLikes.keySet()) {
-            postLikes.get(p).remove(user);
+            Set<String> likes = postLikes.get(p);
+            if (!likes.isEmpty() && likes.contains(user)) {
+                writableLikes(p).remove(user);
+            }
         }
 
         // L'utente cancellato non segue più nessuno
+        for (String followed : userFollowing.get(user)) {
+            if (userFollowers != null) {
+                writable(userFollowers, followed, storage::newSet).remove(user);
+            }
+            if (usernames != null) {
+                usernames.add(followed, -1);
+            }
+        }
         userFollowing.remove(user);
+        if (userFollowers != null) {
+            userFollowers.remove(user);
+        }
+        if (followGraph != null) {
+            followGraph.removeUser(user);
+            influenceStale = true;
+        }
+        changed(SocialNetworkEvent.Type.REMOVE_USER, user, null, null);
     }
 
     /**
@@ -622,22 +1450,20 @@ public class SocialNetworkImpl implements SocialNetwork{
      *          numero di occorrenze non crescente.
      */
     public List<String> getTrending() {
-        Pattern regex = Pattern.compile("#\\w+");
+        SocialNetworkImpl withCold = coldSnapshot();
+        if (withCold != null) {
+            return withCold.getTrending();
+        }
+
         List<String> ret = new ArrayList<>();
         Map<String, Integer> tagCount = new TreeMap<>();
         List<Map.Entry<String, Integer>> toSort;
 
         for (Post p : postLikes.keySet()) {
-            Matcher m = regex.matcher(p.getText());
-
-            while (m.find()) {
-                String currentTag = m.group().substring(1).toLowerCase();
-                if (!tagCount.containsKey(currentTag)) {
-                    tagCount.put(currentTag, 0);
-                }
-                // Incremento di 1 il numero di occorrenze del tag
-                tagCount.put(currentTag, tagCount.get(currentTag) + 1);
-            }
+            countHashtags(p.getText(), tagCount);
+        }
+        if (coldView != null) {
+            coldView.stream().forEach(c -> countHashtags(c.getPost().getText(), tagCount));
         }
 
         // Metto in una lista le entry
@@ -666,62 +1492,1173 @@ public class SocialNetworkImpl implements SocialNetwork{
     }
 
     /**
-     * @effects Fornisce una map Utente -> Set<Utente> che rappresenta i follower di un
-     *          certo utente.
-     * @return  Una map Utente -> Set<Utente> che rappresenta l'insieme dei follower
-     *          degli utenti chiave
+     * @requires text != null && tagCount != null
+     * @effects Incrementa in tagCount il numero di occorrenze di ogni hashtag di text
+     * @modifies tagCount
      */
-    private Map<String, Set<String>> getFollowersMap(List<Post> ps) throws PostNotFoundException {
-        Map<String, Set<String>> ret = new TreeMap<>();
+    private static void countHashtags(String text, Map<String, Integer> tagCount) {
+        Matcher m = HASHTAG_PATTERN.matcher(text);
 
-        // Per ogni post, l'autore è una chiave, la lista delle persone a cui piace sono i valori
-        for (Post p : ps) {
-            if (p == null) {
-                throw new NullPointerException("Uno dei post della lista era null");
-            }
-            if (!postLikes.containsKey(p)) {
-                throw new PostNotFoundException(p.getId());
-            }
-            // Se non ho mai incontrato l'autore prima, creo un set
-            if (ret.get(p.getAuthor()) == null) {
-                ret.put(p.getAuthor(), new TreeSet<>());
+        while (m.find()) {
+            String currentTag = m.group().substring(1).toLowerCase();
+            if (!tagCount.containsKey(currentTag)) {
+                tagCount.put(currentTag, 0);
             }
+            // Incremento di 1 il numero di occorrenze del tag
+            tagCount.put(currentTag, tagCount.get(currentTag) + 1);
+        }
+    }
 
-            // Aggiungo tutti i like del post al set
-            for (String like : postLikes.get(p)) {
-                ret.get(p.getAuthor()).add(like);
-            }
+    /**
+     * @effects Iscrive un consumatore al flusso degli eventi di modifica della rete (registerUser,
+     *          removeUser, publishPost, deletePost, like, unLike e, per le reti moderate, report e
+     *          modifiche alle parole proibite). Gli eventi vengono letti a blocchi tramite
+     *          Subscription.poll senza rallentare le operazioni di scrittura; un consumatore che
+     *          resta indietro di più della capacità del buffer perde gli eventi più vecchi.
+     * @return  L'iscrizione al flusso degli eventi, che parte dal prossimo evento pubblicato
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non genera eventi
+     */
+    public EventRingBuffer.Subscription subscribe() {
+        if (events == null) {
+            throw new UnsupportedOperationException("Uno snapshot della rete sociale non genera eventi");
         }
 
-        return ret;
+        return events.subscribe();
     }
 
     /**
-     * @requires liked != null && follower != null
-     * @param liked Il post di cui controllare che sia l'unico like di follower
-     * @param follower L'utente di cui controllare che post sia l'unico like
+     * @return Il numero progressivo dell'ultimo evento pubblicato, -1 se non ce ne sono
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non genera eventi
+     */
+    public synchronized long getLastEventSequence() {
+        if (events == null) {
+            throw new UnsupportedOperationException("Uno snapshot della rete sociale non genera eventi");
+        }
+
+        return events.getCursor();
+    }
+
+    /**
+     * @effects Come subscribe(), ma l'iscrizione è bloccante (vedi
+     *          EventRingBuffer.subscribeBlocking) e non perde eventi: un'operazione che
+     *          sovrascriverebbe un evento non ancora letto attende, mantenendo il lock di this,
+     *          che l'iscrizione lo legga. L'iscrizione va letta da un thread che non acquisisce
+     *          il lock di this e va chiusa con Subscription.close() quando non serve più.
+     * @return  L'iscrizione al flusso degli eventi, che parte dal prossimo evento pubblicato
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non genera eventi
+     */
+    public EventRingBuffer.Subscription subscribeBlocking() {
+        if (events == null) {
+            throw new UnsupportedOperationException("Uno snapshot della rete sociale non genera eventi");
+        }
+
+        return events.subscribeBlocking();
+    }
+
+    /**
+     * @requires user != null && userFollowing(user) != null && limit > 0
+     * @param user   L'utente di cui leggere la home timeline
+     * @param cursor L'ultimo post della pagina precedente, null per partire dal più recente
+     * @param limit  Il numero massimo di post da restituire
      *
-     * @effects Controlla che liked sia l'unico post pubblicato da liked.author a cui
-     *          follower abbia messo like
-     * @return true se liked è l'unico post a cui follower ha messo like tra i post di
-     *         liked.author
-     *         false in ogni altro caso
-     * @throws NullPointerException se liked == null || follower == null
+     * @effects Fornisce una pagina della home timeline di user, ovvero dei post pubblicati
+     *          dagli utenti che segue, dal più recente al meno recente (TimelineCache.NEWEST_FIRST).
+     *          Per leggere la pagina successiva si passa come cursor l'ultimo post ricevuto.
+     *          Se non è configurata una cache con setTimelineCache, la pagina viene calcolata
+     *          fondendo i post di tutti gli autori seguiti.
+     * @modifies this.timelines
+     * @return  Al più limit post della home timeline successivi a cursor, una lista vuota se
+     *          non ce ne sono.
+     * @throws UserNotFoundException Se user non è registrato nella rete
+     * @throws NullPointerException Se user == null
+     * @throws IllegalArgumentException Se limit <= 0
      */
-    private boolean isOnlyLike(Post liked, String follower) {
-        if (follower == null) {
-            throw new NullPointerException("L'utente di cui verificare se è l'unico like non può" +
-                    " esere null");
+    public synchronized List<Post> homeTimeline(String user, Post cursor, int limit) throws UserNotFoundException {
+        if (user == null) {
+            throw new NullPointerException("L'utente di cui leggere la timeline non può essere null");
         }
-        if (liked == null) {
-            throw new NullPointerException("Il post di cui verificare se è l'unico like di follower" +
-                    " non può essere null");
+        if (!userFollowing.containsKey(user)) {
+            throw new UserNotFoundException(user);
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Il numero di post da leggere deve essere positivo");
+        }
+
+        Set<String> followed = userFollowing.get(user);
+        List<Post> ret = hotTimeline(user, cursor, limit);
+
+        // La pagina può comprendere dei post freddi soltanto se arriva fino al più recente di
+        // essi: in tal caso riporto in memoria i blocchi degli autori seguiti
+        ColdPostStore store = coldStore;
+        if (store != null && store.getColdPosts() > 0 && (ret.size() < limit ||
+                PostImpl.epochNanosOf(ret.get(ret.size() - 1)) <= store.getNewestColdNanos())) {
+            List<ColdPostStore.ColdPost> cold = store.pageInUsers(followed);
+            if (!cold.isEmpty()) {
+                restore(cold);
+                ret = hotTimeline(user, cursor, limit);
+            }
+        }
+
+        // Uno snapshot non può riportare in memoria i post freddi: li legge dalla sua versione
+        // del livello freddo
+        if (coldView != null) {
+            List<Post> merged = coldView.streamOf(followed)
+                    .map(ColdPostStore.ColdPost::getPost)
+                    .filter(p -> followed.contains(p.getAuthor()) &&
+                            (cursor == null || TimelineCache.NEWEST_FIRST.compare(p, cursor) > 0))
+                    .collect(Collectors.toCollection(ArrayList::new));
+            merged.addAll(ret);
+            merged.sort(TimelineCache.NEWEST_FIRST);
+            ret = new ArrayList<>(merged.subList(0, Math.min(limit, merged.size())));
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires user != null && userFollowing(user) != null && limit > 0
+     * @effects Calcola una pagina della home timeline di user con i soli post in memoria
+     * @modifies this.timelines
+     * @return  Al più limit post in memoria della home timeline successivi a cursor
+     */
+    private List<Post> hotTimeline(String user, Post cursor, int limit) {
+        if (timelines == null) {
+            return TimelineCache.mergeFollowed(userFollowing.get(user), userPublished, cursor, limit);
+        }
+        return timelines.get(user, userFollowing.get(user), userPublished, cursor, limit);
+    }
+
+    /**
+     * @requires k >= 0
+     * @param k Il numero di utenti da restituire
+     *
+     * @effects Fornisce i k utenti più influenti della rete secondo PageRank sul grafo "segue",
+     *          alternativa a influencers() meno sensibile ai follower fittizi. La classifica
+     *          viene letta da un array già ordinato; se il grafo è cambiato, ne viene richiesto
+     *          il ricalcolo in background e la chiamata restituisce la classifica precedente.
+     *          Soltanto la prima chiamata attende il termine del calcolo.
+     * @modifies this.influence, this.influenceStale
+     * @return  Al più k utenti in ordine non crescente di influenza
+     * @throws IllegalArgumentException Se k < 0
+     * @throws IllegalStateException Se il grafo "segue" non è stato abilitato
+     */
+    public List<String> influencersByRank(int k) {
+        CompletableFuture<Void> pending = null;
+
+        synchronized (this) {
+            checkFollowGraph();
+            if (influenceStale && !influence.isRefreshPending()) {
+                pending = influence.refresh(new FollowGraph(followGraph));
+                influenceStale = false;
+            }
+        }
+        if (pending != null && !influence.hasRanking()) {
+            pending.join();
+        }
+
+        return influence.top(k);
+    }
+
+    /**
+     * @effects Richiede il ricalcolo in background della classifica di influencersByRank sullo
+     *          stato corrente del grafo "segue".
+     * @modifies this.influence, this.influenceStale
+     * @return  Un future completato quando la nuova classifica è disponibile
+     * @throws IllegalStateException Se il grafo "segue" non è stato abilitato
+     */
+    public synchronized CompletableFuture<Void> refreshInfluence() {
+        checkFollowGraph();
+        influenceStale = false;
+        return influence.refresh(new FollowGraph(followGraph));
+    }
+
+    /**
+     * @requires user != null && userFollowing(user) != null && limit > 0
+     * @param user  L'utente a cui suggerire chi seguire
+     * @param limit Il numero massimo di suggerimenti
+     *
+     * @effects Suggerisce a user degli utenti che non segue ancora. Ogni candidato riceve un
+     *          punteggio pari al numero di follower distinti degli autori seguiti da user che
+     *          seguono anche il candidato (amici degli amici). La visita si ferma dopo
+     *          FollowGraph.DEFAULT_VISITED_EDGES archi in tutto, scelti a caso quando non è
+     *          possibile visitarli tutti, per cui il risultato può variare tra una chiamata e
+     *          l'altra per gli utenti molto connessi.
+     * @return  Al più limit utenti in ordine non crescente di punteggio, una lista vuota se
+     *          non ci sono candidati.
+     * @throws UserNotFoundException Se user non è registrato nella rete
+     * @throws NullPointerException Se user == null
+     * @throws IllegalArgumentException Se limit <= 0
+     * @throws IllegalStateException Se il grafo "segue" non è stato abilitato
+     */
+    public synchronized List<String> whoToFollow(String user, int limit) throws UserNotFoundException {
+        checkFollowGraph();
+        if (user == null) {
+            throw new NullPointerException("L'utente a cui suggerire chi seguire non può essere null");
+        }
+        if (!userFollowing.containsKey(user)) {
+            throw new UserNotFoundException(user);
+        }
+
+        return followGraph.recommend(user, limit, FollowGraph.DEFAULT_VISITED_EDGES);
+    }
+
+    /**
+     * @requires follower != null && author != null && userFollowing(follower) != null &&
+     *           userFollowers(author) != null
+     * @param follower L'utente che inizia a seguire author
+     * @param author   L'utente seguito
+     *
+     * @effects Registra che follower segue author
+     * @modifies this.userFollowing, this.userFollowers, this.timelines
+     */
+    protected void follow(String follower, String author) {
+        if (writable(userFollowing, follower, storage::newSet).add(author)) {
+            if (userFollowers != null) {
+                writable(userFollowers, author, storage::newSet).add(follower);
+            }
+            if (usernames != null) {
+                usernames.add(author, 1);
+            }
+            if (followGraph != null) {
+                followGraph.addEdge(follower, author);
+                influenceStale = true;
+            }
+            if (timelines != null) {
+                timelines.invalidate(follower);
+            }
+        }
+    }
+
+    /**
+     * @requires follower != null && author != null && userFollowing(follower) != null
+     * @param follower L'utente che smette di seguire author
+     * @param author   L'utente che non è più seguito
+     *
+     * @effects Registra che follower non segue più author
+     * @modifies this.userFollowing, this.userFollowers, this.timelines
+     */
+    protected void unfollow(String follower, String author) {
+        if (userFollowing.get(follower).contains(author)) {
+            writable(userFollowing, follower, storage::newSet).remove(author);
+            if (userFollowers != null) {
+                writable(userFollowers, author, storage::newSet).remove(follower);
+            }
+            if (usernames != null) {
+                usernames.add(author, -1);
+            }
+            if (followGraph != null) {
+                followGraph.removeEdge(follower, author);
+                influenceStale = true;
+            }
+            if (timelines != null) {
+                timelines.invalidate(follower);
+            }
+        }
+    }
+
+    /**
+     * @effects Fornisce le statistiche approssimate della rete (utenti distinti, frequenze e
+     *          elementi più frequenti di hashtag e menzioni), aggiornate a ogni pubblicazione e
+     *          a ogni like con memoria limitata. I limiti di errore sono descritti in
+     *          NetworkSketches.
+     * @return  Le statistiche approssimate configurate con setSketches, null se non sono
+     *          state configurate
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non mantiene statistiche
+     */
+    public NetworkSketches getSketches() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Uno snapshot della rete sociale non mantiene statistiche");
+        }
+
+        return sketches;
+    }
+
+    /**
+     * @requires prefix != null && k >= 0
+     * @param prefix Il prefisso da completare, eventualmente preceduto da '@'
+     * @param k      Il numero massimo di utenti da suggerire
+     *
+     * @effects Suggerisce gli utenti registrati il cui nome inizia con prefix, per
+     *          l'autocompletamento delle menzioni, senza visitare tutti gli utenti.
+     * @return  Al più k utenti in ordine non crescente di numero di follower e, a parità, in
+     *          ordine alfabetico
+     * @throws NullPointerException Se prefix == null
+     * @throws IllegalArgumentException Se k < 0
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non mantiene l'indice
+     * @throws IllegalStateException Se l'autocompletamento non è stato abilitato
+     */
+    public List<String> completeUsername(String prefix, int k) {
+        PrefixIndex usernames = checkAutocomplete(this.usernames);
+        if (prefix == null) {
+            throw new NullPointerException("Il prefisso da completare non può essere null");
+        }
+
+        return usernames.complete(prefix.startsWith("@") ? prefix.substring(1) : prefix, k);
+    }
+
+    /**
+     * @requires prefix != null && k >= 0
+     * @param prefix Il prefisso da completare, eventualmente preceduto da '#'
+     * @param k      Il numero massimo di hashtag da suggerire
+     *
+     * @effects Suggerisce gli hashtag dei post pubblicati che iniziano con prefix, senza
+     *          distinguere maiuscole e minuscole come in getTrending.
+     * @return  Al più k hashtag in minuscolo e senza '#', in ordine non crescente di occorrenze
+     *          e, a parità, in ordine alfabetico
+     * @throws NullPointerException Se prefix == null
+     * @throws IllegalArgumentException Se k < 0
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non mantiene l'indice
+     * @throws IllegalStateException Se l'autocompletamento non è stato abilitato
+     */
+    public List<String> completeHashtag(String prefix, int k) {
+        PrefixIndex hashtags = checkAutocomplete(this.hashtags);
+        if (prefix == null) {
+            throw new NullPointerException("Il prefisso da completare non può essere null");
+        }
+
+        return hashtags.complete((prefix.startsWith("#") ? prefix.substring(1) : prefix).toLowerCase(), k);
+    }
+
+    /**
+     * @requires p != null
+     * @param p     Il post pubblicato o cancellato
+     * @param delta 1 se p è stato pubblicato, -1 se è stato cancellato
+     * @effects Aggiorna il numero di occorrenze degli hashtag di p
+     * @modifies this.hashtags
+     */
+    private void countHashtags(Post p, int delta) {
+        Matcher m = HASHTAG_PATTERN.matcher(p.getText());
+        while (m.find()) {
+            hashtags.add(m.group().substring(1).toLowerCase(), delta);
+        }
+    }
+
+    /**
+     * @requires type != null && il chiamante possiede il lock di this
+     * @param type Il tipo di modifica effettuata
+     * @param user L'utente coinvolto nella modifica, può essere null
+     * @param post Il post coinvolto nella modifica, può essere null
+     * @param word La parola coinvolta nella modifica, può essere null
+     *
+     * @effects Registra una modifica della rete: incrementa la versione e pubblica l'evento
+     *          corrispondente.
+     * @modifies this.version, this.events
+     */
+    protected void changed(SocialNetworkEvent.Type type, String user, Post post, String word) {
+        version++;
+
+        if (type == SocialNetworkEvent.Type.REGISTER_USER) {
+            if (usernames != null) {
+                usernames.put(user, 1);
+            }
+        }
+        else if (type == SocialNetworkEvent.Type.PUBLISH_POST) {
+            if (timelines != null) {
+                timelines.postPublished(post, userFollowers.get(post.getAuthor()), userPublished.get(post.getAuthor()));
+            }
+            if (sketches != null) {
+                sketches.postPublished(post, userFollowing::containsKey);
+            }
+            if (hashtags != null) {
+                countHashtags(post, 1);
+            }
+        }
+        else if (type == SocialNetworkEvent.Type.LIKE) {
+            if (sketches != null) {
+                sketches.liked(post.getAuthor(), user);
+            }
+            if (queryCache != null) {
+                queryCache.likesChanged(post.getAuthor());
+            }
+        }
+        else if (type == SocialNetworkEvent.Type.UNLIKE) {
+            if (queryCache != null) {
+                queryCache.likesChanged(post.getAuthor());
+            }
+        }
+        else if (type == SocialNetworkEvent.Type.DELETE_POST) {
+            if (timelines != null) {
+                timelines.postDeleted(post, userFollowers.get(post.getAuthor()));
+            }
+            if (queryCache != null) {
+                queryCache.postDeleted(post.getAuthor());
+            }
+            if (hashtags != null) {
+                countHashtags(post, -1);
+            }
+        }
+        else if (type == SocialNetworkEvent.Type.REMOVE_USER) {
+            if (timelines != null) {
+                timelines.userRemoved(user);
+            }
+            if (sketches != null) {
+                sketches.userRemoved(user);
+            }
+            if (usernames != null) {
+                usernames.put(user, 0);
+            }
+            // La rimozione toglie i like dell'utente dai post di qualsiasi autore
+            if (queryCache != null) {
+                queryCache.clear();
+            }
+        }
+
+        if (trendingWindow != null) {
+            if (type == SocialNetworkEvent.Type.PUBLISH_POST) {
+                trendingWindow.add(post);
+            }
+            else if (type == SocialNetworkEvent.Type.DELETE_POST) {
+                trendingWindow.remove(post);
+            }
+        }
+
+        events.publish(type, user, post, word);
+    }
+
+    /**
+     * @effects Crea lo snapshot della rete. Le sottoclassi che aggiungono stato devono
+     *          ridefinire questo metodo in modo che lo snapshot lo includa.
+     * @return  Una copia in sola lettura di this
+     */
+    protected SocialNetwork createSnapshot() {
+        return new SocialNetworkImpl(this);
+    }
+
+    /**
+     * @effects Verifica che la rete possa essere modificata
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    protected void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Impossibile modificare uno snapshot della rete sociale");
+        }
+    }
+
+    /**
+     * @requires source != null && view != null && ret != null && ret.isEmpty()
+     * @param source La map dei like, con insiemi che sono viste di un LikeStore
+     * @param view   La versione del LikeStore da cui leggere i like
+     * @param ret    La map vuota in cui copiare source
+     *
+     * @effects Copia le chiavi di source associando a ogni post l'insieme dei suoi like in
+     *          view, senza copiare i like
+     * @modifies ret
+     * @return  ret, in cui ogni insieme è immodificabile
+     */
+    private static <M extends Map<Post, Set<String>>> M viewOf(Map<Post, Set<String>> source, LikeStore.View view,
+                                                              M ret) {
+        for (Post p : source.keySet()) {
+            ret.put(p, view.likesOf(p.getId()));
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires source != null && ret != null && ret.isEmpty()
+     * @param source La map da copiare
+     * @param ret    La map vuota in cui copiare source
+     *
+     * @effects Copia una map i cui valori sono insiemi senza copiare gli insiemi, che restano
+     *          condivisi con source: chi modifica source deve prima ottenerli con writable.
+     * @modifies ret
+     * @return  ret
+     */
+    protected static <K, V, M extends Map<K, Set<V>>> M shareOf(Map<K, Set<V>> source, M ret) {
+        ret.putAll(source);
+        return ret;
+    }
+
+    /**
+     * @requires map != null && newSet != null && map è una delle map di this &&
+     *           il chiamante possiede il lock di this
+     * @param map    La map che contiene l'insieme da modificare
+     * @param key    La chiave dell'insieme da modificare
+     * @param newSet Il costruttore degli insiemi di map
+     *
+     * @effects Fornisce l'insieme associato a key in map, pronto per essere modificato: se
+     *          l'insieme è condiviso con uno snapshot lo sostituisce in map con una copia, in
+     *          modo che lo snapshot non veda la modifica.
+     * @modifies map, this.owned
+     * @return  L'insieme associato a key, null se key non è presente in map
+     */
+    protected <K, V> Set<V> writable(Map<K, Set<V>> map, K key, Supplier<Set<V>> newSet) {
+        Set<V> set = map.get(key);
+        if (set == null || owned == null || owned.contains(set)) {
+            return set;
+        }
+
+        Set<V> copy = newSet.get();
+        copy.addAll(set);
+        map.put(key, copy);
+        owned.add(copy);
+        return copy;
+    }
+
+    /**
+     * @requires map != null && set != null && map è una delle map di this && set non è
+     *           condiviso con nessuno snapshot && il chiamante possiede il lock di this
+     * @param map La map a cui aggiungere l'insieme
+     * @param key La chiave dell'insieme
+     * @param set L'insieme appena creato
+     *
+     * @effects Associa set a key in map, registrandolo tra gli insiemi di this in modo che
+     *          writable non lo copi prima del prossimo snapshot
+     * @modifies map, this.owned
+     * @return  set
+     */
+    protected <K, V> Set<V> putOwned(Map<K, Set<V>> map, K key, Set<V> set) {
+        map.put(key, set);
+        if (owned != null) {
+            owned.add(set);
+        }
+        return set;
+    }
+
+    /**
+     * @requires p != null && postLikes(p) != null && il chiamante possiede il lock di this
+     * @return  L'insieme dei like di p, pronto per essere modificato (vedi writable). Le viste
+     *          del LikeStore non sono mai condivise con uno snapshot.
+     * @modifies this.postLikes, this.owned
+     */
+    protected Set<String> writableLikes(Post p) {
+        return likeStore != null ? postLikes.get(p) : writable(postLikes, p, storage::newSet);
+    }
+
+    /**
+     * @requires p != null && postLikes(p) != null && il chiamante possiede il lock di this
+     * @effects Rimuove p da postLikes, cancellandone i like dal LikeStore se è configurato.
+     *          Gli insiemi in memoria non vengono svuotati, perché possono essere condivisi
+     *          con uno snapshot.
+     * @modifies this.postLikes, this.likeStore
+     */
+    private void dropLikes(Post p) {
+        Set<String> likes = postLikes.remove(p);
+        if (likeStore != null) {
+            likes.clear();
+        }
+    }
+
+    /**
+     * @requires p != null && il chiamante possiede il lock di this
+     * @effects Toglie p dall'indice dei post per timestamp
+     * @modifies this.postsByTime, this.owned
+     */
+    private void removeByTime(Post p) {
+        long time = PostImpl.epochNanosOf(p);
+        Set<Post> sameTime = writable(postsByTime, time, storage::newPostSet);
+        if (sameTime != null && sameTime.remove(p) && sameTime.isEmpty()) {
+            postsByTime.remove(time);
+        }
+    }
+
+    /**
+     * @requires p != null && il chiamante possiede il lock di this
+     * @effects Aggiunge p all'indice dei post per timestamp
+     * @modifies this.postsByTime, this.owned
+     */
+    private void addByTime(Post p) {
+        long time = PostImpl.epochNanosOf(p);
+        Set<Post> sameTime = writable(postsByTime, time, storage::newPostSet);
+        if (sameTime == null) {
+            sameTime = putOwned(postsByTime, time, storage.newPostSet());
+        }
+        sameTime.add(p);
+    }
+
+    /**
+     * @requires cache != null && cache è vuota
+     * @param cache La cache in cui mantenere le home timeline
+     *
+     * @effects Mantiene in cache le home timeline lette con homeTimeline, aggiornandole a ogni
+     *          pubblicazione con il fan-out in scrittura descritto in TimelineCache, e abilita
+     *          l'indice dei follower di ogni utente su cui si basa il fan-out. Senza cache,
+     *          homeTimeline fonde a ogni lettura i post di tutti gli autori seguiti.
+     * @modifies this.timelines, this.userFollowers
+     * @throws NullPointerException Se cache == null
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setTimelineCache(TimelineCache cache) {
+        checkWritable();
+        if (cache == null) {
+            throw new NullPointerException("La cache delle timeline non può essere null");
+        }
+
+        if (userFollowers == null) {
+            userFollowers = storage.newMap();
+            for (String u : userFollowing.keySet()) {
+                putOwned(userFollowers, u, storage.newSet());
+            }
+            for (Map.Entry<String, Set<String>> e : userFollowing.entrySet()) {
+                for (String followed : e.getValue()) {
+                    userFollowers.get(followed).add(e.getKey());
+                }
+            }
+        }
+        // La cache deve sapere quali autori hanno id che non seguono l'ordine dei timestamp
+        for (Set<Post> published : userPublished.values()) {
+            for (Post p : published) {
+                cache.postAdded(p, published);
+            }
+        }
+        timelines = cache;
+    }
+
+    /**
+     * @effects Abilita il grafo "segue" con identificatori numerici su cui si basano
+     *          whoToFollow e influencersByRank, costruendolo dallo stato corrente; da ora in
+     *          poi viene aggiornato a ogni modifica di chi segue chi. Non ha effetto se il
+     *          grafo è già abilitato.
+     * @modifies this.followGraph, this.influenceStale
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void enableFollowGraph() {
+        checkWritable();
+        if (followGraph != null) {
+            return;
+        }
+
+        FollowGraph graph = new FollowGraph();
+        for (String u : userFollowing.keySet()) {
+            graph.addUser(u);
+        }
+        for (Map.Entry<String, Set<String>> e : userFollowing.entrySet()) {
+            for (String followed : e.getValue()) {
+                graph.addEdge(e.getKey(), followed);
+            }
+        }
+        followGraph = graph;
+        influenceStale = true;
+    }
+
+    /**
+     * @requires cache != null
+     * @param cache La cache in cui salvare i risultati
+     *
+     * @effects Salva in cache, svuotata, i risultati di guessFollowers e writtenBy(ps, username),
+     *          invalidandoli alle modifiche dei post e dei like del loro autore. Gli snapshot
+     *          creati da ora in poi hanno una propria cache.
+     * @modifies this.queryCache, cache
+     * @throws NullPointerException Se cache == null
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setQueryCache(QueryCache cache) {
+        checkWritable();
+        if (cache == null) {
+            throw new NullPointerException("La cache delle interrogazioni non può essere null");
+        }
+
+        cache.clear();
+        queryCache = cache;
+    }
+
+    /**
+     * @return La cache delle interrogazioni configurata con setQueryCache, con le sue
+     *         statistiche; null se non è stata configurata
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @requires sketches != null && sketches è vuota
+     * @param sketches Le statistiche approssimate da mantenere
+     *
+     * @effects Conta in sketches i post pubblicati e i loro like, e da ora in poi li aggiorna a
+     *          ogni pubblicazione, like e rimozione di un utente (vedi getSketches).
+     * @modifies this.sketches, sketches
+     * @throws NullPointerException Se sketches == null
+     * @throws IllegalStateException Se il livello freddo contiene dei post, che non potrebbero
+     *                               essere contati
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setSketches(NetworkSketches sketches) {
+        checkWritable();
+        if (sketches == null) {
+            throw new NullPointerException("Le statistiche approssimate non possono essere null");
+        }
+        checkNoColdPosts();
+
+        for (Map.Entry<Post, Set<String>> e : postLikes.entrySet()) {
+            sketches.postPublished(e.getKey(), userFollowing::containsKey);
+            for (String liker : e.getValue()) {
+                sketches.liked(e.getKey().getAuthor(), liker);
+            }
+        }
+        this.sketches = sketches;
+    }
+
+    /**
+     * @effects Abilita l'autocompletamento di completeUsername e completeHashtag, indicizzando
+     *          gli utenti registrati e gli hashtag dei post pubblicati; da ora in poi gli
+     *          indici vengono aggiornati a ogni modifica. Non ha effetto se l'autocompletamento
+     *          è già abilitato.
+     * @modifies this.usernames, this.hashtags
+     * @throws IllegalStateException Se il livello freddo contiene dei post, i cui hashtag non
+     *                               potrebbero essere contati
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void enableAutocomplete() {
+        checkWritable();
+        if (usernames != null) {
+            return;
+        }
+        checkNoColdPosts();
+
+        usernames = new PrefixIndex();
+        for (String u : userFollowing.keySet()) {
+            usernames.put(u, 1);
+        }
+        for (Set<String> followed : userFollowing.values()) {
+            for (String u : followed) {
+                usernames.add(u, 1);
+            }
+        }
+
+        hashtags = new PrefixIndex();
+        for (Post p : postLikes.keySet()) {
+            countHashtags(p, 1);
+        }
+    }
+
+    /**
+     * @effects Verifica che il grafo "segue" sia abilitato
+     * @throws IllegalStateException Se il grafo "segue" non è stato abilitato
+     */
+    private void checkFollowGraph() {
+        if (followGraph == null) {
+            throw new IllegalStateException("Il grafo \"segue\" non è stato abilitato");
+        }
+    }
+
+    /**
+     * @param index Uno degli indici per l'autocompletamento
+     * @return index, se l'autocompletamento è abilitato
+     * @throws UnsupportedOperationException Se this è uno snapshot, che non mantiene gli indici
+     * @throws IllegalStateException Se l'autocompletamento non è stato abilitato
+     */
+    private PrefixIndex checkAutocomplete(PrefixIndex index) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Uno snapshot della rete sociale non mantiene gli indici per l'autocompletamento");
+        }
+        if (index == null) {
+            throw new IllegalStateException("L'autocompletamento non è stato abilitato");
+        }
+        return index;
+    }
+
+    /**
+     * @effects Verifica che il livello freddo, se configurato, non contenga post
+     * @throws IllegalStateException Se il livello freddo contiene dei post
+     */
+    private void checkNoColdPosts() {
+        if (coldStore != null && coldStore.getColdPosts() > 0) {
+            throw new IllegalStateException("Il livello freddo contiene dei post");
+        }
+    }
+
+    /**
+     * @requires window != null && buckets > 0 && window.toMillis() >= buckets
+     * @param window  La durata della finestra su cui calcolare gli hashtag di tendenza
+     * @param buckets Il numero di intervalli in cui dividere la finestra: più intervalli
+     *                rendono la finestra più precisa, al costo di più memoria
+     *
+     * @effects Abilita il calcolo degli hashtag di tendenza sulla finestra temporale più
+     *          recente di durata window, contando gli hashtag dei post già pubblicati il cui
+     *          timestamp cade nella finestra. La finestra viene poi aggiornata a ogni
+     *          pubblicazione e cancellazione di un post.
+     * @modifies this.trendingWindow
+     * @throws NullPointerException Se window == null
+     * @throws IllegalArgumentException Se buckets <= 0 || window.toMillis() < buckets
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setTrendingWindow(Duration window, int buckets) {
+        checkWritable();
+
+        TrendingWindow newWindow = new TrendingWindow(window, buckets);
+        for (Post p : postLikes.keySet()) {
+            newWindow.add(p);
+        }
+        trendingWindow = newWindow;
+    }
+
+    /**
+     * @effects Fornisce la lista degli hashtag presenti nei post il cui timestamp cade
+     *          all'interno della finestra configurata con setTrendingWindow, in ordine non
+     *          crescente di numero di occorrenze. Gli hashtag sono riconosciuti come in
+     *          getTrending, ma il costo non dipende dai post usciti dalla finestra.
+     * @modifies this.trendingWindow
+     * @return  La lista degli hashtag di tendenza nella finestra, vuota se non ce ne sono.
+     * @throws IllegalStateException Se la finestra non è stata configurata
+     */
+    public synchronized List<String> getTrendingNow() {
+        if (trendingWindow == null) {
+            throw new IllegalStateException("La finestra degli hashtag di tendenza non è stata configurata");
+        }
+
+        return trendingWindow.getTrending();
+    }
+
+    /**
+     * @requires store != null
+     * @param store Il livello freddo in cui spostare i post più vecchi
+     *
+     * @effects Abilita lo spostamento su disco dei post più vecchi con evictColdPosts
+     * @modifies this.coldStore
+     * @throws NullPointerException Se store == null
+     * @throws IllegalStateException Se il livello freddo configurato in precedenza contiene
+     *                               ancora dei post
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setColdStore(ColdPostStore store) {
+        checkWritable();
+        if (store == null) {
+            throw new NullPointerException("Il livello freddo non può essere null");
+        }
+        if (coldStore != null && coldStore.getColdPosts() > 0) {
+            throw new IllegalStateException("Il livello freddo precedente contiene ancora dei post");
+        }
+
+        coldStore = store;
+    }
+
+    /**
+     * @return Il livello freddo configurato con setColdStore, con le sue statistiche; null se
+     *         non è stato configurato
+     */
+    public ColdPostStore getColdStore() {
+        return coldStore;
+    }
+
+    /**
+     * @requires before != null
+     * @param before L'istante prima del quale un post è considerato freddo
+     *
+     * @effects Sposta nel livello freddo i post pubblicati prima di before e i loro like,
+     *          liberando la memoria che occupano. I post freddi restano pubblicati: vengono
+     *          riportati in memoria, a blocchi, dalle operazioni che li riguardano (like,
+     *          unLike, deletePost, publishPost dello stesso post, segnalazioni), da
+     *          guessFollowers, getMentionedUsers e writtenBy su una lista che li contiene, da
+     *          writtenBy e removeUser del loro autore o di un utente che ha messo loro like e
+     *          dalle interrogazioni su un intervallo di tempo che li comprende e da
+     *          homeTimeline, per gli autori seguiti, quando la pagina arriva fino ai post freddi.
+     *          Le interrogazioni sull'intera rete (influencers, getMentionedUsers(), getTrending,
+     *          containing(words), streamContaining(words)) leggono i post freddi senza
+     *          riportarli in memoria, da uno snapshot; gli snapshot leggono i post freddi dalla
+     *          versione del livello freddo in cui sono stati creati (ColdPostStore.view).
+     *          I post che keepHot indica di tenere in memoria non vengono spostati. La cache
+     *          delle timeline e quella delle interrogazioni dimenticano i post spostati, che
+     *          vengono riletti dal disco come nuove istanze.
+     * @modifies this.postLikes, this.userPublished, this.postsByTime, this.coldStore
+     * @return  Il numero di post spostati nel livello freddo
+     * @throws IOException Se non è possibile scrivere i post su disco: in tal caso la rete non
+     *                     viene modificata
+     * @throws NullPointerException Se before == null
+     * @throws IllegalStateException Se il livello freddo non è stato configurato
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized int evictColdPosts(LocalDateTime before) throws IOException {
+        checkWritable();
+        if (before == null) {
+            throw new NullPointerException("L'istante prima del quale spostare i post non può essere null");
+        }
+        if (coldStore == null) {
+            throw new IllegalStateException("Il livello freddo non è stato configurato");
+        }
+
+        NavigableMap<Long, Set<Post>> cold = postsByTime.headMap(PostImpl.clampedEpochNanos(before), false);
+        List<Post> posts = new ArrayList<>();
+        for (Set<Post> sameTime : cold.values()) {
+            for (Post p : sameTime) {
+                if (!keepHot(p)) {
+                    posts.add(p);
+                }
+            }
+        }
+        if (posts.isEmpty()) {
+            return 0;
+        }
+
+        coldStore.write(posts, postLikes);
+
+        for (Post p : posts) {
+            // I like sono nel livello freddo: li cancello anche dall'archivio dei like
+            dropLikes(p);
+            writable(userPublished, p.getAuthor(), storage::newPostSet).remove(p);
+            removeByTime(p);
+        }
+        // Le istanze spostate non devono restare raggiungibili dalle cache: una volta rilette
+        // dal disco sarebbero duplicate
+        if (timelines != null) {
+            timelines.postsEvicted(new HashSet<>(posts));
+        }
+        if (queryCache != null) {
+            queryCache.clear();
+        }
+        version++;
+        return posts.size();
+    }
+
+    /**
+     * @requires p != null && postLikes(p) != null
+     * @param p Un post che evictColdPosts sposterebbe nel livello freddo
+     * @return  True se p deve restare in memoria, ad esempio perché altre strutture delle
+     *          sottoclassi lo usano come chiave; la rete di base sposta tutti i post
+     */
+    protected boolean keepHot(Post p) {
+        return false;
+    }
+
+    /**
+     * @effects Se la rete ha dei post nel livello freddo e non è uno snapshot, fornisce uno
+     *          snapshot con cui eseguire le interrogazioni sull'intera rete, che legge i post
+     *          freddi senza riportarli in memoria
+     * @modifies this.lastSnapshot, this.lastSnapshotVersion, this.owned
+     * @return  Lo snapshot, null se la rete non ha post freddi o è essa stessa uno snapshot
+     */
+    private SocialNetworkImpl coldSnapshot() {
+        ColdPostStore store = coldStore;
+        if (readOnly || store == null || store.getColdPosts() == 0) {
+            return null;
+        }
+        return (SocialNetworkImpl) snapshot();
+    }
+
+    /**
+     * @effects Riporta in memoria tutti i post del livello freddo
+     * @modifies this.postLikes, this.userPublished, this.postsByTime, this.coldStore
+     * @return  Il numero di post riportati in memoria
+     * @throws UncheckedIOException Se non è possibile leggere i post dal disco
+     */
+    public synchronized int pageInAll() {
+        if (coldStore == null) {
+            return 0;
+        }
+
+        List<ColdPostStore.ColdPost> cold = coldStore.pageInAll();
+        restore(cold);
+        return cold.size();
+    }
+
+    /**
+     * @param p Il post di cui ha bisogno un'operazione
+     *
+     * @effects Se p si trova nel livello freddo, lo riporta in memoria insieme agli altri post
+     *          del suo blocco; registra negli indicatori del livello freddo se p era già in
+     *          memoria.
+     * @modifies this.postLikes, this.userPublished, this.postsByTime, this.coldStore
+     * @throws UncheckedIOException Se non è possibile leggere i post dal disco
+     */
+    protected void ensureHot(Post p) {
+        ColdPostStore store = coldStore;
+        if (store == null || p == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (postLikes.containsKey(p)) {
+                store.hit();
+            }
+            else {
+                restore(store.pageIn(p.getId()));
+            }
+        }
+    }
+
+    /**
+     * @requires ps != null
+     * @effects Applica ensureHot a ogni post di ps
+     * @modifies this.postLikes, this.userPublished, this.postsByTime, this.coldStore
+     */
+    private void ensureHot(List<Post> ps) {
+        if (coldStore == null) {
+            return;
+        }
+
+        for (Post p : ps) {
+            ensureHot(p);
+        }
+    }
+
+    /**
+     * @requires user != null
+     * @effects Riporta in memoria i post freddi di cui user è l'autore o a cui ha messo like
+     * @modifies this.postLikes, this.userPublished, this.postsByTime, this.coldStore
+     * @throws UncheckedIOException Se non è possibile leggere i post dal disco
+     */
+    protected void pageInUser(String user) {
+        ColdPostStore store = coldStore;
+        if (store == null) {
+            return;
+        }
+
+        synchronized (this) {
+            restore(store.pageInUser(user));
+        }
+    }
+
+    /**
+     * @requires cold != null && foreach c in cold -> c.getPost() non è in memoria &&
+     *           l'autore e gli utenti che hanno messo like a c.getPost() sono registrati
+     * @effects Rimette in memoria i post letti dal livello freddo, con i loro like
+     * @modifies this.postLikes, this.userPublished, this.postsByTime, this.version, this.timelines
+     */
+    private void restore(List<ColdPostStore.ColdPost> cold) {
+        for (ColdPostStore.ColdPost c : cold) {
+            Post p = c.getPost();
+            Set<String> likes = newLikeSet(p);
+            likes.addAll(c.getLikes());
+
+            putOwned(postLikes, p, likes);
+            writable(userPublished, p.getAuthor(), storage::newPostSet).add(p);
+            addByTime(p);
+            if (timelines != null) {
+                timelines.postAdded(p, userPublished.get(p.getAuthor()));
+            }
+            if (textStore != null) {
+                textStore.compress(p);
+            }
+        }
+        if (!cold.isEmpty()) {
+            version++;
+        }
+    }
+
+    /**
+     * @requires store != null
+     * @param store L'archivio su disco in cui memorizzare i like
+     *
+     * @effects Memorizza i like dei post pubblicati da ora in poi in store invece che in
+     *          memoria: like, unLike, deletePost e removeUser li aggiornano in store e
+     *          guessFollowers e le altre interrogazioni li leggono da store, con la stessa
+     *          semantica. Gli snapshot leggono i like da una versione congelata di store (vedi
+     *          LikeStore.view), senza copiarli.
+     * @modifies this.likeStore
+     * @throws NullPointerException Se store == null
+     * @throws IllegalStateException Se la rete contiene già dei post
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setLikeStore(LikeStore store) {
+        checkWritable();
+        if (store == null) {
+            throw new NullPointerException("L'archivio dei like non può essere null");
+        }
+        if (!postLikes.isEmpty() || (coldStore != null && coldStore.getColdPosts() > 0)) {
+            throw new IllegalStateException("L'archivio dei like va configurato prima di pubblicare dei post");
+        }
+
+        likeStore = store;
+    }
+
+    /**
+     * @return L'archivio dei like configurato con setLikeStore, con le sue statistiche; null
+     *         se non è stato configurato
+     */
+    public LikeStore getLikeStore() {
+        return likeStore;
+    }
+
+    /**
+     * @requires store != null
+     * @param store Il compressore dei testi dei post
+     *
+     * @effects Comprime con store il testo dei post pubblicati da ora in poi (e di quelli
+     *          riportati in memoria dal livello freddo). I post restano immutabili: getText
+     *          decomprime il testo a ogni chiamata. Dopo ogni addestramento di un nuovo
+     *          dizionario, store ricomprime in background i post della rete, letti da uno
+     *          snapshot, in modo da liberare i dizionari precedenti.
+     * @modifies this.textStore, store
+     * @throws NullPointerException Se store == null
+     * @throws UnsupportedOperationException Se this è uno snapshot in sola lettura
+     */
+    public synchronized void setTextStore(PostTextStore store) {
+        checkWritable();
+        if (store == null) {
+            throw new NullPointerException("Il compressore dei testi non può essere null");
+        }
+
+        textStore = store;
+        store.setRepackSource(() -> ((SocialNetworkImpl) snapshot()).postLikes.keySet());
+    }
+
+    /**
+     * @return Il compressore dei testi configurato con setTextStore, con le sue statistiche;
+     *         null se non è stato configurato
+     */
+    public PostTextStore getTextStore() {
+        return textStore;
+    }
+
+    /**
+     * @requires p != null
+     * @return Un insieme vuoto in cui memorizzare i like di p: una vista di likeStore se è
+     *         configurato, altrimenti un insieme di storage
+     */
+    protected Set<String> newLikeSet(Post p) {
+        return likeStore != null ? likeStore.likesOf(p.getId()) : storage.newSet();
+    }
+
+    /**
+     * @effects Fornisce una map Utente -> Set<Utente> che rappresenta i follower di un
+     *          certo utente.
+     * @return  Una map Utente -> Set<Utente> che rappresenta l'insieme dei follower
+     *          degli utenti chiave
+     */
+    private Map<String, Set<String>> getFollowersMap(List<Post> ps) throws PostNotFoundException {
+        Map<String, Set<String>> ret = new TreeMap<>();
+
+        // Per ogni post, l'autore è una chiave, la lista delle persone a cui piace sono i valori
+        for (Post p : ps) {
+            if (p == null) {
+                throw new NullPointerException("Uno dei post della lista era null");
+            }
+            if (!postLikes.containsKey(p)) {
+                throw new PostNotFoundException(p.getId());
+            }
+            // Se non ho mai incontrato l'autore prima, creo un set
+            if (ret.get(p.getAuthor()) == null) {
+                ret.put(p.getAuthor(), new TreeSet<>());
+            }
+
+            // Aggiungo tutti i like del post al set
+            for (String like : postLikes.get(p)) {
+                ret.get(p.getAuthor()).add(like);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires liked != null && follower != null
+     * @param liked Il post di cui controllare che sia l'unico like di follower
+     * @param follower L'utente di cui controllare che post sia l'unico like
+     *
+     * @effects Controlla che liked sia l'unico post pubblicato da liked.author a cui
+     *          follower abbia messo like
+     * @return true se liked è l'unico post a cui follower ha messo like tra i post di
+     *         liked.author
+     *         false in ogni altro caso
+     * @throws NullPointerException se liked == null || follower == null
+     */
+    private boolean isOnlyLike(Post liked, String follower) {
+        if (follower == null) {
+            throw new NullPointerException("L'utente di cui verificare se è l'unico like non può" +
+                    " esere null");
+        }
+        if (liked == null) {
+            throw new NullPointerException("Il post di cui verificare se è l'unico like di follower" +
+                    " non può essere null");
         }
 
         // Se il post era l'unico tra quelli pubblicati dall'autore di liked seguito dal follower
-        for (Map.Entry<Post, Set<String>> entry : postLikes.entrySet()) {
-            if (!entry.getKey().equals(liked) && entry.getValue().contains(follower) &&
-                    entry.getKey().getAuthor().equals(liked.getAuthor())) {
+        Set<Post> published = userPublished.get(liked.getAuthor());
+        if (published == null) {
+            return true;
+        }
+        for (Post p : published) {
+            Set<String> likes = postLikes.get(p);
+            if (!p.equals(liked) && likes != null && !likes.isEmpty() && likes.contains(follower)) {
                 return false;
             }
         }
@@ -0,0 +1,13 @@
+/** Overview:
+ *      SocialNetworkListener rappresenta un consumatore degli eventi generati da una rete
+ *      sociale, che li riceve a blocchi tramite EventRingBuffer.Subscription.poll.
+ */
+public interface SocialNetworkListener {
+    /**
+     * @requires event != null
+     * @param event L'evento ricevuto, valido soltanto per la durata della chiamata
+     *
+     * @effects Gestisce un evento della rete sociale
+     */
+    public void onEvent(SocialNetworkEvent event);
+}
@@ -0,0 +1,146 @@
+import java.util.*;
+
+/** Overview:
+ *      SpaceSaving è un dato mutabile che individua le stringhe aggiunte più di frequente
+ *      (heavy hitters) mantenendo al più capacity contatori. Quando arriva una stringa non
+ *      monitorata e i contatori sono esauriti, sostituisce quella con il conteggio minimo,
+ *      ereditandone il conteggio. Ogni conteggio sovrastima il valore esatto al più di
+ *      N / capacity, in cui N è il numero totale di occorrenze aggiunte, e ogni stringa con
+ *      più di N / capacity occorrenze è sicuramente monitorata.
+ *
+ *  Typical element:
+ *      <counts> in cui counts = {(k1, c1), (k2, c2), ...} con al più capacity elementi, in
+ *      cui ci è il conteggio stimato della stringa ki
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <{(k, c.counts(k).count) | k in c.counts.keys}>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      capacity > 0 && counts != null && byCount != null && counts.size() <= capacity &&
+ *      counts.values == byCount
+ */
+public class SpaceSaving {
+    /**
+     * Numero massimo di stringhe monitorate
+     */
+    private final int capacity;
+    /**
+     * Contatore di ogni stringa monitorata
+     */
+    private final Map<String, Counter> counts;
+    /**
+     * Contatori ordinati per conteggio, per trovare in tempo logaritmico quello minimo
+     */
+    private final TreeSet<Counter> byCount;
+    /**
+     * Numero progressivo usato per distinguere contatori con lo stesso conteggio
+     */
+    private long nextId;
+
+    /**
+     * @requires capacity > 0
+     * @param capacity Il numero massimo di stringhe da monitorare
+     * @effects Crea una struttura vuota
+     * @throws IllegalArgumentException Se capacity <= 0
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Il numero di contatori deve essere positivo");
+        }
+
+        this.capacity = capacity;
+        this.counts = new HashMap<>();
+        this.byCount = new TreeSet<>();
+        this.nextId = 0;
+    }
+
+    /**
+     * @requires key != null
+     * @param key La stringa di cui aggiungere un'occorrenza
+     *
+     * @effects Aggiunge un'occorrenza di key
+     * @modifies this.counts, this.byCount
+     * @return  La stringa che ha smesso di essere monitorata per fare posto a key, null se
+     *          nessuna stringa è stata sostituita
+     * @throws NullPointerException Se key == null
+     */
+    public String add(String key) {
+        if (key == null) {
+            throw new NullPointerException("La stringa da contare non può essere null");
+        }
+
+        Counter c = counts.get(key);
+        String evicted = null;
+
+        if (c != null) {
+            byCount.remove(c);
+            c.count++;
+        }
+        else if (counts.size() < capacity) {
+            c = new Counter(key, 1, nextId++);
+            counts.put(key, c);
+        }
+        else {
+            // Sostituisco la stringa con il conteggio minimo, ereditandone il conteggio
+            Counter min = byCount.pollFirst();
+            counts.remove(min.key);
+            evicted = min.key;
+            c = new Counter(key, min.count + 1, nextId++);
+            counts.put(key, c);
+        }
+        byCount.add(c);
+
+        return evicted;
+    }
+
+    /**
+     * @requires key != null
+     * @return True se key è attualmente monitorata
+     */
+    public boolean contains(String key) {
+        return counts.containsKey(key);
+    }
+
+    /**
+     * @requires k >= 0
+     * @param k Il numero di stringhe da restituire
+     * @return Al più k stringhe monitorate in ordine non crescente di conteggio stimato
+     * @throws IllegalArgumentException Se k < 0
+     */
+    public List<String> top(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Il numero di stringhe da restituire non può essere negativo");
+        }
+
+        List<String> ret = new ArrayList<>();
+        Iterator<Counter> it = byCount.descendingIterator();
+
+        while (ret.size() < k && it.hasNext()) {
+            ret.add(it.next().key);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Conteggio di una stringa monitorata
+     */
+    private static class Counter implements Comparable<Counter> {
+        private final String key;
+        private long count;
+        private final long id;
+
+        private Counter(String key, long count, long id) {
+            this.key = key;
+            this.count = count;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Counter o) {
+            int byCount = Long.compare(count, o.count);
+            return byCount != 0 ? byCount : Long.compare(o.id, id);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.*;
+
+/** Overview:
+ *      StorageStrategy stabilisce quali collezioni una rete sociale usa per memorizzare il
+ *      proprio stato (post e like, post pubblicati, utenti seguiti e follower, segnalazioni).
+ *      La scelta non modifica il comportamento delle operazioni, ma soltanto il loro costo e
+ *      l'ordine in cui vengono restituiti gli elementi che hanno la stessa posizione:
+ *
+ *          - ORDERED: TreeMap e TreeSet. Le ricerche costano O(log n) confronti; tutte le
+ *              visite seguono l'ordine naturale degli elementi, per cui writtenBy(username) e
+ *              containing restituiscono i post in ordine di id crescente e, a parità di
+ *              follower o di occorrenze, influencers e getTrending sono in ordine alfabetico.
+ *          - HASHED: HashMap e HashSet. Le ricerche costano O(1) in media; l'ordine di
+ *              writtenBy(username), di containing e degli elementi a pari merito di
+ *              influencers e getTrending non è specificato.
+ *          - PRIMITIVE: le map indicizzate da post sono PostMap (indirizzamento aperto sugli id
+ *              dei post, senza allocare un nodo per ogni elemento) e i post pubblicati da ogni
+ *              utente sono PostSet (array ordinato per id), le altre collezioni sono HashMap e
+ *              HashSet. writtenBy(username) restituisce i post in ordine di id crescente,
+ *              mentre l'ordine di containing e degli elementi a pari merito di influencers e
+ *              getTrending non è specificato.
+ *
+ *      In ogni caso guessFollowers restituisce una mappa ordinata per autore,
+ *      getMentionedUsers un insieme ordinato alfabeticamente e getControversialPosts, a parità
+ *      di peso delle segnalazioni, i post in ordine di id crescente. Con HASHED e PRIMITIVE i
+ *      post sono identificati dal loro id (come in PostImpl.equals), senza bisogno che siano
+ *      confrontabili.
+ */
+public enum StorageStrategy {
+    ORDERED {
+        @Override
+        public <K, V> Map<K, V> newMap() {
+            return new TreeMap<>();
+        }
+
+        @Override
+        public <E> Set<E> newSet() {
+            return new TreeSet<>();
+        }
+
+        @Override
+        public <V> Map<Post, V> newPostMap() {
+            return new TreeMap<>();
+        }
+
+        @Override
+        public Set<Post> newPostSet() {
+            return new TreeSet<>();
+        }
+    },
+
+    HASHED {
+        @Override
+        public <K, V> Map<K, V> newMap() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public <E> Set<E> newSet() {
+            return new HashSet<>();
+        }
+
+        @Override
+        public <V> Map<Post, V> newPostMap() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Set<Post> newPostSet() {
+            return new HashSet<>();
+        }
+    },
+
+    PRIMITIVE {
+        @Override
+        public <K, V> Map<K, V> newMap() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public <E> Set<E> newSet() {
+            return new HashSet<>();
+        }
+
+        @Override
+        public <V> Map<Post, V> newPostMap() {
+            return new PostMap<>();
+        }
+
+        @Override
+        public Set<Post> newPostSet() {
+            return new PostSet();
+        }
+    };
+
+    /**
+     * @return Una nuova map vuota, indicizzata da nomi di utenti
+     */
+    public abstract <K, V> Map<K, V> newMap();
+
+    /**
+     * @return Un nuovo insieme vuoto di nomi di utenti o di segnalazioni
+     */
+    public abstract <E> Set<E> newSet();
+
+    /**
+     * @return Una nuova map vuota indicizzata da post
+     */
+    public abstract <V> Map<Post, V> newPostMap();
+
+    /**
+     * @return Un nuovo insieme vuoto di post
+     */
+    public abstract Set<Post> newPostSet();
+}
@@ -0,0 +1,486 @@
+import java.util.*;
+
+/** Overview:
+ *      TimelineCache è un dato mutabile che mantiene, per gli utenti che hanno letto di
+ *      recente la propria home timeline, una copia limitata dei post più recenti degli autori
+ *      che seguono. Quando un autore pubblica un post, questo viene inserito direttamente
+ *      nelle timeline dei suoi follower (fan-out in scrittura); per gli autori con troppi
+ *      follower l'inserimento viene saltato e i loro post vengono uniti al momento della
+ *      lettura (fan-out in lettura). Se la timeline di un utente non è in cache, viene
+ *      ricostruita fondendo i post di tutti gli autori seguiti.
+ *
+ *      La cache mantiene al più maxTimelines timeline, scartando quella letta meno di recente,
+ *      e un autore smette di essere unito in lettura quando pubblica avendo al più
+ *      fanOutLimit follower.
+ *
+ *      L'ordine delle timeline è quello dei timestamp (NEWEST_FIRST). Gli insiemi di post
+ *      ordinati per id vengono visitati direttamente a ritroso solo per gli autori i cui id
+ *      seguono l'ordine dei timestamp, cosa che la cache verifica a ogni pubblicazione.
+ *
+ *  Typical element:
+ *      <timelines, pulledAuthors, unordered> in cui:
+ *          - timelines = {(u1, t1), (u2, t2), ...} in cui timelines(u) è la lista, ordinata
+ *              dal più recente al meno recente, dei post più recenti della home timeline di u
+ *          - pulledAuthors = {a1, a2, ...} in cui ai è un autore i cui post non vengono
+ *              inseriti nelle timeline in cache
+ *          - unordered = {a1, a2, ...} in cui ai è un autore che ha pubblicato dei post in
+ *              cui l'ordine degli id è diverso da quello dei timestamp
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.timelines, c.pulledAuthors, c.unordered>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      timelines != null && pulledAuthors != null && unordered != null && capacity > 0 &&
+ *      fanOutLimit >= 0 && maxTimelines > 0 && timelines.size() <= maxTimelines &&
+ *      foreach u in timelines.keys -> timelines(u) != null &&
+ *          timelines(u).posts.size() <= capacity &&
+ *          // Una timeline incompleta contiene almeno i post più recenti fino al più vecchio in cache
+ *          (!timelines(u).complete => timelines(u).posts.size() > 0)
+ */
+public class TimelineCache {
+    /**
+     * Numero predefinito di post mantenuti per ogni timeline
+     */
+    public static final int DEFAULT_CAPACITY = 200;
+    /**
+     * Numero predefinito di follower oltre il quale un autore non viene inserito nelle timeline
+     */
+    public static final int DEFAULT_FAN_OUT_LIMIT = 10000;
+    /**
+     * Numero predefinito di timeline mantenute in cache
+     */
+    public static final int DEFAULT_MAX_TIMELINES = 10000;
+
+    /**
+     * Ordine delle timeline: dal post più recente al meno recente, a parità di timestamp per id
+     * decrescente
+     */
+    public static final Comparator<Post> NEWEST_FIRST = new Comparator<Post>() {
+        public int compare(Post a, Post b) {
+            int byTime = Long.compare(PostImpl.epochNanosOf(b), PostImpl.epochNanosOf(a));
+            return byTime != 0 ? byTime : Long.compare(b.getId(), a.getId());
+        }
+    };
+
+    /**
+     * Numero massimo di post di ogni timeline in cache
+     */
+    private final int capacity;
+    /**
+     * Numero di follower oltre il quale i post di un autore non vengono inseriti nelle timeline
+     */
+    private final int fanOutLimit;
+    /**
+     * Numero massimo di timeline in cache
+     */
+    private final int maxTimelines;
+    /**
+     * Timeline in cache di ciascun utente, dalla letta meno di recente alla più recente
+     */
+    private final LinkedHashMap<String, Timeline> timelines;
+    /**
+     * Autori i cui post vengono uniti alle timeline al momento della lettura
+     */
+    private final Set<String> pulledAuthors;
+    /**
+     * Autori i cui post non possono essere visitati in ordine di id
+     */
+    private final Set<String> unordered;
+
+    /**
+     * @requires capacity > 0 && fanOutLimit >= 0 && maxTimelines > 0
+     * @param capacity     Il numero massimo di post mantenuti per ogni timeline
+     * @param fanOutLimit  Il numero di follower oltre il quale un autore non viene inserito
+     *                     nelle timeline al momento della pubblicazione
+     * @param maxTimelines Il numero massimo di timeline mantenute in cache
+     *
+     * @effects Crea una cache di timeline vuota
+     * @modifies this
+     * @throws IllegalArgumentException Se capacity <= 0 || fanOutLimit < 0 || maxTimelines <= 0
+     */
+    public TimelineCache(int capacity, int fanOutLimit, int maxTimelines) {
+        if (capacity <= 0 || fanOutLimit < 0 || maxTimelines <= 0) {
+            throw new IllegalArgumentException("Parametri della cache delle timeline non validi");
+        }
+
+        this.capacity = capacity;
+        this.fanOutLimit = fanOutLimit;
+        this.maxTimelines = maxTimelines;
+        this.timelines = new LinkedHashMap<>();
+        this.pulledAuthors = new HashSet<>();
+        this.unordered = new HashSet<>();
+    }
+
+    /**
+     * @requires p != null && followers != null && published != null && published.contains(p)
+     * @param p         Il post pubblicato
+     * @param followers I follower dell'autore di p
+     * @param published I post pubblicati dall'autore di p, compreso p
+     *
+     * @effects Inserisce p nelle timeline in cache dei follower del suo autore. Se l'autore ha
+     *          più di fanOutLimit follower, p non viene inserito e i post dell'autore verranno
+     *          uniti alle timeline al momento della lettura; se invece l'autore veniva unito in
+     *          lettura e ora ha al più fanOutLimit follower, le timeline in cache dei suoi
+     *          follower vengono scartate e i suoi post tornano a essere inseriti.
+     * @modifies this.timelines, this.pulledAuthors, this.unordered
+     */
+    public void postPublished(Post p, Set<String> followers, Set<Post> published) {
+        postAdded(p, published);
+
+        if (followers.size() > fanOutLimit) {
+            pulledAuthors.add(p.getAuthor());
+            return;
+        }
+        if (pulledAuthors.remove(p.getAuthor())) {
+            // Le timeline in cache non contengono i post dell'autore pubblicati finora
+            for (String follower : followers) {
+                timelines.remove(follower);
+            }
+            return;
+        }
+
+        for (String follower : followers) {
+            Timeline t = timelines.get(follower);
+
+            if (t != null) {
+                t.posts.add(p);
+                if (t.posts.size() > capacity) {
+                    t.posts.pollLast();
+                    t.complete = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @requires p != null && published != null && published.contains(p)
+     * @param p         Il post aggiunto ai post del suo autore, ad esempio perché riletto dal
+     *                  livello freddo
+     * @param published I post pubblicati dall'autore di p, compreso p
+     *
+     * @effects Se published è ordinato per id e p non segue l'ordine dei timestamp rispetto ai
+     *          post adiacenti, i post dell'autore di p non verranno più visitati in ordine di id.
+     * @modifies this.unordered
+     */
+    public void postAdded(Post p, Set<Post> published) {
+        if (!isIdOrdered(published) || unordered.contains(p.getAuthor())) {
+            return;
+        }
+
+        // Se ogni coppia di post adiacenti per id rispetta l'ordine dei timestamp, lo rispetta
+        // l'intero insieme
+        NavigableSet<Post> sorted = (NavigableSet<Post>) published;
+        Post older = sorted.lower(p);
+        Post newer = sorted.higher(p);
+        if ((older != null && NEWEST_FIRST.compare(older, p) < 0) ||
+                (newer != null && NEWEST_FIRST.compare(p, newer) < 0)) {
+            unordered.add(p.getAuthor());
+        }
+    }
+
+    /**
+     * @requires p != null && followers != null
+     * @param p         Il post cancellato
+     * @param followers I follower dell'autore di p
+     *
+     * @effects Rimuove p dalle timeline in cache dei follower del suo autore.
+     * @modifies this.timelines
+     */
+    public void postDeleted(Post p, Set<String> followers) {
+        for (String follower : followers) {
+            Timeline t = timelines.get(follower);
+
+            if (t != null && t.posts.remove(p) && !t.complete && t.posts.isEmpty()) {
+                timelines.remove(follower);
+            }
+        }
+    }
+
+    /**
+     * @requires evicted != null
+     * @param evicted I post spostati nel livello freddo, che non sono più in memoria
+     *
+     * @effects Tronca ogni timeline in cache che contiene post di evicted prima del più
+     *          recente di essi, in modo che resti esatta fino al suo post più vecchio; le
+     *          timeline troncate non sono più complete e quelle rimaste vuote vengono scartate.
+     * @modifies this.timelines
+     */
+    public void postsEvicted(Set<Post> evicted) {
+        Iterator<Timeline> it = timelines.values().iterator();
+
+        while (it.hasNext()) {
+            Timeline t = it.next();
+
+            for (Post p : t.posts) {
+                if (evicted.contains(p)) {
+                    t.posts.tailSet(p, true).clear();
+                    t.complete = false;
+                    break;
+                }
+            }
+            if (!t.complete && t.posts.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @requires user != null
+     * @param user L'utente la cui timeline non è più valida
+     *
+     * @effects Scarta la timeline in cache di user, ad esempio perché ha iniziato o smesso di
+     *          seguire un autore.
+     * @modifies this.timelines
+     */
+    public void invalidate(String user) {
+        timelines.remove(user);
+    }
+
+    /**
+     * @requires user != null
+     * @param user L'utente rimosso dalla rete
+     *
+     * @effects Dimentica tutte le informazioni relative a user
+     * @modifies this.timelines, this.pulledAuthors, this.unordered
+     */
+    public void userRemoved(String user) {
+        timelines.remove(user);
+        pulledAuthors.remove(user);
+        unordered.remove(user);
+    }
+
+    /**
+     * @requires user != null && followed != null && userPublished != null && limit > 0 &&
+     *           foreach a in followed -> userPublished(a) != null
+     * @param user          L'utente di cui leggere la home timeline
+     * @param followed      Gli autori seguiti da user
+     * @param userPublished I post pubblicati da ciascun autore
+     * @param cursor        L'ultimo post già letto, null per partire dal più recente
+     * @param limit         Il numero massimo di post da restituire
+     *
+     * @effects Fornisce al più limit post degli autori seguiti da user, successivi a cursor
+     *          nell'ordine NEWEST_FIRST. Se la timeline di user non è in cache viene
+     *          ricostruita; se la cache non contiene abbastanza post viene usata la fusione
+     *          di tutti gli autori seguiti. Se la cache è piena, viene scartata la timeline
+     *          letta meno di recente.
+     * @modifies this.timelines
+     * @return  La pagina della home timeline richiesta
+     */
+    public List<Post> get(String user, Set<String> followed, Map<String, Set<Post>> userPublished,
+                          Post cursor, int limit) {
+        // Reinserisco la timeline per spostarla in fondo all'ordine di lettura
+        Timeline t = timelines.remove(user);
+
+        if (t == null) {
+            t = new Timeline();
+            t.posts.addAll(merge(sources(followed, userPublished, null, unordered), capacity + 1));
+            t.complete = t.posts.size() <= capacity;
+            if (!t.complete) {
+                t.posts.pollLast();
+            }
+            if (timelines.size() == maxTimelines) {
+                Iterator<String> eldest = timelines.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        timelines.put(user, t);
+
+        // Unisco la timeline in cache con gli autori che non vengono inseriti in scrittura
+        List<Iterator<Post>> hot = new ArrayList<>();
+        hot.add((cursor == null ? t.posts : t.posts.tailSet(cursor, false)).iterator());
+        for (String author : followed) {
+            if (pulledAuthors.contains(author)) {
+                hot.add(newestFirst(userPublished.get(author), cursor, !unordered.contains(author)));
+            }
+        }
+
+        List<Post> ret = merge(hot, limit);
+
+        // Una cache incompleta è esatta soltanto fino al suo post più vecchio: se la pagina
+        // va oltre, uso la fusione di tutti gli autori seguiti
+        if (!t.complete && (ret.size() < limit ||
+                NEWEST_FIRST.compare(ret.get(ret.size() - 1), t.posts.last()) > 0)) {
+            ret = merge(sources(followed, userPublished, cursor, unordered), limit);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @requires followed != null && userPublished != null && limit > 0
+     * @param followed      Gli autori seguiti
+     * @param userPublished I post pubblicati da ciascun autore
+     * @param cursor        L'ultimo post già letto, null per partire dal più recente
+     * @param limit         Il numero massimo di post da restituire
+     *
+     * @effects Calcola una pagina di home timeline senza usare la cache, fondendo i post di
+     *          tutti gli autori seguiti. Non sapendo se gli id seguono l'ordine dei timestamp,
+     *          i post di ogni autore vengono ordinati.
+     * @return  Al più limit post degli autori seguiti, successivi a cursor nell'ordine NEWEST_FIRST
+     */
+    public static List<Post> mergeFollowed(Set<String> followed, Map<String, Set<Post>> userPublished,
+                                           Post cursor, int limit) {
+        return merge(sources(followed, userPublished, cursor, null), limit);
+    }
+
+    /**
+     * @requires followed != null && userPublished != null
+     * @param unordered Gli autori i cui post non possono essere visitati in ordine di id, null
+     *                  se non è noto per nessun autore
+     * @effects Fornisce un iteratore ordinato per ogni autore seguito, a partire da cursor
+     * @return  La lista degli iteratori
+     */
+    private static List<Iterator<Post>> sources(Set<String> followed, Map<String, Set<Post>> userPublished,
+                                                Post cursor, Set<String> unordered) {
+        List<Iterator<Post>> ret = new ArrayList<>();
+
+        for (String author : followed) {
+            Set<Post> posts = userPublished.get(author);
+            if (posts != null && !posts.isEmpty()) {
+                ret.add(newestFirst(posts, cursor, unordered != null && !unordered.contains(author)));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return True se posts è un insieme ordinato per id
+     */
+    private static boolean isIdOrdered(Set<Post> posts) {
+        return posts instanceof NavigableSet && ((SortedSet<Post>) posts).comparator() == null;
+    }
+
+    /**
+     * @requires posts != null
+     * @param posts     I post di un autore
+     * @param cursor    Il post da cui partire (escluso), null per partire dal più recente
+     * @param idOrdered True se gli id dei post seguono l'ordine dei timestamp
+     *
+     * @effects Fornisce un iteratore sui post di posts successivi a cursor in ordine NEWEST_FIRST,
+     *          cioè per timestamp e, a parità, per id. Se idOrdered e posts è ordinato per id,
+     *          posts viene visitato direttamente a ritroso; altrimenti i post vengono ordinati.
+     * @return  L'iteratore sui post
+     */
+    private static Iterator<Post> newestFirst(Set<Post> posts, Post cursor, boolean idOrdered) {
+        if (idOrdered && isIdOrdered(posts)) {
+            Iterator<Post> it = ((NavigableSet<Post>) posts).descendingIterator();
+            return cursor == null ? it : new After(it, cursor);
+        }
+
+        List<Post> sorted = new ArrayList<>();
+        for (Post p : posts) {
+            if (cursor == null || NEWEST_FIRST.compare(p, cursor) > 0) {
+                sorted.add(p);
+            }
+        }
+        sorted.sort(NEWEST_FIRST);
+
+        return sorted.iterator();
+    }
+
+    /**
+     * @requires sources != null && foreach it in sources -> it è ordinato secondo NEWEST_FIRST
+     * @param sources Gli iteratori da fondere
+     * @param limit   Il numero massimo di post da restituire
+     *
+     * @effects Fonde gli iteratori in un'unica sequenza ordinata tramite una coda di priorità
+     *          sui loro elementi correnti, scartando i duplicati.
+     * @return  I primi limit post della fusione
+     */
+    static List<Post> merge(List<Iterator<Post>> sources, int limit) {
+        List<Post> ret = new ArrayList<>();
+        PriorityQueue<Head> heads = new PriorityQueue<>();
+
+        for (Iterator<Post> it : sources) {
+            if (it.hasNext()) {
+                heads.add(new Head(it.next(), it));
+            }
+        }
+
+        while (ret.size() < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+
+            // I duplicati hanno la stessa posizione nell'ordine, per cui sono consecutivi
+            if (ret.isEmpty() || !ret.get(ret.size() - 1).equals(head.post)) {
+                ret.add(head.post);
+            }
+            if (head.source.hasNext()) {
+                head.post = head.source.next();
+                heads.add(head);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Timeline in cache di un utente
+     */
+    private static class Timeline {
+        /**
+         * Post più recenti della timeline
+         */
+        private final TreeSet<Post> posts = new TreeSet<>(NEWEST_FIRST);
+        /**
+         * True se posts contiene l'intera timeline
+         */
+        private boolean complete = true;
+    }
+
+    /**
+     * Elemento corrente di uno degli iteratori da fondere
+     */
+    private static class Head implements Comparable<Head> {
+        private Post post;
+        private final Iterator<Post> source;
+
+        private Head(Post post, Iterator<Post> source) {
+            this.post = post;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(Head o) {
+            return NEWEST_FIRST.compare(post, o.post);
+        }
+    }
+
+    /**
+     * Iteratore che salta gli elementi di un iteratore ordinato secondo NEWEST_FIRST fino a
+     * un cursore (escluso). Il cursore può essere un post di un altro autore, per cui viene
+     * confrontato per timestamp e non per id.
+     */
+    private static class After implements Iterator<Post> {
+        private final Iterator<Post> source;
+        private Post next;
+
+        private After(Iterator<Post> source, Post cursor) {
+            this.source = source;
+            while (source.hasNext()) {
+                Post p = source.next();
+                if (NEWEST_FIRST.compare(p, cursor) > 0) {
+                    next = p;
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Post next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Post ret = next;
+            next = source.hasNext() ? source.next() : null;
+            return ret;
+        }
+    }
+}
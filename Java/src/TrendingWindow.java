@@ -0,0 +1,284 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Overview:
+ *      TrendingWindow è un dato mutabile che conta le occorrenze degli hashtag nei post
+ *      pubblicati all'interno di una finestra temporale scorrevole (ad esempio gli ultimi 60
+ *      minuti). La finestra è divisa in intervalli di uguale durata: quando il tempo avanza,
+ *      l'intervallo più vecchio viene scartato per intero, per cui il costo di mantenere la
+ *      finestra non dipende dal numero di post pubblicati in passato.
+ *
+ *      I timestamp dei post e il momento corrente sono confrontati come LocalDateTime (vedi
+ *      PostImpl.epochNanosOf), per cui il cambio dell'ora legale non sposta i post da un
+ *      intervallo all'altro. I post con un timestamp futuro vengono contati quando la finestra
+ *      raggiunge il loro intervallo.
+ *
+ *  Typical element:
+ *      <window, buckets> in cui:
+ *          - window è la durata della finestra
+ *          - buckets = [b0, b1, ..., b(n-1)] in cui bi : Hashtag -> Integer è il numero di
+ *              occorrenze di ogni hashtag nei post il cui timestamp cade nell'i-esimo
+ *              intervallo della finestra
+ *
+ *  Abstraction Function:
+ *      f(c): C -> A = <c.bucketMillis * c.counts.size(), c.counts>
+ *
+ *  Representation Invariant:
+ *      f(c): C -> Bool =
+ *      bucketMillis > 0 && counts != null && bucketIds != null && totals != null && clock != null &&
+ *      future != null && counts.size() == bucketIds.length &&
+ *      foreach i in [0, counts.size()) -> counts(i) != null &&
+ *          bucketIds[i] mod counts.size() == i && bucketIds[i] <= currentBucket &&
+ *      foreach b in future.keys -> b > currentBucket &&
+ *      // totals è la somma dei conteggi di tutti gli intervalli
+ *      foreach t in totals.keys -> totals(t) > 0 && totals(t) == sum(i -> counts(i)(t))
+ */
+public class TrendingWindow {
+    /**
+     * Durata in millisecondi di ciascun intervallo
+     */
+    private final long bucketMillis;
+    /**
+     * Conteggi degli hashtag per ciascun intervallo della finestra
+     */
+    private final List<Map<String, Integer>> counts;
+    /**
+     * Numero assoluto dell'intervallo contenuto in ciascuna posizione di counts
+     */
+    private final long[] bucketIds;
+    /**
+     * Conteggi degli hashtag sull'intera finestra
+     */
+    private final Map<String, Integer> totals;
+    /**
+     * Conteggi degli hashtag dei post con un timestamp successivo all'intervallo corrente,
+     * per numero assoluto dell'intervallo
+     */
+    private final NavigableMap<Long, Map<String, Integer>> future;
+    /**
+     * Numero assoluto dell'intervallo corrente
+     */
+    private long currentBucket;
+    /**
+     * Orologio usato per stabilire il momento corrente
+     */
+    private final Clock clock;
+
+    /**
+     * @requires window != null && clock != null && buckets > 0 && window.toMillis() >= buckets
+     * @param window  La durata della finestra
+     * @param buckets Il numero di intervalli in cui dividere la finestra
+     * @param clock   L'orologio da cui leggere il momento corrente
+     *
+     * @effects Crea una finestra vuota di durata window divisa in buckets intervalli.
+     * @modifies this
+     * @throws NullPointerException Se window == null || clock == null
+     * @throws IllegalArgumentException Se buckets <= 0 || window.toMillis() < buckets
+     */
+    public TrendingWindow(Duration window, int buckets, Clock clock) {
+        if (window == null) {
+            throw new NullPointerException("La durata della finestra non può essere null");
+        }
+        if (clock == null) {
+            throw new NullPointerException("L'orologio della finestra non può essere null");
+        }
+        if (buckets <= 0 || window.toMillis() < buckets) {
+            throw new IllegalArgumentException("Impossibile dividere una finestra di " + window +
+                    " in " + buckets + " intervalli");
+        }
+
+        this.bucketMillis = window.toMillis() / buckets;
+        this.counts = new ArrayList<>(buckets);
+        this.bucketIds = new long[buckets];
+        this.totals = new HashMap<>();
+        this.future = new TreeMap<>();
+        this.clock = clock;
+        this.currentBucket = nowBucket();
+
+        // Ogni posizione contiene inizialmente un intervallo vuoto della finestra corrente
+        for (int i=0; i<buckets; i++) {
+            counts.add(new HashMap<>());
+            bucketIds[i] = currentBucket - Math.floorMod(currentBucket - i, (long) buckets);
+        }
+    }
+
+    /**
+     * @requires window != null && buckets > 0 && window.toMillis() >= buckets
+     * @effects Crea una finestra vuota che usa l'orologio di sistema
+     */
+    public TrendingWindow(Duration window, int buckets) {
+        this(window, buckets, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @requires p != null
+     * @param p Il post pubblicato
+     *
+     * @effects Conta gli hashtag di p, se il suo timestamp cade all'interno della finestra.
+     * @modifies this.counts, this.totals
+     * @throws NullPointerException Se p == null
+     */
+    public void add(Post p) {
+        update(p, 1);
+    }
+
+    /**
+     * @requires p != null
+     * @param p Il post cancellato
+     *
+     * @effects Sottrae dai conteggi gli hashtag di p, se il suo timestamp cade all'interno
+     *          della finestra.
+     * @modifies this.counts, this.totals
+     * @throws NullPointerException Se p == null
+     */
+    public void remove(Post p) {
+        update(p, -1);
+    }
+
+    /**
+     * @effects Fornisce gli hashtag dei post pubblicati all'interno della finestra in ordine
+     *          non crescente di numero di occorrenze.
+     * @modifies this.counts, this.totals, this.currentBucket
+     * @return  La lista degli hashtag della finestra, vuota se non ce ne sono.
+     */
+    public List<String> getTrending() {
+        advance();
+
+        List<Map.Entry<String, Integer>> toSort = new ArrayList<>(totals.entrySet());
+        List<String> ret = new ArrayList<>();
+
+        // Ordino per numero di occorrenze e, a parità, in ordine alfabetico
+        toSort.sort(new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                int byCount = Integer.compare(b.getValue(), a.getValue());
+                return byCount != 0 ? byCount : a.getKey().compareTo(b.getKey());
+            }
+        });
+
+        for (Map.Entry<String, Integer> entry : toSort) {
+            ret.add(entry.getKey());
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return La durata della finestra
+     */
+    public Duration getWindow() {
+        return Duration.ofMillis(bucketMillis * counts.size());
+    }
+
+    /**
+     * @requires p != null
+     * @param p     Il post di cui aggiornare gli hashtag
+     * @param delta La variazione da applicare ai conteggi
+     *
+     * @effects Applica delta al conteggio di ogni hashtag di p nell'intervallo del suo
+     *          timestamp, ignorando i post più vecchi della finestra. I post con un timestamp
+     *          futuro vengono conteggiati a parte fino a quando la finestra non li raggiunge.
+     * @modifies this.counts, this.totals, this.future, this.currentBucket
+     */
+    private void update(Post p, int delta) {
+        if (p == null) {
+            throw new NullPointerException("Il post di cui contare gli hashtag non può essere null");
+        }
+        advance();
+
+        long bucket = Math.floorDiv(PostImpl.epochNanosOf(p), 1_000_000L * bucketMillis);
+        if (bucket > currentBucket) {
+            Map<String, Integer> later = future.computeIfAbsent(bucket, k -> new HashMap<>());
+            apply(later, p, delta, false);
+            if (later.isEmpty()) {
+                future.remove(bucket);
+            }
+            return;
+        }
+
+        int slot = (int) Math.floorMod(bucket, (long) counts.size());
+        if (bucketIds[slot] != bucket) {
+            return;
+        }
+        apply(counts.get(slot), p, delta, true);
+    }
+
+    /**
+     * @requires bucket != null && p != null
+     * @effects Applica delta al conteggio in bucket di ogni hashtag di p e, se withTotals,
+     *          anche al totale della finestra. Un conteggio che si annulla viene rimosso.
+     * @modifies bucket, this.totals
+     */
+    private void apply(Map<String, Integer> bucket, Post p, int delta, boolean withTotals) {
+        Matcher m = SocialNetworkImpl.HASHTAG_PATTERN.matcher(p.getText());
+        while (m.find()) {
+            String tag = m.group().substring(1).toLowerCase();
+
+            if (delta < 0 && !bucket.containsKey(tag)) {
+                continue;
+            }
+            bucket.merge(tag, delta, Integer::sum);
+            if (bucket.get(tag) <= 0) {
+                bucket.remove(tag);
+            }
+            if (withTotals) {
+                totals.merge(tag, delta, Integer::sum);
+                if (totals.get(tag) <= 0) {
+                    totals.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Il numero assoluto dell'intervallo che contiene il momento corrente, letto da
+     *         clock come LocalDateTime
+     */
+    private long nowBucket() {
+        return Math.floorDiv(PostImpl.toEpochNanos(LocalDateTime.now(clock)), 1_000_000L * bucketMillis);
+    }
+
+    /**
+     * @effects Porta la finestra al momento corrente, scartando gli intervalli ormai usciti
+     *          dalla finestra e contando i post futuri degli intervalli raggiunti. Ogni
+     *          intervallo viene scartato una sola volta, per cui il costo ammortizzato è
+     *          costante per ogni occorrenza contata.
+     * @modifies this.counts, this.bucketIds, this.totals, this.future, this.currentBucket
+     */
+    private void advance() {
+        long now = nowBucket();
+        // Non serve scartare più di counts.size() intervalli
+        long from = Math.max(currentBucket + 1, now - counts.size() + 1);
+        // I post futuri degli intervalli già usciti dalla finestra non vengono più contati
+        future.headMap(from, false).clear();
+
+        for (long b = from; b <= now; b++) {
+            int slot = (int) Math.floorMod(b, (long) counts.size());
+            Map<String, Integer> bucket = counts.get(slot);
+
+            for (Map.Entry<String, Integer> expired : bucket.entrySet()) {
+                totals.merge(expired.getKey(), -expired.getValue(), Integer::sum);
+                if (totals.get(expired.getKey()) <= 0) {
+                    totals.remove(expired.getKey());
+                }
+            }
+            bucket.clear();
+            bucketIds[slot] = b;
+
+            Map<String, Integer> reached = future.remove(b);
+            if (reached != null) {
+                bucket.putAll(reached);
+                for (Map.Entry<String, Integer> e : reached.entrySet()) {
+                    totals.merge(e.getKey(), e.getValue(), Integer::sum);
+                }
+            }
+        }
+
+        if (now > currentBucket) {
+            currentBucket = now;
+        }
+    }
+}